@@ -2,36 +2,45 @@ package com.mrsisa.pharmacy.aspect.impl;
 
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class OwningAspectBase {
 
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    // argument positions are found once per annotated method and annotation attribute
+    private final Map<List<Object>, Integer> argumentIndexes = new ConcurrentHashMap<>();
+
     protected Long getIdentityParameter(JoinPoint joinPoint, Class<? extends Annotation> owningAnnotation) {
-        var methodSignature = (MethodSignature) joinPoint.getSignature();
-        var method = methodSignature.getMethod();
-        var owner = method.getAnnotation(owningAnnotation);
-        var argumentValues = joinPoint.getArgs();
-        try {
-            var identifier = owner.getClass().getMethod("identifier");
-            return (Long) argumentValues[Arrays.asList(methodSignature.getParameterNames()).indexOf(identifier.invoke(owner))];
-        } catch (Exception exception) {
-            return null;
-        }
+        return (Long) getParameter(joinPoint, owningAnnotation, "identifier");
     }
 
     protected Object getParameter(JoinPoint joinPoint, Class<? extends Annotation> owningAnnotation, String parameterName) {
         var methodSignature = (MethodSignature) joinPoint.getSignature();
-        var method = methodSignature.getMethod();
-        var owner = method.getAnnotation(owningAnnotation);
-        var argumentValues = joinPoint.getArgs();
-        try {
-            var param = owner.getClass().getMethod(parameterName);
-            return argumentValues[Arrays.asList(methodSignature.getParameterNames()).indexOf(param.invoke(owner))];
-        } catch (Exception exception) {
-            return null;
-        }
+        var index = getArgumentIndex(methodSignature.getMethod(), owningAnnotation, parameterName);
+        return index < 0 ? null : joinPoint.getArgs()[index];
+    }
+
+    // -1 if the method has no argument named by the annotation attribute
+    protected int getArgumentIndex(Method method, Class<? extends Annotation> owningAnnotation, String parameterName) {
+        return argumentIndexes.computeIfAbsent(List.of(method, owningAnnotation, parameterName), key -> {
+            var owner = method.getAnnotation(owningAnnotation);
+            var parameterNames = PARAMETER_NAME_DISCOVERER.getParameterNames(method);
+            try {
+                var param = owningAnnotation.getMethod(parameterName);
+                return parameterNames == null ? -1 : Arrays.asList(parameterNames).indexOf(param.invoke(owner));
+            } catch (Exception exception) {
+                return -1;
+            }
+        });
     }
 
     protected <T extends Annotation> T getMethodAnnotation(JoinPoint joinPoint, Class<T> annotation) {
@@ -1,32 +1,29 @@
 package com.mrsisa.pharmacy.aspect.impl;
 
 import com.mrsisa.pharmacy.aspect.OwningPatientNotPenalized;
-import com.mrsisa.pharmacy.service.IPatientService;
+import com.mrsisa.pharmacy.security.util.CurrentUser;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.server.ResponseStatusException;
 
 @Aspect
 @Component
 public class OwningPatientNotPenalizedAspect extends OwningAspectBase {
-    private final IPatientService patientService;
+    private final CurrentUser currentUser;
 
     @Autowired
-    public OwningPatientNotPenalizedAspect(IPatientService patientService) {
-        this.patientService = patientService;
+    public OwningPatientNotPenalizedAspect(CurrentUser currentUser) {
+        this.currentUser = currentUser;
     }
 
     @Before("@annotation(com.mrsisa.pharmacy.aspect.OwningPatientNotPenalized)")
     public void patientOwnsResourceAndNotPenalized(JoinPoint joinPoint) {
         Long patientId = getIdentityParameter(joinPoint, OwningPatientNotPenalized.class);
-        var authentication = SecurityContextHolder.getContext().getAuthentication();
-        var patient = patientService.findByUsernameWithAuthorities(authentication.getName());
-        if (!patient.getId().equals(patientId)) {
+        if (!currentUser.getId().equals(patientId) || currentUser.getPenalties() == null) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permissions to access this data.");
         }
 
@@ -38,7 +35,7 @@ public class OwningPatientNotPenalizedAspect extends OwningAspectBase {
             actionName = "this action";
         }
 
-        if (patient.getNumPenalties() >= 3) {
+        if (currentUser.getPenalties() >= 3) {
             if (!message.isBlank()) {
                 throw new ResponseStatusException(HttpStatus.FORBIDDEN, message);
             } else {
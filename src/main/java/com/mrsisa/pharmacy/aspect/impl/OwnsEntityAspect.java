@@ -1,64 +1,89 @@
 package com.mrsisa.pharmacy.aspect.impl;
 
 import com.mrsisa.pharmacy.aspect.OwnsEntity;
-import com.mrsisa.pharmacy.domain.entities.BaseEntity;
-import com.mrsisa.pharmacy.domain.entities.User;
-import com.mrsisa.pharmacy.service.ICRUDService;
-import com.mrsisa.pharmacy.service.impl.UserService;
+import com.mrsisa.pharmacy.exception.NotFoundException;
+import com.mrsisa.pharmacy.repository.IEntityOwnershipRepository;
+import com.mrsisa.pharmacy.repository.IEntityOwnershipRepository.OwnershipQuery;
+import com.mrsisa.pharmacy.security.util.CurrentUser;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.core.ResolvableType;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.util.Set;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Everything an ownership check needs is resolved once per annotated method when the application starts: the position
+of the entity id argument and the ownership query for the entity and owner field. A check is then a single count
+query on ids, the entity is not loaded.
+ */
 @Aspect
 @Component
 public class OwnsEntityAspect extends OwningAspectBase {
 
-    private final UserService userService;
-    private final OwnerSetHelper ownerSetHelper;
+    private final CurrentUser currentUser;
+    private final IEntityOwnershipRepository entityOwnershipRepository;
     private final ApplicationContext applicationContext;
 
+    private final Map<Method, OwnershipCheck> checks = new ConcurrentHashMap<>();
+
     @Autowired
-    public OwnsEntityAspect(UserService userService, OwnerSetHelper ownerSetHelper, ApplicationContext applicationContext) {
-        this.userService = userService;
-        this.ownerSetHelper = ownerSetHelper;
+    public OwnsEntityAspect(CurrentUser currentUser, IEntityOwnershipRepository entityOwnershipRepository, ApplicationContext applicationContext) {
+        this.currentUser = currentUser;
+        this.entityOwnershipRepository = entityOwnershipRepository;
         this.applicationContext = applicationContext;
     }
 
-    @SuppressWarnings("unchecked")
-    @Before("@annotation(com.mrsisa.pharmacy.aspect.OwnsEntity)")
-    public <T extends BaseEntity> void checkEntityOwner(JoinPoint joinPoint) throws NoSuchFieldException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        Long entityId = (Long) getParameter(joinPoint, OwnsEntity.class, "entityId");
-        OwnsEntity annotation = getMethodAnnotation(joinPoint, OwnsEntity.class);
-        String ownerField = annotation.ownerField();
-        Class<T> entityClass = (Class<T>) annotation.entity();
-        String[] crudServices = applicationContext.getBeanNamesForType(ResolvableType.forClassWithGenerics(ICRUDService.class, entityClass));
-        ICRUDService<T> entityService = (ICRUDService<T>) applicationContext.getBean(crudServices[0]);
-        var field = entityClass.getDeclaredField(ownerField);
-        var ownerGetter = entityClass.getMethod(getFieldGetter(field));
-        var authentication = SecurityContextHolder.getContext().getAuthentication();
-        var user = userService.findByUsernameWithAuthorities(authentication.getName());
-        if (Set.class.isAssignableFrom(field.getType())) {
-            ownerSetHelper.throwIfNotOwner(entityService, entityId, ownerGetter, user);
-        } else {
-            var entity = entityService.get(entityId);
-            User owner = (User) ownerGetter.invoke(entity);
-            if (!user.getId().equals(owner.getId())) {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permissions to access this data.");
+    // a wrong entity id or owner field fails on startup instead of on the first request
+    @EventListener(ContextRefreshedEvent.class)
+    public void resolveOwnershipChecks() {
+        applicationContext.getBeansWithAnnotation(RestController.class).values().forEach(controller -> {
+            for (Method method : AopUtils.getTargetClass(controller).getMethods()) {
+                if (method.isAnnotationPresent(OwnsEntity.class)) {
+                    checks.computeIfAbsent(method, this::resolve);
+                }
             }
+        });
+    }
+
+    @Before("@annotation(com.mrsisa.pharmacy.aspect.OwnsEntity)")
+    public void checkEntityOwner(JoinPoint joinPoint) {
+        var method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        var check = checks.computeIfAbsent(method, this::resolve);
+        var entityId = check.argumentIndex < 0 ? null : (Long) joinPoint.getArgs()[check.argumentIndex];
+        if (entityOwnershipRepository.isOwner(check.query, entityId, currentUser.getId())) {
+            return;
         }
+        if (!entityOwnershipRepository.exists(check.query, entityId)) {
+            throw new NotFoundException("Cannot find entity with id: " + entityId);
+        }
+        throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permissions to access this data.");
+    }
+
+    private OwnershipCheck resolve(Method method) {
+        var annotation = method.getAnnotation(OwnsEntity.class);
+        return new OwnershipCheck(getArgumentIndex(method, OwnsEntity.class, "entityId"),
+                entityOwnershipRepository.compile(annotation.entity(), annotation.ownerField()));
     }
 
-    private String getFieldGetter(Field field) {
-        return "get" + field.getName().substring(0, 1).toUpperCase() + field.getName().substring(1);
+    private static class OwnershipCheck {
+        private final int argumentIndex;
+        private final OwnershipQuery query;
+
+        OwnershipCheck(int argumentIndex, OwnershipQuery query) {
+            this.argumentIndex = argumentIndex;
+            this.query = query;
+        }
     }
 }
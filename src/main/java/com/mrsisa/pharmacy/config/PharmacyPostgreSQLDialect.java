@@ -0,0 +1,18 @@
+package com.mrsisa.pharmacy.config;
+
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.sql.Types;
+
+/*
+PostgreSQL dialect which reads bigint columns of native queries as Long instead of BigInteger, so native queries
+selecting ids can be declared to return List<Long> like the JPQL ones and the ids can be passed on as they are.
+ */
+public class PharmacyPostgreSQLDialect extends PostgreSQLDialect {
+
+    public PharmacyPostgreSQLDialect() {
+        super();
+        registerHibernateType(Types.BIGINT, StandardBasicTypes.LONG.getName());
+    }
+}
@@ -0,0 +1,49 @@
+package com.mrsisa.pharmacy.controller;
+
+import com.mrsisa.pharmacy.domain.aggregates.JobStatistics;
+import com.mrsisa.pharmacy.domain.entities.JobLock;
+import com.mrsisa.pharmacy.dto.job.JobStatisticsDTO;
+import com.mrsisa.pharmacy.dto.job.JobStatusDTO;
+import com.mrsisa.pharmacy.service.IJobLockService;
+import com.mrsisa.pharmacy.support.IConverter;
+import com.mrsisa.pharmacy.tasks.JobMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+
+@RestController
+@RequestMapping(value = "/api/jobs")
+public class JobController {
+
+    private final IJobLockService jobLockService;
+    private final IConverter<JobLock, JobStatusDTO> toJobStatusDTO;
+    private final JobMetrics jobMetrics;
+    private final IConverter<JobStatistics, JobStatisticsDTO> toJobStatisticsDTO;
+
+    @Autowired
+    public JobController(IJobLockService jobLockService, IConverter<JobLock, JobStatusDTO> toJobStatusDTO,
+                         JobMetrics jobMetrics, IConverter<JobStatistics, JobStatisticsDTO> toJobStatisticsDTO) {
+        this.jobLockService = jobLockService;
+        this.toJobStatusDTO = toJobStatusDTO;
+        this.jobMetrics = jobMetrics;
+        this.toJobStatisticsDTO = toJobStatisticsDTO;
+    }
+
+    // last run of every job, or of every shard of a sharded job, on any instance
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @GetMapping
+    public Collection<JobStatusDTO> getJobStatuses() {
+        return toJobStatusDTO.convert(jobLockService.getJobLocks());
+    }
+
+    // runs and processed rows of every job and nightly stage since the instance answering the request started
+    @PreAuthorize("hasRole('ROLE_SYSTEM_ADMIN')")
+    @GetMapping(value = "/instance")
+    public Collection<JobStatisticsDTO> getInstanceJobStatistics() {
+        return toJobStatisticsDTO.convert(jobMetrics.getStatistics());
+    }
+}
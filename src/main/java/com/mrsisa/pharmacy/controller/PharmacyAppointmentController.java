@@ -6,6 +6,8 @@ import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.dto.appointment.AppointmentDTO;
 import com.mrsisa.pharmacy.dto.appointment.AppointmentRangeResultDTO;
 import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentCreationDTO;
+import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentSlotsCreationDTO;
+import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentSlotsResultDTO;
 import com.mrsisa.pharmacy.dto.appointment.UpdateAppointmentPriceDTO;
 import com.mrsisa.pharmacy.dto.pharmacy.PharmacyDTO;
 import com.mrsisa.pharmacy.dto.pharmacy.PharmacySearchDTO;
@@ -95,4 +97,12 @@ public class PharmacyAppointmentController extends PharmacyControllerBase {
         var created = appointmentService.createAvailableAppointment(id, dto.getEmployeeId(), dto.getFromTime(), dto.getToTime());
         return toAppointmentDTO.convert(created);
     }
+
+    @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
+    @OwnsPharmacy(identifier = "id")
+    @PostMapping(value = "/{id}/appointments/slots")
+    @ResponseStatus(HttpStatus.CREATED)
+    public AvailableAppointmentSlotsResultDTO createAvailableAppointmentSlots(@PathVariable("id") Long id, @Valid @RequestBody AvailableAppointmentSlotsCreationDTO dto) {
+        return appointmentService.createAvailableAppointmentSlots(id, dto.getEmployeeId(), dto.getFromDate(), dto.getToDate(), dto.getSlotDuration());
+    }
 }
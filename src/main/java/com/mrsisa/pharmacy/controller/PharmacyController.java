@@ -2,7 +2,6 @@ package com.mrsisa.pharmacy.controller;
 
 import com.mrsisa.pharmacy.aspect.OwningUser;
 import com.mrsisa.pharmacy.aspect.OwnsPharmacy;
-import com.mrsisa.pharmacy.comparators.PharmacyQRSearchDTOComparator;
 import com.mrsisa.pharmacy.domain.entities.*;
 import com.mrsisa.pharmacy.dto.complaint.ComplaintCreationDTO;
 import com.mrsisa.pharmacy.dto.complaint.ComplaintDTO;
@@ -19,9 +18,9 @@ import com.mrsisa.pharmacy.service.*;
 import com.mrsisa.pharmacy.support.IConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -31,7 +30,6 @@ import org.springframework.web.server.ResponseStatusException;
 import javax.validation.Valid;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 
 @RestController
@@ -42,6 +40,7 @@ public class PharmacyController extends PharmacyControllerBase {
     private final IEmailService emailService;
     private final IPatientService patientService;
     private final IPromotionService promotionService;
+    private final IPromotionNewsletterService promotionNewsletterService;
     private final IConverter<Pharmacy, PharmacyDTO> toPharmacyDTO;
     private final IConverter<MissingMedicineLog, MissingMedicineDTO> toMissingMedicineDTO;
     private final IConverter<LeaveDaysRequest, LeaveDaysRequestDTO> toLeaveDaysRequestDTO;
@@ -51,7 +50,7 @@ public class PharmacyController extends PharmacyControllerBase {
 
     @Autowired
     public PharmacyController(IPharmacyService pharmacyService, IPharmacyAdminService pharmacyAdminService, IMissingMedicineLogService missingMedicineLogService, ILeaveDaysRequestService leaveDaysRequestService,
-                              IEmailService emailService, IPatientService patientService, IPromotionService promotionService, IConverter<Pharmacy, PharmacyDTO> toPharmacyDTO, IConverter<MissingMedicineLog, MissingMedicineDTO> toMissingMedicineDTO,
+                              IEmailService emailService, IPatientService patientService, IPromotionService promotionService, IPromotionNewsletterService promotionNewsletterService, IConverter<Pharmacy, PharmacyDTO> toPharmacyDTO, IConverter<MissingMedicineLog, MissingMedicineDTO> toMissingMedicineDTO,
                               IConverter<LeaveDaysRequest, LeaveDaysRequestDTO> toLeaveDaysRequestDTO, IConverter<Complaint, ComplaintDTO> toComplaintDTO, IConverter<PromotionCreationDTO, Promotion> toPromotion, IConverter<Promotion, PromotionCreationResponseDTO> toPromotionResponseDTO) {
         super(pharmacyService, pharmacyAdminService);
         this.missingMedicineLogService = missingMedicineLogService;
@@ -59,6 +58,7 @@ public class PharmacyController extends PharmacyControllerBase {
         this.emailService = emailService;
         this.patientService = patientService;
         this.promotionService = promotionService;
+        this.promotionNewsletterService = promotionNewsletterService;
         this.toPharmacyDTO = toPharmacyDTO;
         this.toMissingMedicineDTO = toMissingMedicineDTO;
         this.toLeaveDaysRequestDTO = toLeaveDaysRequestDTO;
@@ -84,9 +84,8 @@ public class PharmacyController extends PharmacyControllerBase {
     @ResponseStatus(HttpStatus.CREATED)
     public PromotionCreationResponseDTO createPromotion(@PathVariable("id") Long id, @Valid @RequestBody PromotionCreationDTO dto) {
         var promotion = toPromotion.convert(dto);
-        final var created = promotionService.createPromotion(id, promotion);
-        var pharmacy = pharmacyService.getPharmacyWithSubscribers(id);
-        pharmacy.getPromotionSubscribers().stream().filter(BaseEntity::getActive).forEach(sub -> emailService.notifySubscriberAboutPromotion(sub, created));
+        var created = promotionService.createPromotion(id, promotion);
+        promotionNewsletterService.sendNewsletter(created.getId());
         return toPromotionResponseDTO.convert(created);
     }
 
@@ -159,16 +158,15 @@ public class PharmacyController extends PharmacyControllerBase {
     public Page<PharmacyQRSearchDTO> getPharmaciesWithStock(
             @RequestParam("ids") List<Long> ids, @RequestParam("quantities") List<Integer> quantities, @RequestParam("days") List<Integer> days,
             @RequestParam("patientId") Long patientId,
-            @RequestParam("page") Integer pageNumber, @RequestParam("size") Integer size, @RequestParam("sortBy") String sorting) {
+            @RequestParam("page") Integer pageNumber, @RequestParam("size") Integer size, @RequestParam("sortBy") String sorting,
+            @RequestParam(value = "after", required = false) String after) {
         var patient = this.patientService.getPatientByIdAndActive(patientId);
-        List<PharmacyQRSearchDTO> l = this.pharmacyService.getPharmaciesWhereMedicinesAreAvailable(ids, quantities, days, patient.getPatientCategory());
         var tokens = sorting.split(",");
         String criteria = tokens[0];
-        String direction = tokens[1];
-        Pageable pageable = PageRequest.of(pageNumber, size);
-        l.sort(new PharmacyQRSearchDTOComparator(criteria, direction));
-        return new PageImpl<>(l.stream().skip((long) pageNumber * size).limit(size).collect(Collectors.toList()), pageable, l.size());
-
+        var direction = tokens[1].equals("asc") ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Pageable pageable = PageRequest.of(pageNumber, size, Sort.by(direction, criteria));
+        return this.pharmacyService.getPharmaciesWhereMedicinesAreAvailable(ids, quantities, days, patient.getPatientCategory(),
+                after, pageable);
     }
 
     @PreAuthorize("hasRole('ROLE_PATIENT')")
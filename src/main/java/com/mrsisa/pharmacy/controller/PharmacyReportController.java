@@ -5,12 +5,18 @@ import com.mrsisa.pharmacy.domain.aggregates.AppointmentStatistics;
 import com.mrsisa.pharmacy.domain.aggregates.IncomeStatistics;
 import com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseStatistics;
 import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.domain.enums.ExportFormat;
 import com.mrsisa.pharmacy.domain.enums.IncomeReportType;
 import com.mrsisa.pharmacy.domain.enums.ReportType;
+import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.service.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -23,13 +29,15 @@ public class PharmacyReportController extends PharmacyControllerBase {
     private final IPharmacyReportService pharmacyReportService;
     private final IAppointmentReportService appointmentReportService;
     private final IIncomeReportService incomeReportService;
+    private final IReportExportService reportExportService;
 
     @Autowired
-    public PharmacyReportController(IPharmacyService pharmacyService, IPharmacyAdminService pharmacyAdminService, IPharmacyReportService pharmacyReportService, IAppointmentReportService appointmentReportService, IIncomeReportService incomeReportService) {
+    public PharmacyReportController(IPharmacyService pharmacyService, IPharmacyAdminService pharmacyAdminService, IPharmacyReportService pharmacyReportService, IAppointmentReportService appointmentReportService, IIncomeReportService incomeReportService, IReportExportService reportExportService) {
         super(pharmacyService, pharmacyAdminService);
         this.pharmacyReportService = pharmacyReportService;
         this.appointmentReportService = appointmentReportService;
         this.incomeReportService = incomeReportService;
+        this.reportExportService = reportExportService;
     }
 
     @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
@@ -45,11 +53,11 @@ public class PharmacyReportController extends PharmacyControllerBase {
     @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
     @OwnsPharmacy(identifier = "id")
     @GetMapping(value = "/{id}/purchased-medicines/barchart")
-    public MedicinePurchaseStatistics getMonthlyMedicineReport(@PathVariable("id") Long id, @RequestParam(name = "from") String from, @RequestParam(name = "to") String to, @RequestParam(name = "type") ReportType reportType) {
+    public MedicinePurchaseStatistics getMonthlyMedicineReport(@PathVariable("id") Long id, @RequestParam(name = "from") String from, @RequestParam(name = "to") String to, @RequestParam(name = "type") ReportType reportType, @RequestParam(name = "top", required = false) Integer top) {
         var pharmacy = pharmacyService.get(id);
         var fromTime = LocalDate.parse(from, DateTimeFormatter.ISO_DATE);
         var toTime = LocalDate.parse(to, DateTimeFormatter.ISO_DATE);
-        return pharmacyReportService.getMedicinePurchaseBarchart(pharmacy, fromTime, toTime, reportType);
+        return pharmacyReportService.getMedicinePurchaseBarchart(pharmacy, fromTime, toTime, reportType, top);
     }
 
     @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
@@ -91,4 +99,42 @@ public class PharmacyReportController extends PharmacyControllerBase {
         var toTime = LocalDate.parse(to, DateTimeFormatter.ISO_DATE);
         return incomeReportService.getIncomeBarchartReport(pharmacy, fromTime, toTime, reportType);
     }
+
+    @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
+    @OwnsPharmacy(identifier = "id")
+    @GetMapping(value = "/{id}/purchased-medicines/export")
+    public ResponseEntity<StreamingResponseBody> exportMedicinePurchases(@PathVariable("id") Long id, @RequestParam(name = "from") String from, @RequestParam(name = "to") String to, @RequestParam(name = "format", defaultValue = "CSV") ExportFormat format) {
+        var pharmacy = pharmacyService.get(id);
+        var fromTime = LocalDate.parse(from, DateTimeFormatter.ISO_DATE);
+        var toTime = LocalDate.parse(to, DateTimeFormatter.ISO_DATE);
+        checkExportRange(fromTime, toTime);
+        StreamingResponseBody body = outputStream -> reportExportService.exportMedicinePurchases(pharmacy.getId(), fromTime, toTime, format, outputStream);
+        return exportResponse("purchased-medicines", format, body);
+    }
+
+    @PreAuthorize("hasRole('ROLE_PHARMACY_ADMIN')")
+    @OwnsPharmacy(identifier = "id")
+    @GetMapping(value = "/{id}/appointments-report/export")
+    public ResponseEntity<StreamingResponseBody> exportAppointments(@PathVariable("id") Long id, @RequestParam(name = "from") String from, @RequestParam(name = "to") String to, @RequestParam(name = "format", defaultValue = "CSV") ExportFormat format) {
+        var pharmacy = pharmacyService.get(id);
+        var fromTime = LocalDate.parse(from, DateTimeFormatter.ISO_DATE);
+        var toTime = LocalDate.parse(to, DateTimeFormatter.ISO_DATE);
+        checkExportRange(fromTime, toTime);
+        StreamingResponseBody body = outputStream -> reportExportService.exportAppointments(pharmacy.getId(), fromTime, toTime, format, outputStream);
+        return exportResponse("appointments", format, body);
+    }
+
+    // the range is checked before the response starts, errors cannot be reported once rows are being written
+    private void checkExportRange(LocalDate from, LocalDate to) {
+        if (!to.isAfter(from)) {
+            throw new BusinessException("Invalid time range parameters.");
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> exportResponse(String name, ExportFormat format, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "." + format.getExtension() + "\"")
+                .body(body);
+    }
 }
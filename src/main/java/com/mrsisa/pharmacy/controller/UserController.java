@@ -60,10 +60,10 @@ public class UserController {
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        String token = jwtUtil.generateToken(authentication);
-        String username = jwtUtil.extractUsernameFromToken(token);
+        String username = authentication.getName();
         try {
             var user = userService.findByUsernameWithAuthorities(username);
+            String token = jwtUtil.generateToken(authentication, user);
             List<String> authorities = user.getAuthorities().stream().map(Authority::getName).collect(Collectors.toList());
             return new AuthTokenDTO(token, username, user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getLoggedIn(),authorities);
         } catch (Exception ex) {
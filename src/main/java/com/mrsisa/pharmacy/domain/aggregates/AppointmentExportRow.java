@@ -0,0 +1,19 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+public class AppointmentExportRow {
+
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private EmployeeType employeeType;
+    private String employeeFirstName;
+    private String employeeLastName;
+    private Double price;
+}
@@ -0,0 +1,22 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+public class DailyAppointmentCount {
+
+    private LocalDate day;
+    private EmployeeType employeeType;
+    private Long count;
+
+    // appointments grouped by the day they started
+    public DailyAppointmentCount(Date day, EmployeeType employeeType, Long count) {
+        this(new java.sql.Date(day.getTime()).toLocalDate(), employeeType, count);
+    }
+}
@@ -0,0 +1,29 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.domain.enums.IncomeReportType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.Date;
+
+@Data
+@AllArgsConstructor
+public class DailyIncomeSum {
+
+    private Long pharmacyId;
+    private LocalDate day;
+    private IncomeReportType incomeType;
+    private Double amount;
+
+    // appointment income grouped by the day the appointment started
+    public DailyIncomeSum(Long pharmacyId, Date day, EmployeeType employeeType, Double amount) {
+        this(pharmacyId, new java.sql.Date(day.getTime()).toLocalDate(), employeeType == EmployeeType.PHARMACIST
+                ? IncomeReportType.PHARMACIST_APPOINTMENT : IncomeReportType.DERMATOLOGIST_APPOINTMENT, amount);
+    }
+
+    public DailyIncomeSum(Long pharmacyId, LocalDate day, Double amount) {
+        this(pharmacyId, day, IncomeReportType.MEDICINE_SALES, amount);
+    }
+}
@@ -0,0 +1,15 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class DailyMedicinePurchaseCount {
+
+    private Long medicineId;
+    private LocalDate day;
+    private Long quantity;
+}
@@ -0,0 +1,20 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// while a job is running the last run fields describe the progress so far
+@Data
+@AllArgsConstructor
+public class JobStatistics {
+
+    private String job;
+    private Boolean running;
+    private LocalDateTime lastStartedAt;
+    private Long lastDurationMillis;
+    private Long lastRowsProcessed;
+    private Long runs;
+    private Long totalRowsProcessed;
+}
@@ -0,0 +1,13 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class MedicinePurchaseCount {
+
+    private Long medicineId;
+    private String medicineName;
+    private Long quantity;
+}
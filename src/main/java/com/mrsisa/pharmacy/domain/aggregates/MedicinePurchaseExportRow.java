@@ -0,0 +1,17 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class MedicinePurchaseExportRow {
+
+    private LocalDate datePurchased;
+    private Long medicineId;
+    private String medicineName;
+    private Integer quantity;
+    private Double price;
+}
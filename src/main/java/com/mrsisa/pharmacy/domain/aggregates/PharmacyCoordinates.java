@@ -0,0 +1,14 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class PharmacyCoordinates {
+
+    private Long pharmacyId;
+    private Double latitude;
+    private Double longitude;
+
+}
@@ -0,0 +1,18 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class PrescriptionPharmacyTotal {
+
+    private Long pharmacyId;
+    // price of the whole prescription in the pharmacy in cents, before the patient category discount
+    private Long totalCents;
+
+    public Double getTotalPrice() {
+        return totalCents / 100.0;
+    }
+
+}
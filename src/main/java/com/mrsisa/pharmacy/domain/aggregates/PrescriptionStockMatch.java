@@ -0,0 +1,31 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import com.mrsisa.pharmacy.domain.valueobjects.Address;
+import lombok.Data;
+
+@Data
+public class PrescriptionStockMatch {
+
+    private Long pharmacyId;
+    private String pharmacyName;
+    private Double pharmacyAverageGrade;
+    private Address pharmacyAddress;
+    private Long medicineId;
+    private String medicineName;
+    private Integer quantity;
+    private Double price;
+
+    public PrescriptionStockMatch(Long pharmacyId, String pharmacyName, Double pharmacyAverageGrade,
+                                  String country, String city, String street, String streetNumber, String zipCode,
+                                  Long medicineId, String medicineName, Integer quantity, Double price) {
+        this.pharmacyId = pharmacyId;
+        this.pharmacyName = pharmacyName;
+        this.pharmacyAverageGrade = pharmacyAverageGrade;
+        this.pharmacyAddress = new Address(country, city, street, streetNumber, zipCode);
+        this.medicineId = medicineId;
+        this.medicineName = medicineName;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+// discount of a promotion of a pharmacy on a medicine, from and to are both included
+@Data
+@AllArgsConstructor
+public class PromotionDiscount {
+
+    private Long medicineId;
+    private LocalDate from;
+    private LocalDate to;
+    private Integer discount;
+
+    public double getDiscountFactor() {
+        return 1 - discount / 100.0;
+    }
+}
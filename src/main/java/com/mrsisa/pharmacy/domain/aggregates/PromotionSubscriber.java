@@ -0,0 +1,13 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class PromotionSubscriber {
+
+    private Long patientId;
+    private String username;
+    private String email;
+}
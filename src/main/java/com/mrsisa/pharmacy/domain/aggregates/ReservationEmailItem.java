@@ -0,0 +1,13 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ReservationEmailItem {
+
+    private String medicineName;
+    private Integer quantity;
+    private Double price;
+}
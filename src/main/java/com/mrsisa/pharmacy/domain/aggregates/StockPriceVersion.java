@@ -0,0 +1,16 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+// regular (not promotional) price of the stock of a medicine in a pharmacy starting from a day
+@Data
+@AllArgsConstructor
+public class StockPriceVersion {
+
+    private Long medicineId;
+    private LocalDate from;
+    private Double price;
+}
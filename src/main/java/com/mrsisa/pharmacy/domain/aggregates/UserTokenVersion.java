@@ -0,0 +1,12 @@
+package com.mrsisa.pharmacy.domain.aggregates;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UserTokenVersion {
+
+    private Long userId;
+    private Integer tokenVersion;
+}
@@ -0,0 +1,41 @@
+package com.mrsisa.pharmacy.domain.entities;
+
+import com.mrsisa.pharmacy.domain.enums.IncomeReportType;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+// pre-aggregated income of a pharmacy for one day and income type, read by the income reports
+@Entity
+@Table(name = "daily_income", uniqueConstraints = @UniqueConstraint(columnNames = {"pharmacy_id", "income_date", "income_type"}))
+@Getter
+@Setter
+public class DailyIncome extends BaseEntity {
+
+    @ManyToOne(cascade = {}, fetch = FetchType.LAZY)
+    private Pharmacy pharmacy;
+
+    @Column(name = "income_date", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "income_type", nullable = false)
+    @Enumerated
+    private IncomeReportType incomeType;
+
+    @Column(name = "amount", nullable = false)
+    private Double amount;
+
+    public DailyIncome() {
+        super();
+    }
+
+    public DailyIncome(Pharmacy pharmacy, LocalDate day, IncomeReportType incomeType, Double amount) {
+        this();
+        this.setPharmacy(pharmacy);
+        this.setDay(day);
+        this.setIncomeType(incomeType);
+        this.setAmount(amount);
+    }
+}
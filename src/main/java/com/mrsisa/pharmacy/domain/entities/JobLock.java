@@ -0,0 +1,49 @@
+package com.mrsisa.pharmacy.domain.entities;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/*
+Lease on a background job or on one shard of it, the instance holding an unexpired lease is the only one running it.
+The lease is extended by heartbeats while the job runs and the row keeps the statistics of the last run, a run
+finished for a scheduled time is not started again for the same time by a slower instance.
+ */
+@Entity
+@Table(name = "job_lock")
+@Getter
+@Setter
+@NoArgsConstructor
+public class JobLock {
+
+    @Id
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "owner", nullable = false)
+    private String owner;
+
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "scheduled_at")
+    private LocalDateTime scheduledAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "duration_millis")
+    private Long durationMillis;
+
+    @Column(name = "rows_processed")
+    private Long rowsProcessed;
+}
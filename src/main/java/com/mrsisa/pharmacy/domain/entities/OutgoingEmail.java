@@ -0,0 +1,72 @@
+package com.mrsisa.pharmacy.domain.entities;
+
+import com.mrsisa.pharmacy.domain.enums.OutgoingEmailStatus;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+// email written in the transaction of the change it reports, sent later by the outbox dispatcher
+@Entity
+@Table(name = "outgoing_email", indexes = @Index(name = "outgoing_email_ready_idx", columnList = "status, bulk, next_attempt_at"))
+@Getter
+@Setter
+public class OutgoingEmail extends BaseEntity {
+
+    @Column(name = "recipient", nullable = false)
+    private String recipient;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Column(name = "text", nullable = false, columnDefinition = "text")
+    private String text;
+
+    @Column(name = "html", nullable = false)
+    private Boolean html;
+
+    // bulk email (newsletters) is only sent when no other email is due
+    @Column(name = "bulk", nullable = false)
+    private Boolean bulk;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated
+    private OutgoingEmailStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    public OutgoingEmail() {
+        super();
+    }
+
+    public OutgoingEmail(String recipient, String subject, String text, Boolean html) {
+        this(recipient, subject, text, html, false);
+    }
+
+    public OutgoingEmail(String recipient, String subject, String text, Boolean html, Boolean bulk) {
+        this();
+        this.setRecipient(recipient);
+        this.setSubject(subject);
+        this.setText(text);
+        this.setHtml(html);
+        this.setBulk(bulk);
+        this.setStatus(OutgoingEmailStatus.PENDING);
+        this.setAttempts(0);
+        this.setCreatedAt(LocalDateTime.now());
+        this.setNextAttemptAt(this.getCreatedAt());
+    }
+}
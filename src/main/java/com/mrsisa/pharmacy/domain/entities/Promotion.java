@@ -28,6 +28,7 @@ public class Promotion extends BaseEntity {
     @Column(name = "to_date", nullable = false)
     private LocalDate toDate;
 
+    // not read, whether a promotion runs follows from its dates
     @Column(name = "status", nullable = false)
     @Enumerated
     private PromotionStatus promotionStatus;
@@ -35,6 +36,10 @@ public class Promotion extends BaseEntity {
     @OneToMany(mappedBy = "promotion", cascade = {CascadeType.ALL}, fetch = FetchType.LAZY)
     private Set<PromotionItem> promotionItems = new HashSet<>();
 
+    // id of the last subscriber the newsletter was queued for, null when there is nobody left to queue it for
+    @Column(name = "newsletter_after_patient_id")
+    private Long newsletterAfterPatientId;
+
     public Promotion() {
         super();
     }
@@ -42,6 +42,10 @@ public abstract class User extends BaseEntity {
     @Version
     private Short version;
 
+    // raised to revoke every token issued so far, after a password change or deactivation
+    @Column(name = "token_version", nullable = false)
+    private Integer tokenVersion = 0;
+
     protected User() {
         super();
     }
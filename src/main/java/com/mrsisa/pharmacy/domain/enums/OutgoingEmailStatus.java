@@ -0,0 +1,5 @@
+package com.mrsisa.pharmacy.domain.enums;
+
+public enum OutgoingEmailStatus {
+    PENDING, SENT, FAILED
+}
@@ -0,0 +1,29 @@
+package com.mrsisa.pharmacy.dto.appointment;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.mrsisa.pharmacy.json.deserializer.ISOLocalDateDeserializer;
+import lombok.Data;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
+
+@Data
+public class AvailableAppointmentSlotsCreationDTO {
+    @NotNull(message = "Employee ID can't be null.")
+    private Long employeeId;
+
+    @NotNull(message = "From date can't be null.")
+    @JsonDeserialize(using = ISOLocalDateDeserializer.class)
+    private LocalDate fromDate;
+
+    @NotNull(message = "End date can't be null.")
+    @JsonDeserialize(using = ISOLocalDateDeserializer.class)
+    private LocalDate toDate;
+
+    @NotNull(message = "Slot duration can't be null.")
+    @Min(value = 5, message = "Slot duration must be at least 5 minutes.")
+    @Max(value = 480, message = "Slot duration can't be longer than 480 minutes.")
+    private Integer slotDuration;
+}
@@ -0,0 +1,11 @@
+package com.mrsisa.pharmacy.dto.appointment;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class AvailableAppointmentSlotsResultDTO {
+    private Integer createdSlots;
+    private Integer skippedSlots;
+}
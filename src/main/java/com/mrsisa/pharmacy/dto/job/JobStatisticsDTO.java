@@ -0,0 +1,21 @@
+package com.mrsisa.pharmacy.dto.job;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.mrsisa.pharmacy.json.serializer.ISOLocalDateTimeSerializer;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class JobStatisticsDTO {
+
+    private String job;
+    private Boolean running;
+    @JsonSerialize(using = ISOLocalDateTimeSerializer.class)
+    private LocalDateTime lastStartedAt;
+    private Long lastDurationMillis;
+    private Long lastRowsProcessed;
+    private Long runs;
+    private Long totalRowsProcessed;
+
+}
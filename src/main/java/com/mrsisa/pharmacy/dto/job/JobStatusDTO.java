@@ -0,0 +1,26 @@
+package com.mrsisa.pharmacy.dto.job;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.mrsisa.pharmacy.json.serializer.ISOLocalDateTimeSerializer;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class JobStatusDTO {
+
+    private String job;
+    private String owner;
+    private Boolean running;
+    @JsonSerialize(using = ISOLocalDateTimeSerializer.class)
+    private LocalDateTime scheduledAt;
+    @JsonSerialize(using = ISOLocalDateTimeSerializer.class)
+    private LocalDateTime startedAt;
+    @JsonSerialize(using = ISOLocalDateTimeSerializer.class)
+    private LocalDateTime heartbeatAt;
+    @JsonSerialize(using = ISOLocalDateTimeSerializer.class)
+    private LocalDateTime finishedAt;
+    private Long durationMillis;
+    private Long rowsProcessed;
+
+}
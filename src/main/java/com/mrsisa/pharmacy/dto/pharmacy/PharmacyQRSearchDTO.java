@@ -15,6 +15,8 @@ public class PharmacyQRSearchDTO {
     private Double pharmacyAverageGrade;
     private Double totalStockPrice;
     private List<MedicineStockQRSearchDTO> medicineStock;
+    // pass as "after" to get the pharmacies following this one when sorting by total price
+    private String cursor;
 
     public String getPharmacyName() {
         return pharmacyName;
@@ -37,7 +39,11 @@ public class PharmacyQRSearchDTO {
     }
 
     public void setPharmacyAddress(Address address) {
-        this.pharmacyAddress = address.getStreet() + " " + address.getStreetNumber() + "," + address.getCity() + ", " + address.getZipCode() + ", " + address.getCountry();
+        this.pharmacyAddress = formatAddress(address);
+    }
+
+    public static String formatAddress(Address address) {
+        return address.getStreet() + " " + address.getStreetNumber() + "," + address.getCity() + ", " + address.getZipCode() + ", " + address.getCountry();
     }
 
     public Double getPharmacyAverageGrade() {
@@ -56,6 +62,14 @@ public class PharmacyQRSearchDTO {
         this.totalStockPrice = totalStockPrice;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
     public List<MedicineStockQRSearchDTO> getMedicineStock() {
         return medicineStock;
     }
@@ -93,6 +107,7 @@ public class PharmacyQRSearchDTO {
     }
 
     public void calculateTotalPrice(){
+        this.totalStockPrice = 0.0;
         for(MedicineStockQRSearchDTO stock: this.medicineStock){
             this.totalStockPrice += stock.getMedicinePrice() * stock.getQuantity();
         }
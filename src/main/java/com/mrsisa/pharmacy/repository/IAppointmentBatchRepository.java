@@ -0,0 +1,12 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+
+import java.util.List;
+
+public interface IAppointmentBatchRepository {
+
+    // persists new appointments in flushed chunks, the persistence context is cleared after each chunk so entities
+    // loaded before the call are detached
+    void insertAll(List<Appointment> appointments);
+}
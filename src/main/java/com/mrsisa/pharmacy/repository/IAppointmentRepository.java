@@ -1,5 +1,8 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.AppointmentExportRow;
+import com.mrsisa.pharmacy.domain.aggregates.DailyAppointmentCount;
+import com.mrsisa.pharmacy.domain.aggregates.DailyIncomeSum;
 import com.mrsisa.pharmacy.domain.entities.Appointment;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.domain.enums.EmployeeType;
@@ -7,10 +10,13 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -44,7 +50,6 @@ public interface IAppointmentRepository extends JpaRepository<Appointment, Long>
 //    @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<Appointment> getAppointmentByIdAndActiveTrue(@Param("id") Long id);
 
-
     // For some reason != is written as <>
     // https://stackoverflow.com/a/24989843
     @Query("select a from Appointment a where a.active=true and a.employee.id=:id" +
@@ -54,6 +59,7 @@ public interface IAppointmentRepository extends JpaRepository<Appointment, Long>
                                                           @Param("toTime") LocalDateTime toTime);
 
 
+
     @Query(value = "select a from Appointment as a where a.active=true and a.patient.id=:id and (a.appointmentStatus=:status or :status is null) " +
             "and ((:from >= a.from and :from < a.to) or (:to > a.from and :to<= a.to) or (:from <= a.from and :to >= a.to))")
     List<Appointment> findOverlappingAppointments(@Param("id") Long id, @Param("status") AppointmentStatus status,
@@ -140,21 +146,29 @@ public interface IAppointmentRepository extends JpaRepository<Appointment, Long>
                                                               @Param("appointmentStatus") AppointmentStatus appointmentStatus);
 
 
-    @Query("select count(a) from Appointment a where a.appointmentStatus=:status and a.employee.pharmacy.id=:pharmacyId and a.employee.pharmacyEmployee.employeeType=:employeeType" +
-            " and a.from >= :from and a.to < :to")
-    Optional<Long> countAppointmentsForPharmacy(@Param("pharmacyId") Long pharmacyId,
-                                                @Param("status") AppointmentStatus status,
-                                                @Param("employeeType") EmployeeType employeeType,
-                                                @Param("from") LocalDateTime from,
-                                                @Param("to") LocalDateTime to);
-
-    @Query("select sum(a.price) from Appointment a where a.employee.pharmacy.id=:pharmacyId and a.employee.pharmacyEmployee.employeeType=:type and a.appointmentStatus=:status" +
-            " and a.from >= :from and a.to < :to")
-    Optional<Double> getAppointmentsIncome(@Param("pharmacyId") Long pharmacyId,
-                                           @Param("status") AppointmentStatus status,
-                                           @Param("type") EmployeeType type,
-                                           @Param("from") LocalDateTime from,
-                                           @Param("to") LocalDateTime to);
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.DailyAppointmentCount(cast(a.from as date), a.employee.pharmacyEmployee.employeeType, count(a))" +
+            " from Appointment a where a.appointmentStatus=:status and a.employee.pharmacy.id=:pharmacyId" +
+            " and a.employee.pharmacyEmployee.employeeType in :employeeTypes and a.from >= :from and a.to < :to" +
+            " group by cast(a.from as date), a.employee.pharmacyEmployee.employeeType")
+    List<DailyAppointmentCount> countDailyAppointmentsForPharmacy(@Param("pharmacyId") Long pharmacyId,
+                                                                  @Param("status") AppointmentStatus status,
+                                                                  @Param("employeeTypes") Collection<EmployeeType> employeeTypes,
+                                                                  @Param("from") LocalDateTime from,
+                                                                  @Param("to") LocalDateTime to);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.AppointmentExportRow(a.from, a.to, pe.employeeType, pe.firstName, pe.lastName, a.price)" +
+            " from Appointment a join a.employee c join c.pharmacyEmployee pe where a.appointmentStatus=:status and c.pharmacy.id=:pharmacyId" +
+            " and a.from >= :from and a.to < :to order by a.from, a.id")
+    Stream<AppointmentExportRow> getAppointmentsForExport(@Param("pharmacyId") Long pharmacyId,
+                                                          @Param("status") AppointmentStatus status,
+                                                          @Param("from") LocalDateTime from,
+                                                          @Param("to") LocalDateTime to);
+
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.DailyIncomeSum(a.employee.pharmacy.id, cast(a.from as date)," +
+            " a.employee.pharmacyEmployee.employeeType, sum(a.price)) from Appointment a where a.appointmentStatus=:status" +
+            " group by a.employee.pharmacy.id, cast(a.from as date), a.employee.pharmacyEmployee.employeeType")
+    List<DailyIncomeSum> getDailyAppointmentsIncome(@Param("status") AppointmentStatus status);
 
     @Query("select a from Appointment a where a.active=true and a.employee.id=:employeeId" +
             " and ((a.from <= :nowDate) and (:nowDate <= a.to)) and a.appointmentStatus = 0" +
@@ -168,6 +182,13 @@ public interface IAppointmentRepository extends JpaRepository<Appointment, Long>
     List<Appointment> getAllBusyAppointmentsForEmployee(@Param("employeeId") Long employeeId,
                                                         @Param("nowDate") LocalDateTime dateNow);
 
+    // booked or available appointments of the employee in any pharmacy overlapping [fromTime, toTime)
+    @Query("select count(a) from Appointment a where a.active=true and a.employee.pharmacyEmployee.id=:employeeId" +
+            " and (a.appointmentStatus = 0 or a.appointmentStatus = 3) and a.from < :toTime and a.to > :fromTime")
+    Long countBusyAppointmentsForEmployeeInTime(@Param("employeeId") Long employeeId,
+                                                @Param("fromTime") LocalDateTime fromTime,
+                                                @Param("toTime") LocalDateTime toTime);
+
     @Query("select a from Appointment a where a.active=true and a.employee.pharmacyEmployee.id=:employeeId" +
             " and a.to >= current_date and a.to >= :from and a.to <= :to and (a.appointmentStatus = 0 or a.appointmentStatus = 3)")
     List<Appointment> getAllBusyAppointmentsForEmployeeForRange(@Param("employeeId") Long employeeId,
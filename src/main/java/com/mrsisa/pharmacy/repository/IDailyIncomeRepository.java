@@ -0,0 +1,35 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.entities.DailyIncome;
+import com.mrsisa.pharmacy.domain.enums.IncomeReportType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IDailyIncomeRepository extends JpaRepository<DailyIncome, Long> {
+
+    @Query("select di from DailyIncome di where di.pharmacy.id=:pharmacyId and di.incomeType in :types" +
+            " and di.day >= :from and di.day < :to order by di.day")
+    List<DailyIncome> getDailyIncomes(@Param("pharmacyId") Long pharmacyId,
+                                      @Param("types") Collection<IncomeReportType> types,
+                                      @Param("from") LocalDate from,
+                                      @Param("to") LocalDate to);
+
+    // concurrent writers of the same day only add to the existing row, so no increment is lost
+    @Modifying
+    @Query(value = "insert into daily_income (id, active, pharmacy_id, income_date, income_type, amount)" +
+            " values (nextval('daily_income_seq'), true, :pharmacyId, :day, :type, :amount)" +
+            " on conflict (pharmacy_id, income_date, income_type) do update set amount = daily_income.amount + excluded.amount",
+            nativeQuery = true)
+    void addIncome(@Param("pharmacyId") Long pharmacyId,
+                   @Param("day") LocalDate day,
+                   @Param("type") Integer type,
+                   @Param("amount") Double amount);
+}
@@ -25,6 +25,11 @@ public interface IEmploymentContractRepository extends JpaRepository<EmploymentC
     Optional<EmploymentContract> getEmployeeContractWithPharmacy(@Param("employeeId") Long employeeId,
                                                                  @Param("pharmacyId") Long pharmacyId);
 
+    // appointments and leave days of every contract keep the employee busy, so writers lock all of them, in id order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select ec from EmploymentContract ec where ec.active=true and ec.pharmacyEmployee.id=:employeeId order by ec.id")
+    List<EmploymentContract> getEmployeeContractsForUpdate(@Param("employeeId") Long employeeId);
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select ec from EmploymentContract ec where ec.active=true and ec.pharmacyEmployee.id=:employeeId and ec.pharmacy.id=:pharmacyId")
     Optional<EmploymentContract> getEmployeeContractWithPharmacyForUpdate(@Param("employeeId") Long employeeId,
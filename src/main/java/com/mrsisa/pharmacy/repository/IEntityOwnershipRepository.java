@@ -0,0 +1,31 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.entities.BaseEntity;
+
+public interface IEntityOwnershipRepository {
+
+    // checks the entity and its owner field once, running the returned query only binds the ids
+    OwnershipQuery compile(Class<? extends BaseEntity> entity, String ownerField);
+
+    boolean isOwner(OwnershipQuery query, Long entityId, Long userId);
+
+    boolean exists(OwnershipQuery query, Long entityId);
+
+    final class OwnershipQuery {
+        private final String ownerQuery;
+        private final String existsQuery;
+
+        public OwnershipQuery(String ownerQuery, String existsQuery) {
+            this.ownerQuery = ownerQuery;
+            this.existsQuery = existsQuery;
+        }
+
+        public String getOwnerQuery() {
+            return ownerQuery;
+        }
+
+        public String getExistsQuery() {
+            return existsQuery;
+        }
+    }
+}
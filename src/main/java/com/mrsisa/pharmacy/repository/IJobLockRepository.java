@@ -0,0 +1,51 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.entities.JobLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IJobLockRepository extends JpaRepository<JobLock, String> {
+
+    // takes the lease if nobody holds it or it expired and the run scheduled at the given time has not finished yet,
+    // returns 1 if it was taken, times come from the database clock so instances with skewed clocks agree on expiry
+    @Modifying
+    @Query(value = "insert into job_lock (name, owner, locked_until, scheduled_at, started_at, heartbeat_at, rows_processed)" +
+            " values (:name, :owner, localtimestamp + :seconds * interval '1 second', :scheduledAt, localtimestamp, localtimestamp, 0)" +
+            " on conflict (name) do update set owner = excluded.owner, locked_until = excluded.locked_until," +
+            " scheduled_at = excluded.scheduled_at, started_at = excluded.started_at, heartbeat_at = excluded.heartbeat_at," +
+            " finished_at = null, duration_millis = null, rows_processed = 0" +
+            " where (job_lock.locked_until < localtimestamp or job_lock.owner = excluded.owner)" +
+            " and (job_lock.scheduled_at is distinct from excluded.scheduled_at or job_lock.finished_at is null)", nativeQuery = true)
+    int acquire(@Param("name") String name, @Param("owner") String owner,
+                @Param("scheduledAt") LocalDateTime scheduledAt, @Param("seconds") Long seconds);
+
+    // returns 0 if the lease was lost, which only happens when heartbeats stopped for longer than the lease
+    @Modifying
+    @Query(value = "update job_lock set locked_until = localtimestamp + :seconds * interval '1 second'," +
+            " heartbeat_at = localtimestamp, rows_processed = :rows" +
+            " where name = :name and owner = :owner and finished_at is null", nativeQuery = true)
+    int renew(@Param("name") String name, @Param("owner") String owner,
+              @Param("seconds") Long seconds, @Param("rows") Long rowsProcessed);
+
+    @Modifying
+    @Query(value = "update job_lock set locked_until = localtimestamp, finished_at = localtimestamp," +
+            " duration_millis = :duration, rows_processed = :rows" +
+            " where name = :name and owner = :owner and finished_at is null", nativeQuery = true)
+    int complete(@Param("name") String name, @Param("owner") String owner,
+                 @Param("duration") Long durationMillis, @Param("rows") Long rowsProcessed);
+
+    // gives the lease up without finishing the run, so another instance can still run it for the same time
+    @Modifying
+    @Query(value = "update job_lock set locked_until = localtimestamp where name = :name and owner = :owner", nativeQuery = true)
+    int release(@Param("name") String name, @Param("owner") String owner);
+
+    @Query("select l from JobLock l order by l.name")
+    List<JobLock> getAllJobLocks();
+}
@@ -45,15 +45,23 @@ public interface ILeaveDaysRequestRepository extends JpaRepository<LeaveDaysRequ
             " and (req.leaveDaysRequestStatus=0 or req.leaveDaysRequestStatus=1)")
     List<LeaveDaysRequest> getAllPendingAndAcceptedLeaveDaysRequestForEmployee(@Param("id") Long employeeId);
 
+    // statuses of the pending and approved requests of the employee sharing a day with [from, to]
+    @Query("select distinct req.leaveDaysRequestStatus from LeaveDaysRequest req where req.active=true and req.employee.id=:employeeId" +
+            " and (req.leaveDaysRequestStatus=0 or req.leaveDaysRequestStatus=1) and req.from <= :to and req.to >= :from")
+    List<LeaveDaysRequestStatus> getBlockingLeaveDaysStatusesForEmployee(@Param("employeeId") Long employeeId,
+                                                                         @Param("from") LocalDate from,
+                                                                         @Param("to") LocalDate to);
+
     @Query("select req from LeaveDaysRequest req where req.active=true and req.employee.id=:employeeId" +
             " and req.from <= :theDate and req.to >= :theDate and req.leaveDaysRequestStatus=:status")
     Stream<LeaveDaysRequest> findForEmployeeContainingDate(@Param("employeeId") Long employeeId,
                                                            @Param("theDate") LocalDate theDate,
                                                            @Param("status") LeaveDaysRequestStatus status);
 
-    @Query("select req from LeaveDaysRequest req where req.active=true and req.leaveDaysRequestStatus=:status and req.from < :today")
-    Stream<LeaveDaysRequest> getStartedPendingRequestsStream(@Param("status") LeaveDaysRequestStatus status,
-                                                             @Param("today") LocalDate today);
+    @Query("select req from LeaveDaysRequest req where req.active=true and req.leaveDaysRequestStatus=:status and req.from < :today" +
+            " order by req.id")
+    List<LeaveDaysRequest> getStartedPendingRequests(@Param("status") LeaveDaysRequestStatus status,
+                                                     @Param("today") LocalDate today, Pageable pageable);
 
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select req from LeaveDaysRequest req where req.id=:requestId and req.active=true")
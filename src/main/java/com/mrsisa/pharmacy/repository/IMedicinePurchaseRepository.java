@@ -1,26 +1,53 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.DailyIncomeSum;
+import com.mrsisa.pharmacy.domain.aggregates.DailyMedicinePurchaseCount;
+import com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseCount;
+import com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseExportRow;
 import com.mrsisa.pharmacy.domain.entities.MedicinePurchase;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDate;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface IMedicinePurchaseRepository extends JpaRepository<MedicinePurchase, Long> {
 
-    @Query("select sum(mp.quantity) from MedicinePurchase mp where mp.active=true and mp.purchasedMedicine.id=:medicineId and mp.pharmacy.id=:pharmacyId" +
-            " and mp.datePurchased >= :from and mp.datePurchased < :to")
-    Optional<Integer> getMedicinePurchaseCount(@Param("medicineId") Long medicineId,
-                                               @Param("pharmacyId") Long pharmacyId,
-                                               @Param("from") LocalDate from,
-                                               @Param("to") LocalDate to);
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.DailyMedicinePurchaseCount(mp.purchasedMedicine.id, mp.datePurchased, sum(mp.quantity))" +
+            " from MedicinePurchase mp where mp.active=true and mp.pharmacy.id=:pharmacyId and mp.purchasedMedicine.id in :medicineIds" +
+            " and mp.datePurchased >= :from and mp.datePurchased < :to group by mp.purchasedMedicine.id, mp.datePurchased")
+    List<DailyMedicinePurchaseCount> getDailyMedicinePurchaseCounts(@Param("medicineIds") Collection<Long> medicineIds,
+                                                                    @Param("pharmacyId") Long pharmacyId,
+                                                                    @Param("from") LocalDate from,
+                                                                    @Param("to") LocalDate to);
 
-    @Query("select sum(mp.price) from MedicinePurchase mp where mp.active=true and mp.pharmacy.id=:pharmacyId and mp.datePurchased >= :from and mp.datePurchased < :to")
-    Optional<Double> getIncomeFromMedicines(@Param("pharmacyId") Long pharmacyId,
-                                            @Param("from") LocalDate from,
-                                            @Param("to") LocalDate to);
+    // every medicine in stock of the pharmacy, including the ones which were not purchased, best selling first
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseCount(m.id, m.name, coalesce(sum(mp.quantity), 0))" +
+            " from MedicineStock ms join ms.medicine m left join MedicinePurchase mp on mp.purchasedMedicine = m and mp.pharmacy = ms.pharmacy" +
+            " and mp.active = true and mp.datePurchased >= :from and mp.datePurchased < :to" +
+            " where ms.active = true and ms.pharmacy.id = :pharmacyId group by m.id, m.name order by coalesce(sum(mp.quantity), 0) desc, m.name")
+    List<MedicinePurchaseCount> getMedicinePurchaseCounts(@Param("pharmacyId") Long pharmacyId,
+                                                          @Param("from") LocalDate from,
+                                                          @Param("to") LocalDate to,
+                                                          Pageable pageable);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseExportRow(mp.datePurchased, m.id, m.name, mp.quantity, mp.price)" +
+            " from MedicinePurchase mp join mp.purchasedMedicine m where mp.active=true and mp.pharmacy.id=:pharmacyId" +
+            " and mp.datePurchased >= :from and mp.datePurchased < :to order by mp.datePurchased, mp.id")
+    Stream<MedicinePurchaseExportRow> getMedicinePurchasesForExport(@Param("pharmacyId") Long pharmacyId,
+                                                                    @Param("from") LocalDate from,
+                                                                    @Param("to") LocalDate to);
+
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.DailyIncomeSum(mp.pharmacy.id, mp.datePurchased, sum(mp.price))" +
+            " from MedicinePurchase mp where mp.active=true group by mp.pharmacy.id, mp.datePurchased")
+    List<DailyIncomeSum> getDailyIncomeFromMedicines();
 }
@@ -11,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -46,6 +47,8 @@ public interface IMedicineRepository extends JpaRepository<Medicine, Long> {
 
     List<Medicine> findAllByActiveTrue();
 
+    List<Medicine> findAllByIdInAndActiveTrue(Collection<Long> ids);
+
     // Used join for pagination instead of just p.allergicTo
     @Query("select m from Medicine as m where m.active=true and (lower(m.name) like concat('%',:name,'%') or :name is null) " +
             "and m in (select med from Patient p join p.allergicTo med where p.id=:id and med.active=true and p.active=true)")
@@ -1,19 +1,22 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.ReservationEmailItem;
 import com.mrsisa.pharmacy.domain.entities.MedicineReservation;
 import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Stream;
 
 @Repository
@@ -22,6 +25,24 @@ public interface IMedicineReservationRepository extends JpaRepository<MedicineRe
     @Query("select mr from MedicineReservation mr join fetch mr.reservedMedicines where mr.id=:id and mr.active=true")
     MedicineReservation getMedicineReservationForIssuing(@Param("id") Long id);
 
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.ReservationEmailItem(m.name, i.quantity, i.price)" +
+            " from MedicineReservationItem i join i.medicine m where i.reservation.id=:id and i.active=true")
+    List<ReservationEmailItem> getReservationEmailItems(@Param("id") Long reservationId);
+
+    // reservations locked by a concurrent run or by a pharmacist issuing them are left for the next chunk
+    @Query(value = "select id from medicine_reservation where active = true and status = :status" +
+            " and reservation_deadline < :now and mod(pharmacy_id, :shards) = :shard" +
+            " order by id limit :limit for update skip locked", nativeQuery = true)
+    List<Long> lockExpiredReservationIds(@Param("status") Integer status,
+                                         @Param("now") LocalDateTime now,
+                                         @Param("shard") Integer shard,
+                                         @Param("shards") Integer shards,
+                                         @Param("limit") Integer limit);
+
+    @Modifying
+    @Query("update versioned MedicineReservation mr set mr.reservationStatus = :status where mr.id in :ids")
+    int updateReservationStatus(@Param("ids") Collection<Long> ids, @Param("status") ReservationStatus status);
+
 
     @Query(value = "select mr from MedicineReservation as mr join fetch mr.reservedMedicines " +
             "where mr.patient.id=:patientId " +
@@ -41,13 +62,6 @@ public interface IMedicineReservationRepository extends JpaRepository<MedicineRe
     @Query("select mr from MedicineReservation mr where mr.id=:id and mr.active=true and mr.reservationStatus=0")
     Optional<MedicineReservation> getMedicineReservationToIssue(@Param("id") Long id);
 
-    @Query(value = "select mr from MedicineReservation as mr " +
-            " where mr.active = true " +
-            " and mr.reservationStatus = :reservationStatus " +
-            " and mr.reservationDeadline < :specifiedDateTime")
-    Set<MedicineReservation> getMedicineReservationsBeforeDateTime(@Param("reservationStatus") ReservationStatus reservationStatus,
-                                                                   @Param("specifiedDateTime") LocalDateTime specifiedDateTime);
-
     @Query(value = "select mr from MedicineReservation as mr join fetch mr.reservedMedicines " +
             "where mr.patient.id=:patientId " +
             "and (mr.id=:reservationId or :reservationId is null) " +
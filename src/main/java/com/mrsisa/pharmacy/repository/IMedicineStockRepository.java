@@ -1,16 +1,19 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch;
 import com.mrsisa.pharmacy.domain.entities.Medicine;
 import com.mrsisa.pharmacy.domain.entities.MedicineStock;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -28,13 +31,46 @@ public interface IMedicineStockRepository extends JpaRepository<MedicineStock, L
     @Query("select ms from MedicineStock ms where ms.medicine.id = :id and ms.active=true and ms.quantity > 0")
     Page<MedicineStock> getAvailableMedicineStocksForMedicine(@Param("id") Long id, Pageable pageable);
 
-    @Query("select ms from MedicineStock ms where ms.medicine.id = :id and ms.quantity >= :quantity and ms.active=true")
-    List<MedicineStock> getAllStocksForMedicine(@Param("id") Long id, @Param("quantity") Integer quantity);
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch(ph.id, ph.name, ph.averageGrade, " +
+            "ph.location.address.country, ph.location.address.city, ph.location.address.street, " +
+            "ph.location.address.streetNumber, ph.location.address.zipCode, " +
+            "m.id, m.name, ms.quantity, ms.currentPrice) " +
+            "from MedicineStock ms join ms.pharmacy ph join ms.medicine m " +
+            "where ms.active=true and m.id in :medicineIds and ph.id in :pharmacyIds")
+    List<PrescriptionStockMatch> getStocksForPharmacies(@Param("pharmacyIds") Collection<Long> pharmacyIds,
+                                                        @Param("medicineIds") Collection<Long> medicineIds);
+
+    // grouped by pharmacy, as expected by PharmacyQRSearchRanker
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch(ph.id, ph.name, ph.averageGrade, " +
+            "ph.location.address.country, ph.location.address.city, ph.location.address.street, " +
+            "ph.location.address.streetNumber, ph.location.address.zipCode, " +
+            "m.id, m.name, ms.quantity, ms.currentPrice) " +
+            "from MedicineStock ms join ms.pharmacy ph join ms.medicine m " +
+            "where ms.active=true and m.id in :medicineIds order by ph.id")
+    Stream<PrescriptionStockMatch> getStocksForMedicinesStream(@Param("medicineIds") Collection<Long> medicineIds);
 
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select ms from MedicineStock ms where ms.active=true and ms.pharmacy.id=:id and lower(ms.medicine.code)=:code")
     Optional<MedicineStock> getByMedicineCodeForPharmacy(@Param("code") String medicineCode, @Param("id") Long pharmacyId);
 
+    // stocks are locked in id order so concurrent bulk restores cannot deadlock
+    @Query(value = "select ms.id from medicine_stock ms join (select distinct mr.pharmacy_id, i.medicine_id" +
+            " from medicine_reservation mr join medicine_reservation_item i on i.reservation_id = mr.id" +
+            " where mr.id in (:reservationIds) and i.active = true) reserved" +
+            " on ms.pharmacy_id = reserved.pharmacy_id and ms.medicine_id = reserved.medicine_id" +
+            " where ms.active = true order by ms.id for update of ms", nativeQuery = true)
+    List<Long> lockReservedStocks(@Param("reservationIds") Collection<Long> reservationIds);
+
+    // quantities of all the reservations are summed per pharmacy and medicine, so every stock is updated once
+    @Modifying
+    @Query(value = "update medicine_stock ms set quantity = ms.quantity + reserved.quantity from (select mr.pharmacy_id," +
+            " i.medicine_id, sum(i.quantity) as quantity from medicine_reservation mr" +
+            " join medicine_reservation_item i on i.reservation_id = mr.id" +
+            " where mr.id in (:reservationIds) and i.active = true group by mr.pharmacy_id, i.medicine_id) reserved" +
+            " where ms.pharmacy_id = reserved.pharmacy_id and ms.medicine_id = reserved.medicine_id and ms.active = true",
+            nativeQuery = true)
+    int restoreReservedQuantities(@Param("reservationIds") Collection<Long> reservationIds);
+
     Optional<MedicineStock> findByIdAndActiveIsTrue(Long id);
 
     @Query("select ms from MedicineStock ms where ms.id=:id and ms.active=true and ms.pharmacy.id=:pharmacyId")
@@ -70,9 +106,6 @@ public interface IMedicineStockRepository extends JpaRepository<MedicineStock, L
     @Query("select ms from MedicineStock ms where ms.active=true and ms.pharmacy.id=:id")
     List<MedicineStock> getPharmacyStocksList(@Param("id") Long pharmacyId);
 
-    @Query("select ms from MedicineStock ms where ms.active=true and ms.pharmacy.id=:id")
-    Stream<MedicineStock> getPharmacyStocksStream(@Param("id") Long pharmacyId);
-
     @Query("select ms from MedicineStock ms where ms.active=true and ms.pharmacy.id=:pharmacyId" +
             " and ms.medicine.id not in :medicineIds and lower(ms.medicine.name) like concat('%',lower(:name),'%') ")
     Page<MedicineStock> getPharmacyStocksNotInPromotion(@Param("pharmacyId") Long pharmacyId,
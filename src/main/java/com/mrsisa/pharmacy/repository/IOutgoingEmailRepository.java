@@ -0,0 +1,27 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.entities.OutgoingEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IOutgoingEmailRepository extends JpaRepository<OutgoingEmail, Long> {
+
+    // rows claimed by another dispatcher are skipped instead of waited for, so workers never send the same email twice,
+    // bulk email waits behind every other due email
+    @Query(value = "select * from outgoing_email where active = true and status = :status and next_attempt_at <= :now" +
+            " order by bulk, next_attempt_at, id limit :limit for update skip locked", nativeQuery = true)
+    List<OutgoingEmail> claimReadyEmails(@Param("status") Integer status,
+                                         @Param("now") LocalDateTime now,
+                                         @Param("limit") Integer limit);
+
+    @Modifying
+    @Query("delete from OutgoingEmail e where e.status = com.mrsisa.pharmacy.domain.enums.OutgoingEmailStatus.SENT and e.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -5,19 +5,49 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Stream;
 
 @Repository
 public interface IPatientRepository extends JpaRepository<Patient, Long> {
 
     Patient findByUsernameAndActive(String username, Boolean active);
 
+    @Query("select p.numPenalties from Patient p where p.id=:id and p.active=true")
+    Optional<Integer> getNumPenalties(@Param("id") Long id);
+
+    // patients are locked in id order so concurrent bulk updates cannot deadlock
+    @Query(value = "select id from users where id in (select patient_id from medicine_reservation where id in (:reservationIds))" +
+            " order by id for update", nativeQuery = true)
+    List<Long> lockReservationPatients(@Param("reservationIds") Collection<Long> reservationIds);
+
+    // one penalty per reservation, the version is raised so concurrent changes of the same patients fail
+    @Modifying
+    @Query(value = "update patient set penalties = penalties + expired.reservations from (select patient_id," +
+            " count(*) as reservations from medicine_reservation where id in (:reservationIds) group by patient_id) expired" +
+            " where patient.id = expired.patient_id", nativeQuery = true)
+    int addReservationPenalties(@Param("reservationIds") Collection<Long> reservationIds);
+
+    // next keyset chunk of active patients with penalties, locked in id order
+    @Query(value = "select u.id from users u join patient p on p.id = u.id where u.active = true and p.penalties > 0" +
+            " and u.id > :afterId order by u.id limit :limit for update of u", nativeQuery = true)
+    List<Long> lockPenalizedPatients(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+
+    @Modifying
+    @Query(value = "update patient set penalties = 0 where id in (:ids)", nativeQuery = true)
+    int resetPenalties(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "update users set version = version + 1 where id in (:ids)", nativeQuery = true)
+    int incrementVersions(@Param("ids") Collection<Long> ids);
+
     @Query("select count(p) from Patient p where p.patientCategory.id = :categoryId")
     int countPatientWithCategoryId(@Param("categoryId") Long categoryId);
 
@@ -43,9 +73,6 @@ public interface IPatientRepository extends JpaRepository<Patient, Long> {
     @Query("select p from Patient AS p join fetch p.medicineReservations where p.id=:id")
     Patient getPatientByIdAndReservations(Long id);
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    Stream<Patient> findPatientsByActiveTrue();
-
     @Query("select p from Patient as p join fetch p.authorities " +
             "where p.username=:username " +
             "and p.active=true " +
@@ -2,6 +2,8 @@ package com.mrsisa.pharmacy.repository;
 
 import com.mrsisa.pharmacy.domain.entities.PharmacyAdmin;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -11,4 +13,7 @@ public interface IPharmacyAdminRepository extends JpaRepository<PharmacyAdmin, L
 
     Optional<PharmacyAdmin> findByUsernameAndActiveIsTrue(String username);
 
+    @Query("select pa.pharmacy.id from PharmacyAdmin pa where pa.id=:id and pa.active=true")
+    Optional<Long> getPharmacyIdForAdmin(@Param("id") Long id);
+
 }
@@ -1,5 +1,7 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.PharmacyCoordinates;
+import com.mrsisa.pharmacy.domain.aggregates.PromotionSubscriber;
 import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.domain.enums.EmployeeType;
@@ -13,6 +15,7 @@ import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,6 +36,14 @@ public interface IPharmacyRepository extends JpaRepository<Pharmacy, Long> {
     @Query(value = "select distinct(ph) from Pharmacy ph left join fetch ph.promotionSubscribers where ph.active=true and ph.id=:id")
     Optional<Pharmacy> getPharmacyWithSubscribers(@Param("id") Long id);
 
+    // keyset paged so every chunk of a newsletter is an index range scan, however many subscribers there are
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PromotionSubscriber(p.id, p.username, p.email)" +
+            " from Pharmacy ph join ph.promotionSubscribers p where ph.id=:pharmacyId and p.active=true" +
+            " and p.id > :afterId order by p.id")
+    List<PromotionSubscriber> getPromotionSubscribers(@Param("pharmacyId") Long pharmacyId,
+                                                      @Param("afterId") Long afterId,
+                                                      Pageable pageable);
+
     /*
     Haversine SQL formula that was used here
     http://www.plumislandmedia.net/mysql/haversine-mysql-nearest-loc/
@@ -43,6 +54,24 @@ public interface IPharmacyRepository extends JpaRepository<Pharmacy, Long> {
             "                 + SIN(RADIANS(:latitude))\n" +
             "                 * SIN(RADIANS(ph.location.latitude)))))";
 
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PharmacyCoordinates(ph.id, ph.location.latitude, ph.location.longitude) " +
+            "from Pharmacy ph where ph.active = true")
+    List<PharmacyCoordinates> getActivePharmacyCoordinates();
+
+    @Query(value = "select distinct ph from Pharmacy ph " +
+            " where ph.active=true " +
+            " and (lower(ph.name) like :name or lower(ph.location.address.city) like :locationAddressCity) " +
+            " and ph.averageGrade >= :gradeLow and ph.averageGrade <= :gradeHigh ",
+            countQuery = "select count(ph) from Pharmacy ph where ph.active=true " +
+                    " and (lower(ph.name) like :name or lower(ph.location.address.city) like :locationAddressCity) " +
+                    " and ph.averageGrade >= :gradeLow and ph.averageGrade <= :gradeHigh ")
+    Page<Pharmacy> getPharmaciesSearchFilter(@Param("name") String name,
+                                             @Param("locationAddressCity") String locationAddressCity,
+                                             @Param("gradeLow") Double gradeLow,
+                                             @Param("gradeHigh") Double gradeHigh,
+                                             Pageable pageable);
+
+    // used instead of the location index when it finds too many pharmacies to pass them as ids
     @Query(value = "select distinct ph from Pharmacy ph " +
             " where ph.active=true " +
             " and (lower(ph.name) like :name or lower(ph.location.address.city) like :locationAddressCity) " +
@@ -61,6 +90,21 @@ public interface IPharmacyRepository extends JpaRepository<Pharmacy, Long> {
                                              @Param("distance") Double distance,
                                              Pageable pageable);
 
+    // ids are the candidates within the searched distance, as returned by the pharmacy location index
+    @Query(value = "select distinct ph from Pharmacy ph " +
+            " where ph.active=true and ph.id in :ids " +
+            " and (lower(ph.name) like :name or lower(ph.location.address.city) like :locationAddressCity) " +
+            " and ph.averageGrade >= :gradeLow and ph.averageGrade <= :gradeHigh ",
+            countQuery = "select count(ph) from Pharmacy ph where ph.active=true and ph.id in :ids " +
+                    " and (lower(ph.name) like :name or lower(ph.location.address.city) like :locationAddressCity) " +
+                    " and ph.averageGrade >= :gradeLow and ph.averageGrade <= :gradeHigh ")
+    Page<Pharmacy> getPharmaciesSearchFilter(@Param("name") String name,
+                                             @Param("locationAddressCity") String locationAddressCity,
+                                             @Param("gradeLow") Double gradeLow,
+                                             @Param("gradeHigh") Double gradeHigh,
+                                             @Param("ids") Collection<Long> ids,
+                                             Pageable pageable);
+
     @Query("select distinct p from Pharmacy p left join fetch p.employees where p.id=:id and p.active=true")
     Optional<Pharmacy> findByIdWithEmployees(@Param("id") Long id);
 
@@ -0,0 +1,25 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.util.PrescriptionSearchCursor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Map;
+
+public interface IPrescriptionSearchRepository {
+
+    String TOTAL_STOCK_PRICE = "totalStockPrice";
+    String PHARMACY_AVERAGE_GRADE = "pharmacyAverageGrade";
+    String PHARMACY_NAME = "pharmacyName";
+    String PHARMACY_ADDRESS = "pharmacyAddress";
+
+    /*
+    Pharmacies which have enough stock for every medicine of the prescription (medicine id -> quantity),
+    sorted by one of the properties above. When a cursor is given the page starts right after the pharmacy
+    it points to (keyset pagination, only for the total price sort), otherwise the page offset is used.
+    Totals are compared in whole cents before the patient discount, which does not change their order.
+     */
+    Page<PrescriptionPharmacyTotal> getPharmaciesForPrescription(Map<Long, Integer> quantities,
+                                                                 PrescriptionSearchCursor after, Pageable pageable);
+}
@@ -1,6 +1,6 @@
 package com.mrsisa.pharmacy.repository;
 
-import com.mrsisa.pharmacy.domain.enums.PromotionStatus;
+import com.mrsisa.pharmacy.domain.aggregates.PromotionDiscount;
 import com.mrsisa.pharmacy.domain.valueobjects.PromotionItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -8,22 +8,33 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Stream;
 
 @Repository
 public interface IPromotionItemRepository extends JpaRepository<PromotionItem, Long> {
-    @Query("select item from PromotionItem item where item.promotion.pharmacy.id=:pharmacyId and item.promotion.promotionStatus=:status " +
-            "and item.medicine.id=:medicineId and item.promotion.fromDate <= :today and item.promotion.toDate >= :today")
+    // the status is not checked, the nightly job which used to apply promotions marked them as expired once they had
+    // started, so only the dates tell whether a promotion runs
+    @Query("select item from PromotionItem item where item.promotion.pharmacy.id=:pharmacyId and item.promotion.active=true " +
+            "and item.active=true and item.medicine.id=:medicineId and item.promotion.fromDate <= :today and item.promotion.toDate >= :today")
     Stream<PromotionItem> getItemsWithMedicineInPharmacyStream(@Param("pharmacyId") Long pharmacyId,
                                                                @Param("medicineId") Long medicineId,
-                                                               @Param("status") PromotionStatus status,
                                                                @Param("today") LocalDate today);
 
-    @Query("select item from PromotionItem item where item.promotion.pharmacy.id=:pharmacyId and item.promotion.promotionStatus=:status" +
-            " and item.medicine.id=:medicineId and item.promotion.fromDate <= :today and item.promotion.toDate >= :today")
-    List<PromotionItem> getItemsWithMedicineInPharmacyList(@Param("pharmacyId") Long pharmacyId,
-                                                               @Param("medicineId") Long medicineId,
-                                                               @Param("status") PromotionStatus status,
-                                                               @Param("today") LocalDate today);
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PromotionDiscount(item.medicine.id, p.fromDate, p.toDate, item.discount)" +
+            " from PromotionItem item join item.promotion p where p.pharmacy.id=:pharmacyId" +
+            " and p.active=true and item.active=true")
+    List<PromotionDiscount> getPromotionDiscountsForPharmacy(@Param("pharmacyId") Long pharmacyId);
+
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.PromotionDiscount(item.medicine.id, p.fromDate, p.toDate, item.discount)" +
+            " from PromotionItem item join item.promotion p where p.pharmacy.id=:pharmacyId and item.medicine.id=:medicineId" +
+            " and p.active=true and item.active=true")
+    List<PromotionDiscount> getPromotionDiscountsForMedicineInPharmacy(@Param("pharmacyId") Long pharmacyId,
+                                                                       @Param("medicineId") Long medicineId);
+
+    @Query("select count(item) from PromotionItem item join item.promotion p where item.medicine.id in :medicineIds" +
+            " and p.active=true and item.active=true and p.fromDate <= :today and p.toDate >= :today")
+    Long countRunningPromotionItems(@Param("medicineIds") Collection<Long> medicineIds,
+                                    @Param("today") LocalDate today);
 }
@@ -1,21 +1,27 @@
 package com.mrsisa.pharmacy.repository;
 
 import com.mrsisa.pharmacy.domain.entities.Promotion;
-import com.mrsisa.pharmacy.domain.enums.PromotionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
-import java.util.stream.Stream;
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface IPromotionRepository extends JpaRepository<Promotion, Long> {
-    @Query("select p from Promotion p left join fetch p.promotionItems where p.promotionStatus=:status and p.toDate < :endDate")
-    Stream<Promotion> getActiveExpiredPromotionsStream(@Param("status") PromotionStatus status, @Param("endDate") LocalDate endDate);
+    @Query("select distinct p from Promotion p left join fetch p.promotionItems where p.active=true and p.id=:id")
+    Optional<Promotion> getPromotionWithItems(@Param("id") Long id);
+
+    // newsletter chunks of a promotion are queued one at a time, whichever instance queues them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from Promotion p where p.id=:id")
+    Optional<Promotion> getPromotionForNewsletter(@Param("id") Long id);
+
+    @Query("select p.id from Promotion p where p.active=true and p.newsletterAfterPatientId is not null order by p.id")
+    List<Long> getPromotionsWithPendingNewsletter();
 
-    @Query("select p from Promotion p left join fetch p.promotionItems where p.promotionStatus=:status and p.fromDate=:today")
-    Stream<Promotion> getPromotionsWhichStartTodayStream(@Param("status") PromotionStatus status,
-                                                         @Param("today") LocalDate today);
 }
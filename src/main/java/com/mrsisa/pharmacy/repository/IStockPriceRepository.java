@@ -1,15 +1,28 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.StockPriceVersion;
 import com.mrsisa.pharmacy.domain.entities.StockPrice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface IStockPriceRepository extends JpaRepository<StockPrice, Long> {
     @Query("select sp from StockPrice sp where sp.medicineStock.id=:id and sp.to is null")
     Optional<StockPrice> findActiveForStock(@Param("id") Long stockId);
+
+    // regular price history of the current stocks of a pharmacy, by medicine and then in the order prices were set
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.StockPriceVersion(ms.medicine.id, sp.from, sp.price)" +
+            " from StockPrice sp join sp.medicineStock ms where ms.pharmacy.id=:pharmacyId and ms.active=true" +
+            " and sp.active=true and sp.isPromotion=false order by ms.medicine.id, sp.from, sp.id")
+    List<StockPriceVersion> getPriceVersionsForPharmacy(@Param("pharmacyId") Long pharmacyId);
+
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.StockPriceVersion(ms.medicine.id, sp.from, sp.price)" +
+            " from StockPrice sp join sp.medicineStock ms where ms.id=:stockId" +
+            " and sp.active=true and sp.isPromotion=false order by sp.from, sp.id")
+    List<StockPriceVersion> getPriceVersionsForStock(@Param("stockId") Long stockId);
 }
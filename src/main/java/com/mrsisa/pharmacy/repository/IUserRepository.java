@@ -1,11 +1,13 @@
 package com.mrsisa.pharmacy.repository;
 
+import com.mrsisa.pharmacy.domain.aggregates.UserTokenVersion;
 import com.mrsisa.pharmacy.domain.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -18,4 +20,7 @@ public interface IUserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsernameFetchAuthorities(@Param("username") String username);
 
     Optional<User> findByIdAndActiveTrue(Long id);
+
+    @Query("select new com.mrsisa.pharmacy.domain.aggregates.UserTokenVersion(u.id, u.tokenVersion) from User u where u.tokenVersion > 0")
+    List<UserTokenVersion> getRevokedTokenVersions();
 }
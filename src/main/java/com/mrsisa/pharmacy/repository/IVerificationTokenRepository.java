@@ -1,6 +1,7 @@
 package com.mrsisa.pharmacy.repository;
 
 import com.mrsisa.pharmacy.domain.entities.VerificationToken;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -14,8 +15,8 @@ public interface IVerificationTokenRepository extends JpaRepository<Verification
 
 
 
-    @Query("select vt from VerificationToken vt where vt.expirationDate <= current_timestamp ")
-    List<VerificationToken> getExpiredTokens();
+    @Query("select vt from VerificationToken vt where vt.expirationDate <= current_timestamp order by vt.id")
+    List<VerificationToken> getExpiredTokens(Pageable pageable);
 
     void deleteVerificationTokenById(Long id);
 
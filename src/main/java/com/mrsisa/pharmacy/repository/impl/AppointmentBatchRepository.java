@@ -0,0 +1,40 @@
+package com.mrsisa.pharmacy.repository.impl;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.repository.IAppointmentBatchRepository;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+@Repository
+public class AppointmentBatchRepository implements IAppointmentBatchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final IAppointmentRepository appointmentRepository;
+    private final int batchSize;
+
+    @Autowired
+    public AppointmentBatchRepository(IAppointmentRepository appointmentRepository,
+                                      @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+        this.appointmentRepository = appointmentRepository;
+        this.batchSize = batchSize;
+    }
+
+    // ids come from the pooled generator and each chunk is flushed as one JDBC batch, clearing keeps the persistence
+    // context from growing with the number of slots
+    @Override
+    public void insertAll(List<Appointment> appointments) {
+        for (var from = 0; from < appointments.size(); from += batchSize) {
+            appointmentRepository.saveAll(appointments.subList(from, Math.min(from + batchSize, appointments.size())));
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mrsisa.pharmacy.repository.impl;
+
+import com.mrsisa.pharmacy.domain.entities.BaseEntity;
+import com.mrsisa.pharmacy.repository.IEntityOwnershipRepository;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+@Repository
+public class EntityOwnershipRepository implements IEntityOwnershipRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // names come from the mapping metamodel, so an unknown entity or owner field fails here instead of in a query
+    @Override
+    public OwnershipQuery compile(Class<? extends BaseEntity> entity, String ownerField) {
+        var entityType = entityManager.getMetamodel().entity(entity);
+        var attribute = entityType.getAttribute(ownerField);
+        var entityName = entityType.getName();
+        String ownerQuery;
+        if (attribute.isCollection()) {
+            ownerQuery = "select count(e) from " + entityName + " e join e." + attribute.getName() + " o" +
+                    " where e.id = :entityId and e.active = true and o.id = :userId and o.active = true";
+        } else {
+            ownerQuery = "select count(e) from " + entityName + " e" +
+                    " where e.id = :entityId and e.active = true and e." + attribute.getName() + ".id = :userId";
+        }
+        var existsQuery = "select count(e) from " + entityName + " e where e.id = :entityId and e.active = true";
+        return new OwnershipQuery(ownerQuery, existsQuery);
+    }
+
+    @Override
+    public boolean isOwner(OwnershipQuery query, Long entityId, Long userId) {
+        return entityManager.createQuery(query.getOwnerQuery(), Long.class)
+                .setParameter("entityId", entityId)
+                .setParameter("userId", userId)
+                .getSingleResult() > 0;
+    }
+
+    @Override
+    public boolean exists(OwnershipQuery query, Long entityId) {
+        return entityManager.createQuery(query.getExistsQuery(), Long.class)
+                .setParameter("entityId", entityId)
+                .getSingleResult() > 0;
+    }
+}
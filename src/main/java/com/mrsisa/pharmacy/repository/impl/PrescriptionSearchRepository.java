@@ -0,0 +1,122 @@
+package com.mrsisa.pharmacy.repository.impl;
+
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.repository.IPrescriptionSearchRepository;
+import com.mrsisa.pharmacy.util.PrescriptionSearchCursor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class PrescriptionSearchRepository implements IPrescriptionSearchRepository {
+
+    private static final String PHARMACY_ADDRESS_EXPRESSION = "concat(ph.location.address.street, ' ', " +
+            "ph.location.address.streetNumber, ',', ph.location.address.city, ', ', " +
+            "ph.location.address.zipCode, ', ', ph.location.address.country)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<PrescriptionPharmacyTotal> getPharmaciesForPrescription(Map<Long, Integer> quantities,
+                                                                        PrescriptionSearchCursor after, Pageable pageable) {
+        Map<String, Object> parameters = new HashMap<>();
+        String condition = getStockCondition(quantities, parameters);
+        String totalPrice = getTotalPriceExpression(quantities);
+        parameters.put("count", (long) quantities.size());
+
+        var order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(TOTAL_STOCK_PRICE));
+        var direction = order.isAscending() ? "asc" : "desc";
+        var keyset = after != null;
+        if (keyset && !order.getProperty().equals(TOTAL_STOCK_PRICE)) {
+            throw new IllegalArgumentException("Cannot continue after a cursor when sorting by " + order.getProperty());
+        }
+
+        var jpql = new StringBuilder("select new com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal(ph.id, ")
+                .append(totalPrice).append(") from MedicineStock ms join ms.pharmacy ph join ms.medicine m ")
+                .append("where ms.active = true and (").append(condition).append(") ")
+                .append("group by ph.id, ph.name, ph.averageGrade, ph.location.address.street, ")
+                .append("ph.location.address.streetNumber, ph.location.address.city, ph.location.address.zipCode, ")
+                .append("ph.location.address.country ")
+                .append("having count(distinct m.id) = :count ");
+        if (keyset) {
+            var comparison = order.isAscending() ? ">" : "<";
+            jpql.append("and (").append(totalPrice).append(" ").append(comparison).append(" :afterTotalCents ")
+                    .append("or (").append(totalPrice).append(" = :afterTotalCents ")
+                    .append("and ph.id ").append(comparison).append(" :afterPharmacyId)) ");
+            parameters.put("afterTotalCents", after.getTotalCents());
+            parameters.put("afterPharmacyId", after.getPharmacyId());
+        }
+        jpql.append("order by ").append(getSortExpression(order.getProperty(), totalPrice)).append(" ").append(direction)
+                .append(", ph.id ").append(direction);
+
+        var query = entityManager.createQuery(jpql.toString(), PrescriptionPharmacyTotal.class);
+        setParameters(query, parameters);
+        query.setFirstResult(keyset ? 0 : (int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+        List<PrescriptionPharmacyTotal> content = query.getResultList();
+
+        var countQuery = entityManager.createQuery("select count(ph) from Pharmacy ph where ph.id in (" +
+                "select ms.pharmacy.id from MedicineStock ms join ms.medicine m " +
+                "where ms.active = true and (" + condition + ") " +
+                "group by ms.pharmacy.id having count(distinct m.id) = :count)", Long.class);
+        parameters.remove("afterTotalCents");
+        parameters.remove("afterPharmacyId");
+        setParameters(countQuery, parameters);
+
+        return new PageImpl<>(content, pageable, countQuery.getSingleResult());
+    }
+
+    private String getStockCondition(Map<Long, Integer> quantities, Map<String, Object> parameters) {
+        var condition = new StringBuilder();
+        var i = 0;
+        for (var entry : quantities.entrySet()) {
+            if (i > 0) {
+                condition.append(" or ");
+            }
+            condition.append("(m.id = :medicine").append(i).append(" and ms.quantity >= :quantity").append(i).append(")");
+            parameters.put("medicine" + i, entry.getKey());
+            parameters.put("quantity" + i, entry.getValue());
+            i++;
+        }
+        return condition.toString();
+    }
+
+    // quantities are inlined because Hibernate cannot infer the type of parameters inside the select clause,
+    // both keys and values are numbers so this cannot be used for injection. The total is summed in whole cents
+    // (see PrescriptionSearchCursor.toCents) so that it is exact and can be compared with a keyset cursor.
+    private String getTotalPriceExpression(Map<Long, Integer> quantities) {
+        var expression = new StringBuilder("cast(sum(round(ms.currentPrice * 100) * case m.id");
+        quantities.forEach((medicineId, quantity) ->
+                expression.append(" when ").append(medicineId.longValue()).append(" then ").append(quantity.intValue()));
+        return expression.append(" else 0 end) as long)").toString();
+    }
+
+    private String getSortExpression(String property, String totalPrice) {
+        switch (property) {
+            case TOTAL_STOCK_PRICE:
+                return totalPrice;
+            case PHARMACY_AVERAGE_GRADE:
+                return "ph.averageGrade";
+            case PHARMACY_NAME:
+                return "ph.name";
+            case PHARMACY_ADDRESS:
+                return PHARMACY_ADDRESS_EXPRESSION;
+            default:
+                throw new IllegalArgumentException("Cannot sort pharmacies by " + property);
+        }
+    }
+
+    private void setParameters(Query query, Map<String, Object> parameters) {
+        parameters.forEach(query::setParameter);
+    }
+}
@@ -1,6 +1,10 @@
 package com.mrsisa.pharmacy.security.filter;
 
+import com.mrsisa.pharmacy.security.util.AuthenticatedUser;
 import com.mrsisa.pharmacy.security.util.JwtUtil;
+import com.mrsisa.pharmacy.security.util.PrincipalCache;
+import com.mrsisa.pharmacy.security.util.TokenRevocationList;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureException;
@@ -28,39 +32,48 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Value("${jwt.token.prefix}")
     public String tokenPrefix;
 
+    // authorizes requests from the claims of the token, without loading the user
+    @Value("${jwt.stateless:false}")
+    public boolean stateless;
 
     private final UserDetailsService userService;
     private final JwtUtil jwtUtil;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationList tokenRevocationList;
 
     @Autowired
-    public JwtRequestFilter(UserDetailsService userService, JwtUtil jwtUtil) {
+    public JwtRequestFilter(UserDetailsService userService, JwtUtil jwtUtil, PrincipalCache principalCache,
+                            TokenRevocationList tokenRevocationList) {
         this.userService = userService;
         this.jwtUtil = jwtUtil;
+        this.principalCache = principalCache;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException {
         final String authorizationHeader = httpServletRequest.getHeader(headerString);
 
-        String username = null;
         String jwt = null;
+        Claims claims = null;
 
+        // the token is parsed and verified once, the claims are used for everything else
         if (authorizationHeader != null && authorizationHeader.startsWith(tokenPrefix)) {
             jwt = authorizationHeader.replace(tokenPrefix, "");
             try {
-                username = jwtUtil.extractUsernameFromToken(jwt);
+                claims = jwtUtil.parseToken(jwt);
             } catch (IllegalArgumentException | SignatureException | ExpiredJwtException | MalformedJwtException ignored) {
             }
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        if (claims != null && claims.getSubject() != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             UserDetails userDetails;
             try {
-                userDetails = userService.loadUserByUsername(username);
+                userDetails = getUserDetails(jwt, claims);
 
-                if (Boolean.TRUE.equals(jwtUtil.validateToken(jwt, userDetails))) {
+                if (userDetails != null && Boolean.TRUE.equals(jwtUtil.validateToken(claims, userDetails))) {
                     var usernamePasswordAuthenticationToken =
-                            jwtUtil.getAuthenticationToken(jwt, userDetails);
+                            jwtUtil.getAuthenticationToken(claims, userDetails);
                     usernamePasswordAuthenticationToken.setDetails(
                             new WebAuthenticationDetailsSource().buildDetails(httpServletRequest));
                     SecurityContextHolder.getContext().setAuthentication(usernamePasswordAuthenticationToken);
@@ -72,4 +85,33 @@ public class JwtRequestFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(httpServletRequest, httpServletResponse);
     }
+
+    /*
+    Null when the token was revoked. Tokens with a version are checked against the revocation list in both modes, so a
+    password change or deactivation on another node is picked up within one refresh even while the principal is
+    cached here. A principal loaded after the change rejects the token right away.
+     */
+    private UserDetails getUserDetails(String jwt, Claims claims) {
+        if (!jwtUtil.hasUserClaims(claims)) {
+            return loadUserDetails(jwt, claims);
+        }
+        var tokenVersion = jwtUtil.getTokenVersion(claims);
+        if (tokenRevocationList.isRevoked(jwtUtil.getUserId(claims), tokenVersion)) {
+            return null;
+        }
+        if (stateless) {
+            return jwtUtil.getAuthenticatedUser(claims);
+        }
+        var userDetails = loadUserDetails(jwt, claims);
+        if (userDetails instanceof AuthenticatedUser && ((AuthenticatedUser) userDetails).getTokenVersion() != null
+                && tokenVersion < ((AuthenticatedUser) userDetails).getTokenVersion()) {
+            return null;
+        }
+        return userDetails;
+    }
+
+    private UserDetails loadUserDetails(String jwt, Claims claims) {
+        return principalCache.get(claims.getSubject(), jwtUtil.getTokenId(jwt, claims), claims.getExpiration(),
+                userService::loadUserByUsername);
+    }
 }
@@ -0,0 +1,33 @@
+package com.mrsisa.pharmacy.security.util;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+// principal of an authenticated request, carries the id, type and token version of the user next to the username and roles
+public class AuthenticatedUser extends User {
+    private final Long id;
+    private final String type;
+    private final Integer tokenVersion;
+
+    public AuthenticatedUser(Long id, String type, Integer tokenVersion, String username, String password,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.id = id;
+        this.type = type;
+        this.tokenVersion = tokenVersion;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Integer getTokenVersion() {
+        return tokenVersion;
+    }
+}
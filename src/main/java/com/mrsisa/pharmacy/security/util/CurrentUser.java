@@ -0,0 +1,87 @@
+package com.mrsisa.pharmacy.security.util;
+
+import com.mrsisa.pharmacy.repository.IPatientRepository;
+import com.mrsisa.pharmacy.repository.IPharmacyAdminRepository;
+import com.mrsisa.pharmacy.repository.IUserRepository;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+import org.springframework.web.server.ResponseStatusException;
+
+/*
+The authenticated user of the current request, shared by all ownership checks of the request. The id and type come
+from the principal built by the request filter, the pharmacy of an admin and the penalties of a patient are loaded
+the first time a check needs them and then reused for the rest of the request.
+ */
+@Component
+@RequestScope
+public class CurrentUser {
+    private final IUserRepository userRepository;
+    private final IPharmacyAdminRepository pharmacyAdminRepository;
+    private final IPatientRepository patientRepository;
+
+    private Long id;
+    private String type;
+    private boolean pharmacyLoaded = false;
+    private Long pharmacyId;
+    private boolean penaltiesLoaded = false;
+    private Integer penalties;
+
+    @Autowired
+    public CurrentUser(IUserRepository userRepository, IPharmacyAdminRepository pharmacyAdminRepository, IPatientRepository patientRepository) {
+        this.userRepository = userRepository;
+        this.pharmacyAdminRepository = pharmacyAdminRepository;
+        this.patientRepository = patientRepository;
+    }
+
+    public Long getId() {
+        resolve();
+        return id;
+    }
+
+    public String getType() {
+        resolve();
+        return type;
+    }
+
+    // null if the user is not a pharmacy admin or administers no pharmacy
+    public Long getPharmacyId() {
+        if (!pharmacyLoaded) {
+            pharmacyId = pharmacyAdminRepository.getPharmacyIdForAdmin(getId()).orElse(null);
+            pharmacyLoaded = true;
+        }
+        return pharmacyId;
+    }
+
+    // null if the user is not a patient
+    public Integer getPenalties() {
+        if (!penaltiesLoaded) {
+            penalties = patientRepository.getNumPenalties(getId()).orElse(null);
+            penaltiesLoaded = true;
+        }
+        return penalties;
+    }
+
+    private void resolve() {
+        if (id != null) {
+            return;
+        }
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permissions to access this data.");
+        }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser) {
+            var principal = (AuthenticatedUser) authentication.getPrincipal();
+            id = principal.getId();
+            type = principal.getType();
+        } else {
+            var user = userRepository.findByUsernameFetchAuthorities(authentication.getName())
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.FORBIDDEN, "You do not have permissions to access this data."));
+            id = user.getId();
+            type = Hibernate.getClass(user).getSimpleName();
+        }
+    }
+}
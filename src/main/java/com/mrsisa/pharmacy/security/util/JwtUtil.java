@@ -1,6 +1,8 @@
 package com.mrsisa.pharmacy.security.util;
 
+import com.mrsisa.pharmacy.domain.entities.User;
 import io.jsonwebtoken.*;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -12,6 +14,7 @@ import org.springframework.stereotype.Component;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -27,6 +30,10 @@ public class JwtUtil {
     @Value("${jwt.authorities.key}")
     public String authoritiesKey;
 
+    private static final String USER_ID_KEY = "uid";
+    private static final String USER_TYPE_KEY = "type";
+    private static final String TOKEN_VERSION_KEY = "tv";
+
     public String extractUsernameFromToken(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -40,6 +47,16 @@ public class JwtUtil {
         return claimsResolver.apply(claims);
     }
 
+    // verifies the signature and expiration, the returned claims can be used without parsing the token again
+    public Claims parseToken(String token) {
+        return getAllClaimsFromToken(token);
+    }
+
+    // tokens issued before they had an id are told apart by their signature
+    public String getTokenId(String token, Claims claims) {
+        return claims.getId() != null ? claims.getId() : token.substring(token.lastIndexOf('.') + 1);
+    }
+
     private Claims getAllClaimsFromToken(String token) {
         return Jwts.parser()
                 .setSigningKey(signingKey)
@@ -47,19 +64,18 @@ public class JwtUtil {
                 .getBody();
     }
 
-    private Boolean isTokenExpired(String token) {
-        final var expiration = extractExpirationDateFromToken(token);
-        return expiration.before(new Date());
-    }
-
-    public String generateToken(Authentication authentication) {
+    public String generateToken(Authentication authentication, User user) {
         String authorities = authentication.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.joining(","));
 
         return Jwts.builder()
                 .setSubject(authentication.getName())
+                .setId(UUID.randomUUID().toString())
                 .claim(authoritiesKey, authorities)
+                .claim(USER_ID_KEY, user.getId())
+                .claim(USER_TYPE_KEY, Hibernate.getClass(user).getSimpleName())
+                .claim(TOKEN_VERSION_KEY, user.getTokenVersion())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + tokenValidity*1000))
                 .signWith(SignatureAlgorithm.HS256, signingKey)
@@ -67,23 +83,44 @@ public class JwtUtil {
     }
 
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(getAllClaimsFromToken(token), userDetails);
+    }
+
+    public Boolean validateToken(Claims claims, UserDetails userDetails) {
+        return (claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date()));
     }
 
     public UsernamePasswordAuthenticationToken getAuthenticationToken(final String token, final UserDetails userDetails) {
+        return getAuthenticationToken(getAllClaimsFromToken(token), userDetails);
+    }
+
+    // tokens issued before the user claims were added can only be authorized through the database
+    public boolean hasUserClaims(Claims claims) {
+        return claims.get(USER_ID_KEY) != null && claims.get(USER_TYPE_KEY) != null && claims.get(TOKEN_VERSION_KEY) != null;
+    }
 
-        final var jwtParser = Jwts.parser().setSigningKey(signingKey);
+    public Long getUserId(Claims claims) {
+        return claims.get(USER_ID_KEY, Number.class).longValue();
+    }
 
-        final Jws<Claims> claimsJws = jwtParser.parseClaimsJws(token);
+    public Integer getTokenVersion(Claims claims) {
+        return claims.get(TOKEN_VERSION_KEY, Number.class).intValue();
+    }
 
-        final var claims = claimsJws.getBody();
+    // the principal is built from the verified claims alone, without loading the user
+    public AuthenticatedUser getAuthenticatedUser(Claims claims) {
+        return new AuthenticatedUser(getUserId(claims), claims.get(USER_TYPE_KEY, String.class), getTokenVersion(claims),
+                claims.getSubject(), "",
+                getAuthorities(claims));
+    }
 
-        final Collection<? extends GrantedAuthority> authorities =
-                Arrays.stream(claims.get(authoritiesKey).toString().split(","))
-                        .map(SimpleGrantedAuthority::new)
-                        .collect(Collectors.toList());
+    public UsernamePasswordAuthenticationToken getAuthenticationToken(final Claims claims, final UserDetails userDetails) {
+        return new UsernamePasswordAuthenticationToken(userDetails, "", getAuthorities(claims));
+    }
 
-        return new UsernamePasswordAuthenticationToken(userDetails, "", authorities);
+    private Collection<? extends GrantedAuthority> getAuthorities(Claims claims) {
+        return Arrays.stream(claims.get(authoritiesKey).toString().split(","))
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
     }
 }
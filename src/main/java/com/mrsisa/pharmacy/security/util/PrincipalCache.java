@@ -0,0 +1,82 @@
+package com.mrsisa.pharmacy.security.util;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+Users behind recently seen tokens, so an authenticated request does not load the user and its authorities from the
+database. Entries are kept per username and token id, expire after a short time (or with the token) and are dropped
+when the user changes the password or is deactivated on this node. Changes made on other nodes reach the filter through
+the TokenRevocationList, which is checked before the cache. Only successfully loaded users are cached.
+ */
+@Component
+public class PrincipalCache {
+    private final long timeToLiveMillis;
+    private final int maxSize;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    public PrincipalCache(@Value("${pharmacy.principal-cache.ttl-seconds:60}") long timeToLiveSeconds,
+                          @Value("${pharmacy.principal-cache.max-size:10000}") int maxSize) {
+        this.timeToLiveMillis = timeToLiveSeconds * 1000;
+        this.maxSize = maxSize;
+    }
+
+    public UserDetails get(String username, String tokenId, Date tokenExpiration, Function<String, UserDetails> loader) {
+        var key = new Key(username, tokenId);
+        var now = System.currentTimeMillis();
+        var entry = entries.get(key);
+        if (entry != null && entry.expiresAt > now) {
+            return entry.userDetails;
+        }
+        var userDetails = loader.apply(username);
+        if (entries.size() >= maxSize) {
+            entries.values().removeIf(cached -> cached.expiresAt <= now);
+        }
+        // a full cache only stops caching new tokens until entries expire
+        if (entries.size() < maxSize) {
+            entries.put(key, new Entry(userDetails, Math.min(now + timeToLiveMillis, tokenExpiration.getTime())));
+        }
+        return userDetails;
+    }
+
+    // evicted again once the transaction completes so a request in between cannot cache the old state
+    public void evict(String username) {
+        entries.keySet().removeIf(key -> key.username.equals(username));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    entries.keySet().removeIf(key -> key.username.equals(username));
+                }
+            });
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Key {
+        private final String username;
+        private final String tokenId;
+    }
+
+    private static class Entry {
+        private final UserDetails userDetails;
+        private final long expiresAt;
+
+        Entry(UserDetails userDetails, long expiresAt) {
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.mrsisa.pharmacy.security.util;
+
+import com.mrsisa.pharmacy.repository.IUserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Token versions of the users whose tokens were revoked, checked in memory on every authenticated request. A token is
+revoked when it was issued with a lower version than the current one of its user. Only users which ever revoked their
+tokens are kept, and the list is reloaded periodically so revocations made by other nodes are picked up, also by nodes
+which cache the principal of a token instead of authorizing it from the claims alone.
+ */
+@Component
+public class TokenRevocationList {
+    private final IUserRepository userRepository;
+
+    private final Map<Long, Integer> versions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TokenRevocationList(IUserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    public boolean isRevoked(Long userId, Integer tokenVersion) {
+        return tokenVersion < versions.getOrDefault(userId, 0);
+    }
+
+    // applied once the new version is committed
+    public void revoke(Long userId, Integer tokenVersion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.merge(userId, tokenVersion, Math::max);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                versions.merge(userId, tokenVersion, Math::max);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-ms:30000}")
+    public void refresh() {
+        userRepository.getRevokedTokenVersions()
+                .forEach(version -> versions.merge(version.getUserId(), version.getTokenVersion(), Math::max));
+    }
+}
@@ -5,10 +5,12 @@ import com.mrsisa.pharmacy.domain.entities.EmploymentContract;
 import com.mrsisa.pharmacy.domain.entities.Patient;
 import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentSlotsResultDTO;
 import com.mrsisa.pharmacy.dto.stock.MedicineStockConcludeDTO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -72,4 +74,7 @@ public interface IAppointmentService extends IJPAService<Appointment> {
     List<Appointment> getAllBusyAppointmentsForEmployeeForRange(Long employeeId, LocalDateTime from, LocalDateTime to);
 
     Appointment createAvailableAppointment(Long pharmacyId, Long employeeId, LocalDateTime fromTime, LocalDateTime toTime);
+
+    AvailableAppointmentSlotsResultDTO createAvailableAppointmentSlots(Long pharmacyId, Long employeeId, LocalDate fromDate,
+                                                                       LocalDate toDate, Integer slotDuration);
 }
@@ -0,0 +1,20 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.OutgoingEmail;
+
+import java.util.Collection;
+
+public interface IEmailOutboxService {
+
+    // stores the email in the current transaction, it is sent only if the transaction commits
+    void enqueue(String to, String subject, String text, boolean html);
+
+    // inserted in JDBC batches
+    void enqueueAll(Collection<OutgoingEmail> emails);
+
+    // sends up to batchSize due emails over one connection and returns how many were claimed,
+    // fewer are claimed while the rate limit holds them back
+    int dispatchBatch(int batchSize);
+
+    int deleteSentEmails();
+}
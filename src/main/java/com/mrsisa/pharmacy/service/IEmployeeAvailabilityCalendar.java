@@ -0,0 +1,24 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
+import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+
+import java.time.LocalDateTime;
+
+public interface IEmployeeAvailabilityCalendar {
+
+    // true if [from, to) overlaps a future booked or available appointment of the employee
+    boolean isBusy(Long employeeId, LocalDateTime from, LocalDateTime to);
+
+    // true if [from, to) overlaps a pending or approved leave days request of the employee
+    boolean isOnLeave(Long employeeId, LocalDateTime from, LocalDateTime to);
+
+    boolean isOnLeave(Long employeeId, LocalDateTime from, LocalDateTime to, LeaveDaysRequestStatus status);
+
+    void appointmentChanged(Appointment appointment);
+
+    void leaveDaysRequestChanged(LeaveDaysRequest request);
+
+    void evict(Long employeeId);
+}
@@ -0,0 +1,20 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.domain.entities.MedicinePurchase;
+
+import java.util.Collection;
+
+public interface IIncomeRollupService {
+
+    // adds the price of an appointment which took place to the income of the day it started
+    void addAppointmentIncome(Appointment appointment);
+
+    void addMedicinePurchases(Collection<MedicinePurchase> purchases);
+
+    // recalculates the whole rollup from appointments and purchases, returns the number of rows written
+    int rebuild();
+
+    // fills the rollup for databases which were populated before it existed
+    int rebuildIfEmpty();
+}
@@ -0,0 +1,22 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.JobLock;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface IJobLockService {
+
+    // true if this instance now holds the lease on the job and nobody finished its run scheduled at the given time
+    boolean tryAcquire(String job, LocalDateTime scheduledAt, Duration lease);
+
+    // extends the lease of a running job, false if another instance took it over in the meantime
+    boolean renew(String job, Duration lease, long rowsProcessed);
+
+    void complete(String job, Duration duration, long rowsProcessed);
+
+    void release(String job);
+
+    List<JobLock> getJobLocks();
+}
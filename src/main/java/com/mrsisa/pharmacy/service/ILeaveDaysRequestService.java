@@ -19,5 +19,7 @@ public interface ILeaveDaysRequestService extends IJPAService<LeaveDaysRequest>
     List<LeaveDaysRequest> getAllPendingAndAcceptedLeaveDaysRequestForEmployeeForRange(Long employeeId, LocalDateTime from,
                                                                                        LocalDateTime to);
     List<LeaveDaysRequest> getAllPendingAndAcceptedLeaveDaysRequestForEmployee(Long employeeId);
-    void rejectPendingStartedLeaveDaysRequests();
+    // rejects up to limit pending requests which already started and returns how many were rejected, rejected
+    // requests no longer match so the next call continues with the rest
+    int rejectPendingStartedLeaveDaysRequests(int limit);
 }
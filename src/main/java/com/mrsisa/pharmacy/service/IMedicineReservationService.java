@@ -24,4 +24,8 @@ public interface IMedicineReservationService extends IJPAService<MedicineReserva
     Review getPatientReviewForDrug(Long patientId, Long medicineId);
 
     MedicineReservation getPatientReservationById(Long reservationId, Long patientId);
+
+    // expires up to limit reservations of one shard of the pharmacies whose deadline passed before now and returns
+    // how many were expired
+    int expireReservations(LocalDateTime now, int shard, int shards, int limit);
 }
\ No newline at end of file
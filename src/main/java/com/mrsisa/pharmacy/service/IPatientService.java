@@ -40,13 +40,13 @@ public interface IPatientService extends IJPAService<Patient> {
 
     void patientNotShowedUp(Long id, Long appointmentId);
 
-    void removeAllPenalties();
+    // resets the penalties of the next limit penalized patients with ids above afterId and returns their ids
+    List<Long> resetPenalties(Long afterId, int limit);
 
     Patient findByUsernameWithAuthorities(String username);
 
-    void addPenalties();
-
     Page<Pharmacy> getSubscriptionsForPatient(Long id, Pageable pageable);
 
-    void deleteUnverifiedUsers();
+    // deletes up to limit patients whose verification expired and returns how many were deleted
+    int deleteUnverifiedUsers(int limit);
 }
@@ -0,0 +1,15 @@
+package com.mrsisa.pharmacy.service;
+
+import java.util.List;
+
+public interface IPharmacyLocationIndex {
+
+    void put(Long pharmacyId, Double latitude, Double longitude);
+
+    void remove(Long pharmacyId);
+
+    // ids of the indexed pharmacies within the given distance (in km), closest first
+    List<Long> findWithinDistance(Double latitude, Double longitude, Double distance);
+
+    void rebuild();
+}
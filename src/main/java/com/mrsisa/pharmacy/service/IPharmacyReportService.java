@@ -9,5 +9,6 @@ import java.util.List;
 
 public interface IPharmacyReportService {
     List<MedicinePurchaseStatistics> getMedicinePurchaseStatistics(List<Long> medicineIds, Pharmacy pharmacy, LocalDate fromTime, LocalDate toTime, ReportType reportType);
-    MedicinePurchaseStatistics getMedicinePurchaseBarchart(Pharmacy pharmacy, LocalDate fromTime, LocalDate toTime, ReportType reportType);
+    // best selling medicines first, top limits the number of medicines when it is set
+    MedicinePurchaseStatistics getMedicinePurchaseBarchart(Pharmacy pharmacy, LocalDate fromTime, LocalDate toTime, ReportType reportType, Integer top);
 }
@@ -25,7 +25,9 @@ public interface IPharmacyService extends IJPAService<Pharmacy> {
 
     List<Pharmacy> getPharmacyList();
 
-    List<PharmacyQRSearchDTO> getPharmaciesWhereMedicinesAreAvailable(List<Long> ids, List<Integer> quantities, List<Integer> days, PatientCategory patientCategory);
+    Page<PharmacyQRSearchDTO> getPharmaciesWhereMedicinesAreAvailable(List<Long> ids, List<Integer> quantities, List<Integer> days,
+                                                                      PatientCategory patientCategory, String after,
+                                                                      Pageable pageable);
 
     Page<Pharmacy> getPharmaciesWithAvailablePharmacistAppointmentsOnSpecifiedDateAndtime(String name, String locationAddressCity,
                                                                                           Double lowGrade, Double highGrade,
@@ -0,0 +1,10 @@
+package com.mrsisa.pharmacy.service;
+
+public interface IPromotionNewsletterService {
+
+    // queues the promotion email for every subscriber of its pharmacy in the background
+    void sendNewsletter(Long promotionId);
+
+    // continues the newsletters whose fan-out stopped before every subscriber was queued
+    void resumeNewsletters();
+}
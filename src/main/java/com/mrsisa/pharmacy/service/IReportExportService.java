@@ -0,0 +1,13 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.enums.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+
+public interface IReportExportService {
+    void exportMedicinePurchases(Long pharmacyId, LocalDate from, LocalDate to, ExportFormat format, OutputStream outputStream) throws IOException;
+
+    void exportAppointments(Long pharmacyId, LocalDate from, LocalDate to, ExportFormat format, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,25 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.MedicineStock;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+public interface IStockPriceResolver {
+
+    // regular price of the stock on the given day reduced by the promotions of its pharmacy running that day
+    Double getEffectivePrice(MedicineStock stock, LocalDate date);
+
+    // for query results which only carry the pharmacy, the medicine and the current regular price of a stock
+    Double getEffectivePrice(Long pharmacyId, Long medicineId, Double currentPrice, LocalDate date);
+
+    // same as getEffectivePrice but read from the database, for prices a patient is charged
+    Double getUncachedEffectivePrice(MedicineStock stock, LocalDate date);
+
+    Double getRegularPrice(MedicineStock stock, LocalDate date);
+
+    // true if a promotion of any pharmacy reduces the price of one of the medicines on the given day
+    boolean hasRunningPromotions(Collection<Long> medicineIds, LocalDate date);
+
+    void evict(Long pharmacyId);
+}
@@ -13,7 +13,7 @@ import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,20 +34,17 @@ public class AppointmentReportService extends ReportServiceBase implements IAppo
         if (to.isBefore(from) || to.isEqual(from) || adjuster.getAdjusted(from).isAfter(to)) {
             throw new BusinessException("Invalid time range parameters.");
         }
-        return employeeTypes.stream().map(employeeType -> getSingleAppointmentStatistics(pharmacy, from, to, employeeType, adjuster, extractor)).collect(Collectors.toList());
+        var dailyCounts = getDailyCounts(pharmacy, employeeTypes, from, to);
+        return employeeTypes.stream()
+                .map(employeeType -> getSingleAppointmentStatistics(employeeType, dailyCounts.getOrDefault(employeeType, Collections.emptyNavigableMap()), from, to, adjuster, extractor))
+                .collect(Collectors.toList());
     }
 
-    public AppointmentStatistics getSingleAppointmentStatistics(Pharmacy pharmacy, LocalDate from, LocalDate to, EmployeeType employeeType, ILocalDateAdjuster adjuster, ILabelExtractor extractor) {
+    private AppointmentStatistics getSingleAppointmentStatistics(EmployeeType employeeType, NavigableMap<LocalDate, Long> dailyCounts, LocalDate from, LocalDate to, ILocalDateAdjuster adjuster, ILabelExtractor extractor) {
         var statistics = new AppointmentStatistics(employeeType.toString() + " appointments");
-        LocalDate lowerBound = from;
-        LocalDate upperBound = adjuster.getAdjusted(from);
-        while (!upperBound.isAfter(to)) {
-            Long count = appointmentRepository.countAppointmentsForPharmacy(pharmacy.getId(), AppointmentStatus.TOOK_PLACE, employeeType, lowerBound.atStartOfDay(), upperBound.atStartOfDay()).orElse(0L);
-            String label = extractor.getLabel(lowerBound, upperBound);
-            statistics.addSample(label, count);
-            lowerBound = adjuster.getAdjusted(lowerBound);
-            upperBound = adjuster.getAdjusted(upperBound);
-        }
+        // periods without appointments have no rows and are reported as zero
+        forEachPeriod(from, to, adjuster, extractor, (label, lowerBound, upperBound) ->
+                statistics.addSample(label, sumLong(dailyCounts, lowerBound, upperBound)));
         return statistics;
     }
 
@@ -56,11 +53,21 @@ public class AppointmentReportService extends ReportServiceBase implements IAppo
         if (to.isBefore(from) || to.isEqual(from)) {
             throw new BusinessException("Invalid time range parameters.");
         }
+        var dailyCounts = getDailyCounts(pharmacy, List.of(EmployeeType.PHARMACIST, EmployeeType.DERMATOLOGIST), from, to);
         var statistics = new AppointmentStatistics();
-        Long pharmacistCount = appointmentRepository.countAppointmentsForPharmacy(pharmacy.getId(), AppointmentStatus.TOOK_PLACE, EmployeeType.PHARMACIST, from.atStartOfDay(), to.atStartOfDay()).orElse(0L);
-        Long dermatologistCount = appointmentRepository.countAppointmentsForPharmacy(pharmacy.getId(), AppointmentStatus.TOOK_PLACE, EmployeeType.DERMATOLOGIST, from.atStartOfDay(), to.atStartOfDay()).orElse(0L);
-        statistics.addSample("Pharmacist appointments", pharmacistCount);
-        statistics.addSample("Dermatologist appointments", dermatologistCount);
+        statistics.addSample("Pharmacist appointments", sumLong(dailyCounts.getOrDefault(EmployeeType.PHARMACIST, Collections.emptyNavigableMap()), from, to));
+        statistics.addSample("Dermatologist appointments", sumLong(dailyCounts.getOrDefault(EmployeeType.DERMATOLOGIST, Collections.emptyNavigableMap()), from, to));
         return statistics;
     }
+
+    /*
+    Counts are grouped by day in the database and folded into periods in memory. Periods start at the beginning of the
+    requested range rather than at calendar weeks or months, so truncating to the period in the query would shift them.
+     */
+    private Map<EmployeeType, NavigableMap<LocalDate, Long>> getDailyCounts(Pharmacy pharmacy, List<EmployeeType> employeeTypes, LocalDate from, LocalDate to) {
+        Map<EmployeeType, NavigableMap<LocalDate, Long>> dailyCounts = new EnumMap<>(EmployeeType.class);
+        appointmentRepository.countDailyAppointmentsForPharmacy(pharmacy.getId(), AppointmentStatus.TOOK_PLACE, employeeTypes, from.atStartOfDay(), to.atStartOfDay())
+                .forEach(count -> dailyCounts.computeIfAbsent(count.getEmployeeType(), type -> new TreeMap<>()).put(count.getDay(), count.getCount()));
+        return dailyCounts;
+    }
 }
@@ -6,12 +6,13 @@ import com.mrsisa.pharmacy.domain.enums.EmployeeType;
 import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
 import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
 import com.mrsisa.pharmacy.domain.valueobjects.*;
+import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentSlotsResultDTO;
 import com.mrsisa.pharmacy.dto.stock.MedicineStockConcludeDTO;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.exception.NotFoundException;
 import com.mrsisa.pharmacy.repository.*;
 import com.mrsisa.pharmacy.service.*;
-import com.mrsisa.pharmacy.util.AppointmentOverlapping;
+import com.mrsisa.pharmacy.util.IntervalIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -21,53 +22,68 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
 
 @Service
 public class AppointmentService extends JPAService<Appointment> implements IAppointmentService {
     private final IAppointmentRepository appointmentRepository;
+    private final ILeaveDaysRequestRepository leaveDaysRequestRepository;
     private final IPatientRepository patientRepository;
     private final IPharmacyRepository pharmacyRepository;
     private final IEmploymentContractRepository employmentContractRepository;
-    private final ILeaveDaysRequestRepository leaveDaysRequestRepository;
     private final IMedicineReservationRepository medicineReservationRepository;
     private final IMedicineStockRepository medicineStockRepository;
     private final IRecipeRepository recipeRepository;
     private final ISystemSettingsRepository systemSettingsRepository;
     private final IEmailService emailService;
     private final IPatientService patientService;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
+    private final IAppointmentBatchRepository appointmentBatchRepository;
+    private final IIncomeRollupService incomeRollupService;
+    private final IStockPriceResolver stockPriceResolver;
 
     private static final String NO_PATIENT = "Patient doesn't exist!";
     private static final String NO_APPOINTMENT = "Appointment doesn't exist!";
     private static final String PATIENT_WITH_ID = "Patient with id  ";
     private static final String APPOINTMENT_WITH_ID = "Appointment with id ";
     private static final String DOES_NOT_EXIST = " does not exist";
+    private static final String ALREADY_BOOKED = "Employee already has booked appointment at that time.";
+    private static final String PENDING_LEAVE = "Employee has pending leave days request at the selected time.";
+    private static final String ON_LEAVE = "Employee is on leave on the selected date.";
+    private static final int MAX_SLOT_GENERATION_DAYS = 31;
 
     @Autowired
-    public AppointmentService(IAppointmentRepository appointmentRepository, IPatientRepository patientRepository,
+    public AppointmentService(IAppointmentRepository appointmentRepository, ILeaveDaysRequestRepository leaveDaysRequestRepository,
+                              IPatientRepository patientRepository,
                               IPharmacyRepository pharmacyRepository,
                               IEmploymentContractRepository employmentContractRepository,
-                              ILeaveDaysRequestRepository leaveDaysRequestRepository,
                               IMedicineReservationRepository medicineReservationRepository,
                               IMedicineStockRepository medicineStockRepository,
                               IRecipeRepository recipeRepository,
-                              IEmailService emailService, ISystemSettingsRepository systemSettingsRepository, IPatientService patientService) {
+                              IEmailService emailService, ISystemSettingsRepository systemSettingsRepository, IPatientService patientService,
+                              IEmployeeAvailabilityCalendar availabilityCalendar, IAppointmentBatchRepository appointmentBatchRepository,
+                              IIncomeRollupService incomeRollupService, IStockPriceResolver stockPriceResolver) {
         this.appointmentRepository = appointmentRepository;
+        this.leaveDaysRequestRepository = leaveDaysRequestRepository;
         this.patientRepository = patientRepository;
         this.pharmacyRepository = pharmacyRepository;
         this.employmentContractRepository = employmentContractRepository;
-        this.leaveDaysRequestRepository = leaveDaysRequestRepository;
         this.medicineReservationRepository = medicineReservationRepository;
         this.medicineStockRepository = medicineStockRepository;
         this.recipeRepository = recipeRepository;
         this.emailService = emailService;
         this.systemSettingsRepository = systemSettingsRepository;
         this.patientService = patientService;
+        this.availabilityCalendar = availabilityCalendar;
+        this.appointmentBatchRepository = appointmentBatchRepository;
+        this.incomeRollupService = incomeRollupService;
+        this.stockPriceResolver = stockPriceResolver;
     }
 
     @Override
@@ -75,6 +91,13 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
         return appointmentRepository;
     }
 
+    @Override
+    public void delete(Long id) {
+        var appointment = get(id);
+        appointment.setActive(false);
+        availabilityCalendar.appointmentChanged(appointment);
+    }
+
     @Override
     public List<Appointment> getAvailableDermatologistAppointmentsForPharmacy(Pharmacy pharmacy, LocalDateTime fromTime, LocalDateTime toTime) {
         return appointmentRepository.getAvailableDermatologistAppointmentsForPharmacy(pharmacy.getId(), fromTime, toTime);
@@ -179,24 +202,58 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
     public Appointment createAvailableAppointment(Long pharmacyId, Long employeeId, LocalDateTime fromTime, LocalDateTime toTime) {
         var pharmacy = pharmacyRepository.findByIdAndActiveTrue(pharmacyId).orElseThrow(() -> new NotFoundException("Cannot find pharmacy with id: " + pharmacyId));
         // Check if the employee works in the selected pharmacy
-        var contract = employmentContractRepository.getEmployeeContractWithPharmacyForUpdate(employeeId, pharmacyId).orElseThrow(() -> new BusinessException("Employee does not work in the selected pharmacy."));
+        var contract = lockEmployeeContract(employeeId, pharmacyId);
         // Check if the employee works at that time in the selected pharmacy
         throwIfEmployeeDoesNotWork(contract, fromTime, toTime);
-        // Check if the employee already has appointments created at that time
-        appointmentRepository.getAppointmentForContractInTime(contract.getId(), fromTime, toTime).ifPresent(appointment -> {
-            throw new BusinessException("Employee already has booked appointment at that time.");
-        });
-        // Check if the employee has pending leave requests
-        leaveDaysRequestRepository.findForEmployeeContainingDate(contract.getPharmacyEmployee().getId(), fromTime.toLocalDate(), LeaveDaysRequestStatus.PENDING).findAny().ifPresent(req -> {
-            throw new BusinessException("Employee has pending leave days request at the selected time.");
-        });
-        // Check if the employee is on leave
-        leaveDaysRequestRepository.findForEmployeeContainingDate(contract.getPharmacyEmployee().getId(), fromTime.toLocalDate(), LeaveDaysRequestStatus.APPROVED).findAny().ifPresent(leaveDaysRequest -> {
-            throw new BusinessException("Employee is on leave on the selected date.");
-        });
+        throwIfEmployeeIsNotFree(employeeId, fromTime, toTime);
         var appointment = new Appointment(fromTime, toTime, pharmacy.getAppointmentPrice(contract.getPharmacyEmployee().getEmployeeType()), AppointmentStatus.AVAILABLE, contract);
         contract.getBookedAppointments().add(appointment);
-        return save(appointment);
+        save(appointment);
+        availabilityCalendar.appointmentChanged(appointment);
+        return appointment;
+    }
+
+    @Override
+    public AvailableAppointmentSlotsResultDTO createAvailableAppointmentSlots(Long pharmacyId, Long employeeId, LocalDate fromDate,
+                                                                              LocalDate toDate, Integer slotDuration) {
+        if (toDate.isBefore(fromDate)) {
+            throw new BusinessException("End date is before start date.");
+        }
+        if (ChronoUnit.DAYS.between(fromDate, toDate) >= MAX_SLOT_GENERATION_DAYS) {
+            throw new BusinessException("Slots can be generated for at most " + MAX_SLOT_GENERATION_DAYS + " days at once.");
+        }
+        var pharmacy = pharmacyRepository.findByIdAndActiveTrue(pharmacyId).orElseThrow(() -> new NotFoundException("Cannot find pharmacy with id: " + pharmacyId));
+        var contract = lockEmployeeContract(employeeId, pharmacyId);
+        var price = pharmacy.getAppointmentPrice(contract.getPharmacyEmployee().getEmployeeType());
+        Map<DayOfWeek, WorkingDay> workingDays = new EnumMap<>(DayOfWeek.class);
+        contract.getWorkingHours().forEach(workingDay -> workingDays.put(workingDay.getDay(), workingDay));
+
+        // slots which are in the past, overlap existing appointments or fall on leave days are skipped, the busy time
+        // is read from the database since the contract locks only cover it there
+        var now = LocalDateTime.now();
+        var appointments = IntervalIndex.ofAppointments(appointmentRepository.getAllBusyAppointmentsForEmployee(employeeId, now));
+        var leaveDays = IntervalIndex.of(leaveDaysRequestRepository.getAllPendingAndAcceptedLeaveDaysRequestForEmployee(employeeId),
+                request -> request.getFrom().atStartOfDay(), request -> request.getTo().plusDays(1).atStartOfDay());
+        List<Appointment> slots = new ArrayList<>();
+        var skipped = 0;
+        for (var date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
+            var workingDay = workingDays.get(date.getDayOfWeek());
+            if (workingDay == null) {
+                continue;
+            }
+            var dayEnd = date.atTime(workingDay.getToHours());
+            for (var slotFrom = date.atTime(workingDay.getFromHours()); !slotFrom.plusMinutes(slotDuration).isAfter(dayEnd); slotFrom = slotFrom.plusMinutes(slotDuration)) {
+                var slotTo = slotFrom.plusMinutes(slotDuration);
+                if (slotFrom.isBefore(now) || appointments.overlaps(slotFrom, slotTo) || leaveDays.overlaps(slotFrom, slotTo)) {
+                    skipped++;
+                } else {
+                    slots.add(new Appointment(slotFrom, slotTo, price, AppointmentStatus.AVAILABLE, contract));
+                }
+            }
+        }
+        appointmentBatchRepository.insertAll(slots);
+        availabilityCalendar.evict(employeeId);
+        return new AvailableAppointmentSlotsResultDTO(slots.size(), skipped);
     }
 
     @Override
@@ -300,6 +357,8 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
         }
 
         appointment.setAppointmentStatus(AppointmentStatus.TOOK_PLACE);
+        availabilityCalendar.appointmentChanged(appointment);
+        incomeRollupService.addAppointmentIncome(appointment);
     }
 
     @Override
@@ -324,15 +383,16 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
                 throw new BusinessException("Not enough quantity of medicine " + medicineStock.getMedicine().getName() + "!");
             }
 
-            totalPrice += medicineStock.getCurrentPrice() * medicineStockConcludeDTO.getQuantity();
+            var stockPrice = stockPriceResolver.getUncachedEffectivePrice(medicineStock, LocalDate.now());
+            totalPrice += stockPrice * medicineStockConcludeDTO.getQuantity();
 
             medicineStock.setQuantity(medicineStock.getQuantity() - medicineStockConcludeDTO.getQuantity());
 
             var medicineReservationItem = new MedicineReservationItem(medicineReservation, medicineStockConcludeDTO.getQuantity(),
-                    medicineStock.getMedicine(), medicineStock.getCurrentPrice());
+                    medicineStock.getMedicine(), stockPrice);
 
             var recipeMedicineInfo = new RecipeMedicineInfo(recipe, medicineStockConcludeDTO.getQuantity(),
-                    medicineStockConcludeDTO.getTherapyDays(), medicineStock.getMedicine(), medicineStock.getCurrentPrice());
+                    medicineStockConcludeDTO.getTherapyDays(), medicineStock.getMedicine(), stockPrice);
 
             recipe.getReservedMedicines().add(recipeMedicineInfo);
             medicineReservation.getReservedMedicines().add(medicineReservationItem);
@@ -353,9 +413,11 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
 
         appointment.setReport(report);
         appointment.setAppointmentStatus(AppointmentStatus.TOOK_PLACE);
+        availabilityCalendar.appointmentChanged(appointment);
         double discount = (100 - patient.getPatientCategory().getDiscount()) / 100.0;
         double price = Math.round(appointment.getPrice() * discount * 100.0) / 100.0;
         appointment.setPrice(price);
+        incomeRollupService.addAppointmentIncome(appointment);
 
         Optional<SystemSettings> optionalSystemSettings = this.systemSettingsRepository.findById(1L);
         if(optionalSystemSettings.isEmpty())
@@ -396,6 +458,9 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
     @Override
     public Appointment scheduleAppointmentForEmployee(LocalDateTime from, LocalDateTime to, Long patientId, EmploymentContract employmentContract,
                                                Long pharmacyId) {
+        var employeeId = employmentContract.getPharmacyEmployee().getId();
+        employmentContract = lockEmployeeContract(employeeId, pharmacyId);
+        throwIfEmployeeIsNotFree(employeeId, from, to);
         var employeeType = employmentContract.getPharmacyEmployee().getEmployeeType();
         Double appointmentPrice;
 
@@ -416,12 +481,48 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
         appointment.setPatient(patient);
 
         save(appointment);
+        availabilityCalendar.appointmentChanged(appointment);
 
         sendEmailRegardingScheduledAppointment(employeeType, appointment);
 
         return appointment;
     }
 
+    // Locks every contract of the employee, so that appointments and leave requests of the employee are written one at a time,
+    // and returns the one with the given pharmacy
+    private EmploymentContract lockEmployeeContract(Long employeeId, Long pharmacyId) {
+        return employmentContractRepository.getEmployeeContractsForUpdate(employeeId).stream()
+                .filter(contract -> contract.getPharmacy().getId().equals(pharmacyId))
+                .findFirst()
+                .orElseThrow(() -> new BusinessException("Employee does not work in the selected pharmacy."));
+    }
+
+    // The calendar rejects obvious conflicts without a query. It may miss changes made on other instances, so the database
+    // checks are authoritative, they run under the contract locks.
+    private void throwIfEmployeeIsNotFree(Long employeeId, LocalDateTime fromTime, LocalDateTime toTime) {
+        if (availabilityCalendar.isBusy(employeeId, fromTime, toTime)) {
+            throw new BusinessException(ALREADY_BOOKED);
+        }
+        if (availabilityCalendar.isOnLeave(employeeId, fromTime, toTime, LeaveDaysRequestStatus.PENDING)) {
+            throw new BusinessException(PENDING_LEAVE);
+        }
+        if (availabilityCalendar.isOnLeave(employeeId, fromTime, toTime, LeaveDaysRequestStatus.APPROVED)) {
+            throw new BusinessException(ON_LEAVE);
+        }
+        if (appointmentRepository.countBusyAppointmentsForEmployeeInTime(employeeId, fromTime, toTime) > 0) {
+            throw new BusinessException(ALREADY_BOOKED);
+        }
+        // leave days cover whole days, an appointment ending at midnight does not touch the next one
+        var leaveStatuses = leaveDaysRequestRepository.getBlockingLeaveDaysStatusesForEmployee(employeeId, fromTime.toLocalDate(),
+                toTime.minusNanos(1).toLocalDate());
+        if (leaveStatuses.contains(LeaveDaysRequestStatus.PENDING)) {
+            throw new BusinessException(PENDING_LEAVE);
+        }
+        if (leaveStatuses.contains(LeaveDaysRequestStatus.APPROVED)) {
+            throw new BusinessException(ON_LEAVE);
+        }
+    }
+
     private void sendEmailRegardingScheduledAppointment(EmployeeType employeeType, Appointment appointment) {
         if (employeeType == EmployeeType.DERMATOLOGIST) {
             this.emailService.sendDermatologistAppointmentScheduledMessage(appointment);
@@ -452,22 +553,7 @@ public class AppointmentService extends JPAService<Appointment> implements IAppo
         List<Appointment> patientAppointments = this.appointmentRepository.getAllBookedAppointmentsForPatientForRange(patientId,
                 fromTime, toTime);
 
-        List<Appointment> newAppointments = new ArrayList<>();
-        for(Appointment dermatologistAppointment: dermatologistAppointments) {
-            var notOverlapping = true;
-            for(Appointment patientAppointment: patientAppointments) {
-                if (AppointmentOverlapping.areAppointmentsOverlapping(dermatologistAppointment, patientAppointment)) {
-                    notOverlapping = false;
-                    break;
-                }
-            }
-
-            if (notOverlapping) {
-                newAppointments.add(dermatologistAppointment);
-            }
-        }
-
-        return  newAppointments;
+        return IntervalIndex.ofAppointments(patientAppointments).filterNotOverlapping(dermatologistAppointments);
     }
 
     @Override
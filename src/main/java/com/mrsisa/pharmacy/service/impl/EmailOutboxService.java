@@ -0,0 +1,205 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.entities.OutgoingEmail;
+import com.mrsisa.pharmacy.domain.enums.OutgoingEmailStatus;
+import com.mrsisa.pharmacy.repository.IOutgoingEmailRepository;
+import com.mrsisa.pharmacy.service.IEmailOutboxService;
+import com.mrsisa.pharmacy.util.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import javax.transaction.Transactional;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+Transactional outbox for outgoing email. Emails are rows written by the transaction which causes them, so
+request latency and the locks held by that transaction do not depend on the SMTP server, and no email is sent for
+a change which was rolled back. Dispatchers lease due rows with skip locked, send them as one batch outside of any
+transaction and retry failed ones with exponential backoff. All workers of an instance share one rate limit, so bulk
+email cannot exceed the sending quota of the mail account. The limit is per instance, when several instances send
+email each gets its share of the quota through pharmacy.email-outbox.max-per-second.
+ */
+@Service
+@Transactional
+public class EmailOutboxService implements IEmailOutboxService {
+    private final Logger log = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final IOutgoingEmailRepository outgoingEmailRepository;
+    private final JavaMailSender mailSender;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration retention;
+    private final Duration lease;
+    private final RateLimiter rateLimiter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public EmailOutboxService(IOutgoingEmailRepository outgoingEmailRepository, JavaMailSender mailSender,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${pharmacy.email-outbox.max-attempts:8}") int maxAttempts,
+                              @Value("${pharmacy.email-outbox.initial-backoff-seconds:30}") long initialBackoffSeconds,
+                              @Value("${pharmacy.email-outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+                              @Value("${pharmacy.email-outbox.retention-days:7}") long retentionDays,
+                              @Value("${pharmacy.email-outbox.lease-seconds:300}") long leaseSeconds,
+                              @Value("${pharmacy.email-outbox.max-per-second:0}") double maxPerSecond) {
+        this.outgoingEmailRepository = outgoingEmailRepository;
+        this.mailSender = mailSender;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = Duration.ofSeconds(initialBackoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.retention = Duration.ofDays(retentionDays);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.rateLimiter = new RateLimiter(maxPerSecond);
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void enqueue(String to, String subject, String text, boolean html) {
+        outgoingEmailRepository.save(new OutgoingEmail(to, subject, text, html));
+    }
+
+    @Override
+    public void enqueueAll(Collection<OutgoingEmail> emails) {
+        outgoingEmailRepository.saveAll(emails);
+    }
+
+    /*
+    Runs without a transaction so no row lock is held while talking to the SMTP server. Permits are taken from the rate
+    limiter first and only as many rows are claimed, unused permits are given back. Claimed rows are leased in a short
+    transaction by moving their next attempt past the lease, the batch is sent, and the outcome is recorded in a second
+    short transaction. Emails of a dispatcher that died while sending become due again once the lease ends.
+     */
+    @Override
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public int dispatchBatch(int batchSize) {
+        int permits;
+        try {
+            permits = rateLimiter.acquireUpTo(batchSize);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to send emails", exception);
+        }
+        var leaseUntil = LocalDateTime.now().plus(lease).truncatedTo(ChronoUnit.MILLIS);
+        List<OutgoingEmail> emails = transactionTemplate.execute(status -> claim(permits, leaseUntil));
+        var claimed = emails == null ? 0 : emails.size();
+        rateLimiter.release(permits - claimed);
+        if (claimed == 0) {
+            return 0;
+        }
+        Map<Long, Exception> failures = new HashMap<>();
+        Map<MimeMessage, OutgoingEmail> messages = new LinkedHashMap<>();
+        for (OutgoingEmail email : emails) {
+            try {
+                messages.put(toMessage(email), email);
+            } catch (MessagingException exception) {
+                failures.put(email.getId(), exception);
+            }
+        }
+        send(messages.keySet()).forEach((message, exception) -> failures.put(messages.get(message).getId(), exception));
+        var sentAt = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> record(emails, failures, leaseUntil, sentAt));
+        return emails.size();
+    }
+
+    @Override
+    public int deleteSentEmails() {
+        return outgoingEmailRepository.deleteSentBefore(LocalDateTime.now().minus(retention));
+    }
+
+    private List<OutgoingEmail> claim(int batchSize, LocalDateTime leaseUntil) {
+        var emails = outgoingEmailRepository.claimReadyEmails(OutgoingEmailStatus.PENDING.ordinal(), LocalDateTime.now(), batchSize);
+        emails.forEach(email -> email.setNextAttemptAt(leaseUntil));
+        return emails;
+    }
+
+    // an email whose lease ran out was claimed again by another dispatcher, which records its outcome instead
+    private void record(List<OutgoingEmail> claimed, Map<Long, Exception> failures, LocalDateTime leaseUntil, LocalDateTime now) {
+        var ids = claimed.stream().map(OutgoingEmail::getId).collect(Collectors.toList());
+        for (OutgoingEmail email : outgoingEmailRepository.findAllById(ids)) {
+            if (email.getStatus() != OutgoingEmailStatus.PENDING || !leaseUntil.equals(email.getNextAttemptAt())) {
+                continue;
+            }
+            var failure = failures.get(email.getId());
+            if (failure == null) {
+                email.setStatus(OutgoingEmailStatus.SENT);
+                email.setSentAt(now);
+                email.setLastError(null);
+            } else {
+                failed(email, failure, now);
+            }
+        }
+    }
+
+    private Map<Object, Exception> send(Collection<MimeMessage> messages) {
+        if (messages.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            mailSender.send(messages.toArray(new MimeMessage[0]));
+            return Collections.emptyMap();
+        } catch (MailSendException exception) {
+            if (!exception.getFailedMessages().isEmpty()) {
+                return exception.getFailedMessages();
+            }
+            return failAll(messages, exception);
+        } catch (MailException exception) {
+            // connection or authentication problems fail the whole batch
+            return failAll(messages, exception);
+        }
+    }
+
+    private Map<Object, Exception> failAll(Collection<MimeMessage> messages, Exception exception) {
+        Map<Object, Exception> failures = new HashMap<>();
+        messages.forEach(message -> failures.put(message, exception));
+        return failures;
+    }
+
+    private MimeMessage toMessage(OutgoingEmail email) throws MessagingException {
+        var message = mailSender.createMimeMessage();
+        var helper = new MimeMessageHelper(message, false, "UTF-8");
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getText(), email.getHtml());
+        return message;
+    }
+
+    private void failed(OutgoingEmail email, Exception exception, LocalDateTime now) {
+        var attempts = email.getAttempts() + 1;
+        email.setAttempts(attempts);
+        email.setLastError(abbreviate(String.valueOf(exception.getMessage())));
+        if (attempts >= maxAttempts) {
+            email.setStatus(OutgoingEmailStatus.FAILED);
+            log.error("Giving up on email {} to {} after {} attempts", email.getId(), email.getRecipient(), attempts, exception);
+            return;
+        }
+        email.setNextAttemptAt(now.plus(getBackoff(attempts)));
+        log.warn("Sending email {} failed (attempt {}), retrying at {}", email.getId(), attempts, email.getNextAttemptAt());
+    }
+
+    // initial backoff doubled after every failed attempt
+    private Duration getBackoff(int attempts) {
+        var backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -1,213 +1,243 @@
 package com.mrsisa.pharmacy.service.impl;
 
 
+import com.mrsisa.pharmacy.domain.aggregates.PromotionSubscriber;
+import com.mrsisa.pharmacy.domain.aggregates.ReservationEmailItem;
 import com.mrsisa.pharmacy.domain.entities.*;
 import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.repository.IMedicineReservationRepository;
+import com.mrsisa.pharmacy.service.IEmailOutboxService;
 import com.mrsisa.pharmacy.service.IEmailService;
+import com.mrsisa.pharmacy.util.TextTemplate;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import javax.mail.MessagingException;
 import java.time.format.DateTimeFormatter;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+Composes the emails in the calling thread and leaves sending to the outbox, see EmailOutboxService. Texts are
+templates compiled when the class is loaded and are filled from fields which are already loaded (associations used
+here are eager), only reservation items are read with a projection query when they are not in memory.
+ */
 @Component
 public class EmailService implements IEmailService {
 
-    private final JavaMailSender mailSender;
-
-    private static final String DEAR = "Dear ";
-    private static final String DEAR_END = ",\n\n";
-    private static final String ALL_THE_BEST = "\nAll the best,\n";
-    private static final String DATE_TIME_FORMAT = "dd/MM/yyyy hh:mm";
+    private final IEmailOutboxService emailOutboxService;
+    private final IMedicineReservationRepository medicineReservationRepository;
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy hh:mm");
+
+    private static final TextTemplate ISSUED_RESERVATION = TextTemplate.compile(
+            "Dear {{firstName}},\n\n" +
+            "The following medicines have been issued to you with total price of {{price}}RSD :\n" +
+            "{{items}}" +
+            "\nAll the best,\n{{pharmacy}}.",
+            "firstName", "price", "items", "pharmacy");
+    private static final TextTemplate ISSUED_RESERVATION_ITEM = TextTemplate.compile(
+            "\t\t{{medicine}} {{quantity}}pcs - {{price}}RSD\n", "medicine", "quantity", "price");
+
+    private static final TextTemplate RESERVATION_CREATED_SUBJECT = TextTemplate.compile(
+            "Reservation {{id}} at {{pharmacy}}", "id", "pharmacy");
+    private static final TextTemplate RESERVATION_CREATED = TextTemplate.compile(
+            "Dear {{firstName}},\n\n" +
+            "Id of reservation is {{id}}\n\n" +
+            "The following medicines have been reserved for you with total price of {{price}}RSD :\n" +
+            "{{items}}" +
+            "\nAll the best,\n{{pharmacy}}.",
+            "firstName", "id", "price", "items", "pharmacy");
+    private static final TextTemplate RESERVATION_CREATED_ITEM = TextTemplate.compile(
+            "\t\t{{medicine}} {{quantity}} pcs - {{price}}RSD\n", "medicine", "quantity", "price");
+
+    private static final TextTemplate ACCOUNT_ACTIVATION = TextTemplate.compile(
+            "<h1>Hello {{username}}!</h1>" +
+            "<p>In order to use the application, first you need to verify your account." +
+            "<br>In order to to that, click <a href='{{activationLink}}'>here.</a>" +
+            "<br><br>Admin team</p>",
+            "username", "activationLink");
+
+    private static final TextTemplate APPOINTMENT_SCHEDULED_SUBJECT = TextTemplate.compile(
+            "Scheduled {{employeeType}} appointment {{id}} at {{pharmacy}}", "employeeType", "id", "pharmacy");
+    private static final TextTemplate APPOINTMENT_SCHEDULED = TextTemplate.compile(
+            "Dear {{firstName}},\n\n" +
+            "Id of scheduled appointment with {{employeeType}} is {{id}}\n\n" +
+            "Pharmacy: {{pharmacy}},\n\n" +
+            "{{employeeType}}: {{employeeFirstName}} {{employeeLastName}},\n\n" +
+            "Start date and time: {{from}},\n\n" +
+            "End date and time: {{to}},\n\n" +
+            "\nAll the best,\n{{pharmacy}}.",
+            "firstName", "employeeType", "id", "pharmacy", "employeeFirstName", "employeeLastName", "from", "to");
+
+    private static final TextTemplate OFFER_RESULT_SUBJECT = TextTemplate.compile("Order {{orderId}} results", "orderId");
+    private static final TextTemplate OFFER_RESULT = TextTemplate.compile(
+            "Dear {{firstName}},\n\n" +
+            "Your offer {{offerId}} has been {{result}}.\n" +
+            "\nAll the best,\n{{pharmacy}}.",
+            "firstName", "offerId", "result", "pharmacy");
+
+    private static final TextTemplate LEAVE_REQUEST_RESPONSE = TextTemplate.compile(
+            "Dear {{firstName}},\n\n" +
+            "We inform you that your request for leave days in a period {{from}} - {{to}} has been {{status}}.\n" +
+            "{{rejection}}" +
+            "\nAll the best,\nMRS-ISA T1.",
+            "firstName", "from", "to", "status", "rejection");
+    private static final TextTemplate LEAVE_REQUEST_REJECTION = TextTemplate.compile(
+            "Rejection reason: {{reason}}.\n", "reason");
+
+    private static final TextTemplate RECIPE_CONFIRMATION = TextTemplate.compile(
+            "Dear {{username}},\n\n" +
+            "This is a confirmation email for recipe with id {{id}} at pharmacy {{pharmacy}}.\n\n" +
+            "Admin team",
+            "username", "id", "pharmacy");
+
+    private static final TextTemplate COMPLAINT_REPLY = TextTemplate.compile(
+            "Dear {{username}},\n\n" +
+            "Your complaint against {{entity}} has been responded to by {{admin}}:\n\n" +
+            "''{{content}}''",
+            "username", "entity", "admin", "content");
+
+    private static final TextTemplate PROMOTION_NEWSLETTER_SUBJECT = TextTemplate.compile(
+            "New promotion in {{pharmacy}}", "pharmacy");
+    private static final TextTemplate PROMOTION_NEWSLETTER = TextTemplate.compile(
+            "A new promotion has been created in {{pharmacy}}.\n\n" +
+            "{{content}}\n\n" +
+            "Articles which are on promotion: \n" +
+            "{{items}}" +
+            "All the best, \n{{pharmacy}}" +
+            "\n\nYou are receiving these notification because you are subscribed to {{pharmacy}}'s newsletter.",
+            "pharmacy", "content", "items");
+    private static final TextTemplate PROMOTION_NEWSLETTER_ITEM = TextTemplate.compile(
+            "\t{{medicine}}: -{{discount}}%\n", "medicine", "discount");
+    private static final TextTemplate PROMOTION_NEWSLETTER_GREETING = TextTemplate.compile(
+            "Dear {{username}},\n\n{{text}}", "username", "text");
 
     @Autowired
-    public EmailService(JavaMailSender mailSender) {
-        this.mailSender = mailSender;
+    public EmailService(IEmailOutboxService emailOutboxService, IMedicineReservationRepository medicineReservationRepository) {
+        this.emailOutboxService = emailOutboxService;
+        this.medicineReservationRepository = medicineReservationRepository;
     }
 
     @Override
-    @Async
     public void sendSimpleMessage(String to, String subject, String text) {
-        var message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(text);
-        mailSender.send(message);
+        emailOutboxService.enqueue(to, subject, text, false);
     }
 
 
     @Override
     public void sendIssuedReservationMessage(MedicineReservation medicineReservation) {
-        var to = medicineReservation.getPatient().getEmail();
-        var subject = "Issued reservation";
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(medicineReservation.getPatient().getFirstName()).append(DEAR_END);
-        sb.append("The following medicines have been issued to you with total price " + "of ").
-                append(medicineReservation.getPrice()).append("RSD :").append("\n");
-        medicineReservation.getReservedMedicines().forEach(item ->
-                sb.append("\t\t").append(item.getMedicine().getName()).append(" ").append(item.getQuantity())
-                        .append("pcs - ").append(item.getPrice()).append("RSD\n"));
-
-        sb.append(ALL_THE_BEST).append(medicineReservation.getPharmacy().getName()).append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        var patient = medicineReservation.getPatient();
+        var text = ISSUED_RESERVATION.render(patient.getFirstName(), medicineReservation.getPrice(),
+                renderItems(medicineReservation, ISSUED_RESERVATION_ITEM), medicineReservation.getPharmacy().getName());
+        sendSimpleMessage(patient.getEmail(), "Issued reservation", text);
     }
 
     @Override
     public void sendDrugReservationCreatedMessage(MedicineReservation medicineReservation) {
-        var to = medicineReservation.getPatient().getEmail();
-        var subject = "Reservation " + medicineReservation.getId() + " at " + medicineReservation.getPharmacy().getName();
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(medicineReservation.getPatient().getFirstName()).append(DEAR_END);
-        sb.append("Id of reservation is ").append(medicineReservation.getId()).append("\n\n");
-        sb.append("The following medicines have been reserved for you with total price of ").
-                append(medicineReservation.getPrice()).append("RSD :").append("\n");
-        medicineReservation.getReservedMedicines().forEach(item ->
-                sb.append("\t\t").append(item.getMedicine().getName()).append(" ").append(item.getQuantity())
-                        .append(" pcs - ").append(item.getPrice()).append("RSD\n"));
-
-        sb.append(ALL_THE_BEST).append(medicineReservation.getPharmacy().getName()).append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        var patient = medicineReservation.getPatient();
+        var pharmacyName = medicineReservation.getPharmacy().getName();
+        var subject = RESERVATION_CREATED_SUBJECT.render(medicineReservation.getId(), pharmacyName);
+        var text = RESERVATION_CREATED.render(patient.getFirstName(), medicineReservation.getId(), medicineReservation.getPrice(),
+                renderItems(medicineReservation, RESERVATION_CREATED_ITEM), pharmacyName);
+        sendSimpleMessage(patient.getEmail(), subject, text);
     }
 
     @Override
-    @Async
     public void sendConfirmationMessage(String username, String to, String activationLink) throws MessagingException {
-        var msgContent = new StringBuilder();
-
-        var message = mailSender.createMimeMessage();
-
-        var helper = new MimeMessageHelper(message, false);
-
-        helper.setTo(to);
-
-        helper.setSubject("Account activation");
-
-        msgContent.append("<h1>Hello ");
-        msgContent.append(username);
-        msgContent.append("!");
-        msgContent.append("</h1>");
-
-        msgContent.append("<p>In order to use the application, first you need to verify your account.");
-        msgContent.append("<br>In order to to that, click ");
-        msgContent.append("<a href='");
-        msgContent.append(activationLink);
-        msgContent.append("'>here.</a>");
-
-        msgContent.append("<br><br>Admin team</p>");
-
-        helper.setText(msgContent.toString(), true);
-
-        mailSender.send(message);
-
+        emailOutboxService.enqueue(to, "Account activation", ACCOUNT_ACTIVATION.render(username, activationLink), true);
     }
 
     @Override
     public void sendDermatologistAppointmentScheduledMessage(Appointment scheduled) {
-        var to = scheduled.getPatient().getEmail();
-        var subject = "Scheduled Dermatologist appointment " + scheduled.getId() + " at " + scheduled.getEmployee().getPharmacy().getName();
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(scheduled.getPatient().getFirstName()).append(DEAR_END);
-        sb.append("Id of scheduled appointment with Dermatologist is ").append(scheduled.getId()).append("\n\n");
-        sb.append("Pharmacy: ").append(scheduled.getEmployee().getPharmacy().getName()).append(DEAR_END);
-        sb.append("Dermatologist: ").append(scheduled.getEmployee().getPharmacyEmployee().getFirstName()).append(" ")
-                .append(scheduled.getEmployee().getPharmacyEmployee().getLastName()).append(DEAR_END);
-        sb.append("Start date and time: ").append(scheduled.getFrom().format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))).append(DEAR_END);
-        sb.append("End date and time: ").append(scheduled.getTo().format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))).append(DEAR_END);
-
-        sb.append(ALL_THE_BEST).append(scheduled.getEmployee().getPharmacy().getName()).append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        sendAppointmentScheduledMessage(scheduled, "Dermatologist");
     }
 
     @Override
     public void sendPharmacistAppointmentScheduledMessage(Appointment scheduled) {
-        var to = scheduled.getPatient().getEmail();
-        var subject = "Scheduled Pharmacist appointment " + scheduled.getId() + " at " + scheduled.getEmployee().getPharmacy().getName();
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(scheduled.getPatient().getFirstName()).append(DEAR_END);
-        sb.append("Id of scheduled appointment with Pharmacist is ").append(scheduled.getId()).append("\n\n");
-        sb.append("Pharmacy: ").append(scheduled.getEmployee().getPharmacy().getName()).append(DEAR_END);
-        sb.append("Pharmacist: ").append(scheduled.getEmployee().getPharmacyEmployee().getFirstName()).append(" ")
-                .append(scheduled.getEmployee().getPharmacyEmployee().getLastName()).append(DEAR_END);
-        sb.append("Start date and time: ").append(scheduled.getFrom().format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))).append(DEAR_END);
-        sb.append("End date and time: ").append(scheduled.getTo().format(DateTimeFormatter.ofPattern(DATE_TIME_FORMAT))).append(DEAR_END);
-
-        sb.append(ALL_THE_BEST).append(scheduled.getEmployee().getPharmacy().getName()).append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        sendAppointmentScheduledMessage(scheduled, "Pharmacist");
     }
 
     @Override
-    @Async
     public void notifySupplier(Offer offer) {
-        var to = offer.getSupplier().getEmail();
-        var subject = "Order " + offer.getOriginalOrder().getId() + " results";
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(offer.getSupplier().getFirstName()).append(DEAR_END);
         if(offer.getOfferStatus().toString().equals(""))
             return;
-        var result = offer.getOfferStatus().toString().toLowerCase();
-        sb.append("Your offer ").append(offer.getId()).append(" has been ").append(result).append(".\n");
-        sb.append(ALL_THE_BEST).append(offer.getOriginalOrder().getPharmacy().getName()).append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        var supplier = offer.getSupplier();
+        var order = offer.getOriginalOrder();
+        var text = OFFER_RESULT.render(supplier.getFirstName(), offer.getId(), offer.getOfferStatus().toString().toLowerCase(),
+                order.getPharmacy().getName());
+        sendSimpleMessage(supplier.getEmail(), OFFER_RESULT_SUBJECT.render(order.getId()), text);
     }
 
     @Override
-    @Async
     public void notifyEmployeeAboutLeaveRequestResponse(LeaveDaysRequest request) {
-        var to = request.getEmployee().getEmail();
-        var subject = "Leave days request response";
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(request.getEmployee().getFirstName()).append(DEAR_END);
-        sb.append("We inform you that your request for leave days in a period ");
+        var employee = request.getEmployee();
         var status = request.getLeaveDaysRequestStatus() == LeaveDaysRequestStatus.APPROVED ? "approved" : "rejected";
-        sb.append(request.getFrom().toString()).append(" - ").append(request.getTo().toString()).append(" has been ").append(status).append(".\n");
-        if (request.getLeaveDaysRequestStatus() == LeaveDaysRequestStatus.REJECTED) {
-            sb.append("Rejection reason: ").append(request.getRejection().getReason()).append(".\n");
-        }
-        sb.append(ALL_THE_BEST).append("MRS-ISA T1").append(".");
-        sendSimpleMessage(to, subject, sb.toString());
+        var rejection = request.getLeaveDaysRequestStatus() == LeaveDaysRequestStatus.REJECTED
+                ? LEAVE_REQUEST_REJECTION.render(request.getRejection().getReason()) : "";
+        var text = LEAVE_REQUEST_RESPONSE.render(employee.getFirstName(), request.getFrom(), request.getTo(), status, rejection);
+        sendSimpleMessage(employee.getEmail(), "Leave days request response", text);
     }
 
     @Override
     public void sendRecipeConfirmationMail(Patient patient, Recipe recipe) {
-        var to = patient.getEmail();
-        var subject = "Recipe creation";
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(patient.getUsername()).append(DEAR_END);
-        sb.append("This is a confirmation email for recipe with id ").append(recipe.getId());
-        sb.append(" at pharmacy ").append(recipe.getPharmacy().getName()).append(".");
-        sb.append("\n\n");
-        sb.append("Admin team");
-        sendSimpleMessage(to, subject, sb.toString());
+        var text = RECIPE_CONFIRMATION.render(patient.getUsername(), recipe.getId(), recipe.getPharmacy().getName());
+        sendSimpleMessage(patient.getEmail(), "Recipe creation", text);
     }
 
     @Override
     public void sendComplaintReplyNotification(Patient patient, Complaint complaint) {
-        var to = patient.getEmail();
-        var subject = "Complaint reply";
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(patient.getUsername()).append(DEAR_END);
-        sb.append("Your complaint against ").append(complaint.getEntity()).append(" has been responded to by ").append(complaint.getReply().getSystemAdmin().getUsername()).append(":\n\n");
-        sb.append("''").append(complaint.getReply().getContent()).append("''");
-        sendSimpleMessage(to, subject, sb.toString());
+        var reply = complaint.getReply();
+        var text = COMPLAINT_REPLY.render(patient.getUsername(), complaint.getEntity(), reply.getSystemAdmin().getUsername(),
+                reply.getContent());
+        sendSimpleMessage(patient.getEmail(), "Complaint reply", text);
     }
 
+    // everything after the greeting is the same for all subscribers, so it is built once per promotion
     @Override
-    public void notifySubscriberAboutPromotion(Patient subscriber, Promotion promotion) {
-        var to = subscriber.getEmail();
-        var subject = "New promotion in " + promotion.getPharmacy().getName();
-        var sb = new StringBuilder();
-        sb.append(DEAR).append(subscriber.getUsername()).append(DEAR_END);
-        sb.append("A new promotion has been created in ").append(promotion.getPharmacy().getName()).append(".\n\n");
-        sb.append(promotion.getContent()).append("\n\n");
-        sb.append("Articles which are on promotion: \n");
-        promotion.getPromotionItems().forEach(item -> sb.append("\t").append(item.getMedicine().getName()).append(": -").append(item.getDiscount()).append("%\n"));
-        sb.append("All the best, \n");
-        sb.append(promotion.getPharmacy().getName());
-        sb.append("\n\nYou are receiving these notification because you are subscribed to ").append(promotion.getPharmacy().getName()).append("'s newsletter.");
-        sendSimpleMessage(to, subject, sb.toString());
+    public String getPromotionNewsletterText(Promotion promotion) {
+        var items = new StringBuilder();
+        promotion.getPromotionItems().forEach(item ->
+                PROMOTION_NEWSLETTER_ITEM.renderTo(items, item.getMedicine().getName(), item.getDiscount()));
+        return PROMOTION_NEWSLETTER.render(promotion.getPharmacy().getName(), promotion.getContent(), items);
+    }
+
+    @Override
+    public void notifySubscribersAboutPromotion(Promotion promotion, String newsletterText, Collection<PromotionSubscriber> subscribers) {
+        var subject = PROMOTION_NEWSLETTER_SUBJECT.render(promotion.getPharmacy().getName());
+        List<OutgoingEmail> emails = new ArrayList<>(subscribers.size());
+        subscribers.forEach(subscriber -> emails.add(new OutgoingEmail(subscriber.getEmail(), subject,
+                PROMOTION_NEWSLETTER_GREETING.render(subscriber.getUsername(), newsletterText), false, true)));
+        emailOutboxService.enqueueAll(emails);
+    }
+
+    private void sendAppointmentScheduledMessage(Appointment scheduled, String employeeType) {
+        var pharmacyName = scheduled.getEmployee().getPharmacy().getName();
+        var employee = scheduled.getEmployee().getPharmacyEmployee();
+        var subject = APPOINTMENT_SCHEDULED_SUBJECT.render(employeeType, scheduled.getId(), pharmacyName);
+        var text = APPOINTMENT_SCHEDULED.render(scheduled.getPatient().getFirstName(), employeeType, scheduled.getId(), pharmacyName,
+                employee.getFirstName(), employee.getLastName(), scheduled.getFrom().format(DATE_TIME_FORMATTER),
+                scheduled.getTo().format(DATE_TIME_FORMATTER));
+        sendSimpleMessage(scheduled.getPatient().getEmail(), subject, text);
+    }
+
+    private StringBuilder renderItems(MedicineReservation reservation, TextTemplate itemTemplate) {
+        var items = new StringBuilder();
+        getReservationItems(reservation).forEach(item ->
+                itemTemplate.renderTo(items, item.getMedicineName(), item.getQuantity(), item.getPrice()));
+        return items;
+    }
+
+    // reservations read for issuing or created in this request already hold their items
+    private List<ReservationEmailItem> getReservationItems(MedicineReservation reservation) {
+        if (Hibernate.isInitialized(reservation.getReservedMedicines())) {
+            return reservation.getReservedMedicines().stream()
+                    .map(item -> new ReservationEmailItem(item.getMedicine().getName(), item.getQuantity(), item.getPrice()))
+                    .collect(Collectors.toList());
+        }
+        return medicineReservationRepository.getReservationEmailItems(reservation.getId());
     }
 }
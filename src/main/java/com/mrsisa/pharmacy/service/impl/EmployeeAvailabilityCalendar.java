@@ -0,0 +1,266 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
+import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
+import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.ILeaveDaysRequestRepository;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
+import com.mrsisa.pharmacy.util.IntervalIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/*
+In-memory calendar of the busy time of pharmacy employees. Busy appointments and pending/approved leave days of an
+employee are loaded once and then kept up to date by the services that change them, so scheduling checks are memory
+lookups. Leave days and appointments belong to the employee rather than to a single employment contract (a
+dermatologist can work in several pharmacies), so the calendar is kept per employee and contract changes evict it.
+Entries expire after a while so changes made by other instances are eventually picked up. Until then the calendar can
+miss a conflict, so it only serves validation and pre-filtering: code that creates appointments or leave requests
+locks all employment contracts of the employee and repeats the check against the database. At most max-employees
+calendars are kept, when the map is full expired calendars are dropped first and then arbitrary ones.
+
+An appointment makes the employee busy while it is booked or available, the same statuses the validators used to query.
+Canceled, missed and concluded appointments free the slot.
+ */
+@Service
+public class EmployeeAvailabilityCalendar implements IEmployeeAvailabilityCalendar {
+    private final IAppointmentRepository appointmentRepository;
+    private final ILeaveDaysRequestRepository leaveDaysRequestRepository;
+    private final long timeToLiveMillis;
+    private final int maxEmployees;
+
+    private final Map<Long, EmployeeCalendar> calendars = new ConcurrentHashMap<>();
+    // incremented by every eviction and applied change, a load that overlaps one is not cached
+    private final AtomicLong modifications = new AtomicLong();
+
+    @Autowired
+    public EmployeeAvailabilityCalendar(IAppointmentRepository appointmentRepository,
+                                        ILeaveDaysRequestRepository leaveDaysRequestRepository,
+                                        @Value("${pharmacy.availability-calendar.ttl-seconds:300}") long timeToLiveSeconds,
+                                        @Value("${pharmacy.availability-calendar.max-employees:10000}") int maxEmployees) {
+        this.appointmentRepository = appointmentRepository;
+        this.leaveDaysRequestRepository = leaveDaysRequestRepository;
+        this.timeToLiveMillis = timeToLiveSeconds * 1000;
+        this.maxEmployees = maxEmployees;
+    }
+
+    @Override
+    public boolean isBusy(Long employeeId, LocalDateTime from, LocalDateTime to) {
+        return getCalendar(employeeId).isBusy(from, to);
+    }
+
+    @Override
+    public boolean isOnLeave(Long employeeId, LocalDateTime from, LocalDateTime to) {
+        var calendar = getCalendar(employeeId);
+        return calendar.isOnLeave(LeaveDaysRequestStatus.PENDING, from, to) || calendar.isOnLeave(LeaveDaysRequestStatus.APPROVED, from, to);
+    }
+
+    @Override
+    public boolean isOnLeave(Long employeeId, LocalDateTime from, LocalDateTime to, LeaveDaysRequestStatus status) {
+        return getCalendar(employeeId).isOnLeave(status, from, to);
+    }
+
+    @Override
+    public void appointmentChanged(Appointment appointment) {
+        var employeeId = appointment.getEmployee().getPharmacyEmployee().getId();
+        var id = appointment.getId();
+        if (isBusy(appointment)) {
+            var interval = new Interval(appointment.getFrom(), appointment.getTo(), null);
+            afterCommit(employeeId, calendar -> calendar.putAppointment(id, interval));
+        } else {
+            afterCommit(employeeId, calendar -> calendar.removeAppointment(id));
+        }
+    }
+
+    @Override
+    public void leaveDaysRequestChanged(LeaveDaysRequest request) {
+        var employeeId = request.getEmployee().getId();
+        var id = request.getId();
+        if (isBlocking(request)) {
+            var interval = toInterval(request);
+            afterCommit(employeeId, calendar -> calendar.putLeaveDays(id, interval));
+        } else {
+            afterCommit(employeeId, calendar -> calendar.removeLeaveDays(id));
+        }
+    }
+
+    // evicted again once the transaction completes so a reload in between cannot keep the old state
+    @Override
+    public void evict(Long employeeId) {
+        modifications.incrementAndGet();
+        calendars.remove(employeeId);
+        afterCompletion(() -> {
+            modifications.incrementAndGet();
+            calendars.remove(employeeId);
+        });
+    }
+
+    // loaded outside of the map so lookups of other employees do not wait for the queries, a load which overlapped an
+    // eviction or a change is returned to its caller but not cached
+    private EmployeeCalendar getCalendar(Long employeeId) {
+        var cached = calendars.get(employeeId);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+        var generation = modifications.get();
+        var loaded = load(employeeId);
+        makeRoom();
+        calendars.compute(employeeId, (id, current) -> {
+            if (current != null && !current.isExpired()) {
+                return current;
+            }
+            return modifications.get() == generation ? loaded : current;
+        });
+        return loaded;
+    }
+
+    // dropping a calendar only costs a reload, so the map may briefly exceed the limit when loads race
+    private void makeRoom() {
+        if (calendars.size() < maxEmployees) {
+            return;
+        }
+        calendars.values().removeIf(EmployeeCalendar::isExpired);
+        var iterator = calendars.keySet().iterator();
+        while (calendars.size() >= maxEmployees && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private EmployeeCalendar load(Long employeeId) {
+        var calendar = new EmployeeCalendar(System.currentTimeMillis() + timeToLiveMillis);
+        appointmentRepository.getAllBusyAppointmentsForEmployee(employeeId, LocalDateTime.now())
+                .forEach(appointment -> calendar.putAppointment(appointment.getId(), new Interval(appointment.getFrom(), appointment.getTo(), null)));
+        leaveDaysRequestRepository.getAllPendingAndAcceptedLeaveDaysRequestForEmployee(employeeId)
+                .forEach(request -> calendar.putLeaveDays(request.getId(), toInterval(request)));
+        return calendar;
+    }
+
+    /*
+    Changes are applied only once they are committed, so other requests never see a change that can still be rolled
+    back. A load that is in progress may have run its queries before the commit, so applying a change also bumps the
+    modification count and such a load is not cached; a later load reads the change anyway.
+     */
+    private void afterCommit(Long employeeId, Consumer<EmployeeCalendar> change) {
+        Runnable apply = () -> {
+            modifications.incrementAndGet();
+            calendars.computeIfPresent(employeeId, (id, calendar) -> {
+                change.accept(calendar);
+                return calendar;
+            });
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply.run();
+            }
+        });
+    }
+
+    private void afterCompletion(Runnable callback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                callback.run();
+            }
+        });
+    }
+
+    private static boolean isBusy(Appointment appointment) {
+        return Boolean.TRUE.equals(appointment.getActive()) && (appointment.getAppointmentStatus() == AppointmentStatus.BOOKED
+                || appointment.getAppointmentStatus() == AppointmentStatus.AVAILABLE);
+    }
+
+    private static boolean isBlocking(LeaveDaysRequest request) {
+        return Boolean.TRUE.equals(request.getActive()) && (request.getLeaveDaysRequestStatus() == LeaveDaysRequestStatus.PENDING
+                || request.getLeaveDaysRequestStatus() == LeaveDaysRequestStatus.APPROVED);
+    }
+
+    // leave days cover whole days
+    private static Interval toInterval(LeaveDaysRequest request) {
+        return new Interval(request.getFrom().atStartOfDay(), request.getTo().plusDays(1).atStartOfDay(), request.getLeaveDaysRequestStatus());
+    }
+
+    private static class Interval {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final LeaveDaysRequestStatus status;
+
+        Interval(LocalDateTime from, LocalDateTime to, LeaveDaysRequestStatus status) {
+            this.from = from;
+            this.to = to;
+            this.status = status;
+        }
+    }
+
+    // the indexes are rebuilt lazily after a change, lookups between changes only do binary searches
+    private static class EmployeeCalendar {
+        private final long expiresAt;
+        private final Map<Long, Interval> appointments = new HashMap<>();
+        private final Map<Long, Interval> leaveDays = new HashMap<>();
+        private IntervalIndex busyIndex;
+        private final Map<LeaveDaysRequestStatus, IntervalIndex> leaveIndexes = new EnumMap<>(LeaveDaysRequestStatus.class);
+
+        EmployeeCalendar(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+
+        synchronized boolean isBusy(LocalDateTime from, LocalDateTime to) {
+            if (busyIndex == null) {
+                busyIndex = IntervalIndex.of(appointments.values(), interval -> interval.from, interval -> interval.to);
+            }
+            return busyIndex.overlaps(from, to);
+        }
+
+        synchronized boolean isOnLeave(LeaveDaysRequestStatus status, LocalDateTime from, LocalDateTime to) {
+            return leaveIndexes.computeIfAbsent(status, key -> IntervalIndex.of(
+                    leaveDays.values().stream().filter(interval -> interval.status == key).collect(Collectors.toList()),
+                    interval -> interval.from, interval -> interval.to)).overlaps(from, to);
+        }
+
+        synchronized void putAppointment(Long id, Interval interval) {
+            appointments.put(id, interval);
+            busyIndex = null;
+        }
+
+        synchronized void removeAppointment(Long id) {
+            if (appointments.remove(id) != null) {
+                busyIndex = null;
+            }
+        }
+
+        synchronized void putLeaveDays(Long id, Interval interval) {
+            leaveDays.put(id, interval);
+            leaveIndexes.clear();
+        }
+
+        synchronized void removeLeaveDays(Long id) {
+            if (leaveDays.remove(id) != null) {
+                leaveIndexes.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.aggregates.DailyIncomeSum;
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.domain.entities.DailyIncome;
+import com.mrsisa.pharmacy.domain.entities.MedicinePurchase;
+import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
+import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.domain.enums.IncomeReportType;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.IDailyIncomeRepository;
+import com.mrsisa.pharmacy.repository.IMedicinePurchaseRepository;
+import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.service.IIncomeRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+Keeps the daily income of every pharmacy per income type, so income reports read one row per day instead of
+summing appointments and purchases on every request. Income is added in the transaction which produces it.
+ */
+@Service
+@Transactional
+public class IncomeRollupService implements IIncomeRollupService {
+    private final Logger log = LoggerFactory.getLogger(IncomeRollupService.class);
+
+    private final IDailyIncomeRepository dailyIncomeRepository;
+    private final IAppointmentRepository appointmentRepository;
+    private final IMedicinePurchaseRepository medicinePurchaseRepository;
+    private final IPharmacyRepository pharmacyRepository;
+
+    @Autowired
+    public IncomeRollupService(IDailyIncomeRepository dailyIncomeRepository, IAppointmentRepository appointmentRepository,
+                               IMedicinePurchaseRepository medicinePurchaseRepository, IPharmacyRepository pharmacyRepository) {
+        this.dailyIncomeRepository = dailyIncomeRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.medicinePurchaseRepository = medicinePurchaseRepository;
+        this.pharmacyRepository = pharmacyRepository;
+    }
+
+    @Override
+    public void addAppointmentIncome(Appointment appointment) {
+        var type = appointment.getEmployee().getPharmacyEmployee().getEmployeeType() == EmployeeType.PHARMACIST
+                ? IncomeReportType.PHARMACIST_APPOINTMENT : IncomeReportType.DERMATOLOGIST_APPOINTMENT;
+        dailyIncomeRepository.addIncome(appointment.getEmployee().getPharmacy().getId(), appointment.getFrom().toLocalDate(),
+                type.ordinal(), appointment.getPrice());
+    }
+
+    // purchases of one pharmacy and day are added with a single statement
+    @Override
+    public void addMedicinePurchases(Collection<MedicinePurchase> purchases) {
+        Map<Long, Map<LocalDate, Double>> incomes = new HashMap<>();
+        purchases.forEach(purchase -> incomes.computeIfAbsent(purchase.getPharmacy().getId(), id -> new HashMap<>())
+                .merge(purchase.getDatePurchased(), purchase.getPrice(), Double::sum));
+        incomes.forEach((pharmacyId, days) -> days.forEach((day, amount) ->
+                dailyIncomeRepository.addIncome(pharmacyId, day, IncomeReportType.MEDICINE_SALES.ordinal(), amount)));
+    }
+
+    @Override
+    public int rebuild() {
+        dailyIncomeRepository.deleteAllInBatch();
+        List<DailyIncomeSum> sums = new ArrayList<>(appointmentRepository.getDailyAppointmentsIncome(AppointmentStatus.TOOK_PLACE));
+        sums.addAll(medicinePurchaseRepository.getDailyIncomeFromMedicines());
+        dailyIncomeRepository.saveAll(sums.stream()
+                .map(sum -> new DailyIncome(pharmacyRepository.getOne(sum.getPharmacyId()), sum.getDay(), sum.getIncomeType(), sum.getAmount()))
+                .collect(Collectors.toList()));
+        log.info("Rebuilt daily income rollup with {} rows.", sums.size());
+        return sums.size();
+    }
+
+    @Override
+    public int rebuildIfEmpty() {
+        return dailyIncomeRepository.count() == 0 ? rebuild() : 0;
+    }
+}
@@ -0,0 +1,58 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.entities.JobLock;
+import com.mrsisa.pharmacy.repository.IJobLockRepository;
+import com.mrsisa.pharmacy.service.IJobLockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/*
+Leases on background jobs kept in the database every instance shares, so a job started on several instances at the
+same time runs on one of them. A lease expires on its own unless it is renewed, so a crashed instance cannot block a
+job forever and its unfinished run is picked up by the next instance which tries it.
+ */
+@Service
+@Transactional
+public class JobLockService implements IJobLockService {
+
+    private final IJobLockRepository jobLockRepository;
+    // process name (pid@host) plus a random part, unique even for instances started with the same pid
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    @Autowired
+    public JobLockService(IJobLockRepository jobLockRepository) {
+        this.jobLockRepository = jobLockRepository;
+    }
+
+    @Override
+    public boolean tryAcquire(String job, LocalDateTime scheduledAt, Duration lease) {
+        return jobLockRepository.acquire(job, owner, scheduledAt, lease.getSeconds()) > 0;
+    }
+
+    @Override
+    public boolean renew(String job, Duration lease, long rowsProcessed) {
+        return jobLockRepository.renew(job, owner, lease.getSeconds(), rowsProcessed) > 0;
+    }
+
+    @Override
+    public void complete(String job, Duration duration, long rowsProcessed) {
+        jobLockRepository.complete(job, owner, duration.toMillis(), rowsProcessed);
+    }
+
+    @Override
+    public void release(String job) {
+        jobLockRepository.release(job, owner);
+    }
+
+    @Override
+    public List<JobLock> getJobLocks() {
+        return jobLockRepository.getAllJobLocks();
+    }
+}
@@ -12,11 +12,13 @@ import com.mrsisa.pharmacy.repository.IEmploymentContractRepository;
 import com.mrsisa.pharmacy.repository.ILeaveDaysRequestRepository;
 import com.mrsisa.pharmacy.repository.IPharmacyEmployeeRepository;
 import com.mrsisa.pharmacy.service.IEmailService;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
 import com.mrsisa.pharmacy.service.ILeaveDaysRequestService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Service;
@@ -32,6 +34,7 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
     private final IEmploymentContractRepository employmentContractRepository;
     private final IPharmacyEmployeeRepository pharmacyEmployeeRepository;
     private final IEmailService emailService;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
 
     private final Logger log = LoggerFactory.getLogger(LeaveDaysRequestService.class);
 
@@ -39,12 +42,14 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
     public LeaveDaysRequestService(ILeaveDaysRequestRepository leaveDaysRequestRepository,
                                    IAppointmentRepository appointmentRepository,
                                    IEmploymentContractRepository employmentContractRepository,
-                                   IPharmacyEmployeeRepository pharmacyEmployeeRepository, IEmailService emailService) {
+                                   IPharmacyEmployeeRepository pharmacyEmployeeRepository, IEmailService emailService,
+                                   IEmployeeAvailabilityCalendar availabilityCalendar) {
         this.leaveDaysRequestRepository = leaveDaysRequestRepository;
         this.appointmentRepository = appointmentRepository;
         this.employmentContractRepository = employmentContractRepository;
         this.pharmacyEmployeeRepository = pharmacyEmployeeRepository;
         this.emailService = emailService;
+        this.availabilityCalendar = availabilityCalendar;
     }
 
     @Override
@@ -52,6 +57,13 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
         return leaveDaysRequestRepository;
     }
 
+    @Override
+    public void delete(Long id) {
+        var request = get(id);
+        request.setActive(false);
+        availabilityCalendar.leaveDaysRequestChanged(request);
+    }
+
     @Override
     public Page<LeaveDaysRequest> getPendingPharmacistsRequest(Pharmacy pharmacy, Pageable pageable) {
         return leaveDaysRequestRepository.getPendingPharmacistsRequest(pharmacy.getId(), pageable);
@@ -91,8 +103,22 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
     public LeaveDaysRequest createLeaveDaysRequest(Long employeeId, LocalDate from, LocalDate to) {
         var pharmacyEmployee = pharmacyEmployeeRepository.findById(employeeId).orElseThrow(
                 () -> new BusinessException("Employee with id  " + employeeId + " does not exist"));
+        // Appointments and leave requests of the employee are written under the locks of all of their contracts.
+        // The calendar rejects obvious conflicts without a query, the database checks see changes made on other instances.
+        employmentContractRepository.getEmployeeContractsForUpdate(employeeId);
+        var fromTime = from.atStartOfDay();
+        var toTime = to.plusDays(1).atStartOfDay();
+        if (availabilityCalendar.isBusy(employeeId, fromTime, toTime)
+                || appointmentRepository.countBusyAppointmentsForEmployeeInTime(employeeId, fromTime, toTime) > 0) {
+            throw new BusinessException("Leave dates are overlapping with other appointment!");
+        }
+        if (availabilityCalendar.isOnLeave(employeeId, fromTime, toTime)
+                || !leaveDaysRequestRepository.getBlockingLeaveDaysStatusesForEmployee(employeeId, from, to).isEmpty()) {
+            throw new BusinessException("Request is overlapping with another request!");
+        }
         var leaveDaysRequest = new LeaveDaysRequest(from, to, pharmacyEmployee, LeaveDaysRequestStatus.PENDING);
         save(leaveDaysRequest);
+        availabilityCalendar.leaveDaysRequestChanged(leaveDaysRequest);
         return leaveDaysRequest;
     }
 
@@ -107,12 +133,15 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
     }
 
     @Override
-    public void rejectPendingStartedLeaveDaysRequests() {
-        leaveDaysRequestRepository.getStartedPendingRequestsStream(LeaveDaysRequestStatus.PENDING, LocalDate.now()).forEach(req -> {
+    public int rejectPendingStartedLeaveDaysRequests(int limit) {
+        var requests = leaveDaysRequestRepository.getStartedPendingRequests(LeaveDaysRequestStatus.PENDING, LocalDate.now(), PageRequest.of(0, limit));
+        requests.forEach(req -> {
             req.setLeaveDaysRequestStatus(LeaveDaysRequestStatus.REJECTED);
             req.setRejection(new Rejection("Your request for leave has expired and thus has been rejected automatically."));
+            availabilityCalendar.leaveDaysRequestChanged(req);
             emailService.notifyEmployeeAboutLeaveRequestResponse(req);
         });
+        return requests.size();
     }
 
     private LeaveDaysRequest respond(LeaveDaysRequest request, Boolean accepted, String rejectionReason) {
@@ -124,6 +153,7 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
             throw new BusinessException("Leave request already has response.");
         }
         if (Boolean.TRUE.equals(accepted)) {
+            employmentContractRepository.getEmployeeContractsForUpdate(request.getEmployee().getId());
             // Check if employee has booked appointments at that time
             appointmentRepository.getAppointmentsForEmployeePerson(request.getEmployee().getId(), request.getFrom().atStartOfDay(), request.getTo().plusDays(1).atStartOfDay())
                     .findAny().ifPresent(appointment -> {
@@ -134,6 +164,7 @@ public class LeaveDaysRequestService extends JPAService<LeaveDaysRequest> implem
             request.setLeaveDaysRequestStatus(LeaveDaysRequestStatus.REJECTED);
             request.setRejection(new Rejection(rejectionReason));
         }
+        availabilityCalendar.leaveDaysRequestChanged(request);
         log.info("Finished respond method...");
         return request;
     }
@@ -4,20 +4,24 @@ import com.mrsisa.pharmacy.domain.entities.MedicinePurchase;
 import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.domain.valueobjects.MedicineReservationItem;
 import com.mrsisa.pharmacy.repository.IMedicinePurchaseRepository;
+import com.mrsisa.pharmacy.service.IIncomeRollupService;
 import com.mrsisa.pharmacy.service.IMedicinePurchaseService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.List;
 
 @Service
 public class MedicinePurchaseService extends JPAService<MedicinePurchase> implements IMedicinePurchaseService {
     private final IMedicinePurchaseRepository medicinePurchaseRepository;
+    private final IIncomeRollupService incomeRollupService;
 
     @Autowired
-    public MedicinePurchaseService(IMedicinePurchaseRepository medicinePurchaseRepository) {
+    public MedicinePurchaseService(IMedicinePurchaseRepository medicinePurchaseRepository, IIncomeRollupService incomeRollupService) {
         this.medicinePurchaseRepository = medicinePurchaseRepository;
+        this.incomeRollupService = incomeRollupService;
     }
 
     @Override
@@ -31,5 +35,6 @@ public class MedicinePurchaseService extends JPAService<MedicinePurchase> implem
         var medicinePurchase = new MedicinePurchase(medicineReservationItem.getQuantity(),
                 medicineReservationItem.getPrice(), pharmacy, LocalDate.now(), medicineReservationItem.getMedicine());
         medicinePurchaseRepository.save(medicinePurchase);
+        incomeRollupService.addMedicinePurchases(List.of(medicinePurchase));
     }
 }
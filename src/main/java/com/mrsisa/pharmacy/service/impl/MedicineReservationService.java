@@ -5,7 +5,9 @@ import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
 import com.mrsisa.pharmacy.domain.valueobjects.MedicineReservationItem;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.repository.*;
+import com.mrsisa.pharmacy.service.IIncomeRollupService;
 import com.mrsisa.pharmacy.service.IMedicineReservationService;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -18,6 +20,8 @@ import org.springframework.web.server.ResponseStatusException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -28,18 +32,23 @@ public class MedicineReservationService extends JPAService<MedicineReservation>
     private final IMedicineRepository medicineRepository;
     private final IPharmacyRepository pharmacyRepository;
     private final IMedicinePurchaseRepository medicinePurchaseRepository;
+    private final IIncomeRollupService incomeRollupService;
+    private final IStockPriceResolver stockPriceResolver;
 
     @Autowired
     public MedicineReservationService(IMedicineReservationRepository medicineReservationRepository,
                                       IMedicineStockRepository medicineStockRepository, IPatientRepository patientRepository,
                                       IMedicineRepository medicineRepository, IPharmacyRepository pharmacyRepository,
-                                      IMedicinePurchaseRepository medicinePurchaseRepository) {
+                                      IMedicinePurchaseRepository medicinePurchaseRepository, IIncomeRollupService incomeRollupService,
+                                      IStockPriceResolver stockPriceResolver) {
         this.medicineReservationRepository = medicineReservationRepository;
         this.medicineStockRepository = medicineStockRepository;
         this.patientRepository = patientRepository;
         this.medicineRepository = medicineRepository;
         this.pharmacyRepository = pharmacyRepository;
         this.medicinePurchaseRepository = medicinePurchaseRepository;
+        this.incomeRollupService = incomeRollupService;
+        this.stockPriceResolver = stockPriceResolver;
     }
 
     @Override
@@ -74,13 +83,17 @@ public class MedicineReservationService extends JPAService<MedicineReservation>
         }
 
         var patient = medicineReservation.getPatient();
+        List<MedicinePurchase> purchases = new ArrayList<>();
         medicineReservation.getReservedMedicines().forEach(item ->{
             var medicinePurchase = new MedicinePurchase(item.getQuantity(),
                     item.getPrice(), medicineReservation.getPharmacy(), LocalDate.now(), item.getMedicine());
             medicinePurchaseRepository.save(medicinePurchase);
+            purchases.add(medicinePurchase);
             patient.addPoints(item.getMedicine().getPoints() * item.getQuantity());
         });
 
+        incomeRollupService.addMedicinePurchases(purchases);
+
         patientRepository.save(patient);
         medicineReservation.setReservationStatus(ReservationStatus.PICKED);
 
@@ -125,7 +138,7 @@ public class MedicineReservationService extends JPAService<MedicineReservation>
         stock.setQuantity(stock.getQuantity() - quantity);
 
         double discount = (100 - patient.getPatientCategory().getDiscount()) / 100.0;
-        double stockItemPrice = Math.round(stock.getCurrentPrice() * discount * 100.0) / 100.0;
+        double stockItemPrice = Math.round(stockPriceResolver.getUncachedEffectivePrice(stock, LocalDate.now()) * discount * 100.0) / 100.0;
         Double price = stockItemPrice * quantity;
 
         var newReservation = new MedicineReservation(
@@ -208,4 +221,20 @@ public class MedicineReservationService extends JPAService<MedicineReservation>
         }
         reservation.setReservationStatus(ReservationStatus.CANCELED);
     }
+
+    // penalties and restored quantities are applied by a few set based statements, rows are locked in id order
+    @Override
+    public int expireReservations(LocalDateTime now, int shard, int shards, int limit) {
+        var reservationIds = medicineReservationRepository.lockExpiredReservationIds(ReservationStatus.RESERVED.ordinal(), now, shard, shards, limit);
+        if (reservationIds.isEmpty()) {
+            return 0;
+        }
+        var patientIds = patientRepository.lockReservationPatients(reservationIds);
+        patientRepository.addReservationPenalties(reservationIds);
+        patientRepository.incrementVersions(patientIds);
+        medicineStockRepository.lockReservedStocks(reservationIds);
+        medicineStockRepository.restoreReservedQuantities(reservationIds);
+        medicineReservationRepository.updateReservationStatus(reservationIds, ReservationStatus.EXPIRED);
+        return reservationIds.size();
+    }
 }
@@ -1,12 +1,12 @@
 package com.mrsisa.pharmacy.service.impl;
 
 import com.mrsisa.pharmacy.domain.entities.*;
-import com.mrsisa.pharmacy.domain.enums.PromotionStatus;
 import com.mrsisa.pharmacy.domain.valueobjects.MedicineOrderInfo;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.exception.NotFoundException;
 import com.mrsisa.pharmacy.repository.*;
 import com.mrsisa.pharmacy.service.IMedicineStockService;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +33,7 @@ public class MedicineStockService extends JPAService<MedicineStock> implements I
     private final IOrderItemRepository orderItemRepository;
     private final IPatientRepository patientRepository;
     private final IPromotionItemRepository promotionItemRepository;
+    private final IStockPriceResolver stockPriceResolver;
 
     private final Logger log = LoggerFactory.getLogger(MedicineStockService.class);
 
@@ -43,7 +44,8 @@ public class MedicineStockService extends JPAService<MedicineStock> implements I
                                 IOrderRepository orderRepository,
                                 IPharmacyRepository pharmacyRepository,
                                 IOrderItemRepository orderItemRepository,
-                                IPatientRepository patientRepository, IPromotionItemRepository promotionItemRepository) {
+                                IPatientRepository patientRepository, IPromotionItemRepository promotionItemRepository,
+                                IStockPriceResolver stockPriceResolver) {
         this.medicineStockRepository = medicineStockRepository;
         this.medicineReservationRepository = medicineReservationRepository;
         this.stockPriceRepository = stockPriceRepository;
@@ -52,6 +54,7 @@ public class MedicineStockService extends JPAService<MedicineStock> implements I
         this.orderItemRepository = orderItemRepository;
         this.patientRepository = patientRepository;
         this.promotionItemRepository = promotionItemRepository;
+        this.stockPriceResolver = stockPriceResolver;
     }
 
     @Override
@@ -144,6 +147,7 @@ public class MedicineStockService extends JPAService<MedicineStock> implements I
         stock.addPriceTag(new StockPrice(price, false, stock));
         pharmacy.getMedicineStocks().add(stock);
         save(stock);
+        stockPriceResolver.evict(pharmacyId);
         // Find all the order where this medicine is considered as new
         Stream<MedicineOrderInfo> orderItems = orderItemRepository.getItemsWithMedicine(pharmacyId, medicine.getId());
         orderItems.forEach(item -> {
@@ -177,13 +181,14 @@ public class MedicineStockService extends JPAService<MedicineStock> implements I
     public MedicineStock updateStock(Long pharmacyId, Long stockId, Double newPrice) {
         var medicineStock = getStockInPharmacy(pharmacyId, stockId);
         // Check if stock is currently on promotion
-        promotionItemRepository.getItemsWithMedicineInPharmacyStream(pharmacyId, medicineStock.getMedicine().getId(), PromotionStatus.ACTIVE, LocalDate.now()).findAny().ifPresent(item -> {
+        promotionItemRepository.getItemsWithMedicineInPharmacyStream(pharmacyId, medicineStock.getMedicine().getId(), LocalDate.now()).findAny().ifPresent(item -> {
             throw new BusinessException("Medicine is already on the promotion and it's price can't be updated.");
         });
         // Remove current active price
         stockPriceRepository.findActiveForStock(stockId).ifPresent(PriceTag::deprecate);
         medicineStock.addPriceTag(new StockPrice(newPrice, false, medicineStock));
         save(medicineStock);
+        stockPriceResolver.evict(pharmacyId);
         return medicineStock;
     }
 
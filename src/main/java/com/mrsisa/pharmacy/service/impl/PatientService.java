@@ -2,16 +2,18 @@ package com.mrsisa.pharmacy.service.impl;
 
 import com.mrsisa.pharmacy.domain.entities.*;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
-import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
 import com.mrsisa.pharmacy.domain.valueobjects.Address;
-import com.mrsisa.pharmacy.domain.valueobjects.MedicineReservationItem;
 import com.mrsisa.pharmacy.domain.valueobjects.RecipeMedicineInfo;
 import com.mrsisa.pharmacy.dto.medicine.MedicineQRCodeReservationItemDTO;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.repository.*;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
+import com.mrsisa.pharmacy.service.IIncomeRollupService;
 import com.mrsisa.pharmacy.service.IPatientService;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
@@ -23,9 +25,9 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -41,10 +43,12 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
     private final IRecipeRepository recipeRepository;
     private final IMedicineStockRepository stockRepository;
     private final IMedicinePurchaseRepository purchaseRepository;
-    private final IMedicineReservationRepository medicineReservationRepository;
     private final IAppointmentRepository appointmentRepository;
     private final IVerificationTokenRepository verificationTokenRepository;
     private final IMedicineStockRepository medicineStockRepository;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
+    private final IIncomeRollupService incomeRollupService;
+    private final IStockPriceResolver stockPriceResolver;
 
 
     @Autowired
@@ -53,8 +57,10 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
                           IPatientCategoryRepository categoryRepository, IUserRepository userRepository,
                           IPharmacyRepository pharmacyRepository, IRecipeRepository recipeRepository,
                           IMedicineStockRepository stockRepository, IMedicinePurchaseRepository purchaseRepository,
-                          IMedicineReservationRepository medicineReservationRepository, IAppointmentRepository appointmentRepository,
-                          IVerificationTokenRepository verificationTokenRepository, IMedicineStockRepository medicineStockRepository) {
+                          IAppointmentRepository appointmentRepository,
+                          IVerificationTokenRepository verificationTokenRepository, IMedicineStockRepository medicineStockRepository,
+                          IEmployeeAvailabilityCalendar availabilityCalendar, IIncomeRollupService incomeRollupService,
+                          IStockPriceResolver stockPriceResolver) {
         this.patientRepository = patientRepository;
         this.patientCategoryRepository = patientCategoryRepository;
         this.medicineRepository = medicineRepository;
@@ -65,10 +71,12 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
         this.recipeRepository = recipeRepository;
         this.stockRepository = stockRepository;
         this.purchaseRepository = purchaseRepository;
-        this.medicineReservationRepository = medicineReservationRepository;
         this.appointmentRepository = appointmentRepository;
         this.verificationTokenRepository = verificationTokenRepository;
         this.medicineStockRepository = medicineStockRepository;
+        this.availabilityCalendar = availabilityCalendar;
+        this.incomeRollupService = incomeRollupService;
+        this.stockPriceResolver = stockPriceResolver;
     }
 
     @Override
@@ -211,6 +219,7 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
         var pharmacy = optionalPharmacy.get();
         var recipe = new Recipe(LocalDateTime.now(), false, patient, pharmacy);
         var price = 0.0;
+        List<MedicinePurchase> purchases = new ArrayList<>();
         for (var item : medicines) {
             var stock = this.stockRepository.getMedicineInPharmacy(pharmacyId, item.getMedicineId()).orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Medicine with id " + item.getMedicineId() + DOES_NOT_EXIST_ENDING));
             Optional<Medicine> optionalMedicine = this.medicineRepository.getMedicineAllergyByMedicineIdAndPatientId(item.getMedicineId(), patientId);
@@ -224,12 +233,14 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
             stock.setQuantity(stock.getQuantity() - item.getQuantity());
             double discount = (double) (100 - patient.getPatientCategory().getDiscount()) / 100;
 
-            double recipeItemPrice = Math.round(stock.getCurrentPrice() * discount * 100.0) / 100.0;
+            double recipeItemPrice = Math.round(stockPriceResolver.getUncachedEffectivePrice(stock, LocalDate.now()) * discount * 100.0) / 100.0;
             price += item.getQuantity() * recipeItemPrice;
             recipe.getReservedMedicines().add(new RecipeMedicineInfo(recipe, item.getQuantity(), item.getTherapyDays(), stock.getMedicine(), recipeItemPrice));
             var purchase = new MedicinePurchase(item.getQuantity(), recipeItemPrice, pharmacy, LocalDate.now(), stock.getMedicine());
             this.purchaseRepository.save(purchase);
+            purchases.add(purchase);
         }
+        this.incomeRollupService.addMedicinePurchases(purchases);
         this.update(patient);
         recipe.setPrice(price);
         this.recipeRepository.save(recipe);
@@ -259,13 +270,20 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
         var a = this.appointmentRepository.getAppointmentByIdAndActiveTrue(appointmentId)
                 .orElseThrow(() -> new BusinessException("Appointment with id  " + appointmentId + " does not exist"));
         a.setAppointmentStatus(AppointmentStatus.MISSED);
+        availabilityCalendar.appointmentChanged(a);
         patient.setNumPenalties(patient.getNumPenalties() + 1);
     }
 
+    // only patients which have penalties are locked and written, the version is raised like on any other change
     @Override
-    @Transactional(rollbackFor = ResponseStatusException.class)
-    public void removeAllPenalties() {
-        patientRepository.findPatientsByActiveTrue().forEach(p -> p.setNumPenalties(0));
+    @Transactional
+    public List<Long> resetPenalties(Long afterId, int limit) {
+        var patientIds = patientRepository.lockPenalizedPatients(afterId, limit);
+        if (!patientIds.isEmpty()) {
+            patientRepository.resetPenalties(patientIds);
+            patientRepository.incrementVersions(patientIds);
+        }
+        return patientIds;
     }
 
     @Override
@@ -274,54 +292,21 @@ public class PatientService extends JPAService<Patient> implements IPatientServi
                 .orElseThrow(() -> new UsernameNotFoundException("Invalid username: " + username));
     }
 
-    @Override
-    @Transactional(rollbackFor = ResponseStatusException.class)
-    public void addPenalties() {
-
-        // Add penalties for reservations that were not picked up
-        // optimistic lock
-        Set<MedicineReservation> expiredReservations =
-                this.medicineReservationRepository.getMedicineReservationsBeforeDateTime(
-                        ReservationStatus.RESERVED, LocalDateTime.now());
-        expiredReservations.parallelStream().forEach(r -> {
-            // optimistic lock for patient
-            var patient = this.patientRepository.findActivePatientUnlocked(r.getPatient().getId(), true);
-            patient.setNumPenalties(patient.getNumPenalties() + 1);
-
-            // optimistic lock for reservation
-            r.setReservationStatus(ReservationStatus.EXPIRED);
-
-            // Restore quantity for pharmacy medicine stock
-            for (MedicineReservationItem mri :
-                    r.getReservedMedicines()) {
-
-                // pessimistic lock for stock
-                Optional<MedicineStock> stock = this.medicineStockRepository.getByMedicineCodeForPharmacy(
-                        mri.getMedicine().getCode().toLowerCase(), r.getPharmacy().getId());
-
-                stock.ifPresent(medicineStock -> medicineStock.setQuantity(medicineStock.getQuantity() + mri.getQuantity()));
-
-                this.medicineStockRepository.save(stock.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                        "Medicine stock no longer exists!")));
-            }
-
-        });
-    }
-
     @Override
     public Page<Pharmacy> getSubscriptionsForPatient(Long id, Pageable pageable) {
         return this.pharmacyRepository.getSubscriptionsForPatient(id, pageable);
     }
 
     @Override
-    public void deleteUnverifiedUsers() {
-        List<VerificationToken> verificationTokens = this.verificationTokenRepository.getExpiredTokens();
+    public int deleteUnverifiedUsers(int limit) {
+        List<VerificationToken> verificationTokens = this.verificationTokenRepository.getExpiredTokens(PageRequest.of(0, limit));
         for (var token : verificationTokens) {
             Long patientId = token.getPatient().getId();
             Long tokenId = token.getId();
             this.verificationTokenRepository.deleteVerificationTokenById(tokenId);
             this.patientRepository.deleteById(patientId);
         }
+        return verificationTokens.size();
     }
 
     @Override
@@ -9,6 +9,7 @@ import com.mrsisa.pharmacy.domain.valueobjects.WorkingDay;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.exception.NotFoundException;
 import com.mrsisa.pharmacy.repository.*;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
 import com.mrsisa.pharmacy.service.IPharmacyEmployeeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -34,13 +35,15 @@ public class PharmacyEmployeeService extends JPAService<PharmacyEmployee> implem
     private final IUserRepository userRepository;
     private final IPatientRepository patientRepository;
     private final IReviewRepository reviewRepository;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
 
     @Autowired
     public PharmacyEmployeeService(IPharmacyEmployeeRepository pharmacyEmployeeRepository,
                                    IAuthorityRepository authorityRepository,
                                    IEmploymentContractRepository employmentContractRepository,
                                    IAppointmentRepository appointmentRepository, IUserRepository userRepository,
-                                   IPatientRepository patientRepository, IReviewRepository reviewRepository) {
+                                   IPatientRepository patientRepository, IReviewRepository reviewRepository,
+                                   IEmployeeAvailabilityCalendar availabilityCalendar) {
         this.pharmacyEmployeeRepository = pharmacyEmployeeRepository;
         this.authorityRepository = authorityRepository;
         this.employmentContractRepository = employmentContractRepository;
@@ -48,6 +51,7 @@ public class PharmacyEmployeeService extends JPAService<PharmacyEmployee> implem
         this.userRepository = userRepository;
         this.patientRepository = patientRepository;
         this.reviewRepository = reviewRepository;
+        this.availabilityCalendar = availabilityCalendar;
     }
 
     @Override
@@ -95,6 +99,7 @@ public class PharmacyEmployeeService extends JPAService<PharmacyEmployee> implem
         dermatologist.getContracts().add(contract);
         pharmacy.getEmployees().add(contract);
         employmentContractRepository.save(contract);
+        availabilityCalendar.evict(dermatologist.getId());
         return dermatologist;
     }
 
@@ -133,6 +138,7 @@ public class PharmacyEmployeeService extends JPAService<PharmacyEmployee> implem
                 appointment.setActive(false);
             }
         });
+        availabilityCalendar.evict(contract.getPharmacyEmployee().getId());
     }
 
     private void throwIfCantFireEmployee(EmploymentContract employmentContract) {
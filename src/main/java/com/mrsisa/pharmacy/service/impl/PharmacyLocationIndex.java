@@ -0,0 +1,210 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.aggregates.PharmacyCoordinates;
+import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.service.IPharmacyLocationIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/*
+In-memory grid index over pharmacy coordinates. The globe is split into square cells of
+cellDegrees x cellDegrees, a distance search only visits the cells covered by the bounding box
+of the search circle and then applies the exact great-circle distance to the candidates.
+Local changes are applied once their transaction commits, the whole index is rebuilt periodically
+so pharmacies registered or moved on other instances show up as well.
+ */
+@Service
+public class PharmacyLocationIndex implements IPharmacyLocationIndex {
+    // same kilometers-per-degree constant as IPharmacyRepository.HAVERSINE_FORMULA
+    private static final double KM_PER_DEGREE = 111.045d;
+
+    private final IPharmacyRepository pharmacyRepository;
+    private final double cellDegrees;
+    private final int longitudeCells;
+
+    // searches read the current grid without locking, a rebuild swaps in a complete new one
+    private volatile Grid grid;
+
+    private final Logger log = LoggerFactory.getLogger(PharmacyLocationIndex.class);
+
+    @Autowired
+    public PharmacyLocationIndex(IPharmacyRepository pharmacyRepository,
+                                 @Value("${pharmacy.location-index.cell-degrees:0.5}") double cellDegrees) {
+        this.pharmacyRepository = pharmacyRepository;
+        this.cellDegrees = cellDegrees;
+        this.longitudeCells = (int) Math.ceil(360d / cellDegrees);
+    }
+
+    @Override
+    public void put(Long pharmacyId, Double latitude, Double longitude) {
+        afterCommit(() -> putInternal(new PharmacyCoordinates(pharmacyId, latitude, longitude)));
+    }
+
+    @Override
+    public void remove(Long pharmacyId) {
+        afterCommit(() -> removeInternal(pharmacyId));
+    }
+
+    @Override
+    public List<Long> findWithinDistance(Double latitude, Double longitude, Double distance) {
+        var current = getGrid();
+        List<PharmacyCoordinates> candidates = getCandidates(current, latitude, longitude, distance);
+        Map<Long, Double> distances = new HashMap<>();
+        for (PharmacyCoordinates candidate : candidates) {
+            double candidateDistance = distance(latitude, longitude, candidate.getLatitude(), candidate.getLongitude());
+            if (candidateDistance <= distance) {
+                distances.put(candidate.getPharmacyId(), candidateDistance);
+            }
+        }
+        List<Long> result = new ArrayList<>(distances.keySet());
+        result.sort(Comparator.comparing(distances::get));
+        return result;
+    }
+
+    // the lock is held while the pharmacies are read, so a change committed meanwhile is applied to the new grid
+    @Override
+    @Scheduled(initialDelayString = "${pharmacy.location-index.refresh-ms:60000}", fixedDelayString = "${pharmacy.location-index.refresh-ms:60000}")
+    public synchronized void rebuild() {
+        var rebuilt = new Grid();
+        pharmacyRepository.getActivePharmacyCoordinates().forEach(entry -> rebuilt.put(entry, this::cellKey));
+        grid = rebuilt;
+        log.debug("Pharmacy location index built with {} pharmacies.", rebuilt.coordinates.size());
+    }
+
+    private Grid getGrid() {
+        var current = grid;
+        if (current == null) {
+            synchronized (this) {
+                if (grid == null) {
+                    rebuild();
+                }
+                current = grid;
+            }
+        }
+        return current;
+    }
+
+    // a rolled back change never reaches the index
+    private void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    private List<PharmacyCoordinates> getCandidates(Grid current, double latitude, double longitude, double distance) {
+        double latitudeDelta = distance / KM_PER_DEGREE;
+        double cosine = Math.cos(Math.toRadians(latitude));
+        double longitudeDelta = cosine > 0 ? distance / (KM_PER_DEGREE * cosine) : 360d;
+
+        int fromLatitudeCell = latitudeCell(Math.max(-90d, latitude - latitudeDelta));
+        int toLatitudeCell = latitudeCell(Math.min(90d, latitude + latitudeDelta));
+        int longitudeSpan = longitudeDelta >= 180d ? longitudeCells
+                : Math.min(longitudeCells, longitudeCell(longitude + longitudeDelta) - longitudeCell(longitude - longitudeDelta) + 1);
+        // when the box covers more cells than there are pharmacies, scanning everything is cheaper
+        if ((long) (toLatitudeCell - fromLatitudeCell + 1) * longitudeSpan > current.coordinates.size()) {
+            return new ArrayList<>(current.coordinates.values());
+        }
+
+        int fromLongitudeCell = longitudeCell(longitude - longitudeDelta);
+        List<PharmacyCoordinates> candidates = new ArrayList<>();
+        for (int latCell = fromLatitudeCell; latCell <= toLatitudeCell; latCell++) {
+            for (int i = 0; i < longitudeSpan; i++) {
+                // wraps around the antimeridian
+                int lonCell = Math.floorMod(fromLongitudeCell + i, longitudeCells);
+                Set<Long> ids = current.cells.get(cellKey(latCell, lonCell));
+                if (ids == null) {
+                    continue;
+                }
+                ids.forEach(id -> {
+                    var entry = current.coordinates.get(id);
+                    if (entry != null) {
+                        candidates.add(entry);
+                    }
+                });
+            }
+        }
+        return candidates;
+    }
+
+    private synchronized void putInternal(PharmacyCoordinates entry) {
+        var current = getGrid();
+        current.remove(entry.getPharmacyId(), this::cellKey);
+        current.put(entry, this::cellKey);
+    }
+
+    private synchronized void removeInternal(Long pharmacyId) {
+        getGrid().remove(pharmacyId, this::cellKey);
+    }
+
+    private long cellKey(PharmacyCoordinates entry) {
+        return cellKey(latitudeCell(entry.getLatitude()), Math.floorMod(longitudeCell(entry.getLongitude()), longitudeCells));
+    }
+
+    private long cellKey(int latitudeCell, int longitudeCell) {
+        return (long) latitudeCell * longitudeCells + longitudeCell;
+    }
+
+    private int latitudeCell(double latitude) {
+        return (int) Math.floor((latitude + 90d) / cellDegrees);
+    }
+
+    private int longitudeCell(double longitude) {
+        return (int) Math.floor((longitude + 180d) / cellDegrees);
+    }
+
+    // Java version of IPharmacyRepository.HAVERSINE_FORMULA, kept identical so search results do not change
+    private static double distance(double latitude, double longitude, double otherLatitude, double otherLongitude) {
+        double cosine = Math.cos(Math.toRadians(latitude))
+                * Math.cos(Math.toRadians(otherLatitude))
+                * Math.cos(Math.toRadians(longitude) - Math.toRadians(otherLongitude))
+                + Math.sin(Math.toRadians(latitude))
+                * Math.sin(Math.toRadians(otherLatitude));
+        return KM_PER_DEGREE * Math.toDegrees(Math.acos(Math.max(-1.0d, Math.min(1.0d, cosine))));
+    }
+
+    // written only under the index lock, read concurrently by searches
+    private static class Grid {
+        private final Map<Long, PharmacyCoordinates> coordinates = new ConcurrentHashMap<>();
+        private final Map<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+        void put(PharmacyCoordinates entry, ToLongFunction<PharmacyCoordinates> cellKey) {
+            if (entry.getLatitude() == null || entry.getLongitude() == null) {
+                return;
+            }
+            coordinates.put(entry.getPharmacyId(), entry);
+            cells.computeIfAbsent(cellKey.applyAsLong(entry), key -> ConcurrentHashMap.newKeySet()).add(entry.getPharmacyId());
+        }
+
+        void remove(Long pharmacyId, ToLongFunction<PharmacyCoordinates> cellKey) {
+            var previous = coordinates.remove(pharmacyId);
+            if (previous == null) {
+                return;
+            }
+            var key = cellKey.applyAsLong(previous);
+            var ids = cells.get(key);
+            if (ids != null) {
+                ids.remove(pharmacyId);
+                if (ids.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package com.mrsisa.pharmacy.service.impl;
 
 import com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseStatistics;
+import com.mrsisa.pharmacy.domain.entities.Medicine;
 import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.domain.enums.ReportType;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.repository.IMedicinePurchaseRepository;
 import com.mrsisa.pharmacy.repository.IMedicineRepository;
-import com.mrsisa.pharmacy.repository.IMedicineStockRepository;
 import com.mrsisa.pharmacy.service.IPharmacyReportService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.time.LocalDate;
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,13 +25,11 @@ public class PharmacyReportService extends ReportServiceBase implements IPharmac
 
     private final IMedicineRepository medicineRepository;
     private final IMedicinePurchaseRepository medicinePurchaseRepository;
-    private final IMedicineStockRepository medicineStockRepository;
 
     @Autowired
-    public PharmacyReportService(IMedicineRepository medicineRepository, IMedicinePurchaseRepository medicinePurchaseRepository, IMedicineStockRepository medicineStockRepository) {
+    public PharmacyReportService(IMedicineRepository medicineRepository, IMedicinePurchaseRepository medicinePurchaseRepository) {
         this.medicineRepository = medicineRepository;
         this.medicinePurchaseRepository = medicinePurchaseRepository;
-        this.medicineStockRepository = medicineStockRepository;
     }
     @Override
     public List<MedicinePurchaseStatistics> getMedicinePurchaseStatistics(List<Long> medicineIds, Pharmacy pharmacy, LocalDate from, LocalDate to, ReportType reportType) {
@@ -37,38 +38,42 @@ public class PharmacyReportService extends ReportServiceBase implements IPharmac
         if (to.isBefore(from) || to.isEqual(from) || adjuster.getAdjusted(from).isAfter(to)) {
             throw new BusinessException("Invalid time range parameters.");
         }
-        return medicineIds.stream().map(id -> this.getSingleMedicineStatistics(id, pharmacy, from, to, adjuster, extractor)).collect(Collectors.toList());
+        if (medicineIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        var medicines = medicineRepository.findAllByIdInAndActiveTrue(medicineIds).stream()
+                .collect(Collectors.toMap(Medicine::getId, Function.identity()));
+        medicineIds.stream().filter(id -> !medicines.containsKey(id)).findFirst().ifPresent(id -> {
+            throw new BusinessException("Cannot find medicine with id: " + id);
+        });
+        // purchases of all requested medicines are read with one query and the periods are summed in memory
+        Map<Long, NavigableMap<LocalDate, Long>> dailyCounts = new HashMap<>();
+        medicinePurchaseRepository.getDailyMedicinePurchaseCounts(medicineIds, pharmacy.getId(), from, to).forEach(count ->
+                dailyCounts.computeIfAbsent(count.getMedicineId(), id -> new TreeMap<>()).put(count.getDay(), count.getQuantity()));
+        return medicineIds.stream()
+                .map(id -> getSingleMedicineStatistics(medicines.get(id), dailyCounts.getOrDefault(id, Collections.emptyNavigableMap()), from, to, adjuster, extractor))
+                .collect(Collectors.toList());
     }
 
-    public MedicinePurchaseStatistics getSingleMedicineStatistics(Long medicineId, Pharmacy pharmacy, LocalDate from, LocalDate to, ILocalDateAdjuster adjuster, ILabelExtractor extractor) {
-        var medicine = medicineRepository.findByIdAndActiveTrue(medicineId);
-        if (medicine == null) {
-            throw new BusinessException("Cannot find medicine with id: " + medicineId);
-        }
+    private MedicinePurchaseStatistics getSingleMedicineStatistics(Medicine medicine, NavigableMap<LocalDate, Long> dailyCounts, LocalDate from, LocalDate to, ILocalDateAdjuster adjuster, ILabelExtractor extractor) {
         var statistics = new MedicinePurchaseStatistics(medicine.getName());
-        LocalDate upperBound = adjuster.getAdjusted(from);
-        LocalDate lowerBound = from;
-        while (!upperBound.isAfter(to)) {
-            Integer count = medicinePurchaseRepository.getMedicinePurchaseCount(medicineId, pharmacy.getId(), lowerBound, upperBound).orElse(0);
-            String label = extractor.getLabel(lowerBound, upperBound);
-            statistics.addSample(label, count);
-            lowerBound = adjuster.getAdjusted(lowerBound);
-            upperBound = adjuster.getAdjusted(upperBound);
-        }
+        forEachPeriod(from, to, adjuster, extractor, (label, lowerBound, upperBound) ->
+                statistics.addSample(label, (int) sumLong(dailyCounts, lowerBound, upperBound)));
         return statistics;
     }
 
     @Override
-    public MedicinePurchaseStatistics getMedicinePurchaseBarchart(Pharmacy pharmacy, LocalDate from, LocalDate to, ReportType reportType) {
+    public MedicinePurchaseStatistics getMedicinePurchaseBarchart(Pharmacy pharmacy, LocalDate from, LocalDate to, ReportType reportType, Integer top) {
         if (to.isBefore(from) || to.isEqual(from)) {
             throw new BusinessException("Invalid time range parameters.");
         }
+        if (top != null && top < 1) {
+            throw new BusinessException("Number of medicines must be positive.");
+        }
         var statistics = new MedicinePurchaseStatistics();
-        medicineStockRepository.getPharmacyStocksStream(pharmacy.getId()).forEach(stock -> {
-            Integer count = medicinePurchaseRepository.getMedicinePurchaseCount(stock.getMedicine().getId(), pharmacy.getId(), from, to).orElse(0);
-            String label = stock.getMedicine().getName();
-            statistics.addSample(label, count);
-        });
+        var pageable = top == null ? Pageable.unpaged() : PageRequest.of(0, top);
+        medicinePurchaseRepository.getMedicinePurchaseCounts(pharmacy.getId(), from, to, pageable)
+                .forEach(count -> statistics.addSample(count.getMedicineName(), count.getQuantity().intValue()));
         return statistics;
     }
 }
@@ -1,5 +1,7 @@
 package com.mrsisa.pharmacy.service.impl;
 
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch;
 import com.mrsisa.pharmacy.domain.entities.*;
 import com.mrsisa.pharmacy.domain.enums.*;
 import com.mrsisa.pharmacy.domain.valueobjects.Address;
@@ -9,8 +11,13 @@ import com.mrsisa.pharmacy.dto.pharmacy.PharmacyQRSearchDTO;
 import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.exception.NotFoundException;
 import com.mrsisa.pharmacy.repository.*;
+import com.mrsisa.pharmacy.service.IPharmacyLocationIndex;
 import com.mrsisa.pharmacy.service.IPharmacyService;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
+import com.mrsisa.pharmacy.util.PharmacyQRSearchRanker;
+import com.mrsisa.pharmacy.util.PrescriptionSearchCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -24,6 +31,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 @Service
@@ -37,13 +45,24 @@ public class PharmacyService extends JPAService<Pharmacy> implements IPharmacySe
     private final IMedicineReservationRepository medicineReservationRepository;
     private final IRecipeRepository recipeRepository;
     private final IReviewRepository reviewRepository;
+    private final IPharmacyLocationIndex pharmacyLocationIndex;
+    private final IPrescriptionSearchRepository prescriptionSearchRepository;
+    private final IStockPriceResolver stockPriceResolver;
+
+    @Value("${pharmacy.location-index.max-candidates:1000}")
+    private int maxIndexedCandidates;
+
+    @Value("${pharmacy.qr-search.database-ranking-limit:20}")
+    private int databaseRankingLimit;
 
     @Autowired
     public PharmacyService(IPharmacyRepository pharmacyRepository, IAppointmentPriceRepository appointmentPriceRepository,
                            IMedicineStockRepository medicineStockRepository, IPatientRepository patientRepository,
                            IAppointmentRepository appointmentRepository,
                            IMedicineReservationRepository medicineReservationRepository, IRecipeRepository recipeRepository,
-                           IReviewRepository reviewRepository) {
+                           IReviewRepository reviewRepository, IPharmacyLocationIndex pharmacyLocationIndex,
+                           IPrescriptionSearchRepository prescriptionSearchRepository,
+                           IStockPriceResolver stockPriceResolver) {
         this.pharmacyRepository = pharmacyRepository;
         this.appointmentPriceRepository = appointmentPriceRepository;
         this.medicineStockRepository = medicineStockRepository;
@@ -52,6 +71,9 @@ public class PharmacyService extends JPAService<Pharmacy> implements IPharmacySe
         this.medicineReservationRepository = medicineReservationRepository;
         this.recipeRepository = recipeRepository;
         this.reviewRepository = reviewRepository;
+        this.pharmacyLocationIndex = pharmacyLocationIndex;
+        this.prescriptionSearchRepository = prescriptionSearchRepository;
+        this.stockPriceResolver = stockPriceResolver;
     }
 
 
@@ -85,12 +107,20 @@ public class PharmacyService extends JPAService<Pharmacy> implements IPharmacySe
             Double lowGradeParam = lowGrade != null ? lowGrade : 0d;
             Double highGradeParam = highGrade != null ? highGrade : 5d;
             if (latitude == null || longitude == null || distance == null) {
-                latitude = 0.0d;
-                longitude = 0.0d;
-                distance = 99999999.0d;
+                return pharmacyRepository.getPharmaciesSearchFilter(nameParam, cityParam,
+                        lowGradeParam, highGradeParam, pageable);
+            }
+            List<Long> candidateIds = pharmacyLocationIndex.findWithinDistance(latitude, longitude, distance);
+            if (candidateIds.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            // a wide radius would bind every pharmacy id, the database evaluates the distance itself then
+            if (candidateIds.size() > maxIndexedCandidates) {
+                return pharmacyRepository.getPharmaciesSearchFilter(nameParam, cityParam,
+                        lowGradeParam, highGradeParam, latitude, longitude, distance, pageable);
             }
             return pharmacyRepository.getPharmaciesSearchFilter(nameParam, cityParam,
-                    lowGradeParam, highGradeParam, latitude, longitude, distance, pageable);
+                    lowGradeParam, highGradeParam, candidateIds, pageable);
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad sort parameters.");
         }
@@ -102,9 +132,24 @@ public class PharmacyService extends JPAService<Pharmacy> implements IPharmacySe
         var location = new Location(latitude, longitude, new Address(country, city, street, streetNumber, zipCode));
         var pharmacy = new Pharmacy(name, description, location);
         this.save(pharmacy);
+        pharmacyLocationIndex.put(pharmacy.getId(), latitude, longitude);
         return pharmacy;
     }
 
+    @Override
+    public Pharmacy update(Pharmacy entity) {
+        var pharmacy = super.update(entity);
+        var location = pharmacy.getLocation();
+        pharmacyLocationIndex.put(pharmacy.getId(), location.getLatitude(), location.getLongitude());
+        return pharmacy;
+    }
+
+    @Override
+    public void delete(Long id) {
+        super.delete(id);
+        pharmacyLocationIndex.remove(id);
+    }
+
     @Override
     public Pharmacy getByIdWithEmployees(Long pharmacyId) {
         return pharmacyRepository.findByIdWithEmployees(pharmacyId)
@@ -138,57 +183,91 @@ public class PharmacyService extends JPAService<Pharmacy> implements IPharmacySe
     }
 
     @Override
-    public List<PharmacyQRSearchDTO> getPharmaciesWhereMedicinesAreAvailable(List<Long> ids, List<Integer> quantities, List<Integer> days, PatientCategory patientCategory) {
+    public Page<PharmacyQRSearchDTO> getPharmaciesWhereMedicinesAreAvailable(List<Long> ids, List<Integer> quantities, List<Integer> days,
+                                                                             PatientCategory patientCategory, String after,
+                                                                             Pageable pageable) {
         if (ids.size() != quantities.size())
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sizes of ids and quantities lists do not match.");
         if(ids.size() != days.size())
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sizes of ids and days lists do not match.");
-        Set<Long> pharmacyIds = new HashSet<>();
-        Map<Long, PharmacyQRSearchDTO> map = new HashMap<>();
-        List<MedicineStock> allStocks = new ArrayList<>();
-
+        var order = pageable.getSort().stream().findFirst();
+        if (after != null && order.isPresent() && !order.get().getProperty().equals(IPrescriptionSearchRepository.TOTAL_STOCK_PRICE))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Continuing after a total price is only possible when sorting by total price.");
+        PrescriptionSearchCursor cursor;
+        try {
+            cursor = after != null ? PrescriptionSearchCursor.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        // a medicine scanned more than once needs the sum of its quantities in one stock, every entry is still listed
+        Map<Long, List<Integer>> indexes = new LinkedHashMap<>();
+        Map<Long, Integer> requiredQuantities = new LinkedHashMap<>();
         for (var i = 0; i < ids.size(); i++) {
-            Set<Long> tempPharmacyIds = new HashSet<>();
-            List<MedicineStock> stocks = this.medicineStockRepository.getAllStocksForMedicine(ids.get(i), quantities.get(i));
-            allStocks.addAll(stocks);
-            for (var stock : stocks) {
-                Long pharmacyId = stock.getPharmacy().getId();
-                tempPharmacyIds.add(pharmacyId);
-                if (!map.containsKey(pharmacyId))
-                    map.put(pharmacyId, new PharmacyQRSearchDTO(pharmacyId, stock.getPharmacy().getName(),
-                            stock.getPharmacy().getAverageGrade(), stock.getPharmacy().getLocation().getAddress()));
-            }
-            if (tempPharmacyIds.isEmpty())
-                return new ArrayList<>();
-            //ako nije prazan set radim presjek
-            if (!pharmacyIds.isEmpty())
-                pharmacyIds.retainAll(tempPharmacyIds);
-                //ako jeste prazan, samo dodajem sve
-            else
-                pharmacyIds.addAll(tempPharmacyIds);
+            indexes.computeIfAbsent(ids.get(i), medicineId -> new ArrayList<>()).add(i);
+            requiredQuantities.merge(ids.get(i), quantities.get(i), Integer::sum);
         }
-        //micem stock ciji id apoteke nije u setu
-        allStocks = allStocks.stream().filter(medicineStock -> pharmacyIds.contains(medicineStock.getPharmacy()
-                .getId())).collect(Collectors.toList());
+        if (indexes.isEmpty())
+            return Page.empty(pageable);
 
         double discount = (double) (100 - patientCategory.getDiscount()) / 100;
-        allStocks.forEach(stock -> {
-            var pharmacy = stock.getPharmacy();
-            int index = ids.indexOf(stock.getMedicine().getId());
-            map.get(pharmacy.getId()).getMedicineStock()
-                    .add(new MedicineStockQRSearchDTO(stock.getMedicine()
-                            .getId(), stock.getCurrentPrice() * discount, stock.getMedicine().getName(), quantities.get(index), days.get(index)));
-        });
-
-        Map<Long, PharmacyQRSearchDTO> filtered = map.entrySet()
-                .stream()
-                .filter(item -> pharmacyIds.contains(item.getKey()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        var today = LocalDate.now();
+        // every medicine adds a condition to the generated query, long prescriptions are ranked in memory instead,
+        // the query only knows the regular prices so prescriptions with a medicine on promotion are ranked in memory too
+        var effectivePrices = requiredQuantities.size() > databaseRankingLimit
+                || stockPriceResolver.hasRunningPromotions(requiredQuantities.keySet(), today);
+        if (cursor != null && cursor.hasEffectivePrices() != effectivePrices) {
+            // the in-memory ranker can continue a page ranked by the query, the prices are the same without promotions,
+            // but a page ranked in memory cannot be continued by the query once a promotion has started
+            if (!cursor.hasEffectivePrices())
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Prices have changed since the previous page, search again from the first page.");
+            effectivePrices = true;
+        }
+        Page<PrescriptionPharmacyTotal> totals;
+        try {
+            totals = effectivePrices
+                    ? rankPharmaciesInMemory(requiredQuantities, cursor, pageable, today)
+                    : this.prescriptionSearchRepository.getPharmaciesForPrescription(requiredQuantities, cursor, pageable);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bad sort parameters.");
+        }
+        if (totals.isEmpty())
+            return Page.empty(pageable);
 
-        pharmacyIds.forEach(id -> map.get(id).calculateTotalPrice());
+        // only the stocks of the pharmacies on the requested page are loaded, listed with the prices that ranked the page
+        List<Long> pharmacyIds = totals.map(PrescriptionPharmacyTotal::getPharmacyId).getContent();
+        Map<Long, PharmacyQRSearchDTO> map = new HashMap<>();
+        for (var match : this.medicineStockRepository.getStocksForPharmacies(pharmacyIds, indexes.keySet())) {
+            var medicineStocks = map.computeIfAbsent(match.getPharmacyId(), pharmacyId -> new PharmacyQRSearchDTO(pharmacyId,
+                    match.getPharmacyName(), match.getPharmacyAverageGrade(), match.getPharmacyAddress()))
+                    .getMedicineStock();
+            var price = (effectivePrices
+                    ? stockPriceResolver.getEffectivePrice(match.getPharmacyId(), match.getMedicineId(), match.getPrice(), today)
+                    : match.getPrice()) * discount;
+            for (int index : indexes.get(match.getMedicineId()))
+                medicineStocks.add(new MedicineStockQRSearchDTO(match.getMedicineId(), price, match.getMedicineName(),
+                        quantities.get(index), days.get(index)));
+        }
 
+        var rankedByEffectivePrices = effectivePrices;
+        return totals.map(total -> {
+            var pharmacy = map.get(total.getPharmacyId());
+            pharmacy.setTotalStockPrice(total.getTotalPrice() * discount);
+            pharmacy.setCursor(new PrescriptionSearchCursor(total.getTotalCents(), total.getPharmacyId(), rankedByEffectivePrices).encode());
+            return pharmacy;
+        });
+    }
 
-        return new ArrayList<>(filtered.values());
+    private Page<PrescriptionPharmacyTotal> rankPharmaciesInMemory(Map<Long, Integer> requiredQuantities,
+                                                                   PrescriptionSearchCursor after, Pageable pageable,
+                                                                   LocalDate today) {
+        var ranker = new PharmacyQRSearchRanker(requiredQuantities, after, pageable);
+        try (Stream<PrescriptionStockMatch> stocks = this.medicineStockRepository.getStocksForMedicinesStream(requiredQuantities.keySet())) {
+            stocks.forEach(match -> {
+                match.setPrice(stockPriceResolver.getEffectivePrice(match.getPharmacyId(), match.getMedicineId(), match.getPrice(), today));
+                ranker.accept(match);
+            });
+        }
+        return ranker.getPage();
     }
 
     @Override
@@ -0,0 +1,92 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.entities.Promotion;
+import com.mrsisa.pharmacy.exception.NotFoundException;
+import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.repository.IPromotionRepository;
+import com.mrsisa.pharmacy.service.IEmailService;
+import com.mrsisa.pharmacy.service.IPromotionNewsletterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+Fans a new promotion out to the subscribers of its pharmacy without holding up the admin request. Subscribers are
+read in keyset pages of ids and contact data only, the newsletter text is built once and every page is queued in the
+email outbox in its own transaction. Sending speed is then up to the outbox and its rate limit.
+
+The promotion records the last subscriber queued so far, updated in the transaction which queues the page, so a
+fan-out stopped by a restart or a failure is resumed from there by the next resume run. Pages of a promotion are
+queued under its row lock, so an instance resuming a fan-out that is still in progress never queues a page twice.
+ */
+@Service
+public class PromotionNewsletterService implements IPromotionNewsletterService {
+    private final Logger log = LoggerFactory.getLogger(PromotionNewsletterService.class);
+
+    private final IPromotionRepository promotionRepository;
+    private final IPharmacyRepository pharmacyRepository;
+    private final IEmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @Autowired
+    public PromotionNewsletterService(IPromotionRepository promotionRepository, IPharmacyRepository pharmacyRepository,
+                                      IEmailService emailService, TransactionTemplate transactionTemplate,
+                                      @Value("${pharmacy.newsletter.chunk-size:500}") int chunkSize) {
+        this.promotionRepository = promotionRepository;
+        this.pharmacyRepository = pharmacyRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @Async
+    @Override
+    public void sendNewsletter(Long promotionId) {
+        var promotion = promotionRepository.getPromotionWithItems(promotionId)
+                .orElseThrow(() -> new NotFoundException("Cannot find promotion with id: " + promotionId));
+        var newsletterText = emailService.getPromotionNewsletterText(promotion);
+        var queued = 0;
+        int chunk;
+        do {
+            chunk = transactionTemplate.execute(status -> queueNextChunk(promotion, newsletterText));
+            queued += chunk;
+        } while (chunk == chunkSize);
+        log.info("Queued promotion {} for {} subscribers of pharmacy {}", promotionId, queued, promotion.getPharmacy().getId());
+    }
+
+    // a failed newsletter does not hold up the others, it is tried again on the next run
+    @Override
+    public void resumeNewsletters() {
+        promotionRepository.getPromotionsWithPendingNewsletter().forEach(promotionId -> {
+            try {
+                sendNewsletter(promotionId);
+            } catch (RuntimeException exception) {
+                log.error("Resuming the newsletter of promotion {} failed", promotionId, exception);
+            }
+        });
+    }
+
+    // returns the number of subscribers queued, fewer than a chunk once everybody got the newsletter
+    private int queueNextChunk(Promotion promotion, String newsletterText) {
+        var progress = promotionRepository.getPromotionForNewsletter(promotion.getId())
+                .orElseThrow(() -> new NotFoundException("Cannot find promotion with id: " + promotion.getId()));
+        var afterId = progress.getNewsletterAfterPatientId();
+        if (afterId == null) {
+            return 0;
+        }
+        var subscribers = pharmacyRepository.getPromotionSubscribers(promotion.getPharmacy().getId(), afterId,
+                PageRequest.of(0, chunkSize));
+        if (!subscribers.isEmpty()) {
+            emailService.notifySubscribersAboutPromotion(promotion, newsletterText, subscribers);
+        }
+        progress.setNewsletterAfterPatientId(subscribers.size() < chunkSize ? null
+                : subscribers.get(subscribers.size() - 1).getPatientId());
+        return subscribers.size();
+    }
+}
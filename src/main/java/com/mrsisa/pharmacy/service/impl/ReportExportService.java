@@ -0,0 +1,60 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.aggregates.AppointmentExportRow;
+import com.mrsisa.pharmacy.domain.aggregates.MedicinePurchaseExportRow;
+import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
+import com.mrsisa.pharmacy.domain.enums.ExportFormat;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.IMedicinePurchaseRepository;
+import com.mrsisa.pharmacy.service.IReportExportService;
+import com.mrsisa.pharmacy.util.ReportExportWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/*
+Rows are read through a database cursor and written as soon as they arrive. The queries select plain rows instead of
+entities, so nothing accumulates in the persistence context and memory use does not depend on the exported range.
+The transaction has to stay open while the response is written, so these methods are called from the response body.
+ */
+@Service
+@Transactional
+public class ReportExportService implements IReportExportService {
+
+    private final IMedicinePurchaseRepository medicinePurchaseRepository;
+    private final IAppointmentRepository appointmentRepository;
+
+    @Autowired
+    public ReportExportService(IMedicinePurchaseRepository medicinePurchaseRepository, IAppointmentRepository appointmentRepository) {
+        this.medicinePurchaseRepository = medicinePurchaseRepository;
+        this.appointmentRepository = appointmentRepository;
+    }
+
+    @Override
+    public void exportMedicinePurchases(Long pharmacyId, LocalDate from, LocalDate to, ExportFormat format, OutputStream outputStream) throws IOException {
+        try (Stream<MedicinePurchaseExportRow> rows = medicinePurchaseRepository.getMedicinePurchasesForExport(pharmacyId, from, to);
+             var writer = new ReportExportWriter(outputStream, format, "date", "medicineId", "medicineName", "quantity", "price")) {
+            for (Iterator<MedicinePurchaseExportRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                var row = iterator.next();
+                writer.writeRow(row.getDatePurchased(), row.getMedicineId(), row.getMedicineName(), row.getQuantity(), row.getPrice());
+            }
+        }
+    }
+
+    @Override
+    public void exportAppointments(Long pharmacyId, LocalDate from, LocalDate to, ExportFormat format, OutputStream outputStream) throws IOException {
+        try (Stream<AppointmentExportRow> rows = appointmentRepository.getAppointmentsForExport(pharmacyId, AppointmentStatus.TOOK_PLACE, from.atStartOfDay(), to.atStartOfDay());
+             var writer = new ReportExportWriter(outputStream, format, "from", "to", "employeeType", "employeeFirstName", "employeeLastName", "price")) {
+            for (Iterator<AppointmentExportRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                var row = iterator.next();
+                writer.writeRow(row.getFrom(), row.getTo(), row.getEmployeeType().name(), row.getEmployeeFirstName(), row.getEmployeeLastName(), row.getPrice());
+            }
+        }
+    }
+}
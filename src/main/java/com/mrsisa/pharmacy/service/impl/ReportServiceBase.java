@@ -6,6 +6,7 @@ import com.mrsisa.pharmacy.exception.BusinessException;
 import java.time.LocalDate;
 import java.time.temporal.WeekFields;
 import java.util.Locale;
+import java.util.NavigableMap;
 
 public abstract class ReportServiceBase {
 
@@ -17,6 +18,10 @@ public abstract class ReportServiceBase {
         String getLabel(LocalDate from, LocalDate to);
     }
 
+    protected interface IPeriodConsumer {
+        void accept(String label, LocalDate from, LocalDate to);
+    }
+
     protected final ILocalDateAdjuster monthlyAdjuster = time -> time.plusDays(1);
     protected final ILocalDateAdjuster quarterlyAdjuster = time -> time.plusWeeks(1);
     protected final ILocalDateAdjuster annualAdjuster = time -> time.plusMonths(1);
@@ -50,4 +55,23 @@ public abstract class ReportServiceBase {
                 throw new BusinessException("Invalid report type.");
         }
     }
+
+    // periods are anchored at the start of the range, only whole periods which end by the end of the range are reported
+    protected void forEachPeriod(LocalDate from, LocalDate to, ILocalDateAdjuster adjuster, ILabelExtractor extractor, IPeriodConsumer consumer) {
+        LocalDate lowerBound = from;
+        LocalDate upperBound = adjuster.getAdjusted(from);
+        while (!upperBound.isAfter(to)) {
+            consumer.accept(extractor.getLabel(lowerBound, upperBound), lowerBound, upperBound);
+            lowerBound = adjuster.getAdjusted(lowerBound);
+            upperBound = adjuster.getAdjusted(upperBound);
+        }
+    }
+
+    protected static <T extends Number> long sumLong(NavigableMap<LocalDate, T> daily, LocalDate from, LocalDate to) {
+        return daily.subMap(from, true, to, false).values().stream().mapToLong(Number::longValue).sum();
+    }
+
+    protected static <T extends Number> double sumDouble(NavigableMap<LocalDate, T> daily, LocalDate from, LocalDate to) {
+        return daily.subMap(from, true, to, false).values().stream().mapToDouble(Number::doubleValue).sum();
+    }
 }
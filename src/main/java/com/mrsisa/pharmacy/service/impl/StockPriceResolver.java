@@ -0,0 +1,162 @@
+package com.mrsisa.pharmacy.service.impl;
+
+import com.mrsisa.pharmacy.domain.aggregates.PromotionDiscount;
+import com.mrsisa.pharmacy.domain.aggregates.StockPriceVersion;
+import com.mrsisa.pharmacy.domain.entities.MedicineStock;
+import com.mrsisa.pharmacy.repository.IPromotionItemRepository;
+import com.mrsisa.pharmacy.repository.IStockPriceRepository;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
+import com.mrsisa.pharmacy.util.PriceTimeline;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/*
+Effective prices of medicine stocks computed from the regular price history and the promotions of their pharmacy.
+Both are loaded once per pharmacy into timelines by medicine, so a price on any day is two binary searches and a
+promotion takes effect exactly on its first day and ends after its last one without anything updating the stocks.
+Services changing prices or promotions evict their pharmacy, entries also expire after a while so changes made by
+other instances are eventually picked up. Prices a patient is charged must not wait for that, so they are read from
+the database for the one stock instead of from the cache.
+ */
+@Service
+public class StockPriceResolver implements IStockPriceResolver {
+    private final IStockPriceRepository stockPriceRepository;
+    private final IPromotionItemRepository promotionItemRepository;
+    private final long timeToLiveMillis;
+
+    private final Map<Long, PharmacyPrices> prices = new ConcurrentHashMap<>();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public StockPriceResolver(IStockPriceRepository stockPriceRepository, IPromotionItemRepository promotionItemRepository,
+                              @Value("${pharmacy.price-cache.ttl-seconds:300}") long timeToLiveSeconds) {
+        this.stockPriceRepository = stockPriceRepository;
+        this.promotionItemRepository = promotionItemRepository;
+        this.timeToLiveMillis = timeToLiveSeconds * 1000;
+    }
+
+    @Override
+    public Double getEffectivePrice(MedicineStock stock, LocalDate date) {
+        return getEffectivePrice(stock.getPharmacy().getId(), stock.getMedicine().getId(), stock.getCurrentPrice(), date);
+    }
+
+    @Override
+    public Double getEffectivePrice(Long pharmacyId, Long medicineId, Double currentPrice, LocalDate date) {
+        var pharmacyPrices = getPrices(pharmacyId);
+        return applyDiscount(pharmacyPrices.getRegularPrice(medicineId, currentPrice, date), pharmacyPrices.getDiscountFactor(medicineId, date));
+    }
+
+    @Override
+    public Double getUncachedEffectivePrice(MedicineStock stock, LocalDate date) {
+        var regularPrice = regularTimeline(stockPriceRepository.getPriceVersionsForStock(stock.getId()))
+                .valueAt(date, stock.getCurrentPrice());
+        var discountFactor = discountTimeline(promotionItemRepository.getPromotionDiscountsForMedicineInPharmacy(
+                stock.getPharmacy().getId(), stock.getMedicine().getId())).valueAt(date, 1.0);
+        return applyDiscount(regularPrice, discountFactor);
+    }
+
+    @Override
+    public Double getRegularPrice(MedicineStock stock, LocalDate date) {
+        return getPrices(stock.getPharmacy().getId()).getRegularPrice(stock.getMedicine().getId(), stock.getCurrentPrice(), date);
+    }
+
+    @Override
+    public boolean hasRunningPromotions(Collection<Long> medicineIds, LocalDate date) {
+        return !medicineIds.isEmpty() && promotionItemRepository.countRunningPromotionItems(medicineIds, date) > 0;
+    }
+
+    // evicted again once the transaction completes so a reload in between cannot keep the old prices
+    @Override
+    public void evict(Long pharmacyId) {
+        evictions.incrementAndGet();
+        prices.remove(pharmacyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictions.incrementAndGet();
+                    prices.remove(pharmacyId);
+                }
+            });
+        }
+    }
+
+    // loaded outside of the map so lookups of other pharmacies do not wait for the queries, a load which overlapped an
+    // eviction is returned to its caller but not cached
+    private PharmacyPrices getPrices(Long pharmacyId) {
+        var cached = prices.get(pharmacyId);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+        var generation = evictions.get();
+        var loaded = load(pharmacyId);
+        prices.compute(pharmacyId, (id, current) -> {
+            if (current != null && !current.isExpired()) {
+                return current;
+            }
+            return evictions.get() == generation ? loaded : current;
+        });
+        return loaded;
+    }
+
+    private PharmacyPrices load(Long pharmacyId) {
+        Map<Long, List<StockPriceVersion>> versions = stockPriceRepository.getPriceVersionsForPharmacy(pharmacyId).stream()
+                .collect(Collectors.groupingBy(StockPriceVersion::getMedicineId));
+        Map<Long, List<PromotionDiscount>> discounts = promotionItemRepository.getPromotionDiscountsForPharmacy(pharmacyId).stream()
+                .collect(Collectors.groupingBy(PromotionDiscount::getMedicineId));
+        var pharmacyPrices = new PharmacyPrices(System.currentTimeMillis() + timeToLiveMillis);
+        // grouping keeps the order of the query, so the versions of a medicine stay sorted by day
+        versions.forEach((medicineId, medicineVersions) -> pharmacyPrices.regularPrices.put(medicineId, regularTimeline(medicineVersions)));
+        discounts.forEach((medicineId, medicineDiscounts) -> pharmacyPrices.discountFactors.put(medicineId, discountTimeline(medicineDiscounts)));
+        return pharmacyPrices;
+    }
+
+    private static PriceTimeline regularTimeline(List<StockPriceVersion> versions) {
+        return PriceTimeline.ofVersions(versions, StockPriceVersion::getFrom, StockPriceVersion::getPrice);
+    }
+
+    private static PriceTimeline discountTimeline(List<PromotionDiscount> discounts) {
+        return PriceTimeline.ofFactors(discounts, PromotionDiscount::getFrom, PromotionDiscount::getTo, PromotionDiscount::getDiscountFactor);
+    }
+
+    private static Double applyDiscount(double regularPrice, double discountFactor) {
+        return Math.round(regularPrice * discountFactor * 100.0) / 100.0;
+    }
+
+    private static class PharmacyPrices {
+        private final long expiresAt;
+        private final Map<Long, PriceTimeline> regularPrices = new HashMap<>();
+        private final Map<Long, PriceTimeline> discountFactors = new HashMap<>();
+
+        PharmacyPrices(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+
+        // the current price of the stock is its latest regular price, used when the history does not reach back
+        double getRegularPrice(Long medicineId, Double currentPrice, LocalDate date) {
+            var timeline = regularPrices.get(medicineId);
+            return timeline == null ? currentPrice : timeline.valueAt(date, currentPrice);
+        }
+
+        double getDiscountFactor(Long medicineId, LocalDate date) {
+            var timeline = discountFactors.get(medicineId);
+            return timeline == null ? 1.0 : timeline.valueAt(date, 1.0);
+        }
+    }
+}
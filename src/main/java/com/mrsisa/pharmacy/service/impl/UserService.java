@@ -2,7 +2,11 @@ package com.mrsisa.pharmacy.service.impl;
 
 import com.mrsisa.pharmacy.domain.entities.User;
 import com.mrsisa.pharmacy.repository.IUserRepository;
+import com.mrsisa.pharmacy.security.util.AuthenticatedUser;
+import com.mrsisa.pharmacy.security.util.PrincipalCache;
+import com.mrsisa.pharmacy.security.util.TokenRevocationList;
 import com.mrsisa.pharmacy.service.IUserService;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.http.HttpStatus;
@@ -17,10 +21,14 @@ import java.util.Optional;
 @Service
 public class UserService extends JPAService<User> implements IUserService, UserDetailsService {
     private final IUserRepository userRepository;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationList tokenRevocationList;
 
     @Autowired
-    public UserService(IUserRepository userRepository) {
+    public UserService(IUserRepository userRepository, PrincipalCache principalCache, TokenRevocationList tokenRevocationList) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     @Override
@@ -53,15 +61,36 @@ public class UserService extends JPAService<User> implements IUserService, UserD
         }
 
         oldUser.setPassword(newPassword);
+        revokeTokens(oldUser);
 
         return this.userRepository.save(oldUser);
 
     }
 
+    // changed users, e.g. after the first password change, are loaded again by the next request
+    @Override
+    public User save(User user) {
+        principalCache.evict(user.getUsername());
+        return super.save(user);
+    }
+
+    @Override
+    public void delete(Long id) {
+        var user = get(id);
+        super.delete(id);
+        revokeTokens(user);
+    }
+
+    private void revokeTokens(User user) {
+        user.setTokenVersion(user.getTokenVersion() + 1);
+        tokenRevocationList.revoke(user.getId(), user.getTokenVersion());
+        principalCache.evict(user.getUsername());
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         var user = findByUsernameWithAuthorities(username);
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(),
-                user.getAuthorities());
+        return new AuthenticatedUser(user.getId(), Hibernate.getClass(user).getSimpleName(), user.getTokenVersion(),
+                user.getUsername(), user.getPassword(), user.getAuthorities());
     }
 }
@@ -0,0 +1,27 @@
+package com.mrsisa.pharmacy.support;
+
+import com.mrsisa.pharmacy.domain.entities.JobLock;
+import com.mrsisa.pharmacy.dto.job.JobStatusDTO;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+@Component
+public class JobLockToJobStatusDTO extends AbstractConverter<JobLock, JobStatusDTO> {
+    @Override
+    public JobStatusDTO convert(@NonNull JobLock jobLock) {
+        var dto = new JobStatusDTO();
+        dto.setJob(jobLock.getName());
+        dto.setOwner(jobLock.getOwner());
+        // a run whose lease expired without finishing crashed and is taken over by the next instance firing the job
+        dto.setRunning(jobLock.getFinishedAt() == null && jobLock.getLockedUntil().isAfter(LocalDateTime.now()));
+        dto.setScheduledAt(jobLock.getScheduledAt());
+        dto.setStartedAt(jobLock.getStartedAt());
+        dto.setHeartbeatAt(jobLock.getHeartbeatAt());
+        dto.setFinishedAt(jobLock.getFinishedAt());
+        dto.setDurationMillis(jobLock.getDurationMillis());
+        dto.setRowsProcessed(jobLock.getRowsProcessed());
+        return dto;
+    }
+}
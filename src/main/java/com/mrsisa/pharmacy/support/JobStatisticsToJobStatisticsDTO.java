@@ -0,0 +1,22 @@
+package com.mrsisa.pharmacy.support;
+
+import com.mrsisa.pharmacy.domain.aggregates.JobStatistics;
+import com.mrsisa.pharmacy.dto.job.JobStatisticsDTO;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+@Component
+public class JobStatisticsToJobStatisticsDTO extends AbstractConverter<JobStatistics, JobStatisticsDTO> {
+    @Override
+    public JobStatisticsDTO convert(@NonNull JobStatistics statistics) {
+        var dto = new JobStatisticsDTO();
+        dto.setJob(statistics.getJob());
+        dto.setRunning(statistics.getRunning());
+        dto.setLastStartedAt(statistics.getLastStartedAt());
+        dto.setLastDurationMillis(statistics.getLastDurationMillis());
+        dto.setLastRowsProcessed(statistics.getLastRowsProcessed());
+        dto.setRuns(statistics.getRuns());
+        dto.setTotalRowsProcessed(statistics.getTotalRowsProcessed());
+        return dto;
+    }
+}
@@ -1,34 +1,38 @@
 package com.mrsisa.pharmacy.support;
 
 import com.mrsisa.pharmacy.domain.entities.MedicineStock;
-import com.mrsisa.pharmacy.domain.valueobjects.PromotionItem;
 import com.mrsisa.pharmacy.dto.stock.MedicineStockDTO;
-import com.mrsisa.pharmacy.service.IPromotionService;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
+import java.time.LocalDate;
 
 @Component
 public class MedicineStockToMedicineStockDTO extends AbstractConverter<MedicineStock, MedicineStockDTO> implements IConverter<MedicineStock, MedicineStockDTO> {
-    private final IPromotionService promotionService;
+    private final IStockPriceResolver stockPriceResolver;
 
     @Autowired
-    public MedicineStockToMedicineStockDTO(IPromotionService promotionService) {
-        this.promotionService = promotionService;
+    public MedicineStockToMedicineStockDTO(IStockPriceResolver stockPriceResolver) {
+        this.stockPriceResolver = stockPriceResolver;
     }
 
     @Override
     public MedicineStockDTO convert(@NonNull  MedicineStock medicineStock) {
         MedicineStockDTO dto = getModelMapper().map(medicineStock, MedicineStockDTO.class);
-        dto.setTotalDiscount(calculateTotalDiscount(medicineStock));
+        var today = LocalDate.now();
+        var regularPrice = stockPriceResolver.getRegularPrice(medicineStock, today);
+        var effectivePrice = stockPriceResolver.getEffectivePrice(medicineStock, today);
+        dto.setCurrentPrice(effectivePrice);
+        dto.setTotalDiscount(calculateTotalDiscount(regularPrice, effectivePrice));
         return dto;
     }
 
-    private int calculateTotalDiscount(MedicineStock medicineStock) {
-        List<PromotionItem> promotionItems = promotionService.getAllActiveItemsForMedicineStock(medicineStock);
-        double totalReductions = promotionItems.stream().reduce(0d, (total, item) -> total + item.getPriceReduction(), Double::sum);
-        return 100 - (int) ((medicineStock.getCurrentPrice() / (medicineStock.getCurrentPrice() + totalReductions)) * 100);
+    private int calculateTotalDiscount(double regularPrice, double effectivePrice) {
+        if (regularPrice <= 0) {
+            return 0;
+        }
+        return 100 - (int) Math.round((effectivePrice / regularPrice) * 100);
     }
 }
@@ -2,18 +2,29 @@ package com.mrsisa.pharmacy.support;
 
 import com.mrsisa.pharmacy.domain.entities.MedicineStock;
 import com.mrsisa.pharmacy.dto.stock.MedicineStockDetailedDTO;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+
 @Component
 public class MedicineStockToMedicineStockDetailedDTO extends AbstractConverter<MedicineStock, MedicineStockDetailedDTO> implements IConverter<MedicineStock, MedicineStockDetailedDTO> {
+    private final IStockPriceResolver stockPriceResolver;
+
+    @Autowired
+    public MedicineStockToMedicineStockDetailedDTO(IStockPriceResolver stockPriceResolver) {
+        this.stockPriceResolver = stockPriceResolver;
+    }
+
     @Override
     public MedicineStockDetailedDTO convert(@NonNull MedicineStock medicineStock) {
         var medicine = medicineStock.getMedicine();
 
         return new MedicineStockDetailedDTO(medicineStock.getId(), medicine.getName(), medicine.getMedicineType(),
                 medicine.getManufacturer(), medicine.getComposition(), medicine.getMedicineShape(), medicine.getAverageGrade(),
-                medicine.getIssueOnRecipe(), medicine.getAdditionalNotes(), medicine.getPoints(), medicineStock.getCurrentPrice(),
+                medicine.getIssueOnRecipe(), medicine.getAdditionalNotes(), medicine.getPoints(), stockPriceResolver.getEffectivePrice(medicineStock, LocalDate.now()),
                 medicineStock.getQuantity());
     }
 }
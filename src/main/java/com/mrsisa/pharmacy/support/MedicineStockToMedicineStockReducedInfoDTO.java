@@ -2,16 +2,27 @@ package com.mrsisa.pharmacy.support;
 
 import com.mrsisa.pharmacy.domain.entities.MedicineStock;
 import com.mrsisa.pharmacy.dto.stock.MedicineStockReducedInfoDTO;
+import com.mrsisa.pharmacy.service.IStockPriceResolver;
 import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
+
 @Component
 public class MedicineStockToMedicineStockReducedInfoDTO extends AbstractConverter<MedicineStock, MedicineStockReducedInfoDTO>{
+    private final IStockPriceResolver stockPriceResolver;
+
+    @Autowired
+    public MedicineStockToMedicineStockReducedInfoDTO(IStockPriceResolver stockPriceResolver) {
+        this.stockPriceResolver = stockPriceResolver;
+    }
+
     @Override
     public MedicineStockReducedInfoDTO convert(@NonNull MedicineStock medicineStock) {
         return new MedicineStockReducedInfoDTO(medicineStock.getPharmacy().getId(),
                 medicineStock.getPharmacy().getName(),
                 medicineStock.getMedicine().getId(),
-                medicineStock.getCurrentPrice());
+                stockPriceResolver.getEffectivePrice(medicineStock, LocalDate.now()));
     }
 }
@@ -1,25 +0,0 @@
-package com.mrsisa.pharmacy.tasks;
-
-import com.mrsisa.pharmacy.service.IPromotionService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.stereotype.Component;
-
-@EnableAsync
-@Component
-public class ApplyPromotionDiscounts {
-    private final IPromotionService promotionService;
-
-    @Autowired
-    public ApplyPromotionDiscounts(IPromotionService promotionService) {
-        this.promotionService = promotionService;
-    }
-
-    @Async
-    @Scheduled(cron = "0 0 0 * * ?")
-    public void applyPromotionDiscounts() {
-        promotionService.applyPromotionDiscounts();
-    }
-}
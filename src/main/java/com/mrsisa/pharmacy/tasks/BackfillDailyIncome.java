@@ -0,0 +1,46 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.service.IIncomeRollupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/*
+Fills the daily income rollup once for databases which were populated before it existed. Every instance fires it on
+startup but the run has a fixed scheduled time, so only the first instance to take the lease runs it and nobody runs
+it again after it finished. A failed run gives the lease up and is retried by the next instance that starts.
+ */
+@EnableAsync
+@Component
+public class BackfillDailyIncome {
+    public static final String JOB_NAME = "backfill-daily-income";
+    private static final LocalDateTime ONLY_RUN = LocalDateTime.of(2021, 1, 1, 0, 0);
+
+    private final Logger log = LoggerFactory.getLogger(BackfillDailyIncome.class);
+
+    private final IIncomeRollupService incomeRollupService;
+    private final JobCoordinator jobCoordinator;
+
+    @Autowired
+    public BackfillDailyIncome(IIncomeRollupService incomeRollupService, JobCoordinator jobCoordinator) {
+        this.incomeRollupService = incomeRollupService;
+        this.jobCoordinator = jobCoordinator;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        try {
+            jobCoordinator.run(JOB_NAME, ONLY_RUN, run -> run.addRows(incomeRollupService.rebuildIfEmpty()));
+        } catch (RuntimeException e) {
+            log.error("Daily income backfill failed", e);
+        }
+    }
+}
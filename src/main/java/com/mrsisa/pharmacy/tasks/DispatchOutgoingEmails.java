@@ -0,0 +1,84 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.service.IEmailOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Drains the email outbox with a fixed number of workers, each worker sends batches until no email is due.
+The workers have their own pool (not a bean, so @Async methods keep the default executor) and a poll never starts
+more workers than are idle, so slow SMTP cannot queue up work or starve other background tasks.
+ */
+@Component
+public class DispatchOutgoingEmails {
+    private final Logger log = LoggerFactory.getLogger(DispatchOutgoingEmails.class);
+
+    private final IEmailOutboxService emailOutboxService;
+    private final ThreadPoolTaskExecutor executor;
+    private final int workers;
+    private final int batchSize;
+
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+
+    @Autowired
+    public DispatchOutgoingEmails(IEmailOutboxService emailOutboxService,
+                                  @Value("${pharmacy.email-outbox.workers:2}") int workers,
+                                  @Value("${pharmacy.email-outbox.batch-size:50}") int batchSize) {
+        this.emailOutboxService = emailOutboxService;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(workers);
+        this.executor.setMaxPoolSize(workers);
+        this.executor.setThreadNamePrefix("email-dispatcher-");
+        this.executor.setWaitForTasksToCompleteOnShutdown(true);
+        this.executor.setAwaitTerminationSeconds(30);
+        this.executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${pharmacy.email-outbox.poll-ms:2000}")
+    public void dispatchOutgoingEmails() {
+        while (true) {
+            var running = runningWorkers.get();
+            if (running >= workers) {
+                return;
+            }
+            if (runningWorkers.compareAndSet(running, running + 1)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 30 3 * * ?")
+    public void deleteSentEmails() {
+        var deleted = emailOutboxService.deleteSentEmails();
+        log.info("Deleted {} sent emails from the outbox", deleted);
+    }
+
+    private void drain() {
+        try {
+            int claimed;
+            // the rate limit can shrink a batch while more emails are due, so a worker stops only when nothing was due
+            do {
+                claimed = emailOutboxService.dispatchBatch(batchSize);
+            } while (claimed > 0);
+        } catch (RuntimeException exception) {
+            log.error("Email dispatcher failed, retrying on the next poll", exception);
+        } finally {
+            runningWorkers.decrementAndGet();
+        }
+    }
+}
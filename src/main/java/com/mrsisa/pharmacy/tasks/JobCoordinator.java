@@ -0,0 +1,171 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.service.IJobLockService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/*
+Runs every scheduled job once per scheduled time no matter how many instances fire it. A run holds a short lease in
+the job_lock table which is renewed by heartbeats while it runs, so a crashed instance loses it quickly and the run
+is taken over by the next instance firing the job. Large jobs are split in shards by pharmacy id with a lease per
+shard, so instances firing together share the work instead of waiting for each other.
+ */
+@Component
+public class JobCoordinator {
+    // the previous fire time of a cron is searched for in growing windows, so frequent crons need few steps
+    private static final List<Duration> FIRE_TIME_SEARCH_WINDOWS = List.of(Duration.ofMinutes(1), Duration.ofHours(1),
+            Duration.ofDays(1), Duration.ofDays(32), Duration.ofDays(366));
+
+    private final Logger log = LoggerFactory.getLogger(JobCoordinator.class);
+
+    private final IJobLockService jobLockService;
+    private final JobMetrics jobMetrics;
+    private final Duration lease;
+    private final int shards;
+
+    private final Map<String, JobRun> runs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JobCoordinator(IJobLockService jobLockService, JobMetrics jobMetrics,
+                          @Value("${pharmacy.jobs.lease-seconds:120}") long leaseSeconds,
+                          @Value("${pharmacy.jobs.shards:4}") int shards) {
+        this.jobLockService = jobLockService;
+        this.jobMetrics = jobMetrics;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.shards = shards;
+    }
+
+    public void run(String job, String cron, Consumer<JobRun> work) {
+        run(job, getScheduledAt(cron), work);
+    }
+
+    // true if the run scheduled at the given time finished on this instance
+    public boolean run(String job, LocalDateTime scheduledAt, Consumer<JobRun> work) {
+        return runLeased(job, scheduledAt, work);
+    }
+
+    public void runSharded(String job, String cron, ShardedJob work) {
+        runSharded(getScheduledAt(cron), stage(job, work));
+    }
+
+    // shards are tried from a random one so instances firing at the same time mostly take different shards. The
+    // stages of a shard run in order on the instance which finished the previous stage, so a stage never starts on a
+    // shard whose previous stage is still running somewhere else
+    public void runSharded(LocalDateTime scheduledAt, ShardedStage... stages) {
+        var first = ThreadLocalRandom.current().nextInt(shards);
+        for (var i = 0; i < shards; i++) {
+            var shard = (first + i) % shards;
+            for (var stage : stages) {
+                if (!runLeased(getShardName(stage.job, shard), scheduledAt, run -> stage.work.run(shard, shards, run))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pharmacy.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        runs.values().stream().filter(JobRun::isLeased).forEach(run -> {
+            if (!jobLockService.renew(run.getJob(), lease, run.getRowsProcessed())) {
+                log.warn("Job {} lost its lease and stops after the current chunk", run.getJob());
+                run.cancel();
+            }
+            jobMetrics.progress(run.getJob(), run.getStartedAt(), run.getElapsed(), run.getRowsProcessed());
+        });
+    }
+
+    private boolean runLeased(String job, LocalDateTime scheduledAt, Consumer<JobRun> work) {
+        var run = new JobRun(job);
+        if (runs.putIfAbsent(job, run) != null) {
+            log.warn("Job {} is still running on this instance", job);
+            return false;
+        }
+        try {
+            if (!jobLockService.tryAcquire(job, scheduledAt, lease)) {
+                log.info("Job {} is running or already ran on another instance", job);
+                return false;
+            }
+            run.setLeased();
+            return execute(run, work);
+        } finally {
+            runs.remove(job);
+        }
+    }
+
+    // a failed run only gives the lease up, so another instance firing the job later still runs it
+    private boolean execute(JobRun run, Consumer<JobRun> work) {
+        var finished = false;
+        try {
+            work.accept(run);
+            finished = !run.isCancelled();
+        } finally {
+            if (finished) {
+                jobLockService.complete(run.getJob(), run.getElapsed(), run.getRowsProcessed());
+            } else {
+                jobLockService.release(run.getJob());
+            }
+            jobMetrics.record(run.getJob(), run.getStartedAt(), run.getElapsed(), run.getRowsProcessed());
+        }
+        return finished;
+    }
+
+    public static ShardedStage stage(String job, ShardedJob work) {
+        return new ShardedStage(job, work);
+    }
+
+    /*
+    The run of a cron job is identified by the last time the cron fired. Instances whose clocks differ a little, or
+    which start the job late because the async executor was busy, still agree on it as long as they start the job
+    before the cron fires again.
+     */
+    public static LocalDateTime getScheduledAt(String cron) {
+        return getPreviousFireTime(CronExpression.parse(cron), LocalDateTime.now());
+    }
+
+    static LocalDateTime getPreviousFireTime(CronExpression cron, LocalDateTime now) {
+        for (var window : FIRE_TIME_SEARCH_WINDOWS) {
+            var fireTime = cron.next(now.minus(window));
+            if (fireTime != null && !fireTime.isAfter(now)) {
+                for (var next = cron.next(fireTime); next != null && !next.isAfter(now); next = cron.next(next)) {
+                    fireTime = next;
+                }
+                return fireTime;
+            }
+        }
+        throw new IllegalArgumentException("Cron " + cron + " did not fire in the last year");
+    }
+
+    private static String getShardName(String job, int shard) {
+        return job + "#" + shard;
+    }
+
+    @FunctionalInterface
+    public interface ShardedJob {
+
+        // handles the pharmacies whose id modulo shards equals shard
+        void run(int shard, int shards, JobRun run);
+    }
+
+    public static class ShardedStage {
+        private final String job;
+        private final ShardedJob work;
+
+        private ShardedStage(String job, ShardedJob work) {
+            this.job = job;
+            this.work = work;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.domain.aggregates.JobStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// statistics of the background jobs run by this instance: the last run of every job and totals since startup
+@Component
+public class JobMetrics {
+    private final Logger log = LoggerFactory.getLogger(JobMetrics.class);
+
+    private final Map<String, JobStatistics> statistics = new ConcurrentHashMap<>();
+
+    // rows processed so far by a running job, for jobs which commit in chunks
+    public void progress(String job, LocalDateTime startedAt, Duration elapsed, long rowsProcessed) {
+        statistics.compute(job, (name, previous) -> new JobStatistics(job, true, startedAt, elapsed.toMillis(), rowsProcessed,
+                previous == null ? 0L : previous.getRuns(), previous == null ? 0L : previous.getTotalRowsProcessed()));
+        log.debug("Job {} processed {} rows so far", job, rowsProcessed);
+    }
+
+    public void record(String job, LocalDateTime startedAt, Duration duration, long rowsProcessed) {
+        statistics.compute(job, (name, previous) -> new JobStatistics(job, false, startedAt, duration.toMillis(), rowsProcessed,
+                (previous == null ? 0L : previous.getRuns()) + 1,
+                (previous == null ? 0L : previous.getTotalRowsProcessed()) + rowsProcessed));
+        log.info("Job {} processed {} rows in {} ms", job, rowsProcessed, duration.toMillis());
+    }
+
+    public List<JobStatistics> getStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+}
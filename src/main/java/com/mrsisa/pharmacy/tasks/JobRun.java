@@ -0,0 +1,57 @@
+package com.mrsisa.pharmacy.tasks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a run of a job or of one of its shards on this instance, jobs report their progress through it
+public class JobRun {
+
+    private final String job;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final long start = System.nanoTime();
+    private final AtomicLong rowsProcessed = new AtomicLong();
+    private volatile boolean leased = false;
+    private volatile boolean cancelled = false;
+
+    JobRun(String job) {
+        this.job = job;
+    }
+
+    public void addRows(long rows) {
+        rowsProcessed.addAndGet(rows);
+    }
+
+    // true once the lease was lost, a job which commits in chunks stops after the current chunk
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getJob() {
+        return job;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    public long getRowsProcessed() {
+        return rowsProcessed.get();
+    }
+
+    boolean isLeased() {
+        return leased;
+    }
+
+    void setLeased() {
+        this.leased = true;
+    }
+
+    void cancel() {
+        this.cancelled = true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.service.ILeaveDaysRequestService;
+import com.mrsisa.pharmacy.service.IPatientService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/*
+The nightly jobs run one stage after another on a thread of their own instead of all firing at midnight on the
+shared async executor: first the leave requests and then the unverified users. Stages are separated by a pause and
+every job commits in chunks, so the nightly load on the database is spread out. Promotions need no nightly job, their
+prices are resolved from the promotion dates by the stock price resolver.
+ */
+@Component
+public class NightlyJobPipeline {
+    public static final String PIPELINE_NAME = "nightly-jobs";
+    public static final String REJECT_STARTED_LEAVE_REQUESTS = "reject-started-leave-requests";
+    public static final String DELETE_UNVERIFIED_USERS = "delete-unverified-users";
+
+    private final Logger log = LoggerFactory.getLogger(NightlyJobPipeline.class);
+
+    private final ILeaveDaysRequestService leaveDaysRequestService;
+    private final IPatientService patientService;
+    private final JobCoordinator jobCoordinator;
+    private final JobMetrics jobMetrics;
+    private final String cron;
+    private final int chunkSize;
+    private final Duration stageDelay;
+    private final ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public NightlyJobPipeline(ILeaveDaysRequestService leaveDaysRequestService, IPatientService patientService,
+                              JobCoordinator jobCoordinator, JobMetrics jobMetrics,
+                              @Value("${pharmacy.nightly-jobs.cron:0 0 0 * * ?}") String cron,
+                              @Value("${pharmacy.nightly-jobs.chunk-size:200}") int chunkSize,
+                              @Value("${pharmacy.nightly-jobs.stage-delay-seconds:60}") long stageDelaySeconds) {
+        this.leaveDaysRequestService = leaveDaysRequestService;
+        this.patientService = patientService;
+        this.jobCoordinator = jobCoordinator;
+        this.jobMetrics = jobMetrics;
+        this.cron = cron;
+        this.chunkSize = chunkSize;
+        this.stageDelay = Duration.ofSeconds(stageDelaySeconds);
+        // a single thread and no queue, a night which is still running when the next one fires skips the next one
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(1);
+        this.executor.setMaxPoolSize(1);
+        this.executor.setQueueCapacity(0);
+        this.executor.setThreadNamePrefix("nightly-jobs-");
+        this.executor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Scheduled(cron = "${pharmacy.nightly-jobs.cron:0 0 0 * * ?}")
+    public void runNightlyJobs() {
+        var scheduledAt = JobCoordinator.getScheduledAt(cron);
+        try {
+            executor.execute(() -> runPipeline(scheduledAt));
+        } catch (TaskRejectedException exception) {
+            log.warn("Nightly jobs of the previous night are still running, skipping the run scheduled at {}", scheduledAt);
+        }
+    }
+
+    private void runPipeline(LocalDateTime scheduledAt) {
+        runStage(REJECT_STARTED_LEAVE_REQUESTS, rows -> jobCoordinator.run(REJECT_STARTED_LEAVE_REQUESTS, scheduledAt,
+                run -> runInChunks(run, rows, () -> leaveDaysRequestService.rejectPendingStartedLeaveDaysRequests(chunkSize))));
+        if (!pause()) {
+            return;
+        }
+        runStage(DELETE_UNVERIFIED_USERS, rows -> jobCoordinator.run(DELETE_UNVERIFIED_USERS, scheduledAt,
+                run -> runInChunks(run, rows, () -> patientService.deleteUnverifiedUsers(chunkSize))));
+    }
+
+    // a failed stage does not stop the stages after it, they work on other tables
+    private void runStage(String stage, Consumer<AtomicLong> work) {
+        var startedAt = LocalDateTime.now();
+        var start = System.nanoTime();
+        var rows = new AtomicLong();
+        try {
+            work.accept(rows);
+        } catch (RuntimeException exception) {
+            log.error("Nightly stage {} failed", stage, exception);
+        }
+        jobMetrics.record(PIPELINE_NAME + "/" + stage, startedAt, Duration.ofNanos(System.nanoTime() - start), rows.get());
+    }
+
+    // for jobs whose rows drop out of the query once handled
+    private void runInChunks(JobRun run, AtomicLong rows, IntSupplier chunk) {
+        int processed;
+        do {
+            processed = chunk.getAsInt();
+            run.addRows(processed);
+            rows.addAndGet(processed);
+        } while (processed == chunkSize && !run.isCancelled());
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(stageDelay.toMillis());
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
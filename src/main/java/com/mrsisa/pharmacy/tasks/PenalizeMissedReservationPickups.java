@@ -1,26 +1,41 @@
 package com.mrsisa.pharmacy.tasks;
 
-import com.mrsisa.pharmacy.service.IPatientService;
+import com.mrsisa.pharmacy.service.IMedicineReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+// every chunk of expired reservations is committed on its own, so locks are held briefly whatever the backlog
 @EnableAsync
 @Component
 public class PenalizeMissedReservationPickups {
+    public static final String JOB_NAME = "penalize-missed-reservation-pickups";
+    private static final String CRON = "0 59 * * * *";
 
-    private final IPatientService patientService;
+    private final IMedicineReservationService medicineReservationService;
+    private final JobCoordinator jobCoordinator;
+    private final int chunkSize;
 
     @Autowired
-    public PenalizeMissedReservationPickups(IPatientService patientService) {
-        this.patientService = patientService;
+    public PenalizeMissedReservationPickups(IMedicineReservationService medicineReservationService, JobCoordinator jobCoordinator,
+                                            @Value("${pharmacy.reservation-expiry.chunk-size:500}") int chunkSize) {
+        this.medicineReservationService = medicineReservationService;
+        this.jobCoordinator = jobCoordinator;
+        this.chunkSize = chunkSize;
     }
 
     @Async
-    @Scheduled(cron = "0 59 * * * *")
+    @Scheduled(cron = CRON)
     public void AddPenalties() {
-        patientService.addPenalties();
+        jobCoordinator.runSharded(JOB_NAME, CRON, (shard, shards, run) -> {
+            int chunk;
+            do {
+                chunk = medicineReservationService.expireReservations(run.getStartedAt(), shard, shards, chunkSize);
+                run.addRows(chunk);
+            } while (chunk == chunkSize && !run.isCancelled());
+        });
     }
 }
@@ -1,28 +1,50 @@
 package com.mrsisa.pharmacy.tasks;
 
-import com.mrsisa.pharmacy.service.impl.PatientService;
+import com.mrsisa.pharmacy.service.IPatientService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+/*
+Resets the penalties of all patients in keyset chunks, every chunk in its own short transaction, so only a chunk of
+patients is locked at a time and logins and bookings are not blocked. Only one instance runs the reset at a time.
+ */
 @EnableAsync
 @Component
 public class RemovePenaltiesTask {
+    public static final String JOB_NAME = "remove-penalties";
+    private static final String CRON = "0 0 0 1 * *";
 
-
-    private final PatientService patientService;
+    private final IPatientService patientService;
+    private final JobCoordinator jobCoordinator;
+    private final int chunkSize;
 
     @Autowired
-    public RemovePenaltiesTask(PatientService patientService) {
+    public RemovePenaltiesTask(IPatientService patientService, JobCoordinator jobCoordinator,
+                               @Value("${pharmacy.penalty-reset.chunk-size:1000}") int chunkSize) {
         this.patientService = patientService;
+        this.jobCoordinator = jobCoordinator;
+        this.chunkSize = chunkSize;
     }
 
     @Async
-    @Scheduled(cron = "0 0 0 1 * *")
+    @Scheduled(cron = CRON)
     public void RemovePenalties() {
-        patientService.removeAllPenalties();
+        jobCoordinator.run(JOB_NAME, CRON, run -> {
+            var afterId = 0L;
+            int chunk;
+            do {
+                var patientIds = patientService.resetPenalties(afterId, chunkSize);
+                chunk = patientIds.size();
+                if (chunk > 0) {
+                    afterId = patientIds.get(chunk - 1);
+                    run.addRows(chunk);
+                }
+            } while (chunk == chunkSize && !run.isCancelled());
+        });
     }
 
 }
@@ -0,0 +1,23 @@
+package com.mrsisa.pharmacy.tasks;
+
+import com.mrsisa.pharmacy.service.IPromotionNewsletterService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// picks up newsletters whose fan-out stopped with the instance that sent them, the first run is right after startup
+@Component
+public class ResumePromotionNewsletters {
+
+    private final IPromotionNewsletterService promotionNewsletterService;
+
+    @Autowired
+    public ResumePromotionNewsletters(IPromotionNewsletterService promotionNewsletterService) {
+        this.promotionNewsletterService = promotionNewsletterService;
+    }
+
+    @Scheduled(fixedDelayString = "${pharmacy.newsletter.resume-ms:300000}")
+    public void resumeNewsletters() {
+        promotionNewsletterService.resumeNewsletters();
+    }
+}
@@ -0,0 +1,117 @@
+package com.mrsisa.pharmacy.util;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Immutable index over half-open time intervals [from, to), stored as epoch minutes.
+Intervals are sorted by start and every position keeps the largest end seen so far, so checking a single
+interval is one binary search: the last interval starting before the checked end overlaps it if the largest
+end up to that position is after the checked start. Building the index sorts the intervals, so it only pays off
+when it is kept or used for several checks, a single check uses anyOverlaps instead.
+ */
+public class IntervalIndex {
+
+    private final long[] starts;
+    private final long[] maxEnds;
+
+    private IntervalIndex(long[][] intervals) {
+        Arrays.sort(intervals, Comparator.comparingLong(interval -> interval[0]));
+        this.starts = new long[intervals.length];
+        this.maxEnds = new long[intervals.length];
+        var maxEnd = Long.MIN_VALUE;
+        for (var i = 0; i < intervals.length; i++) {
+            starts[i] = intervals[i][0];
+            maxEnd = Math.max(maxEnd, intervals[i][1]);
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    public static <T> IntervalIndex of(Collection<T> items, Function<T, LocalDateTime> from, Function<T, LocalDateTime> to) {
+        List<long[]> intervals = new ArrayList<>(items.size());
+        for (T item : items) {
+            var start = startMinute(from.apply(item));
+            var end = endMinute(to.apply(item));
+            // empty intervals cannot overlap anything
+            if (start < end) {
+                intervals.add(new long[]{start, end});
+            }
+        }
+        return new IntervalIndex(intervals.toArray(new long[0][]));
+    }
+
+    public static IntervalIndex ofAppointments(Collection<Appointment> appointments) {
+        return of(appointments, Appointment::getFrom, Appointment::getTo);
+    }
+
+    // one linear pass with the same half-open minute semantics as the index
+    public static <T> boolean anyOverlaps(Collection<T> items, Function<T, LocalDateTime> from, Function<T, LocalDateTime> to,
+                                          LocalDateTime checkedFrom, LocalDateTime checkedTo) {
+        var checkedStart = startMinute(checkedFrom);
+        var checkedEnd = endMinute(checkedTo);
+        if (checkedStart >= checkedEnd) {
+            return false;
+        }
+        for (T item : items) {
+            var start = startMinute(from.apply(item));
+            var end = endMinute(to.apply(item));
+            if (start < end && start < checkedEnd && end > checkedStart) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean anyOverlaps(Collection<Appointment> appointments, LocalDateTime from, LocalDateTime to) {
+        return anyOverlaps(appointments, Appointment::getFrom, Appointment::getTo, from, to);
+    }
+
+    public boolean overlaps(LocalDateTime from, LocalDateTime to) {
+        return overlaps(startMinute(from), endMinute(to));
+    }
+
+    // candidates which do not overlap any indexed interval, in their original order
+    public <T> List<T> filterNotOverlapping(Collection<T> candidates, Function<T, LocalDateTime> from, Function<T, LocalDateTime> to) {
+        return candidates.stream()
+                .filter(candidate -> !overlaps(from.apply(candidate), to.apply(candidate)))
+                .collect(Collectors.toList());
+    }
+
+    public List<Appointment> filterNotOverlapping(Collection<Appointment> appointments) {
+        return filterNotOverlapping(appointments, Appointment::getFrom, Appointment::getTo);
+    }
+
+    private boolean overlaps(long from, long to) {
+        if (from >= to) {
+            return false;
+        }
+        // last interval which starts before the checked one ends
+        var low = 0;
+        var high = starts.length - 1;
+        var last = -1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            if (starts[middle] < to) {
+                last = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return last >= 0 && maxEnds[last] > from;
+    }
+
+    private static long startMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    // rounded up so that an interval never shrinks when seconds are dropped
+    private static long endMinute(LocalDateTime time) {
+        return -Math.floorDiv(-time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+}
@@ -0,0 +1,159 @@
+package com.mrsisa.pharmacy.util;
+
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch;
+import com.mrsisa.pharmacy.dto.pharmacy.PharmacyQRSearchDTO;
+import com.mrsisa.pharmacy.repository.IPrescriptionSearchRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/*
+Ranks the pharmacies of a QR code search in memory. Stock rows have to arrive grouped by pharmacy, the total
+of the current pharmacy is accumulated while its rows are read and the finished pharmacy is offered to a bounded
+heap which only keeps the pharmacies up to the end of the requested page. Totals are summed in whole cents like
+in the database query, so both rank and page the pharmacies the same way. Names and addresses are compared as Java
+strings, which need not match the collation of the database, so a cursor only continues the (total, pharmacy id)
+order. Missing values sort last when ascending and first when descending, as in Postgres.
+ */
+public class PharmacyQRSearchRanker {
+
+    private final Map<Long, Integer> requiredQuantities;
+    private final PrescriptionSearchCursor after;
+    private final Pageable pageable;
+    private final boolean ascending;
+    private final Comparator<RankedPharmacy> comparator;
+    private final int limit;
+    private final PriorityQueue<RankedPharmacy> heap;
+
+    private RankedPharmacy current;
+    private long matched = 0;
+
+    public PharmacyQRSearchRanker(Map<Long, Integer> requiredQuantities, PrescriptionSearchCursor after, Pageable pageable) {
+        this.requiredQuantities = requiredQuantities;
+        this.after = after;
+        this.pageable = pageable;
+        var order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(IPrescriptionSearchRepository.TOTAL_STOCK_PRICE));
+        if (after != null && !order.getProperty().equals(IPrescriptionSearchRepository.TOTAL_STOCK_PRICE)) {
+            throw new IllegalArgumentException("Cannot continue after a cursor when sorting by " + order.getProperty());
+        }
+        var byCriteria = getComparator(order.getProperty()).thenComparing(RankedPharmacy::getPharmacyId);
+        this.ascending = order.isAscending();
+        this.comparator = ascending ? byCriteria : byCriteria.reversed();
+        this.limit = isKeyset() ? pageable.getPageSize() : (int) pageable.getOffset() + pageable.getPageSize();
+        // the worst kept pharmacy is on top so it can be replaced in O(log k)
+        this.heap = new PriorityQueue<>(this.limit + 1, this.comparator.reversed());
+    }
+
+    public void accept(PrescriptionStockMatch stock) {
+        if (current == null || !current.getPharmacyId().equals(stock.getPharmacyId())) {
+            finishCurrent();
+            current = new RankedPharmacy(stock);
+        }
+        current.add(stock, requiredQuantities.get(stock.getMedicineId()));
+    }
+
+    public Page<PrescriptionPharmacyTotal> getPage() {
+        finishCurrent();
+        List<RankedPharmacy> ranked = new ArrayList<>(heap);
+        ranked.sort(comparator);
+        var from = isKeyset() ? 0 : (int) Math.min(pageable.getOffset(), ranked.size());
+        List<PrescriptionPharmacyTotal> content = new ArrayList<>();
+        ranked.subList(from, ranked.size())
+                .forEach(pharmacy -> content.add(new PrescriptionPharmacyTotal(pharmacy.getPharmacyId(), pharmacy.getTotal())));
+        return new PageImpl<>(content, pageable, matched);
+    }
+
+    private void finishCurrent() {
+        if (current == null || current.getMedicines() != requiredQuantities.size()) {
+            current = null;
+            return;
+        }
+        matched++;
+        if (isKeyset() && !after.isBefore(current.getTotal(), current.getPharmacyId(), ascending)) {
+            current = null;
+            return;
+        }
+        heap.offer(current);
+        if (heap.size() > limit) {
+            heap.poll();
+        }
+        current = null;
+    }
+
+    private boolean isKeyset() {
+        return after != null;
+    }
+
+    private static Comparator<RankedPharmacy> getComparator(String property) {
+        switch (property) {
+            case IPrescriptionSearchRepository.TOTAL_STOCK_PRICE:
+                return Comparator.comparingLong(RankedPharmacy::getTotal);
+            case IPrescriptionSearchRepository.PHARMACY_AVERAGE_GRADE:
+                return Comparator.comparing(RankedPharmacy::getAverageGrade, Comparator.nullsLast(Comparator.naturalOrder()));
+            case IPrescriptionSearchRepository.PHARMACY_NAME:
+                return Comparator.comparing(RankedPharmacy::getName, Comparator.nullsLast(Comparator.naturalOrder()));
+            case IPrescriptionSearchRepository.PHARMACY_ADDRESS:
+                return Comparator.comparing(RankedPharmacy::getAddress, Comparator.nullsLast(Comparator.naturalOrder()));
+            default:
+                throw new IllegalArgumentException("Cannot sort pharmacies by " + property);
+        }
+    }
+
+    private static class RankedPharmacy {
+        private final Long pharmacyId;
+        private final PrescriptionStockMatch pharmacy;
+        private long total;
+        private final Set<Long> medicineIds = new HashSet<>();
+        private String address;
+
+        RankedPharmacy(PrescriptionStockMatch pharmacy) {
+            this.pharmacyId = pharmacy.getPharmacyId();
+            this.pharmacy = pharmacy;
+        }
+
+        // same rows as the stock condition of the database query: a stock without enough quantity is left out
+        // and a pharmacy matches once it has every medicine, however many stocks of a medicine it has
+        void add(PrescriptionStockMatch stock, Integer quantity) {
+            if (stock.getQuantity() < quantity) {
+                return;
+            }
+            total += PrescriptionSearchCursor.toCents(stock.getPrice()) * quantity;
+            medicineIds.add(stock.getMedicineId());
+        }
+
+        Long getPharmacyId() {
+            return pharmacyId;
+        }
+
+        long getTotal() {
+            return total;
+        }
+
+        int getMedicines() {
+            return medicineIds.size();
+        }
+
+        Double getAverageGrade() {
+            return pharmacy.getPharmacyAverageGrade();
+        }
+
+        String getName() {
+            return pharmacy.getPharmacyName();
+        }
+
+        // null like the concatenation in the database query when a part of the address is missing
+        String getAddress() {
+            var parts = pharmacy.getPharmacyAddress();
+            if (address == null && Stream.of(parts.getStreet(), parts.getStreetNumber(), parts.getCity(), parts.getZipCode(),
+                    parts.getCountry()).allMatch(Objects::nonNull)) {
+                address = PharmacyQRSearchDTO.formatAddress(parts);
+            }
+            return address;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.mrsisa.pharmacy.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+Opaque keyset cursor of the QR code search sorted by total price. It holds the total of the last pharmacy of a page
+in whole cents before the patient discount, together with its id. Totals in cents are sums of integers, so the
+database and the in-memory ranker compute exactly the same key whatever order they add the stocks in, and the key
+never goes through a floating point value sent back by the client. The cursor also records which prices ranked the
+page: the regular prices of the stocks (database query) or the effective prices with promotions (in-memory ranker).
+A page ranked by other prices can have a different order, so a cursor is only continued with the prices it was made with.
+ */
+public class PrescriptionSearchCursor {
+
+    private static final String EFFECTIVE = "E";
+    private static final String REGULAR = "R";
+
+    private final long totalCents;
+    private final long pharmacyId;
+    private final boolean effectivePrices;
+
+    public PrescriptionSearchCursor(long totalCents, long pharmacyId, boolean effectivePrices) {
+        this.totalCents = totalCents;
+        this.pharmacyId = pharmacyId;
+        this.effectivePrices = effectivePrices;
+    }
+
+    // same rounding as round(price * 100) in PostgreSQL, which rounds double precision halves to even
+    public static long toCents(double price) {
+        return (long) Math.rint(price * 100);
+    }
+
+    public static PrescriptionSearchCursor decode(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed search cursor.", e);
+        }
+        if (parts.length != 3 || !(parts[2].equals(EFFECTIVE) || parts[2].equals(REGULAR))) {
+            throw new IllegalArgumentException("Malformed search cursor.");
+        }
+        try {
+            return new PrescriptionSearchCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2].equals(EFFECTIVE));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed search cursor.", e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((totalCents + ":" + pharmacyId + ":" + (effectivePrices ? EFFECTIVE : REGULAR)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+
+    public long getPharmacyId() {
+        return pharmacyId;
+    }
+
+    public boolean hasEffectivePrices() {
+        return effectivePrices;
+    }
+
+    // true if a pharmacy with the given total comes after the cursor in the given direction
+    public boolean isBefore(long otherTotalCents, long otherPharmacyId, boolean ascending) {
+        int difference = Long.compare(otherTotalCents, totalCents);
+        if (difference == 0) {
+            difference = Long.compare(otherPharmacyId, pharmacyId);
+        }
+        return ascending ? difference > 0 : difference < 0;
+    }
+}
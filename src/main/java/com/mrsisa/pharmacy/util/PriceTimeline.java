@@ -0,0 +1,80 @@
+package com.mrsisa.pharmacy.util;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/*
+Immutable step function over days, stored as epoch days. The value on a day is the value of the version which starts
+last on or before that day, so a lookup is one binary search and a value changes exactly on the day a version starts.
+ */
+public class PriceTimeline {
+
+    private final long[] starts;
+    private final double[] values;
+
+    private PriceTimeline(long[] starts, double[] values) {
+        this.starts = starts;
+        this.values = values;
+    }
+
+    // versions have to be sorted by start, of versions starting on the same day the last one wins
+    public static <T> PriceTimeline ofVersions(List<T> versions, Function<T, LocalDate> start, ToDoubleFunction<T> value) {
+        var starts = new long[versions.size()];
+        var values = new double[versions.size()];
+        var size = 0;
+        for (T version : versions) {
+            var day = start.apply(version).toEpochDay();
+            if (size == 0 || starts[size - 1] != day) {
+                size++;
+            }
+            starts[size - 1] = day;
+            values[size - 1] = value.applyAsDouble(version);
+        }
+        return new PriceTimeline(Arrays.copyOf(starts, size), Arrays.copyOf(values, size));
+    }
+
+    // product of the factors of all periods covering a day, both ends of a period are included
+    public static <T> PriceTimeline ofFactors(Collection<T> periods, Function<T, LocalDate> from, Function<T, LocalDate> to,
+                                              ToDoubleFunction<T> factor) {
+        SortedSet<Long> boundaries = new TreeSet<>();
+        periods.forEach(period -> {
+            boundaries.add(from.apply(period).toEpochDay());
+            boundaries.add(to.apply(period).toEpochDay() + 1);
+        });
+        var starts = new long[boundaries.size()];
+        var values = new double[boundaries.size()];
+        var i = 0;
+        for (long day : boundaries) {
+            var product = 1.0;
+            for (T period : periods) {
+                if (from.apply(period).toEpochDay() <= day && day <= to.apply(period).toEpochDay()) {
+                    product *= factor.applyAsDouble(period);
+                }
+            }
+            starts[i] = day;
+            values[i] = product;
+            i++;
+        }
+        return new PriceTimeline(starts, values);
+    }
+
+    // fallback is returned for days before the first version
+    public double valueAt(LocalDate date, double fallback) {
+        var day = date.toEpochDay();
+        var low = 0;
+        var high = starts.length - 1;
+        var last = -1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            if (starts[middle] <= day) {
+                last = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return last >= 0 ? values[last] : fallback;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mrsisa.pharmacy.util;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Hands out permits at a fixed rate, shared by all threads of one instance. Permits build up while nobody takes them, up
+to one second worth (at least one), so a caller can take a whole batch at once and then size its work to what it got.
+Permits which were taken but not used can be given back. The limiter starts empty, so a restart does not add a burst.
+A rate of zero or less disables limiting.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double maxStored;
+    private double stored;
+    private long lastRefill = System.nanoTime();
+
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerNano = permitsPerSecond > 0 ? permitsPerSecond / TimeUnit.SECONDS.toNanos(1) : 0;
+        this.maxStored = Math.max(1, permitsPerSecond);
+    }
+
+    // waits until at least one permit is available and takes as many as are available, up to maxPermits
+    public int acquireUpTo(int maxPermits) throws InterruptedException {
+        if (permitsPerNano == 0 || maxPermits <= 0) {
+            return Math.max(maxPermits, 0);
+        }
+        while (true) {
+            long wait;
+            synchronized (this) {
+                refill();
+                if (stored >= 1) {
+                    var granted = (int) Math.min(maxPermits, Math.floor(stored));
+                    stored -= granted;
+                    return granted;
+                }
+                wait = (long) Math.ceil((1 - stored) / permitsPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    public synchronized void release(int permits) {
+        if (permitsPerNano == 0 || permits <= 0) {
+            return;
+        }
+        refill();
+        stored = Math.min(maxStored, stored + permits);
+    }
+
+    private void refill() {
+        var now = System.nanoTime();
+        stored = Math.min(maxStored, stored + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,97 @@
+package com.mrsisa.pharmacy.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.mrsisa.pharmacy.domain.enums.ExportFormat;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/*
+Writes report rows straight to a response as CSV or newline delimited JSON, without keeping them in memory.
+The output is flushed every few hundred rows so the client receives chunks while the rest is still being read.
+ */
+public class ReportExportWriter implements Closeable {
+
+    private static final int FLUSH_EVERY_ROWS = 500;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+
+    private final Writer writer;
+    private final String[] columns;
+    private final JsonGenerator generator;
+    private int unflushedRows = 0;
+
+    public ReportExportWriter(OutputStream outputStream, ExportFormat format, String... columns) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        this.columns = columns;
+        if (format == ExportFormat.NDJSON) {
+            this.generator = JSON_FACTORY.createGenerator(writer);
+            // every row ends with a new line instead
+            this.generator.setRootValueSeparator(null);
+        } else {
+            this.generator = null;
+            writeCsvLine(columns);
+        }
+    }
+
+    public void writeRow(Object... values) throws IOException {
+        if (generator == null) {
+            writeCsvLine(values);
+        } else {
+            writeJsonLine(values);
+        }
+        if (++unflushedRows == FLUSH_EVERY_ROWS) {
+            writer.flush();
+            unflushedRows = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (generator != null) {
+            generator.close();
+        }
+        writer.flush();
+    }
+
+    private void writeCsvLine(Object[] values) throws IOException {
+        for (var i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writer.write(escapeCsv(values[i].toString()));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private void writeJsonLine(Object[] values) throws IOException {
+        generator.writeStartObject();
+        for (var i = 0; i < columns.length; i++) {
+            generator.writeFieldName(columns[i]);
+            var value = values[i];
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof Long || value instanceof Integer) {
+                generator.writeNumber(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                generator.writeNumber(((Number) value).doubleValue());
+            } else {
+                generator.writeString(value.toString());
+            }
+        }
+        generator.writeEndObject();
+        generator.flush();
+        writer.write('\n');
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,71 @@
+package com.mrsisa.pharmacy.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Text with {{name}} placeholders, parsed once into literal parts and parameter positions. Values are passed in the
+order of the parameter names given when compiling, so rendering is a single pass into a builder sized for the
+literal text, without any lookups or intermediate strings.
+ */
+public class TextTemplate {
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    private static final int VALUE_LENGTH_HINT = 16;
+
+    private final String[] literals;
+    private final int[] parameters;
+    private final int parameterCount;
+    private final int capacity;
+
+    private TextTemplate(String[] literals, int[] parameters, int parameterCount) {
+        this.literals = literals;
+        this.parameters = parameters;
+        this.parameterCount = parameterCount;
+        this.capacity = Arrays.stream(literals).mapToInt(String::length).sum() + parameters.length * VALUE_LENGTH_HINT;
+    }
+
+    // fails on placeholders which are not among the parameter names, so a broken template fails on startup
+    public static TextTemplate compile(String source, String... parameterNames) {
+        var names = Arrays.asList(parameterNames);
+        List<String> literals = new ArrayList<>();
+        List<Integer> parameters = new ArrayList<>();
+        var position = 0;
+        var open = source.indexOf(OPEN);
+        while (open >= 0) {
+            var close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at " + open + " in template: " + source);
+            }
+            var name = source.substring(open + OPEN.length(), close).trim();
+            var index = names.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown placeholder " + name + " in template: " + source);
+            }
+            literals.add(source.substring(position, open));
+            parameters.add(index);
+            position = close + CLOSE.length();
+            open = source.indexOf(OPEN, position);
+        }
+        literals.add(source.substring(position));
+        return new TextTemplate(literals.toArray(new String[0]), parameters.stream().mapToInt(Integer::intValue).toArray(),
+                parameterNames.length);
+    }
+
+    public String render(Object... values) {
+        return renderTo(new StringBuilder(capacity), values).toString();
+    }
+
+    public StringBuilder renderTo(StringBuilder builder, Object... values) {
+        if (values.length != parameterCount) {
+            throw new IllegalArgumentException("Expected " + parameterCount + " template values, got " + values.length);
+        }
+        builder.append(literals[0]);
+        for (var i = 0; i < parameters.length; i++) {
+            builder.append(values[parameters[i]]).append(literals[i + 1]);
+        }
+        return builder;
+    }
+}
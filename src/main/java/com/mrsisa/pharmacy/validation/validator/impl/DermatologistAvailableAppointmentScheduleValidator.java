@@ -4,7 +4,7 @@ import com.mrsisa.pharmacy.domain.entities.Appointment;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.dto.appointment.AvailableAppointmentSchedulingDTO;
 import com.mrsisa.pharmacy.service.IAppointmentService;
-import com.mrsisa.pharmacy.util.AppointmentOverlapping;
+import com.mrsisa.pharmacy.util.IntervalIndex;
 import com.mrsisa.pharmacy.validation.validator.IDermatologistAvailableAppointmentScheduleValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -52,10 +52,8 @@ public class DermatologistAvailableAppointmentScheduleValidator implements IDerm
         var dermatologistAppointment = appointmentService.get(dto.getAppointmentId());
         List<Appointment> patientAppointments = appointmentService.getAllBookedAppointmentsForPatient(dto.getPatientId());
 
-        patientAppointments.forEach(appointment -> {
-            if (AppointmentOverlapping.areAppointmentsOverlapping(dermatologistAppointment, appointment)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Appointment is overlapping with patient appointment");
-            }
-        });
+        if (IntervalIndex.anyOverlaps(patientAppointments, dermatologistAppointment.getFrom(), dermatologistAppointment.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Appointment is overlapping with patient appointment");
+        }
     }
 }
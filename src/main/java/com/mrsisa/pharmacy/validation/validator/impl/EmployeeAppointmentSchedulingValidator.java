@@ -1,14 +1,13 @@
 package com.mrsisa.pharmacy.validation.validator.impl;
 
 import com.mrsisa.pharmacy.domain.entities.Appointment;
-import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
-import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
+import com.mrsisa.pharmacy.domain.entities.EmploymentContract;
 import com.mrsisa.pharmacy.domain.valueobjects.WorkingDay;
 import com.mrsisa.pharmacy.dto.appointment.EmployeeAppointmentSchedulingDTO;
 import com.mrsisa.pharmacy.service.IAppointmentService;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
 import com.mrsisa.pharmacy.service.IEmploymentContractService;
-import com.mrsisa.pharmacy.service.ILeaveDaysRequestService;
-import com.mrsisa.pharmacy.util.AppointmentOverlapping;
+import com.mrsisa.pharmacy.util.IntervalIndex;
 import com.mrsisa.pharmacy.validation.validator.IEmployeeAppointmentSchedulingValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -22,17 +21,19 @@ import java.util.List;
 
 @Component
 public class EmployeeAppointmentSchedulingValidator implements IEmployeeAppointmentSchedulingValidator {
+    private static final String OVERLAPPING_APPOINTMENT = "Appointment is overlapping with other appointment!";
+
     private final IAppointmentService appointmentService;
     private final IEmploymentContractService employmentContractService;
-    private final ILeaveDaysRequestService leaveDaysRequestService;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
 
     @Autowired
     public EmployeeAppointmentSchedulingValidator(IAppointmentService appointmentService,
                                                   IEmploymentContractService employmentContractService,
-                                                  ILeaveDaysRequestService leaveDaysRequestService) {
+                                                  IEmployeeAvailabilityCalendar availabilityCalendar) {
         this.appointmentService = appointmentService;
         this.employmentContractService = employmentContractService;
-        this.leaveDaysRequestService = leaveDaysRequestService;
+        this.availabilityCalendar = availabilityCalendar;
     }
 
     @Override
@@ -43,7 +44,7 @@ public class EmployeeAppointmentSchedulingValidator implements IEmployeeAppointm
 
         checkFromAndToDates(employeeAppointmentSchedulingDTO);
 
-        checkWorkingDays(employeeAppointmentSchedulingDTO);
+        checkWorkingDays(employeeAppointmentSchedulingDTO, employmentContract);
 
         checkPatientAppointmentsOverlapping(employeeAppointmentSchedulingDTO);
 
@@ -70,31 +71,15 @@ public class EmployeeAppointmentSchedulingValidator implements IEmployeeAppointm
         }
     }
 
+    // the calendar may be behind other instances, the service repeats the check against the database under the contract locks
     private void checkLeaveDaysRequestOverlapping(EmployeeAppointmentSchedulingDTO employeeAppointmentSchedulingDTO) {
-        var from = employeeAppointmentSchedulingDTO.getFrom();
-        var to = employeeAppointmentSchedulingDTO.getTo();
-
-        var firstAppointment = new Appointment(from, to,
-                0.0, AppointmentStatus.BOOKED,
-                null);
-
-        List<LeaveDaysRequest> leaveDaysRequests = leaveDaysRequestService.getAllPendingAndAcceptedLeaveDaysRequestForEmployee(employeeAppointmentSchedulingDTO.getEmployeeId());
-
-        leaveDaysRequests.forEach(request -> {
-            LocalDateTime secondFrom = request.getFrom().atStartOfDay();
-            LocalDateTime secondTo = request.getTo().atTime(23, 59);
-
-            var secondAppointment = new Appointment(secondFrom, secondTo,
-                    0.0, AppointmentStatus.BOOKED,
-                    null);
-
-            if (AppointmentOverlapping.areAppointmentsOverlapping(firstAppointment, secondAppointment)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Appointment is overlapping with leave days request!");
-            }
-        });
+        if (availabilityCalendar.isOnLeave(employeeAppointmentSchedulingDTO.getEmployeeId(), employeeAppointmentSchedulingDTO.getFrom(),
+                employeeAppointmentSchedulingDTO.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Appointment is overlapping with leave days request!");
+        }
     }
 
-    private void checkWorkingDays(EmployeeAppointmentSchedulingDTO employeeAppointmentSchedulingDTO) {
+    private void checkWorkingDays(EmployeeAppointmentSchedulingDTO employeeAppointmentSchedulingDTO, EmploymentContract employmentContract) {
         var from = employeeAppointmentSchedulingDTO.getFrom();
         var to = employeeAppointmentSchedulingDTO.getTo();
         var dayOfWeek = employeeAppointmentSchedulingDTO.getFrom().getDayOfWeek();
@@ -102,8 +87,7 @@ public class EmployeeAppointmentSchedulingValidator implements IEmployeeAppointm
         var fromTime = LocalTime.of(from.getHour(), from.getMinute());
         var toTime = LocalTime.of(to.getHour(), to.getMinute());
 
-        List<WorkingDay> workingDays = new ArrayList<>(employmentContractService.getContractWithPharmacy(employeeAppointmentSchedulingDTO.getEmployeeId(),
-                employeeAppointmentSchedulingDTO.getPharmacyId()).getWorkingHours());
+        List<WorkingDay> workingDays = new ArrayList<>(employmentContract.getWorkingHours());
 
         workingDays.forEach(workingDay -> {
             if (workingDay.getDay() == dayOfWeek) {
@@ -125,22 +109,16 @@ public class EmployeeAppointmentSchedulingValidator implements IEmployeeAppointm
         List<Appointment> bookedAppointments = appointmentService.getAllBookedAppointmentsForPatientNotWithEmployee(employeeAppointmentSchedulingDTO.getPatientId(),
                 employeeAppointmentSchedulingDTO.getEmployeeId());
 
-        bookedAppointments.forEach(appointment -> checkAppointmentOverlapping(employeeAppointmentSchedulingDTO, appointment));
+        if (IntervalIndex.anyOverlaps(bookedAppointments, employeeAppointmentSchedulingDTO.getFrom(), employeeAppointmentSchedulingDTO.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, OVERLAPPING_APPOINTMENT);
+        }
     }
 
+    // the calendar may be behind other instances, the service repeats the check against the database under the contract locks
     private void checkEmployeeAppointmentsOverlapping(EmployeeAppointmentSchedulingDTO employeeAppointmentSchedulingDTO) {
-        List<Appointment> bookedAppointments = appointmentService.getAllBusyAppointmentsForEmployee(employeeAppointmentSchedulingDTO.getEmployeeId());
-
-        bookedAppointments.forEach(appointment -> checkAppointmentOverlapping(employeeAppointmentSchedulingDTO, appointment));
-    }
-
-    private void checkAppointmentOverlapping(EmployeeAppointmentSchedulingDTO employeeAppointmentSchedulingDTO, Appointment appointment) {
-        var firstAppointment = new Appointment(employeeAppointmentSchedulingDTO.getFrom(), employeeAppointmentSchedulingDTO.getTo(),
-                0.0, AppointmentStatus.BOOKED,
-                null);
-
-        if (AppointmentOverlapping.areAppointmentsOverlapping(firstAppointment, appointment)) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Appointment is overlapping with other appointment!");
+        if (availabilityCalendar.isBusy(employeeAppointmentSchedulingDTO.getEmployeeId(), employeeAppointmentSchedulingDTO.getFrom(),
+                employeeAppointmentSchedulingDTO.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, OVERLAPPING_APPOINTMENT);
         }
     }
 }
@@ -1,15 +1,10 @@
 package com.mrsisa.pharmacy.validation.validator.impl;
 
-import com.mrsisa.pharmacy.domain.entities.Appointment;
 import com.mrsisa.pharmacy.domain.entities.EmploymentContract;
-import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
-import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.dto.leavedays.LeaveDaysRequestCreateDTO;
-import com.mrsisa.pharmacy.service.IAppointmentService;
+import com.mrsisa.pharmacy.service.IEmployeeAvailabilityCalendar;
 import com.mrsisa.pharmacy.service.IEmploymentContractService;
-import com.mrsisa.pharmacy.service.ILeaveDaysRequestService;
 import com.mrsisa.pharmacy.service.IPharmacyEmployeeService;
-import com.mrsisa.pharmacy.util.AppointmentOverlapping;
 import com.mrsisa.pharmacy.validation.validator.ILeaveDaysRequestCreateValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -21,18 +16,15 @@ import java.util.List;
 
 @Component
 public class LeaveDaysRequestCreateValidator implements ILeaveDaysRequestCreateValidator {
-    private final IAppointmentService appointmentService;
-    private final ILeaveDaysRequestService leaveDaysRequestService;
+    private final IEmployeeAvailabilityCalendar availabilityCalendar;
     private final IEmploymentContractService employmentContractService;
     private final IPharmacyEmployeeService pharmacyEmployeeService;
 
     @Autowired
-    public LeaveDaysRequestCreateValidator(IAppointmentService appointmentService,
-                                           ILeaveDaysRequestService leaveDaysRequestService,
+    public LeaveDaysRequestCreateValidator(IEmployeeAvailabilityCalendar availabilityCalendar,
                                            IEmploymentContractService employmentContractService,
                                            IPharmacyEmployeeService employeeService) {
-        this.appointmentService = appointmentService;
-        this.leaveDaysRequestService = leaveDaysRequestService;
+        this.availabilityCalendar = availabilityCalendar;
         this.employmentContractService = employmentContractService;
         this.pharmacyEmployeeService = employeeService;
     }
@@ -57,27 +49,11 @@ public class LeaveDaysRequestCreateValidator implements ILeaveDaysRequestCreateV
         }
     }
 
+    // the calendar may be behind other instances, the service repeats the check against the database under the contract locks
     private void checkPendingAndApprovedRequestsOverlapping(LeaveDaysRequestCreateDTO dto) {
-        var from = dto.getFrom().atStartOfDay();
-        var to = dto.getTo().atTime(23, 59);
-
-        var firstAppointment = new Appointment(from, to,
-                0.0, AppointmentStatus.BOOKED,
-                null);
-
-        List<LeaveDaysRequest> pendingRequests = leaveDaysRequestService.getAllPendingAndAcceptedLeaveDaysRequestForEmployee(dto.getEmployeeId());
-        pendingRequests.forEach(request -> {
-            var secondFrom = request.getFrom().atStartOfDay();
-            var secondTo = request.getTo().atTime(23, 59);
-
-            var secondAppointment = new Appointment(secondFrom, secondTo,
-                    0.0, AppointmentStatus.BOOKED,
-                    null);
-
-            if (AppointmentOverlapping.areAppointmentsOverlapping(firstAppointment, secondAppointment)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request is overlapping with another request!");
-            }
-        });
+        if (availabilityCalendar.isOnLeave(dto.getEmployeeId(), dto.getFrom().atStartOfDay(), dto.getTo().plusDays(1).atStartOfDay())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request is overlapping with another request!");
+        }
     }
 
     private void checkForDates(LeaveDaysRequestCreateDTO dto) {
@@ -96,20 +72,10 @@ public class LeaveDaysRequestCreateValidator implements ILeaveDaysRequestCreateV
         }
     }
 
+    // the calendar may be behind other instances, the service repeats the check against the database under the contract locks
     private void checkAppointmentOverlapping(LeaveDaysRequestCreateDTO dto) {
-        var from = dto.getFrom().atStartOfDay();
-        var to = dto.getTo().atTime(23, 59);
-
-
-        var firstAppointment = new Appointment(from, to,
-                0.0, AppointmentStatus.BOOKED,
-                null);
-
-        List<Appointment> busyAppointments = appointmentService.getAllBusyAppointmentsForEmployee(dto.getEmployeeId());
-        busyAppointments.forEach(busyAppointment -> {
-            if (AppointmentOverlapping.areAppointmentsOverlapping(firstAppointment, busyAppointment)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Leave dates are overlapping with other appointment!");
-            }
-        });
+        if (availabilityCalendar.isBusy(dto.getEmployeeId(), dto.getFrom().atStartOfDay(), dto.getTo().plusDays(1).atStartOfDay())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Leave dates are overlapping with other appointment!");
+        }
     }
 }
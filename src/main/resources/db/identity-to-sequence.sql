@@ -0,0 +1,45 @@
+-- Moves an existing database from IDENTITY (bigserial) ids to the per-entity sequences used by BaseEntity.
+-- Needed only when the schema is not recreated on startup (spring.jpa.hibernate.ddl-auto other than create).
+-- Every sequence starts one block (50) above the largest existing id, because the pooled optimizer
+-- hands out the 49 values below the number returned by nextval.
+DO $$
+DECLARE
+    mapping text[];
+    max_id bigint;
+BEGIN
+    FOREACH mapping SLICE 1 IN ARRAY ARRAY[
+        ['appointment', 'appointment_seq'],
+        ['appointment_price', 'appointment_price_seq'],
+        ['authority', 'authority_seq'],
+        ['complaint', 'complaint_seq'],
+        ['complaint_reply', 'complaint_reply_seq'],
+        ['employment_contract', 'employment_contract_seq'],
+        ['leave_days_request', 'leave_days_request_seq'],
+        ['medicine', 'medicine_seq'],
+        ['medicine_purchase', 'medicine_purchase_seq'],
+        ['medicine_reservation', 'medicine_reservation_seq'],
+        ['medicine_reservation_item', 'medicine_reservation_item_seq'],
+        ['medicine_stock', 'medicine_stock_seq'],
+        ['missing_medicine_log', 'missing_medicine_log_seq'],
+        ['offer', 'offer_seq'],
+        ['order_item', 'medicine_order_info_seq'],
+        ['orders', 'order_seq'],
+        ['patient_category', 'patient_category_seq'],
+        ['pharmacy', 'pharmacy_seq'],
+        ['promotion', 'promotion_seq'],
+        ['promotion_item', 'promotion_item_seq'],
+        ['recipe', 'recipe_seq'],
+        ['recipe_medicine_info', 'recipe_medicine_info_seq'],
+        ['review', 'review_seq'],
+        ['stock_price', 'stock_price_seq'],
+        ['system_settings', 'system_settings_seq'],
+        ['users', 'user_seq'],
+        ['working_day', 'working_day_seq']
+    ]
+    LOOP
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', mapping[1]);
+        EXECUTE format('DROP SEQUENCE IF EXISTS %I', mapping[1] || '_id_seq');
+        EXECUTE format('SELECT coalesce(max(id), 0) FROM %I', mapping[1]) INTO max_id;
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH %s INCREMENT BY 50', mapping[2], max_id + 50);
+    END LOOP;
+END $$;
@@ -0,0 +1,48 @@
+-- Restores the regular prices that the removed nightly promotion jobs left in the stocks. The start job wrote the
+-- discounted price into the stock as an open promotional price tag, and the end job never put the regular price back.
+-- Prices are resolved from the promotion dates at read time now, so a stock only needs its latest regular price back.
+-- Run once, on a database populated before that change. A database without such leftovers is not changed, so running
+-- it again is harmless. The new price tag ids are taken with nextval directly; the pooled optimizer only hands out
+-- ids at or below the values it gets from the sequence, so these never collide with its blocks.
+BEGIN;
+
+-- stocks whose current price is not their latest regular price
+CREATE TEMPORARY TABLE stale_stock ON COMMIT DROP AS
+SELECT ms.id AS stock_id,
+       (SELECT sp.price FROM stock_price sp
+        WHERE sp.medicine_stock_id = ms.id AND NOT sp.is_promotion
+        ORDER BY sp.from_date DESC, sp.id DESC
+        LIMIT 1) AS regular_price,
+       EXISTS (SELECT 1 FROM stock_price sp
+               WHERE sp.medicine_stock_id = ms.id AND sp.active AND sp.to_date IS NULL AND sp.is_promotion) AS has_open_promotion
+FROM medicine_stock ms
+WHERE ms.active
+  AND EXISTS (SELECT 1 FROM stock_price sp
+              WHERE sp.medicine_stock_id = ms.id AND sp.active AND sp.to_date IS NULL
+                AND (sp.is_promotion OR sp.price <> ms.current_price));
+
+-- a stock which never had a regular price is left as it is
+DELETE FROM stale_stock WHERE regular_price IS NULL;
+
+-- the open promotional price tag is closed and replaced by the regular price
+UPDATE stock_price sp
+SET to_date = current_date
+FROM stale_stock s
+WHERE sp.medicine_stock_id = s.stock_id AND s.has_open_promotion AND sp.to_date IS NULL AND sp.is_promotion;
+
+WITH new_tag AS (
+    INSERT INTO stock_price (id, active, from_date, is_promotion, price, to_date, medicine_stock_id)
+    SELECT nextval('stock_price_seq'), true, current_date, false, s.regular_price, NULL, s.stock_id
+    FROM stale_stock s
+    WHERE s.has_open_promotion
+    RETURNING id, medicine_stock_id
+)
+INSERT INTO medicine_stock_price_tags (medicine_stock_id, price_tags_id)
+SELECT medicine_stock_id, id FROM new_tag;
+
+UPDATE medicine_stock ms
+SET current_price = s.regular_price, is_on_promotion = false
+FROM stale_stock s
+WHERE ms.id = s.stock_id;
+
+COMMIT;
@@ -0,0 +1,88 @@
+package com.mrsisa.pharmacy.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+Runs the lease statements against the test database. The database clock does not move inside the test transaction,
+so a lease running out is simulated by moving its end into the past.
+ */
+@SpringBootTest
+@Transactional
+class JobLockRepositoryTest {
+
+    private static final String JOB = "job-lock-repository-test";
+    private static final LocalDateTime SCHEDULED_AT = LocalDateTime.of(2021, 6, 1, 0, 0);
+    private static final Long LEASE_SECONDS = 60L;
+
+    @Autowired
+    private IJobLockRepository jobLockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private void expireLease() {
+        jdbcTemplate.update("update job_lock set locked_until = localtimestamp - interval '1 minute' where name = ?", JOB);
+    }
+
+    @Test
+    void testLeaseIsTakenOverOnlyAfterItExpires() {
+        assertEquals(1, jobLockRepository.acquire(JOB, "first", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(0, jobLockRepository.acquire(JOB, "second", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(1, jobLockRepository.renew(JOB, "first", LEASE_SECONDS, 5L));
+
+        // the first instance stopped sending heartbeats
+        expireLease();
+        assertEquals(1, jobLockRepository.acquire(JOB, "second", SCHEDULED_AT, LEASE_SECONDS));
+
+        // the first instance finds out it lost the lease and cannot finish the run
+        assertEquals(0, jobLockRepository.renew(JOB, "first", LEASE_SECONDS, 6L));
+        assertEquals(0, jobLockRepository.complete(JOB, "first", 1000L, 6L));
+        assertEquals(1, jobLockRepository.complete(JOB, "second", 2000L, 7L));
+
+        var lock = jobLockRepository.findById(JOB).orElseThrow();
+        assertEquals("second", lock.getOwner());
+        assertEquals(SCHEDULED_AT, lock.getScheduledAt());
+        assertEquals(7L, lock.getRowsProcessed());
+        assertEquals(2000L, lock.getDurationMillis());
+        assertNotNull(lock.getFinishedAt());
+    }
+
+    @Test
+    void testFinishedRunIsNotStartedAgainForTheSameTime() {
+        assertEquals(1, jobLockRepository.acquire(JOB, "first", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(1, jobLockRepository.complete(JOB, "first", 1000L, 3L));
+        expireLease();
+
+        // a slower instance, or the same one, wakes up for the run that already finished
+        assertEquals(0, jobLockRepository.acquire(JOB, "second", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(0, jobLockRepository.acquire(JOB, "first", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(0, jobLockRepository.renew(JOB, "first", LEASE_SECONDS, 4L));
+
+        // the next scheduled run starts with fresh statistics
+        assertEquals(1, jobLockRepository.acquire(JOB, "second", SCHEDULED_AT.plusDays(1), LEASE_SECONDS));
+        var lock = jobLockRepository.findById(JOB).orElseThrow();
+        assertEquals("second", lock.getOwner());
+        assertEquals(SCHEDULED_AT.plusDays(1), lock.getScheduledAt());
+        assertEquals(0L, lock.getRowsProcessed());
+        assertNull(lock.getFinishedAt());
+    }
+
+    @Test
+    void testUnfinishedRunIsTakenOverForTheSameTime() {
+        assertEquals(1, jobLockRepository.acquire(JOB, "first", SCHEDULED_AT, LEASE_SECONDS));
+        assertEquals(1, jobLockRepository.renew(JOB, "first", LEASE_SECONDS, 10L));
+        expireLease();
+
+        assertEquals(1, jobLockRepository.acquire(JOB, "second", SCHEDULED_AT, LEASE_SECONDS));
+        // rows of the failed attempt are not counted for the new one
+        assertEquals(0L, jobLockRepository.findById(JOB).orElseThrow().getRowsProcessed());
+    }
+}
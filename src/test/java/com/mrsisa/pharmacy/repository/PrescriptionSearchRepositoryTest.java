@@ -0,0 +1,94 @@
+package com.mrsisa.pharmacy.repository;
+
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.repository.impl.PrescriptionSearchRepository;
+import com.mrsisa.pharmacy.util.PrescriptionSearchCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PrescriptionSearchRepositoryTest {
+
+    private EntityManager entityManagerMock;
+    private TypedQuery<PrescriptionPharmacyTotal> queryMock;
+    private TypedQuery<Long> countQueryMock;
+    private PrescriptionSearchRepository repository;
+    private final Map<Long, Integer> quantities = new LinkedHashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        entityManagerMock = mock(EntityManager.class);
+        queryMock = mock(TypedQuery.class);
+        countQueryMock = mock(TypedQuery.class);
+        when(entityManagerMock.createQuery(anyString(), eq(PrescriptionPharmacyTotal.class))).thenReturn(queryMock);
+        when(entityManagerMock.createQuery(anyString(), eq(Long.class))).thenReturn(countQueryMock);
+        when(queryMock.getResultList()).thenReturn(List.of(new PrescriptionPharmacyTotal(7L, 1500L)));
+        when(countQueryMock.getSingleResult()).thenReturn(100L);
+        repository = new PrescriptionSearchRepository();
+        ReflectionTestUtils.setField(repository, "entityManager", entityManagerMock);
+        quantities.put(1L, 2);
+        quantities.put(3L, 1);
+    }
+
+    @Test
+    void testOffsetPageSumsTotalsInCents() {
+        var page = repository.getPharmaciesForPrescription(quantities, null,
+                PageRequest.of(2, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.TOTAL_STOCK_PRICE)));
+
+        var jpql = captureQuery();
+        assertTrue(jpql.contains("cast(sum(round(ms.currentPrice * 100) * case m.id when 1 then 2 when 3 then 1 else 0 end) as long)"));
+        assertFalse(jpql.contains(":afterTotalCents"));
+        assertTrue(jpql.endsWith("asc, ph.id asc"));
+        verify(queryMock).setFirstResult(20);
+        verify(queryMock).setMaxResults(10);
+        assertEquals(100L, page.getTotalElements());
+        assertEquals(15.0, page.getContent().get(0).getTotalPrice());
+    }
+
+    @Test
+    void testKeysetPageComparesExactCentsAndPharmacyId() {
+        repository.getPharmaciesForPrescription(quantities, new PrescriptionSearchCursor(1500L, 7L, false),
+                PageRequest.of(2, 10, Sort.by(Sort.Direction.DESC, IPrescriptionSearchRepository.TOTAL_STOCK_PRICE)));
+
+        var jpql = captureQuery();
+        assertTrue(jpql.contains("as long) < :afterTotalCents or ("));
+        assertTrue(jpql.contains("as long) = :afterTotalCents and ph.id < :afterPharmacyId))"));
+        assertTrue(jpql.endsWith("desc, ph.id desc"));
+        verify(queryMock).setParameter("afterTotalCents", 1500L);
+        verify(queryMock).setParameter("afterPharmacyId", 7L);
+        // the keyset replaces the offset
+        verify(queryMock).setFirstResult(0);
+        // the count covers all matching pharmacies, not only the ones after the cursor
+        verify(countQueryMock, never()).setParameter(eq("afterTotalCents"), any());
+        verify(countQueryMock, never()).setParameter(eq("afterPharmacyId"), any());
+        verify(countQueryMock).setParameter("count", 2L);
+    }
+
+    @Test
+    void testCursorIsRejectedForOtherOrders() {
+        assertThrows(IllegalArgumentException.class, () -> repository.getPharmaciesForPrescription(quantities,
+                new PrescriptionSearchCursor(1500L, 7L, false),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_NAME))));
+        verifyNoInteractions(entityManagerMock);
+    }
+
+    private String captureQuery() {
+        var captor = ArgumentCaptor.forClass(String.class);
+        verify(entityManagerMock).createQuery(captor.capture(), eq(PrescriptionPharmacyTotal.class));
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,119 @@
+package com.mrsisa.pharmacy.security;
+
+import com.mrsisa.pharmacy.domain.aggregates.UserTokenVersion;
+import com.mrsisa.pharmacy.domain.entities.PharmacyEmployee;
+import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.repository.IUserRepository;
+import com.mrsisa.pharmacy.security.filter.JwtRequestFilter;
+import com.mrsisa.pharmacy.security.util.AuthenticatedUser;
+import com.mrsisa.pharmacy.security.util.JwtUtil;
+import com.mrsisa.pharmacy.security.util.PrincipalCache;
+import com.mrsisa.pharmacy.security.util.TokenRevocationList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JwtRequestFilterTest {
+
+    private static final Long USER_ID = 3L;
+    private static final String USERNAME = "pharmacist";
+    private static final List<SimpleGrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_PHARMACIST"));
+
+    private PharmacyEmployee user;
+    private JwtUtil jwtUtil;
+    private IUserRepository userRepositoryMock;
+    private UserDetailsService userServiceMock;
+    private TokenRevocationList tokenRevocationList;
+    private JwtRequestFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        user = new PharmacyEmployee("Pera", "Peric", USERNAME, "password", "pera@mail.com", true, true, EmployeeType.PHARMACIST);
+        user.setId(USER_ID);
+        jwtUtil = new JwtUtil();
+        jwtUtil.signingKey = "signingkey";
+        jwtUtil.authoritiesKey = "roles";
+        jwtUtil.tokenValidity = 3600;
+        userRepositoryMock = mock(IUserRepository.class);
+        userServiceMock = mock(UserDetailsService.class);
+        when(userServiceMock.loadUserByUsername(USERNAME)).thenAnswer(invocation ->
+                new AuthenticatedUser(USER_ID, "PharmacyEmployee", user.getTokenVersion(), USERNAME, "password", AUTHORITIES));
+        tokenRevocationList = new TokenRevocationList(userRepositoryMock);
+        filter = new JwtRequestFilter(userServiceMock, jwtUtil, new PrincipalCache(60, 100), tokenRevocationList);
+        filter.headerString = "Authorization";
+        filter.tokenPrefix = "Bearer ";
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testCachedPrincipalAuthenticatesRepeatedRequests() throws Exception {
+        var token = issueToken();
+
+        assertTrue(authenticate(token));
+        assertTrue(authenticate(token));
+        verify(userServiceMock, times(1)).loadUserByUsername(USERNAME);
+    }
+
+    @Test
+    void testTokenRevokedOnAnotherNodeIsRejectedAfterRefresh() throws Exception {
+        var token = issueToken();
+        assertTrue(authenticate(token));
+
+        // the password was changed on another node, the principal is still cached here
+        when(userRepositoryMock.getRevokedTokenVersions()).thenReturn(List.of(new UserTokenVersion(USER_ID, 1)));
+        tokenRevocationList.refresh();
+
+        assertFalse(authenticate(token));
+    }
+
+    @Test
+    void testTokenOlderThanLoadedPrincipalIsRejected() throws Exception {
+        var token = issueToken();
+
+        // revoked on another node before this node refreshed its revocation list
+        user.setTokenVersion(1);
+
+        assertFalse(authenticate(token));
+        assertTrue(authenticate(issueToken()));
+    }
+
+    @Test
+    void testStatelessModeChecksTheRevocationList() throws Exception {
+        filter.stateless = true;
+        var token = issueToken();
+        assertTrue(authenticate(token));
+
+        tokenRevocationList.revoke(USER_ID, 1);
+
+        assertFalse(authenticate(token));
+        verify(userServiceMock, never()).loadUserByUsername(USERNAME);
+    }
+
+    private String issueToken() {
+        return jwtUtil.generateToken(new UsernamePasswordAuthenticationToken(USERNAME, "", AUTHORITIES), user);
+    }
+
+    private boolean authenticate(String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        var request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication() != null;
+    }
+}
@@ -1,9 +1,14 @@
 package com.mrsisa.pharmacy.service;
 
 import com.mrsisa.pharmacy.domain.entities.*;
+import com.mrsisa.pharmacy.domain.valueobjects.WorkingDay;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.domain.enums.EmployeeType;
+import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.exception.BusinessException;
 import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.IEmploymentContractRepository;
+import com.mrsisa.pharmacy.repository.ILeaveDaysRequestRepository;
 import com.mrsisa.pharmacy.repository.IPatientRepository;
 import com.mrsisa.pharmacy.repository.IPharmacyRepository;
 import com.mrsisa.pharmacy.service.impl.AppointmentService;
@@ -13,10 +18,14 @@ import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -33,9 +42,18 @@ class AppointmentServiceTest {
     @Mock
     private IAppointmentRepository appointmentRepositoryMock;
 
+    @Mock
+    private IEmploymentContractRepository employmentContractRepositoryMock;
+
+    @Mock
+    private ILeaveDaysRequestRepository leaveDaysRequestRepositoryMock;
+
     @Mock
     private IEmailService emailServiceMock;
 
+    @Mock
+    private IEmployeeAvailabilityCalendar availabilityCalendarMock;
+
     @InjectMocks
     private AppointmentService appointmentService;
 
@@ -72,6 +90,7 @@ class AppointmentServiceTest {
         // Test case constants
         final Long PHARMACY_ID = 123L;
         final Long PATIENT_ID = 123L;
+        final Long EMPLOYEE_ID = 321L;
         final Double CURR_DERMATOLOGIST_PRICE = 350.0;
         final EmployeeType EMPLOYEE_TYPE = EmployeeType.DERMATOLOGIST;
         final LocalDateTime FROM_DATE = LocalDateTime.of(2021, 5, 15, 15, 0);
@@ -84,11 +103,14 @@ class AppointmentServiceTest {
         Patient patient = new Patient();
         patient.setId(PATIENT_ID);
         PharmacyEmployee pharmacyEmployee = new PharmacyEmployee();
+        pharmacyEmployee.setId(EMPLOYEE_ID);
         pharmacyEmployee.setEmployeeType(EMPLOYEE_TYPE);
         EmploymentContract employmentContract = new EmploymentContract();
         employmentContract.setPharmacyEmployee(pharmacyEmployee);
+        employmentContract.setPharmacy(pharmacy);
 
         // Mock repositories
+        when(employmentContractRepositoryMock.getEmployeeContractsForUpdate(EMPLOYEE_ID)).thenReturn(List.of(employmentContract));
         when(pharmacyRepositoryMock.findById(PHARMACY_ID)).thenReturn(Optional.of(pharmacy));
         when(patientRepositoryMock.findById(PATIENT_ID)).thenReturn(Optional.of(patient));
 
@@ -107,5 +129,63 @@ class AppointmentServiceTest {
         verify(pharmacyRepositoryMock, times(1)).findById(PHARMACY_ID);
         verify(patientRepositoryMock, times(1)).findById(PATIENT_ID);
         verify(appointmentRepositoryMock, times(1)).save(createdAppointment);
+        verify(appointmentRepositoryMock, times(1)).countBusyAppointmentsForEmployeeInTime(EMPLOYEE_ID, FROM_DATE, TO_DATE);
+        verify(leaveDaysRequestRepositoryMock, times(1)).getBlockingLeaveDaysStatusesForEmployee(EMPLOYEE_ID,
+                FROM_DATE.toLocalDate(), TO_DATE.toLocalDate());
+    }
+
+    @Test
+    void testScheduleAppointmentForEmployeeChecksDatabaseBehindCalendar() {
+        final Long PHARMACY_ID = 123L;
+        final Long EMPLOYEE_ID = 321L;
+        final LocalDateTime FROM_DATE = LocalDateTime.of(2021, 5, 15, 15, 0);
+        final LocalDateTime TO_DATE = LocalDateTime.of(2021, 5, 15, 16, 0);
+
+        Pharmacy pharmacy = new Pharmacy();
+        pharmacy.setId(PHARMACY_ID);
+        PharmacyEmployee pharmacyEmployee = new PharmacyEmployee();
+        pharmacyEmployee.setId(EMPLOYEE_ID);
+        pharmacyEmployee.setEmployeeType(EmployeeType.PHARMACIST);
+        EmploymentContract employmentContract = new EmploymentContract();
+        employmentContract.setPharmacyEmployee(pharmacyEmployee);
+        employmentContract.setPharmacy(pharmacy);
+
+        // the calendar of this instance has not seen the appointment booked on another one
+        when(employmentContractRepositoryMock.getEmployeeContractsForUpdate(EMPLOYEE_ID)).thenReturn(List.of(employmentContract));
+        when(appointmentRepositoryMock.countBusyAppointmentsForEmployeeInTime(EMPLOYEE_ID, FROM_DATE, TO_DATE)).thenReturn(1L);
+
+        assertThrows(BusinessException.class, () -> appointmentService.scheduleAppointmentForEmployee(FROM_DATE, TO_DATE,
+                1L, employmentContract, PHARMACY_ID));
+        verify(appointmentRepositoryMock, never()).save(any(Appointment.class));
+    }
+
+    @Test
+    void testAvailableAppointmentIsNotCreatedOnLeaveMissedByCalendar() {
+        final Long PHARMACY_ID = 123L;
+        final Long EMPLOYEE_ID = 321L;
+        final LocalDateTime FROM_DATE = LocalDateTime.of(2021, 5, 17, 15, 0);
+        final LocalDateTime TO_DATE = LocalDateTime.of(2021, 5, 17, 16, 0);
+
+        Pharmacy pharmacy = new Pharmacy();
+        pharmacy.setId(PHARMACY_ID);
+        PharmacyEmployee pharmacyEmployee = new PharmacyEmployee();
+        pharmacyEmployee.setId(EMPLOYEE_ID);
+        EmploymentContract otherContract = new EmploymentContract();
+        otherContract.setPharmacy(new Pharmacy());
+        otherContract.getPharmacy().setId(PHARMACY_ID + 1);
+        EmploymentContract employmentContract = new EmploymentContract();
+        employmentContract.setPharmacyEmployee(pharmacyEmployee);
+        employmentContract.setPharmacy(pharmacy);
+        employmentContract.getWorkingHours().add(new WorkingDay(employmentContract, FROM_DATE.getDayOfWeek(), LocalTime.of(8, 0), LocalTime.of(20, 0)));
+
+        when(pharmacyRepositoryMock.findByIdAndActiveTrue(PHARMACY_ID)).thenReturn(Optional.of(pharmacy));
+        when(employmentContractRepositoryMock.getEmployeeContractsForUpdate(EMPLOYEE_ID)).thenReturn(List.of(otherContract, employmentContract));
+        when(leaveDaysRequestRepositoryMock.getBlockingLeaveDaysStatusesForEmployee(EMPLOYEE_ID, LocalDate.of(2021, 5, 17),
+                LocalDate.of(2021, 5, 17))).thenReturn(List.of(LeaveDaysRequestStatus.APPROVED));
+
+        var exception = assertThrows(BusinessException.class, () -> appointmentService.createAvailableAppointment(PHARMACY_ID,
+                EMPLOYEE_ID, FROM_DATE, TO_DATE));
+        assertEquals("Employee is on leave on the selected date.", exception.getMessage());
+        verify(appointmentRepositoryMock, never()).save(any(Appointment.class));
     }
 }
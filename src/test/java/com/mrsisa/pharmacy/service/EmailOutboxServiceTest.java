@@ -0,0 +1,139 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.OutgoingEmail;
+import com.mrsisa.pharmacy.domain.enums.OutgoingEmailStatus;
+import com.mrsisa.pharmacy.repository.IOutgoingEmailRepository;
+import com.mrsisa.pharmacy.service.impl.EmailOutboxService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EmailOutboxServiceTest {
+
+    private IOutgoingEmailRepository outgoingEmailRepositoryMock;
+    private JavaMailSender mailSenderMock;
+    private PlatformTransactionManager transactionManagerMock;
+    private List<OutgoingEmail> emails;
+    private EmailOutboxService emailOutboxService;
+
+    @BeforeEach
+    void setUp() {
+        emails = new ArrayList<>();
+        emails.add(email(1L, "first@mail.com"));
+        emails.add(email(2L, "second@mail.com"));
+        outgoingEmailRepositoryMock = mock(IOutgoingEmailRepository.class);
+        when(outgoingEmailRepositoryMock.claimReadyEmails(anyInt(), any(), anyInt())).thenReturn(emails);
+        when(outgoingEmailRepositoryMock.findAllById(any())).thenReturn(emails);
+        mailSenderMock = mock(JavaMailSender.class);
+        when(mailSenderMock.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        transactionManagerMock = mock(PlatformTransactionManager.class);
+        when(transactionManagerMock.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        emailOutboxService = new EmailOutboxService(outgoingEmailRepositoryMock, mailSenderMock,
+                new TransactionTemplate(transactionManagerMock), 8, 30, 3600, 7, 300, 0);
+    }
+
+    @Test
+    void testBatchIsSentBetweenClaimAndRecordTransactions() {
+        assertEquals(2, emailOutboxService.dispatchBatch(50));
+
+        InOrder inOrder = inOrder(transactionManagerMock, outgoingEmailRepositoryMock, mailSenderMock);
+        inOrder.verify(transactionManagerMock).getTransaction(any());
+        inOrder.verify(outgoingEmailRepositoryMock).claimReadyEmails(eq(OutgoingEmailStatus.PENDING.ordinal()), any(), eq(50));
+        inOrder.verify(transactionManagerMock).commit(any());
+        inOrder.verify(mailSenderMock).send((MimeMessage[]) any());
+        inOrder.verify(transactionManagerMock).getTransaction(any());
+        inOrder.verify(outgoingEmailRepositoryMock).findAllById(List.of(1L, 2L));
+        inOrder.verify(transactionManagerMock).commit(any());
+        emails.forEach(email -> assertEquals(OutgoingEmailStatus.SENT, email.getStatus()));
+    }
+
+    @Test
+    void testClaimedEmailsAreLeased() {
+        var before = LocalDateTime.now();
+        doAnswer(invocation -> {
+            emails.forEach(email -> assertTrue(email.getNextAttemptAt().isAfter(before.plusSeconds(299))));
+            return null;
+        }).when(mailSenderMock).send((MimeMessage[]) any());
+
+        emailOutboxService.dispatchBatch(50);
+
+        verify(mailSenderMock).send((MimeMessage[]) any());
+    }
+
+    @Test
+    void testFailedEmailIsRetriedWithBackoff() {
+        doAnswer(invocation -> {
+            MimeMessage second = invocation.getArgument(1);
+            throw new MailSendException(Map.of(second, new IllegalStateException("Mailbox unavailable")));
+        }).when(mailSenderMock).send((MimeMessage[]) any());
+        var before = LocalDateTime.now();
+
+        emailOutboxService.dispatchBatch(50);
+
+        assertEquals(OutgoingEmailStatus.SENT, emails.get(0).getStatus());
+        var failed = emails.get(1);
+        assertEquals(OutgoingEmailStatus.PENDING, failed.getStatus());
+        assertEquals(1, failed.getAttempts());
+        assertEquals("Mailbox unavailable", failed.getLastError());
+        assertFalse(failed.getNextAttemptAt().isBefore(before.plusSeconds(30)));
+        assertTrue(failed.getNextAttemptAt().isBefore(before.plusSeconds(60)));
+    }
+
+    @Test
+    void testEmailReclaimedAfterLeaseIsNotRecorded() {
+        var reclaimedLease = LocalDateTime.now().plusHours(1);
+        doAnswer(invocation -> {
+            emails.get(0).setNextAttemptAt(reclaimedLease);
+            return null;
+        }).when(mailSenderMock).send((MimeMessage[]) any());
+
+        emailOutboxService.dispatchBatch(50);
+
+        assertEquals(OutgoingEmailStatus.PENDING, emails.get(0).getStatus());
+        assertEquals(reclaimedLease, emails.get(0).getNextAttemptAt());
+        assertEquals(OutgoingEmailStatus.SENT, emails.get(1).getStatus());
+    }
+
+    @Test
+    void testNothingIsSentWhenNoEmailIsDue() {
+        when(outgoingEmailRepositoryMock.claimReadyEmails(anyInt(), any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, emailOutboxService.dispatchBatch(50));
+
+        verify(mailSenderMock, never()).send((MimeMessage[]) any());
+        verify(outgoingEmailRepositoryMock, never()).findAllById(any());
+    }
+
+    @Test
+    void testClaimIsSizedToRateLimitPermits() {
+        when(outgoingEmailRepositoryMock.claimReadyEmails(anyInt(), any(), anyInt())).thenReturn(emails.subList(0, 1));
+        emailOutboxService = new EmailOutboxService(outgoingEmailRepositoryMock, mailSenderMock,
+                new TransactionTemplate(transactionManagerMock), 8, 30, 3600, 7, 300, 10);
+
+        assertEquals(1, emailOutboxService.dispatchBatch(50));
+
+        verify(outgoingEmailRepositoryMock).claimReadyEmails(eq(OutgoingEmailStatus.PENDING.ordinal()), any(), eq(1));
+    }
+
+    private static OutgoingEmail email(Long id, String recipient) {
+        var email = new OutgoingEmail(recipient, "Subject", "Text", false);
+        email.setId(id);
+        return email;
+    }
+}
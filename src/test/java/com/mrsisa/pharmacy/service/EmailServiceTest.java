@@ -0,0 +1,263 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.aggregates.PromotionSubscriber;
+import com.mrsisa.pharmacy.domain.entities.*;
+import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.domain.enums.OfferStatus;
+import com.mrsisa.pharmacy.domain.valueobjects.MedicineReservationItem;
+import com.mrsisa.pharmacy.domain.valueobjects.PromotionItem;
+import com.mrsisa.pharmacy.domain.valueobjects.Rejection;
+import com.mrsisa.pharmacy.repository.IMedicineReservationRepository;
+import com.mrsisa.pharmacy.service.impl.EmailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/*
+The expected texts are the output of the StringBuilder code the templates replaced, so any change to the rendered
+emails shows up here.
+ */
+class EmailServiceTest {
+
+    private IEmailOutboxService emailOutboxServiceMock;
+    private EmailService emailService;
+    private Pharmacy pharmacy;
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        emailOutboxServiceMock = mock(IEmailOutboxService.class);
+        emailService = new EmailService(emailOutboxServiceMock, mock(IMedicineReservationRepository.class));
+        pharmacy = new Pharmacy();
+        pharmacy.setName("Apoteka Jankovic");
+        patient = new Patient();
+        patient.setFirstName("Ana");
+        patient.setUsername("ana");
+        patient.setEmail("ana@mail.com");
+    }
+
+    @Test
+    void testIssuedReservationMessage() {
+        emailService.sendIssuedReservationMessage(reservation());
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Issued reservation",
+                "Dear Ana,\n\n" +
+                "The following medicines have been issued to you with total price of 1500.0RSD :\n" +
+                "\t\tBrufen 2pcs - 1000.0RSD\n" +
+                "\t\tAspirin 1pcs - 500.0RSD\n" +
+                "\nAll the best,\nApoteka Jankovic.", false);
+    }
+
+    @Test
+    void testReservationCreatedMessage() {
+        emailService.sendDrugReservationCreatedMessage(reservation());
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Reservation 10 at Apoteka Jankovic",
+                "Dear Ana,\n\n" +
+                "Id of reservation is 10\n\n" +
+                "The following medicines have been reserved for you with total price of 1500.0RSD :\n" +
+                "\t\tBrufen 2 pcs - 1000.0RSD\n" +
+                "\t\tAspirin 1 pcs - 500.0RSD\n" +
+                "\nAll the best,\nApoteka Jankovic.", false);
+    }
+
+    @Test
+    void testConfirmationMessage() throws Exception {
+        emailService.sendConfirmationMessage("ana", "ana@mail.com", "http://localhost/activate/abc");
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Account activation",
+                "<h1>Hello ana!</h1>" +
+                "<p>In order to use the application, first you need to verify your account." +
+                "<br>In order to to that, click <a href='http://localhost/activate/abc'>here.</a>" +
+                "<br><br>Admin team</p>", true);
+    }
+
+    @Test
+    void testDermatologistAppointmentScheduledMessage() {
+        emailService.sendDermatologistAppointmentScheduledMessage(appointment());
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Scheduled Dermatologist appointment 5 at Apoteka Jankovic",
+                "Dear Ana,\n\n" +
+                "Id of scheduled appointment with Dermatologist is 5\n\n" +
+                "Pharmacy: Apoteka Jankovic,\n\n" +
+                "Dermatologist: Mika Mikic,\n\n" +
+                "Start date and time: 15/06/2021 02:30,\n\n" +
+                "End date and time: 15/06/2021 03:00,\n\n" +
+                "\nAll the best,\nApoteka Jankovic.", false);
+    }
+
+    @Test
+    void testPharmacistAppointmentScheduledMessage() {
+        emailService.sendPharmacistAppointmentScheduledMessage(appointment());
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Scheduled Pharmacist appointment 5 at Apoteka Jankovic",
+                "Dear Ana,\n\n" +
+                "Id of scheduled appointment with Pharmacist is 5\n\n" +
+                "Pharmacy: Apoteka Jankovic,\n\n" +
+                "Pharmacist: Mika Mikic,\n\n" +
+                "Start date and time: 15/06/2021 02:30,\n\n" +
+                "End date and time: 15/06/2021 03:00,\n\n" +
+                "\nAll the best,\nApoteka Jankovic.", false);
+    }
+
+    @Test
+    void testNotifySupplier() {
+        var supplier = new Supplier("Pera", "Peric", "pera", "password", "pera@mail.com", true, true, "Hemofarm");
+        var order = new Order();
+        order.setId(4L);
+        order.setPharmacy(pharmacy);
+        var offer = new Offer();
+        offer.setId(9L);
+        offer.setSupplier(supplier);
+        offer.setOriginalOrder(order);
+        offer.setOfferStatus(OfferStatus.ACCEPTED);
+
+        emailService.notifySupplier(offer);
+
+        verify(emailOutboxServiceMock).enqueue("pera@mail.com", "Order 4 results",
+                "Dear Pera,\n\n" +
+                "Your offer 9 has been accepted.\n" +
+                "\nAll the best,\nApoteka Jankovic.", false);
+    }
+
+    @Test
+    void testLeaveRequestApprovedMessage() {
+        emailService.notifyEmployeeAboutLeaveRequestResponse(leaveDaysRequest(LeaveDaysRequestStatus.APPROVED, null));
+
+        verify(emailOutboxServiceMock).enqueue("mika@mail.com", "Leave days request response",
+                "Dear Mika,\n\n" +
+                "We inform you that your request for leave days in a period 2021-06-01 - 2021-06-05 has been approved.\n" +
+                "\nAll the best,\nMRS-ISA T1.", false);
+    }
+
+    @Test
+    void testLeaveRequestRejectedMessage() {
+        emailService.notifyEmployeeAboutLeaveRequestResponse(leaveDaysRequest(LeaveDaysRequestStatus.REJECTED,
+                new Rejection("Busy season")));
+
+        verify(emailOutboxServiceMock).enqueue("mika@mail.com", "Leave days request response",
+                "Dear Mika,\n\n" +
+                "We inform you that your request for leave days in a period 2021-06-01 - 2021-06-05 has been rejected.\n" +
+                "Rejection reason: Busy season.\n" +
+                "\nAll the best,\nMRS-ISA T1.", false);
+    }
+
+    @Test
+    void testRecipeConfirmationMail() {
+        var recipe = new Recipe();
+        recipe.setId(3L);
+        recipe.setPharmacy(pharmacy);
+
+        emailService.sendRecipeConfirmationMail(patient, recipe);
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Recipe creation",
+                "Dear ana,\n\n" +
+                "This is a confirmation email for recipe with id 3 at pharmacy Apoteka Jankovic.\n\n" +
+                "Admin team", false);
+    }
+
+    @Test
+    void testComplaintReplyNotification() {
+        var admin = new SystemAdmin();
+        admin.setUsername("admin");
+        var reply = new ComplaintReply();
+        reply.setContent("We are sorry.");
+        reply.setSystemAdmin(admin);
+        var complaint = new Complaint();
+        complaint.setEntity("Apoteka Jankovic");
+        complaint.setReply(reply);
+
+        emailService.sendComplaintReplyNotification(patient, complaint);
+
+        verify(emailOutboxServiceMock).enqueue("ana@mail.com", "Complaint reply",
+                "Dear ana,\n\n" +
+                "Your complaint against Apoteka Jankovic has been responded to by admin:\n\n" +
+                "''We are sorry.''", false);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPromotionNewsletter() {
+        var promotion = new Promotion();
+        promotion.setPharmacy(pharmacy);
+        promotion.setContent("Summer sale");
+        promotion.setPromotionItems(new LinkedHashSet<>(List.of(new PromotionItem(promotion, medicine("Brufen"), 20),
+                new PromotionItem(promotion, medicine("Aspirin"), 15))));
+
+        var text = emailService.getPromotionNewsletterText(promotion);
+        emailService.notifySubscribersAboutPromotion(promotion, text, List.of(new PromotionSubscriber(1L, "ana", "ana@mail.com")));
+
+        var expectedText = "A new promotion has been created in Apoteka Jankovic.\n\n" +
+                "Summer sale\n\n" +
+                "Articles which are on promotion: \n" +
+                "\tBrufen: -20%\n" +
+                "\tAspirin: -15%\n" +
+                "All the best, \n" +
+                "Apoteka Jankovic" +
+                "\n\nYou are receiving these notification because you are subscribed to Apoteka Jankovic's newsletter.";
+        assertEquals(expectedText, text);
+        ArgumentCaptor<Collection<OutgoingEmail>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(emailOutboxServiceMock).enqueueAll(captor.capture());
+        var email = captor.getValue().iterator().next();
+        assertEquals("ana@mail.com", email.getRecipient());
+        assertEquals("New promotion in Apoteka Jankovic", email.getSubject());
+        assertEquals("Dear ana,\n\n" + expectedText, email.getText());
+    }
+
+    @Test
+    void testSimpleMessageIsEnqueuedAsPlainText() {
+        emailService.sendSimpleMessage("ana@mail.com", "Subject", "Text");
+
+        verify(emailOutboxServiceMock).enqueue(eq("ana@mail.com"), eq("Subject"), eq("Text"), eq(false));
+    }
+
+    private MedicineReservation reservation() {
+        var reservation = new MedicineReservation();
+        reservation.setId(10L);
+        reservation.setPatient(patient);
+        reservation.setPharmacy(pharmacy);
+        reservation.setPrice(1500.0);
+        reservation.setReservedMedicines(new LinkedHashSet<>(List.of(new MedicineReservationItem(2, medicine("Brufen"), 1000.0),
+                new MedicineReservationItem(1, medicine("Aspirin"), 500.0))));
+        return reservation;
+    }
+
+    private Appointment appointment() {
+        var employee = new PharmacyEmployee();
+        employee.setFirstName("Mika");
+        employee.setLastName("Mikic");
+        var contract = new EmploymentContract();
+        contract.setPharmacy(pharmacy);
+        contract.setPharmacyEmployee(employee);
+        var appointment = new Appointment();
+        appointment.setId(5L);
+        appointment.setPatient(patient);
+        appointment.setEmployee(contract);
+        appointment.setFrom(LocalDateTime.of(2021, 6, 15, 14, 30));
+        appointment.setTo(LocalDateTime.of(2021, 6, 15, 15, 0));
+        return appointment;
+    }
+
+    private LeaveDaysRequest leaveDaysRequest(LeaveDaysRequestStatus status, Rejection rejection) {
+        var employee = new PharmacyEmployee();
+        employee.setFirstName("Mika");
+        employee.setEmail("mika@mail.com");
+        var request = new LeaveDaysRequest(LocalDate.of(2021, 6, 1), LocalDate.of(2021, 6, 5), employee, status);
+        request.setRejection(rejection);
+        return request;
+    }
+
+    private static Medicine medicine(String name) {
+        var medicine = new Medicine();
+        medicine.setName(name);
+        return medicine;
+    }
+}
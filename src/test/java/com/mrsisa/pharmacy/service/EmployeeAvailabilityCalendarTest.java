@@ -0,0 +1,217 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.entities.Appointment;
+import com.mrsisa.pharmacy.domain.entities.EmploymentContract;
+import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
+import com.mrsisa.pharmacy.domain.entities.PharmacyEmployee;
+import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
+import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.ILeaveDaysRequestRepository;
+import com.mrsisa.pharmacy.service.impl.EmployeeAvailabilityCalendar;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class EmployeeAvailabilityCalendarTest {
+
+    private static final Long EMPLOYEE_ID = 7L;
+    private static final LocalDateTime MORNING = LocalDate.now().plusDays(3).atTime(9, 0);
+
+    private IAppointmentRepository appointmentRepositoryMock;
+    private ILeaveDaysRequestRepository leaveDaysRequestRepositoryMock;
+    private PharmacyEmployee employee;
+    private EmploymentContract contract;
+    private List<Appointment> appointments;
+    private List<LeaveDaysRequest> leaveDays;
+    private EmployeeAvailabilityCalendar calendar;
+
+    @BeforeEach
+    void setUp() {
+        employee = new PharmacyEmployee();
+        employee.setId(EMPLOYEE_ID);
+        contract = new EmploymentContract();
+        contract.setPharmacyEmployee(employee);
+        appointments = new ArrayList<>();
+        leaveDays = new ArrayList<>();
+        appointmentRepositoryMock = mock(IAppointmentRepository.class);
+        leaveDaysRequestRepositoryMock = mock(ILeaveDaysRequestRepository.class);
+        when(appointmentRepositoryMock.getAllBusyAppointmentsForEmployee(eq(EMPLOYEE_ID), any()))
+                .thenAnswer(invocation -> new ArrayList<>(appointments));
+        when(leaveDaysRequestRepositoryMock.getAllPendingAndAcceptedLeaveDaysRequestForEmployee(EMPLOYEE_ID))
+                .thenAnswer(invocation -> new ArrayList<>(leaveDays));
+        calendar = new EmployeeAvailabilityCalendar(appointmentRepositoryMock, leaveDaysRequestRepositoryMock, 300, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testIsBusyUsesLoadedAppointments() {
+        appointments.add(appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.BOOKED));
+
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING.plusMinutes(30), MORNING.plusMinutes(90)));
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING.plusHours(1), MORNING.plusHours(2)));
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING.minusHours(1), MORNING));
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING.plusMinutes(30), MORNING.plusMinutes(90)));
+        verify(appointmentRepositoryMock, times(1)).getAllBusyAppointmentsForEmployee(eq(EMPLOYEE_ID), any());
+    }
+
+    @Test
+    void testBookedAndAvailableAppointmentsBlockTheSlot() {
+        calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1));
+
+        calendar.appointmentChanged(appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.BOOKED));
+        calendar.appointmentChanged(appointment(2L, MORNING.plusHours(2), MORNING.plusHours(3), AppointmentStatus.AVAILABLE));
+
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING.plusHours(2), MORNING.plusHours(3)));
+    }
+
+    @Test
+    void testConcludedCanceledAndMissedAppointmentsFreeTheSlot() {
+        var tookPlace = appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.BOOKED);
+        var canceled = appointment(2L, MORNING.plusHours(1), MORNING.plusHours(2), AppointmentStatus.BOOKED);
+        var missed = appointment(3L, MORNING.plusHours(2), MORNING.plusHours(3), AppointmentStatus.BOOKED);
+        appointments.addAll(List.of(tookPlace, canceled, missed));
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(3)));
+
+        tookPlace.setAppointmentStatus(AppointmentStatus.TOOK_PLACE);
+        canceled.setAppointmentStatus(AppointmentStatus.CANCELED);
+        missed.setAppointmentStatus(AppointmentStatus.MISSED);
+        calendar.appointmentChanged(tookPlace);
+        calendar.appointmentChanged(canceled);
+        calendar.appointmentChanged(missed);
+
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(3)));
+    }
+
+    @Test
+    void testDeletedAppointmentFreesTheSlot() {
+        var appointment = appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.AVAILABLE);
+        appointments.add(appointment);
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+
+        appointment.setActive(false);
+        calendar.appointmentChanged(appointment);
+
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+    }
+
+    @Test
+    void testAppointmentChangeIsAppliedOnlyAfterCommit() {
+        calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1));
+        TransactionSynchronizationManager.initSynchronization();
+
+        calendar.appointmentChanged(appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.AVAILABLE));
+
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+    }
+
+    @Test
+    void testRolledBackAppointmentIsNeverPublished() {
+        calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1));
+        TransactionSynchronizationManager.initSynchronization();
+
+        calendar.appointmentChanged(appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.AVAILABLE));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+    }
+
+    @Test
+    void testLeaveDaysCoverWholeDaysPerStatus() {
+        var day = MORNING.toLocalDate();
+        leaveDays.add(leaveDays(1L, day, day, LeaveDaysRequestStatus.PENDING));
+        leaveDays.add(leaveDays(2L, day.plusDays(2), day.plusDays(3), LeaveDaysRequestStatus.APPROVED));
+
+        assertTrue(calendar.isOnLeave(EMPLOYEE_ID, day.atTime(23, 0), day.plusDays(1).atStartOfDay()));
+        assertFalse(calendar.isOnLeave(EMPLOYEE_ID, day.plusDays(1).atStartOfDay(), day.plusDays(1).atTime(10, 0)));
+        assertTrue(calendar.isOnLeave(EMPLOYEE_ID, day.atTime(9, 0), day.atTime(10, 0), LeaveDaysRequestStatus.PENDING));
+        assertFalse(calendar.isOnLeave(EMPLOYEE_ID, day.atTime(9, 0), day.atTime(10, 0), LeaveDaysRequestStatus.APPROVED));
+        assertTrue(calendar.isOnLeave(EMPLOYEE_ID, day.plusDays(3).atTime(9, 0), day.plusDays(3).atTime(10, 0),
+                LeaveDaysRequestStatus.APPROVED));
+    }
+
+    @Test
+    void testRejectedLeaveDaysRequestFreesTheDays() {
+        var day = MORNING.toLocalDate();
+        var request = leaveDays(1L, day, day, LeaveDaysRequestStatus.PENDING);
+        leaveDays.add(request);
+        assertTrue(calendar.isOnLeave(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+
+        request.setLeaveDaysRequestStatus(LeaveDaysRequestStatus.REJECTED);
+        calendar.leaveDaysRequestChanged(request);
+
+        assertFalse(calendar.isOnLeave(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+    }
+
+    @Test
+    void testEvictReloadsTheCalendar() {
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        appointments.add(appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.BOOKED));
+
+        calendar.evict(EMPLOYEE_ID);
+
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        verify(appointmentRepositoryMock, times(2)).getAllBusyAppointmentsForEmployee(eq(EMPLOYEE_ID), any());
+    }
+
+    @Test
+    void testLoadOverlappingChangeIsNotCached() {
+        var booked = appointment(1L, MORNING, MORNING.plusHours(1), AppointmentStatus.BOOKED);
+        when(appointmentRepositoryMock.getAllBusyAppointmentsForEmployee(eq(EMPLOYEE_ID), any())).thenAnswer(invocation -> {
+            // committed after the load read the appointments
+            calendar.appointmentChanged(booked);
+            return List.of();
+        }).thenAnswer(invocation -> List.of(booked));
+
+        assertFalse(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        assertTrue(calendar.isBusy(EMPLOYEE_ID, MORNING, MORNING.plusHours(1)));
+        verify(appointmentRepositoryMock, times(2)).getAllBusyAppointmentsForEmployee(eq(EMPLOYEE_ID), any());
+    }
+
+    @Test
+    void testNumberOfCachedCalendarsIsCapped() {
+        for (var employeeId = 1L; employeeId <= 3; employeeId++) {
+            calendar.isBusy(employeeId, MORNING, MORNING.plusHours(1));
+        }
+        for (var employeeId = 1L; employeeId <= 3; employeeId++) {
+            calendar.isBusy(employeeId, MORNING, MORNING.plusHours(1));
+        }
+
+        verify(appointmentRepositoryMock, atLeast(4)).getAllBusyAppointmentsForEmployee(any(), any());
+    }
+
+    private Appointment appointment(Long id, LocalDateTime from, LocalDateTime to, AppointmentStatus status) {
+        var appointment = new Appointment(from, to, 1000.0, status, contract);
+        appointment.setId(id);
+        return appointment;
+    }
+
+    private LeaveDaysRequest leaveDays(Long id, LocalDate from, LocalDate to, LeaveDaysRequestStatus status) {
+        var request = new LeaveDaysRequest(from, to, employee, status);
+        request.setId(id);
+        return request;
+    }
+}
@@ -3,6 +3,9 @@ package com.mrsisa.pharmacy.service;
 import com.mrsisa.pharmacy.domain.entities.LeaveDaysRequest;
 import com.mrsisa.pharmacy.domain.entities.PharmacyEmployee;
 import com.mrsisa.pharmacy.domain.enums.LeaveDaysRequestStatus;
+import com.mrsisa.pharmacy.exception.BusinessException;
+import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.repository.IEmploymentContractRepository;
 import com.mrsisa.pharmacy.repository.ILeaveDaysRequestRepository;
 import com.mrsisa.pharmacy.repository.IPharmacyEmployeeRepository;
 import com.mrsisa.pharmacy.service.impl.LeaveDaysRequestService;
@@ -13,9 +16,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -29,6 +34,15 @@ class LeaveDaysRequestServiceTest {
     @Mock
     private ILeaveDaysRequestRepository leaveDaysRequestRepositoryMock;
 
+    @Mock
+    private IAppointmentRepository appointmentRepositoryMock;
+
+    @Mock
+    private IEmploymentContractRepository employmentContractRepositoryMock;
+
+    @Mock
+    private IEmployeeAvailabilityCalendar availabilityCalendarMock;
+
     @InjectMocks
     private LeaveDaysRequestService leaveDaysRequestService;
 
@@ -55,5 +69,28 @@ class LeaveDaysRequestServiceTest {
         assertTrue(leaveDaysRequest.getTo().isEqual(TO_DATE));
         verify(pharmacyEmployeeRepositoryMock, times(1)).findById(EMPLOYEE_ID);
         verify(leaveDaysRequestRepositoryMock, times(1)).save(leaveDaysRequest);
+        verify(employmentContractRepositoryMock, times(1)).getEmployeeContractsForUpdate(EMPLOYEE_ID);
+        verify(appointmentRepositoryMock, times(1)).countBusyAppointmentsForEmployeeInTime(EMPLOYEE_ID,
+                FROM_DATE.atStartOfDay(), TO_DATE.plusDays(1).atStartOfDay());
+    }
+
+    @Test
+    void testCreateLeaveDaysRequestChecksDatabaseBehindCalendar() {
+        final Long EMPLOYEE_ID = 123L;
+        final LocalDate FROM_DATE = LocalDate.of(2021, 5, 15);
+        final LocalDate TO_DATE = LocalDate.of(2021, 5, 25);
+
+        PharmacyEmployee pharmacyEmployee = new PharmacyEmployee();
+        pharmacyEmployee.setId(EMPLOYEE_ID);
+
+        // the calendar of this instance has not seen the request created on another one
+        when(pharmacyEmployeeRepositoryMock.findById(EMPLOYEE_ID)).thenReturn(Optional.of(pharmacyEmployee));
+        when(leaveDaysRequestRepositoryMock.getBlockingLeaveDaysStatusesForEmployee(EMPLOYEE_ID, FROM_DATE, TO_DATE))
+                .thenReturn(List.of(LeaveDaysRequestStatus.PENDING));
+
+        var exception = assertThrows(BusinessException.class,
+                () -> leaveDaysRequestService.createLeaveDaysRequest(EMPLOYEE_ID, FROM_DATE, TO_DATE));
+        assertEquals("Request is overlapping with another request!", exception.getMessage());
+        verify(leaveDaysRequestRepositoryMock, never()).save(any(LeaveDaysRequest.class));
     }
 }
@@ -0,0 +1,90 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+Runs the set based expiry statements against the test database with the rows of test-data.sql. Every pharmacy
+of the fixture is alone in its shard out of 10000, so rows other tests leave in the database are not expired here.
+ */
+@SpringBootTest
+@Sql("/test-data.sql")
+@Transactional
+class MedicineReservationServiceTest {
+
+    private static final int SHARDS = 10000;
+    private static final int BENU_SHARD = 9001;
+    private static final int DR_MAX_SHARD = 9002;
+    private static final LocalDateTime NOW = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    @Autowired
+    private IMedicineReservationService medicineReservationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Integer getPenalties(long patientId) {
+        return jdbcTemplate.queryForObject("select penalties from patient where id = ?", Integer.class, patientId);
+    }
+
+    private Integer getVersion(long userId) {
+        return jdbcTemplate.queryForObject("select version from users where id = ?", Integer.class, userId);
+    }
+
+    private Integer getQuantity(long stockId) {
+        return jdbcTemplate.queryForObject("select quantity from medicine_stock where id = ?", Integer.class, stockId);
+    }
+
+    private Integer getStatus(long reservationId) {
+        return jdbcTemplate.queryForObject("select status from medicine_reservation where id = ?", Integer.class, reservationId);
+    }
+
+    @Test
+    void testEveryExpiredReservationOfAPatientAddsAPenalty() {
+        assertEquals(2, medicineReservationService.expireReservations(NOW, BENU_SHARD, SHARDS, 10));
+
+        // reservations 9001 and 9002 expired, 9004 is still in time and 9005 was picked up
+        assertEquals(3, getPenalties(9001));
+        assertEquals(0, getPenalties(9002));
+        assertEquals(1, getVersion(9001));
+        assertEquals(0, getVersion(9002));
+        assertEquals(ReservationStatus.EXPIRED.ordinal(), getStatus(9001));
+        assertEquals(ReservationStatus.EXPIRED.ordinal(), getStatus(9002));
+        assertEquals(ReservationStatus.RESERVED.ordinal(), getStatus(9004));
+        assertEquals(ReservationStatus.PICKED.ordinal(), getStatus(9005));
+    }
+
+    @Test
+    void testQuantitiesOfExpiredReservationsAreRestoredOncePerStock() {
+        assertEquals(2, medicineReservationService.expireReservations(NOW, BENU_SHARD, SHARDS, 10));
+        assertEquals(1, medicineReservationService.expireReservations(NOW, DR_MAX_SHARD, SHARDS, 10));
+
+        // two reservations of Brufen in the first pharmacy are summed into one update of its stock
+        assertEquals(10 + 2 + 3, getQuantity(9001));
+        assertEquals(5 + 1, getQuantity(9002));
+        // the cancelled item of reservation 9003 is not given back
+        assertEquals(7 + 4, getQuantity(9003));
+        assertEquals(1, getPenalties(9002));
+    }
+
+    @Test
+    void testChunksDoNotExpireAReservationTwice() {
+        assertEquals(1, medicineReservationService.expireReservations(NOW, BENU_SHARD, SHARDS, 1));
+        assertEquals(1, medicineReservationService.expireReservations(NOW, BENU_SHARD, SHARDS, 1));
+        assertEquals(0, medicineReservationService.expireReservations(NOW, BENU_SHARD, SHARDS, 1));
+
+        assertEquals(3, getPenalties(9001));
+        assertEquals(2, getVersion(9001));
+        assertEquals(10 + 2 + 3, getQuantity(9001));
+        assertEquals(5 + 1, getQuantity(9002));
+    }
+}
@@ -1,7 +1,6 @@
 package com.mrsisa.pharmacy.service;
 
 import com.mrsisa.pharmacy.domain.entities.*;
-import com.mrsisa.pharmacy.domain.enums.PromotionStatus;
 import com.mrsisa.pharmacy.repository.IPromotionItemRepository;
 import com.mrsisa.pharmacy.repository.IStockPriceRepository;
 import com.mrsisa.pharmacy.service.impl.MedicineStockService;
@@ -27,6 +26,9 @@ class MedicineStockServiceTest {
     @Mock
     private IStockPriceRepository stockPriceRepositoryMock;
 
+    @Mock
+    private IStockPriceResolver stockPriceResolverMock;
+
     @InjectMocks
     private MedicineStockService medicineStockService;
 
@@ -51,7 +53,7 @@ class MedicineStockServiceTest {
         medicineStock.getPriceTags().add(oldPrice);
 
         // Mock repositories
-        when(promotionItemRepositoryMock.getItemsWithMedicineInPharmacyStream(eq(PHARMACY_ID), eq(MEDICINE_ID), eq(PromotionStatus.ACTIVE), any(LocalDate.class))).thenReturn(Stream.empty());
+        when(promotionItemRepositoryMock.getItemsWithMedicineInPharmacyStream(eq(PHARMACY_ID), eq(MEDICINE_ID), any(LocalDate.class))).thenReturn(Stream.empty());
         when(stockPriceRepositoryMock.findActiveForStock(STOCK_ID)).thenReturn(Optional.of(oldPrice));
 
         // Create a spy object
@@ -65,7 +67,7 @@ class MedicineStockServiceTest {
         assertEquals(2, updatedStock.getPriceTags().size());
         assertNotNull(oldPrice.getTo());
         assertTrue(oldPrice.getTo().isEqual(LocalDate.now()));
-        verify(promotionItemRepositoryMock, times(1)).getItemsWithMedicineInPharmacyStream(eq(PHARMACY_ID), eq(MEDICINE_ID), eq(PromotionStatus.ACTIVE), any(LocalDate.class));
+        verify(promotionItemRepositoryMock, times(1)).getItemsWithMedicineInPharmacyStream(eq(PHARMACY_ID), eq(MEDICINE_ID), any(LocalDate.class));
         verify(stockPriceRepositoryMock, times(1)).findActiveForStock(STOCK_ID);
     }
 
@@ -0,0 +1,79 @@
+package com.mrsisa.pharmacy.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+Runs the monthly penalty reset against the test database with the patients of test-data.sql, whose ids follow 9000.
+ */
+@SpringBootTest
+@Sql("/test-data.sql")
+@Transactional
+class PatientPenaltiesTest {
+
+    private static final Long BEFORE_FIXTURE = 9000L;
+
+    @Autowired
+    private IPatientService patientService;
+
+    @Autowired
+    private IMedicineReservationService medicineReservationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Integer getPenalties(long patientId) {
+        return jdbcTemplate.queryForObject("select penalties from patient where id = ?", Integer.class, patientId);
+    }
+
+    private Integer getVersion(long userId) {
+        return jdbcTemplate.queryForObject("select version from users where id = ?", Integer.class, userId);
+    }
+
+    @Test
+    void testOnlyActivePatientsWithPenaltiesAreReset() {
+        assertEquals(List.of(9001L, 9003L), patientService.resetPenalties(BEFORE_FIXTURE, 10));
+
+        assertEquals(0, getPenalties(9001));
+        assertEquals(0, getPenalties(9003));
+        assertEquals(1, getVersion(9001));
+        assertEquals(1, getVersion(9003));
+        // nothing to reset, the row is not written
+        assertEquals(0, getVersion(9002));
+        // deactivated patients keep their penalties
+        assertEquals(2, getPenalties(9004));
+        assertEquals(0, getVersion(9004));
+    }
+
+    @Test
+    void testChunksContinueAfterTheLastPatient() {
+        assertEquals(List.of(9001L), patientService.resetPenalties(BEFORE_FIXTURE, 1));
+        assertEquals(2, getPenalties(9003));
+        assertEquals(List.of(9003L), patientService.resetPenalties(9001L, 1));
+        assertEquals(List.of(), patientService.resetPenalties(9003L, 1));
+
+        assertEquals(0, getPenalties(9001));
+        assertEquals(0, getPenalties(9003));
+    }
+
+    @Test
+    void testPenaltiesOfSeveralMissedReservationsAreResetTogether() {
+        // reservations 9001 and 9002 of patient 9001 are the only expired ones of pharmacy 9001
+        medicineReservationService.expireReservations(LocalDateTime.of(2021, 6, 1, 0, 0), 9001, 10000, 10);
+        assertEquals(3, getPenalties(9001));
+
+        assertEquals(List.of(9001L, 9003L), patientService.resetPenalties(BEFORE_FIXTURE, 10));
+
+        assertEquals(0, getPenalties(9001));
+        assertEquals(2, getVersion(9001));
+    }
+}
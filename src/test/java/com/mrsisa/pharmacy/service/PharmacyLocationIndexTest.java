@@ -0,0 +1,120 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.aggregates.PharmacyCoordinates;
+import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.service.impl.PharmacyLocationIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PharmacyLocationIndexTest {
+
+    private static final double NOVI_SAD_LATITUDE = 45.2671;
+    private static final double NOVI_SAD_LONGITUDE = 19.8335;
+
+    private IPharmacyRepository pharmacyRepositoryMock;
+    private List<PharmacyCoordinates> pharmacies;
+    private PharmacyLocationIndex index;
+
+    @BeforeEach
+    void setUp() {
+        pharmacies = new ArrayList<>();
+        pharmacies.add(new PharmacyCoordinates(1L, 45.2550, 19.8450));   // ~1.6 km from the center
+        pharmacies.add(new PharmacyCoordinates(2L, 45.3800, 20.3900));   // ~45 km, Zrenjanin
+        pharmacies.add(new PharmacyCoordinates(3L, 44.7866, 20.4489));   // ~72 km, Belgrade
+        pharmacies.add(new PharmacyCoordinates(4L, 45.2600, 19.8300));   // ~0.8 km from the center
+        pharmacies.add(new PharmacyCoordinates(5L, null, null));          // pharmacy without a location
+        pharmacyRepositoryMock = mock(IPharmacyRepository.class);
+        when(pharmacyRepositoryMock.getActivePharmacyCoordinates()).thenAnswer(invocation -> new ArrayList<>(pharmacies));
+        index = new PharmacyLocationIndex(pharmacyRepositoryMock, 0.5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testFindWithinDistanceReturnsClosestFirst() {
+        var found = index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 50.0);
+
+        assertEquals(List.of(4L, 1L, 2L), found);
+        verify(pharmacyRepositoryMock, times(1)).getActivePharmacyCoordinates();
+    }
+
+    @Test
+    void testFindWithinDistanceExcludesPharmaciesOutsideTheCircle() {
+        assertEquals(List.of(4L, 1L), index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 5.0));
+        assertTrue(index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).isEmpty());
+    }
+
+    @Test
+    void testFindWithinDistanceScansEverythingForWideRadius() {
+        assertEquals(List.of(4L, 1L, 2L, 3L), index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 20000.0));
+    }
+
+    @Test
+    void testFindWithinDistanceWrapsAroundTheAntimeridian() {
+        pharmacies.add(new PharmacyCoordinates(6L, 0.0, 179.95));
+        pharmacies.add(new PharmacyCoordinates(7L, 0.0, -179.95));
+        // enough pharmacies elsewhere so the grid is searched instead of scanned
+        for (long id = 100; id < 200; id++) {
+            pharmacies.add(new PharmacyCoordinates(id, 45.0, 19.0 + id / 1000.0));
+        }
+
+        assertEquals(List.of(7L, 6L), index.findWithinDistance(0.0, -179.99, 20.0));
+    }
+
+    @Test
+    void testPutAndRemoveWithoutTransaction() {
+        index.put(10L, 45.2670, 19.8336);
+        assertEquals(10L, index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).get(0));
+
+        index.put(10L, 44.7866, 20.4489);
+        assertTrue(index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).isEmpty());
+
+        index.remove(10L);
+        assertEquals(List.of(3L), index.findWithinDistance(44.7866, 20.4489, 1.0));
+    }
+
+    @Test
+    void testPutIsAppliedOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.put(10L, 45.2670, 19.8336);
+        assertTrue(index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).isEmpty());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(List.of(10L), index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1));
+    }
+
+    @Test
+    void testRolledBackPutIsNeverApplied() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.put(10L, 45.2670, 19.8336);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertTrue(index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).isEmpty());
+    }
+
+    @Test
+    void testRebuildPicksUpChangesFromOtherInstances() {
+        assertTrue(index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 0.1).isEmpty());
+        pharmacies.add(new PharmacyCoordinates(10L, 45.2670, 19.8336));
+        pharmacies.removeIf(pharmacy -> pharmacy.getPharmacyId() == 4L);
+
+        index.rebuild();
+
+        assertEquals(List.of(10L, 1L), index.findWithinDistance(NOVI_SAD_LATITUDE, NOVI_SAD_LONGITUDE, 5.0));
+    }
+}
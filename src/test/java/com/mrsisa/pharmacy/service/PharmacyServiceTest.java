@@ -1,23 +1,42 @@
 package com.mrsisa.pharmacy.service;
 
 
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch;
 import com.mrsisa.pharmacy.domain.entities.Patient;
+import com.mrsisa.pharmacy.domain.entities.PatientCategory;
 import com.mrsisa.pharmacy.domain.entities.Pharmacy;
 import com.mrsisa.pharmacy.domain.enums.AppointmentStatus;
 import com.mrsisa.pharmacy.domain.enums.ReservationStatus;
 import com.mrsisa.pharmacy.repository.IAppointmentRepository;
+import com.mrsisa.pharmacy.dto.pharmacy.PharmacyQRSearchDTO;
+import com.mrsisa.pharmacy.dto.stock.MedicineStockQRSearchDTO;
 import com.mrsisa.pharmacy.repository.IMedicineReservationRepository;
+import com.mrsisa.pharmacy.repository.IMedicineStockRepository;
 import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.repository.IPrescriptionSearchRepository;
 import com.mrsisa.pharmacy.repository.IRecipeRepository;
 import com.mrsisa.pharmacy.service.impl.PharmacyService;
+import com.mrsisa.pharmacy.util.PrescriptionSearchCursor;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -37,6 +56,18 @@ class PharmacyServiceTest {
     @Mock
     private IRecipeRepository recipeRepositoryMock;
 
+    @Mock
+    private IPharmacyLocationIndex pharmacyLocationIndexMock;
+
+    @Mock
+    private IPrescriptionSearchRepository prescriptionSearchRepositoryMock;
+
+    @Mock
+    private IMedicineStockRepository medicineStockRepositoryMock;
+
+    @Mock
+    private IStockPriceResolver stockPriceResolverMock;
+
     @InjectMocks
     private PharmacyService pharmacyService;
 
@@ -87,6 +118,104 @@ class PharmacyServiceTest {
 
     }
 
+    @Test
+    void testSearchFilterWithoutPharmaciesInRange(){
+        when(pharmacyLocationIndexMock.findWithinDistance(45.0, 19.0, 5.0))
+                .thenReturn(Collections.emptyList());
+
+        var page = pharmacyService.getAllPharmaciesSearchFilter("", "", 0.0, 5.0, 45.0, 19.0, 5.0, PageRequest.of(0, 10));
 
+        assertTrue(page.isEmpty());
+        verify(pharmacyLocationIndexMock, times(1)).findWithinDistance(45.0, 19.0, 5.0);
+        verifyNoInteractions(pharmacyRepositoryMock);
+    }
 
+    @Test
+    void testSearchFilterFallsBackToDatabaseForManyCandidates(){
+        var pageable = PageRequest.of(0, 10);
+        ReflectionTestUtils.setField(pharmacyService, "maxIndexedCandidates", 1);
+        when(pharmacyLocationIndexMock.findWithinDistance(45.0, 19.0, 500.0))
+                .thenReturn(List.of(1L, 2L));
+        when(pharmacyRepositoryMock.getPharmaciesSearchFilter("%%", "%%", 0.0, 5.0, 45.0, 19.0, 500.0, pageable))
+                .thenReturn(Page.empty(pageable));
+
+        pharmacyService.getAllPharmaciesSearchFilter("", "", 0.0, 5.0, 45.0, 19.0, 500.0, pageable);
+
+        verify(pharmacyRepositoryMock, times(1)).getPharmaciesSearchFilter("%%", "%%", 0.0, 5.0, 45.0, 19.0, 500.0, pageable);
+        verify(pharmacyRepositoryMock, never()).getPharmaciesSearchFilter(anyString(), anyString(), anyDouble(), anyDouble(), anyCollection(), any());
+    }
+
+    @Test
+    void testQRSearchSumsQuantitiesOfRepeatedMedicine(){
+        var pageable = PageRequest.of(0, 10);
+        ReflectionTestUtils.setField(pharmacyService, "databaseRankingLimit", 20);
+        when(prescriptionSearchRepositoryMock.getPharmaciesForPrescription(eq(Map.of(1L, 5, 2L, 1)), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(new PrescriptionPharmacyTotal(10L, 60000L)), pageable, 1));
+        when(medicineStockRepositoryMock.getStocksForPharmacies(List.of(10L), Set.of(1L, 2L))).thenReturn(List.of(
+                new PrescriptionStockMatch(10L, "Benu", 4.5, "Srbija", "Novi Sad", "Bulevar", "1", "21000", 1L, "Brufen", 10, 100.0),
+                new PrescriptionStockMatch(10L, "Benu", 4.5, "Srbija", "Novi Sad", "Bulevar", "1", "21000", 2L, "Aspirin", 10, 100.0)));
+
+        var page = pharmacyService.getPharmaciesWhereMedicinesAreAvailable(List.of(1L, 1L, 2L), List.of(2, 3, 1),
+                List.of(5, 6, 7), new PatientCategory("Regular", 0, 0, "white"), null, pageable);
+
+        var stocks = page.getContent().get(0).getMedicineStock();
+        assertEquals(List.of(2, 3, 1), stocks.stream().map(MedicineStockQRSearchDTO::getQuantity).collect(Collectors.toList()));
+        assertEquals(List.of(5, 6, 7), stocks.stream().map(MedicineStockQRSearchDTO::getTherapyDays).collect(Collectors.toList()));
+        assertEquals(600.0, page.getContent().get(0).getTotalStockPrice());
+    }
+
+    @Test
+    void testQRSearchListsThePricesThatRankedThePage(){
+        var pageable = PageRequest.of(0, 10);
+        ReflectionTestUtils.setField(pharmacyService, "databaseRankingLimit", 20);
+        when(prescriptionSearchRepositoryMock.getPharmaciesForPrescription(eq(Map.of(1L, 2)), isNull(), eq(pageable)))
+                .thenReturn(new PageImpl<>(List.of(new PrescriptionPharmacyTotal(10L, 20000L)), pageable, 1));
+        when(medicineStockRepositoryMock.getStocksForPharmacies(List.of(10L), Set.of(1L))).thenReturn(List.of(
+                new PrescriptionStockMatch(10L, "Benu", 4.5, "Srbija", "Novi Sad", "Bulevar", "1", "21000", 1L, "Brufen", 10, 100.0)));
+        // a cached price which has not caught up with the stock yet
+        when(stockPriceResolverMock.getEffectivePrice(eq(10L), eq(1L), eq(100.0), any())).thenReturn(90.0);
+
+        var pharmacy = pharmacyService.getPharmaciesWhereMedicinesAreAvailable(List.of(1L), List.of(2), List.of(5),
+                new PatientCategory("Regular", 0, 0, "white"), null, pageable).getContent().get(0);
+
+        assertEquals(100.0, pharmacy.getMedicineStock().get(0).getMedicinePrice());
+        assertEquals(200.0, pharmacy.getTotalStockPrice());
+        assertFalse(PrescriptionSearchCursor.decode(pharmacy.getCursor()).hasEffectivePrices());
+    }
+
+    @Test
+    void testQRSearchDoesNotContinueRegularPricesOnceAPromotionStarts(){
+        var pageable = PageRequest.of(0, 10, Sort.by(IPrescriptionSearchRepository.TOTAL_STOCK_PRICE));
+        ReflectionTestUtils.setField(pharmacyService, "databaseRankingLimit", 20);
+        when(stockPriceResolverMock.hasRunningPromotions(eq(Set.of(1L)), any())).thenReturn(true);
+        var after = new PrescriptionSearchCursor(20000L, 10L, false).encode();
+        var category = new PatientCategory("Regular", 0, 0, "white");
+
+        assertThrows(ResponseStatusException.class, () -> pharmacyService.getPharmaciesWhereMedicinesAreAvailable(List.of(1L),
+                List.of(2), List.of(5), category, after, pageable));
+        verify(prescriptionSearchRepositoryMock, never()).getPharmaciesForPrescription(any(), any(), any());
+        verify(medicineStockRepositoryMock, never()).getStocksForMedicinesStream(any());
+    }
+
+    @Test
+    void testQRSearchContinuesEffectivePricesAfterPromotionsEnd(){
+        var pageable = PageRequest.of(0, 10, Sort.by(IPrescriptionSearchRepository.TOTAL_STOCK_PRICE));
+        ReflectionTestUtils.setField(pharmacyService, "databaseRankingLimit", 20);
+        when(stockPriceResolverMock.hasRunningPromotions(eq(Set.of(1L)), any())).thenReturn(false);
+        when(medicineStockRepositoryMock.getStocksForMedicinesStream(Set.of(1L))).thenReturn(Stream.of(
+                new PrescriptionStockMatch(10L, "Benu", 4.5, "Srbija", "Novi Sad", "Bulevar", "1", "21000", 1L, "Brufen", 10, 100.0),
+                new PrescriptionStockMatch(11L, "Dr Max", 4.0, "Srbija", "Novi Sad", "Bulevar", "2", "21000", 1L, "Brufen", 10, 120.0)));
+        when(medicineStockRepositoryMock.getStocksForPharmacies(List.of(11L), Set.of(1L))).thenReturn(List.of(
+                new PrescriptionStockMatch(11L, "Dr Max", 4.0, "Srbija", "Novi Sad", "Bulevar", "2", "21000", 1L, "Brufen", 10, 120.0)));
+        when(stockPriceResolverMock.getEffectivePrice(anyLong(), eq(1L), anyDouble(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(2));
+        var after = new PrescriptionSearchCursor(20000L, 10L, true).encode();
+
+        var page = pharmacyService.getPharmaciesWhereMedicinesAreAvailable(List.of(1L), List.of(2), List.of(5),
+                new PatientCategory("Regular", 0, 0, "white"), after, pageable);
+
+        assertEquals(List.of(11L), page.map(PharmacyQRSearchDTO::getPharmacyId).getContent());
+        assertTrue(PrescriptionSearchCursor.decode(page.getContent().get(0).getCursor()).hasEffectivePrices());
+        verify(prescriptionSearchRepositoryMock, never()).getPharmaciesForPrescription(any(), any(), any());
+    }
 }
@@ -0,0 +1,114 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.aggregates.PromotionSubscriber;
+import com.mrsisa.pharmacy.domain.entities.Pharmacy;
+import com.mrsisa.pharmacy.domain.entities.Promotion;
+import com.mrsisa.pharmacy.repository.IPharmacyRepository;
+import com.mrsisa.pharmacy.repository.IPromotionRepository;
+import com.mrsisa.pharmacy.service.impl.PromotionNewsletterService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PromotionNewsletterServiceTest {
+
+    private static final Long PROMOTION_ID = 1L;
+    private static final Long PHARMACY_ID = 2L;
+    private static final String TEXT = "newsletter";
+
+    private IPromotionRepository promotionRepositoryMock;
+    private IPharmacyRepository pharmacyRepositoryMock;
+    private IEmailService emailServiceMock;
+    private PromotionNewsletterService newsletterService;
+    private Promotion promotion;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        promotionRepositoryMock = mock(IPromotionRepository.class);
+        pharmacyRepositoryMock = mock(IPharmacyRepository.class);
+        emailServiceMock = mock(IEmailService.class);
+        var transactionTemplateMock = mock(TransactionTemplate.class);
+        when(transactionTemplateMock.execute(any())).thenAnswer(invocation ->
+                invocation.getArgument(0, TransactionCallback.class).doInTransaction(null));
+        newsletterService = new PromotionNewsletterService(promotionRepositoryMock, pharmacyRepositoryMock, emailServiceMock,
+                transactionTemplateMock, 2);
+        var pharmacy = new Pharmacy();
+        pharmacy.setId(PHARMACY_ID);
+        promotion = new Promotion();
+        promotion.setId(PROMOTION_ID);
+        promotion.setPharmacy(pharmacy);
+        when(promotionRepositoryMock.getPromotionWithItems(PROMOTION_ID)).thenReturn(Optional.of(promotion));
+        when(promotionRepositoryMock.getPromotionForNewsletter(PROMOTION_ID)).thenReturn(Optional.of(promotion));
+        when(emailServiceMock.getPromotionNewsletterText(promotion)).thenReturn(TEXT);
+    }
+
+    private static PromotionSubscriber subscriber(long id) {
+        return new PromotionSubscriber(id, "user" + id, "user" + id + "@mail.com");
+    }
+
+    private void givenSubscribersAfter(long afterId, PromotionSubscriber... subscribers) {
+        when(pharmacyRepositoryMock.getPromotionSubscribers(PHARMACY_ID, afterId, PageRequest.of(0, 2))).thenReturn(List.of(subscribers));
+    }
+
+    @Test
+    void testEveryPageIsQueuedAndRecorded() {
+        promotion.setNewsletterAfterPatientId(0L);
+        givenSubscribersAfter(0L, subscriber(3), subscriber(5));
+        givenSubscribersAfter(5L, subscriber(8));
+
+        newsletterService.sendNewsletter(PROMOTION_ID);
+
+        verify(emailServiceMock).notifySubscribersAboutPromotion(promotion, TEXT, List.of(subscriber(3), subscriber(5)));
+        verify(emailServiceMock).notifySubscribersAboutPromotion(promotion, TEXT, List.of(subscriber(8)));
+        assertNull(promotion.getNewsletterAfterPatientId());
+    }
+
+    @Test
+    void testStoppedFanOutIsResumedAfterTheLastQueuedSubscriber() {
+        // the previous instance queued the subscribers up to 5 and stopped
+        promotion.setNewsletterAfterPatientId(5L);
+        when(promotionRepositoryMock.getPromotionsWithPendingNewsletter()).thenReturn(List.of(PROMOTION_ID));
+        givenSubscribersAfter(5L, subscriber(8), subscriber(9));
+        givenSubscribersAfter(9L);
+
+        newsletterService.resumeNewsletters();
+
+        verify(pharmacyRepositoryMock, never()).getPromotionSubscribers(eq(PHARMACY_ID), eq(0L), any());
+        verify(emailServiceMock).notifySubscribersAboutPromotion(promotion, TEXT, List.of(subscriber(8), subscriber(9)));
+        verify(emailServiceMock, times(1)).notifySubscribersAboutPromotion(any(), any(), any());
+        assertNull(promotion.getNewsletterAfterPatientId());
+    }
+
+    @Test
+    void testFinishedFanOutQueuesNothing() {
+        promotion.setNewsletterAfterPatientId(null);
+
+        newsletterService.sendNewsletter(PROMOTION_ID);
+
+        verify(pharmacyRepositoryMock, never()).getPromotionSubscribers(any(), anyLong(), any());
+        verify(emailServiceMock, never()).notifySubscribersAboutPromotion(any(), any(), any());
+    }
+
+    @Test
+    void testFailedPageKeepsTheProgressOfQueuedOnes() {
+        promotion.setNewsletterAfterPatientId(0L);
+        givenSubscribersAfter(0L, subscriber(3), subscriber(5));
+        when(pharmacyRepositoryMock.getPromotionSubscribers(PHARMACY_ID, 5L, PageRequest.of(0, 2))).thenThrow(new IllegalStateException());
+
+        assertThrows(IllegalStateException.class, () -> newsletterService.sendNewsletter(PROMOTION_ID));
+
+        assertEquals(5L, promotion.getNewsletterAfterPatientId());
+    }
+}
@@ -0,0 +1,164 @@
+package com.mrsisa.pharmacy.service;
+
+import com.mrsisa.pharmacy.domain.aggregates.PromotionDiscount;
+import com.mrsisa.pharmacy.domain.aggregates.StockPriceVersion;
+import com.mrsisa.pharmacy.domain.entities.Medicine;
+import com.mrsisa.pharmacy.domain.entities.MedicineStock;
+import com.mrsisa.pharmacy.domain.entities.Pharmacy;
+import com.mrsisa.pharmacy.repository.IPromotionItemRepository;
+import com.mrsisa.pharmacy.repository.IStockPriceRepository;
+import com.mrsisa.pharmacy.service.impl.StockPriceResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StockPriceResolverTest {
+
+    private static final Long PHARMACY_ID = 1L;
+    private static final Long MEDICINE_ID = 2L;
+    private static final Long STOCK_ID = 3L;
+    private static final LocalDate DAY = LocalDate.of(2021, 6, 1);
+
+    private IStockPriceRepository stockPriceRepositoryMock;
+    private IPromotionItemRepository promotionItemRepositoryMock;
+    private StockPriceResolver stockPriceResolver;
+    private MedicineStock stock;
+
+    @BeforeEach
+    void setUp() {
+        stockPriceRepositoryMock = mock(IStockPriceRepository.class);
+        promotionItemRepositoryMock = mock(IPromotionItemRepository.class);
+        stockPriceResolver = new StockPriceResolver(stockPriceRepositoryMock, promotionItemRepositoryMock, 300);
+        var pharmacy = new Pharmacy();
+        pharmacy.setId(PHARMACY_ID);
+        var medicine = new Medicine();
+        medicine.setId(MEDICINE_ID);
+        stock = new MedicineStock(10, pharmacy, medicine);
+        stock.setId(STOCK_ID);
+        stock.setCurrentPrice(150.0);
+    }
+
+    private static LocalDate day(int offset) {
+        return DAY.plusDays(offset);
+    }
+
+    private void givenPrices(List<StockPriceVersion> versions, List<PromotionDiscount> discounts) {
+        when(stockPriceRepositoryMock.getPriceVersionsForPharmacy(PHARMACY_ID)).thenReturn(versions);
+        when(promotionItemRepositoryMock.getPromotionDiscountsForPharmacy(PHARMACY_ID)).thenReturn(discounts);
+        when(stockPriceRepositoryMock.getPriceVersionsForStock(STOCK_ID)).thenReturn(versions);
+        when(promotionItemRepositoryMock.getPromotionDiscountsForMedicineInPharmacy(PHARMACY_ID, MEDICINE_ID)).thenReturn(discounts);
+    }
+
+    private void assertPriceOn(int offset, double expected) {
+        assertEquals(expected, stockPriceResolver.getEffectivePrice(stock, day(offset)));
+        assertEquals(expected, stockPriceResolver.getUncachedEffectivePrice(stock, day(offset)));
+    }
+
+    @Test
+    void testPromotionAppliesFromFirstToLastDay() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 100.0)),
+                List.of(new PromotionDiscount(MEDICINE_ID, day(3), day(6), 20)));
+
+        assertPriceOn(2, 100.0);
+        assertPriceOn(3, 80.0);
+        assertPriceOn(6, 80.0);
+        assertPriceOn(7, 100.0);
+    }
+
+    @Test
+    void testOverlappingPromotionsAreCombined() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 99.99)),
+                List.of(new PromotionDiscount(MEDICINE_ID, day(0), day(9), 20),
+                        new PromotionDiscount(MEDICINE_ID, day(5), day(14), 50)));
+
+        assertPriceOn(4, 79.99);
+        assertPriceOn(5, 40.0);
+        assertPriceOn(10, 50.0);
+    }
+
+    @Test
+    void testPriceChangedDuringPromotionIsDiscounted() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 100.0),
+                        new StockPriceVersion(MEDICINE_ID, day(4), 200.0),
+                        new StockPriceVersion(MEDICINE_ID, day(4), 120.0)),
+                List.of(new PromotionDiscount(MEDICINE_ID, day(2), day(6), 50)));
+
+        assertPriceOn(3, 50.0);
+        assertPriceOn(4, 60.0);
+        assertPriceOn(7, 120.0);
+        assertEquals(120.0, stockPriceResolver.getRegularPrice(stock, day(4)));
+    }
+
+    @Test
+    void testCurrentPriceIsUsedBeforeHistoryStarts() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(5), 100.0)),
+                List.of(new PromotionDiscount(MEDICINE_ID, day(0), day(9), 10)));
+
+        assertPriceOn(4, 135.0);
+        assertPriceOn(5, 90.0);
+    }
+
+    @Test
+    void testMedicineWithoutHistoryOrPromotionsCostsCurrentPrice() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID + 1, day(0), 100.0)),
+                List.of(new PromotionDiscount(MEDICINE_ID + 1, day(0), day(9), 10)));
+
+        assertEquals(150.0, stockPriceResolver.getEffectivePrice(stock, day(1)));
+        assertEquals(150.0, stockPriceResolver.getEffectivePrice(PHARMACY_ID, MEDICINE_ID, 150.0, day(1)));
+    }
+
+    @Test
+    void testPharmacyIsLoadedOnceUntilEvicted() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 100.0)), List.of());
+
+        stockPriceResolver.getEffectivePrice(stock, day(1));
+        stockPriceResolver.getEffectivePrice(PHARMACY_ID, MEDICINE_ID, 150.0, day(2));
+        verify(stockPriceRepositoryMock, times(1)).getPriceVersionsForPharmacy(PHARMACY_ID);
+
+        stockPriceResolver.evict(PHARMACY_ID);
+        stockPriceResolver.getEffectivePrice(stock, day(1));
+        verify(stockPriceRepositoryMock, times(2)).getPriceVersionsForPharmacy(PHARMACY_ID);
+    }
+
+    @Test
+    void testLoadOverlappingEvictionIsNotCached() {
+        when(stockPriceRepositoryMock.getPriceVersionsForPharmacy(PHARMACY_ID)).thenAnswer(invocation -> {
+            stockPriceResolver.evict(PHARMACY_ID);
+            return List.of(new StockPriceVersion(MEDICINE_ID, day(0), 100.0));
+        }).thenReturn(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 110.0)));
+        when(promotionItemRepositoryMock.getPromotionDiscountsForPharmacy(PHARMACY_ID)).thenReturn(List.of());
+
+        assertEquals(100.0, stockPriceResolver.getEffectivePrice(stock, day(1)));
+        assertEquals(110.0, stockPriceResolver.getEffectivePrice(stock, day(1)));
+        assertEquals(110.0, stockPriceResolver.getEffectivePrice(stock, day(1)));
+        verify(stockPriceRepositoryMock, times(2)).getPriceVersionsForPharmacy(PHARMACY_ID);
+    }
+
+    @Test
+    void testUncachedPriceSeesChangesWithoutEviction() {
+        givenPrices(List.of(new StockPriceVersion(MEDICINE_ID, day(0), 100.0)), List.of());
+        assertPriceOn(1, 100.0);
+
+        // changed on another instance, this one was not told
+        when(promotionItemRepositoryMock.getPromotionDiscountsForMedicineInPharmacy(PHARMACY_ID, MEDICINE_ID))
+                .thenReturn(List.of(new PromotionDiscount(MEDICINE_ID, day(1), day(1), 25)));
+
+        assertEquals(100.0, stockPriceResolver.getEffectivePrice(stock, day(1)));
+        assertEquals(75.0, stockPriceResolver.getUncachedEffectivePrice(stock, day(1)));
+        verify(stockPriceRepositoryMock, times(1)).getPriceVersionsForPharmacy(PHARMACY_ID);
+    }
+
+    @Test
+    void testRunningPromotionsAreCountedForTheDay() {
+        when(promotionItemRepositoryMock.countRunningPromotionItems(List.of(MEDICINE_ID), DAY)).thenReturn(1L);
+
+        assertTrue(stockPriceResolver.hasRunningPromotions(List.of(MEDICINE_ID), DAY));
+        assertFalse(stockPriceResolver.hasRunningPromotions(List.of(MEDICINE_ID), day(1)));
+        assertFalse(stockPriceResolver.hasRunningPromotions(List.of(), DAY));
+    }
+}
@@ -0,0 +1,37 @@
+package com.mrsisa.pharmacy.tasks;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JobCoordinatorTest {
+
+    private static final CronExpression NIGHTLY = CronExpression.parse("0 0 0 * * ?");
+    private static final CronExpression HOURLY = CronExpression.parse("0 59 * * * *");
+    private static final CronExpression MONTHLY = CronExpression.parse("0 0 0 1 * *");
+    private static final LocalDateTime MIDNIGHT = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    @Test
+    void testRunStartedLateKeepsItsFireTime() {
+        // fired at midnight on one instance, started after the minute boundary on another one
+        assertEquals(MIDNIGHT, JobCoordinator.getPreviousFireTime(NIGHTLY, MIDNIGHT.plusNanos(1_000_000)));
+        assertEquals(MIDNIGHT, JobCoordinator.getPreviousFireTime(NIGHTLY, MIDNIGHT.plusMinutes(1).plusSeconds(5)));
+        assertEquals(MIDNIGHT, JobCoordinator.getPreviousFireTime(NIGHTLY, MIDNIGHT.plusHours(23).plusMinutes(59)));
+    }
+
+    @Test
+    void testFireTimeIsTheLastOneNotAfterNow() {
+        assertEquals(MIDNIGHT, JobCoordinator.getPreviousFireTime(NIGHTLY, MIDNIGHT));
+        assertEquals(MIDNIGHT.minusMinutes(1), JobCoordinator.getPreviousFireTime(HOURLY, MIDNIGHT.plusMinutes(58)));
+        assertEquals(MIDNIGHT.plusMinutes(59), JobCoordinator.getPreviousFireTime(HOURLY, MIDNIGHT.plusMinutes(59).plusSeconds(30)));
+    }
+
+    @Test
+    void testRareCronIsFoundInLongerWindows() {
+        assertEquals(MIDNIGHT, JobCoordinator.getPreviousFireTime(MONTHLY, MIDNIGHT.plusDays(20)));
+        assertEquals(MIDNIGHT.minusMonths(1), JobCoordinator.getPreviousFireTime(MONTHLY, MIDNIGHT.minusSeconds(1)));
+    }
+}
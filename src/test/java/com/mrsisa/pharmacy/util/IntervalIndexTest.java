@@ -0,0 +1,132 @@
+package com.mrsisa.pharmacy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalIndexTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2021, 6, 1, 0, 0);
+
+    private static LocalDateTime at(int hour, int minute) {
+        return DAY.plusHours(hour).plusMinutes(minute);
+    }
+
+    private static LocalDateTime[] interval(int fromHour, int fromMinute, int toHour, int toMinute) {
+        return new LocalDateTime[]{at(fromHour, fromMinute), at(toHour, toMinute)};
+    }
+
+    private static List<LocalDateTime[]> intervals(LocalDateTime[]... intervals) {
+        return Arrays.asList(intervals);
+    }
+
+    private static IntervalIndex index(List<LocalDateTime[]> intervals) {
+        return IntervalIndex.of(intervals, interval -> interval[0], interval -> interval[1]);
+    }
+
+    private static boolean anyOverlaps(List<LocalDateTime[]> intervals, LocalDateTime from, LocalDateTime to) {
+        return IntervalIndex.anyOverlaps(intervals, interval -> interval[0], interval -> interval[1], from, to);
+    }
+
+    @Test
+    void testEmptyIndexOverlapsNothing() {
+        var index = index(Collections.emptyList());
+
+        assertFalse(index.overlaps(at(0, 0), at(23, 59)));
+        assertFalse(anyOverlaps(Collections.emptyList(), at(0, 0), at(23, 59)));
+    }
+
+    @Test
+    void testIntervalsAreHalfOpen() {
+        List<LocalDateTime[]> intervals = intervals(interval(10, 0, 11, 0));
+        var index = index(intervals);
+
+        // back to back appointments do not conflict
+        assertFalse(index.overlaps(at(9, 0), at(10, 0)));
+        assertFalse(index.overlaps(at(11, 0), at(12, 0)));
+        // a single shared minute does
+        assertTrue(index.overlaps(at(9, 0), at(10, 1)));
+        assertTrue(index.overlaps(at(10, 59), at(12, 0)));
+        assertFalse(anyOverlaps(intervals, at(9, 0), at(10, 0)));
+        assertFalse(anyOverlaps(intervals, at(11, 0), at(12, 0)));
+        assertTrue(anyOverlaps(intervals, at(10, 59), at(12, 0)));
+    }
+
+    @Test
+    void testNestedIntervals() {
+        List<LocalDateTime[]> intervals = intervals(interval(8, 0, 16, 0));
+        var index = index(intervals);
+
+        // checked interval inside an indexed one and the other way around
+        assertTrue(index.overlaps(at(9, 0), at(10, 0)));
+        assertTrue(index(intervals(interval(9, 0, 10, 0))).overlaps(at(8, 0), at(16, 0)));
+        assertTrue(anyOverlaps(intervals, at(9, 0), at(10, 0)));
+        assertTrue(anyOverlaps(intervals(interval(9, 0, 10, 0)), at(8, 0), at(16, 0)));
+    }
+
+    @Test
+    void testPrefixMaximumKeepsLongEarlyIntervals() {
+        // the long interval starts first, the last interval starting before 15:00 ends at 9:30
+        List<LocalDateTime[]> intervals = intervals(interval(9, 0, 9, 30), interval(8, 0, 17, 0), interval(8, 30, 8, 45));
+        var index = index(intervals);
+
+        assertTrue(index.overlaps(at(14, 0), at(15, 0)));
+        assertFalse(index.overlaps(at(17, 0), at(18, 0)));
+        assertFalse(index.overlaps(at(7, 0), at(8, 0)));
+    }
+
+    @Test
+    void testEmptyIntervalsNeverOverlap() {
+        List<LocalDateTime[]> intervals = intervals(interval(10, 0, 10, 0), interval(12, 0, 11, 0));
+        var index = index(intervals);
+
+        assertFalse(index.overlaps(at(9, 0), at(13, 0)));
+        assertFalse(index(intervals(interval(9, 0, 13, 0))).overlaps(at(10, 0), at(10, 0)));
+        assertFalse(anyOverlaps(intervals, at(9, 0), at(13, 0)));
+    }
+
+    @Test
+    void testSecondsNeverShrinkAnInterval() {
+        List<LocalDateTime[]> intervals = intervals(new LocalDateTime[]{at(10, 0), at(10, 0).plusSeconds(30)});
+
+        assertTrue(index(intervals).overlaps(at(10, 0), at(10, 1)));
+        assertTrue(anyOverlaps(intervals, at(10, 0), at(10, 1)));
+    }
+
+    @Test
+    void testFilterNotOverlappingKeepsOrder() {
+        var index = index(intervals(interval(10, 0, 11, 0), interval(13, 0, 14, 0)));
+        List<LocalDateTime[]> candidates = intervals(interval(12, 0, 13, 0), interval(10, 30, 10, 45), interval(9, 0, 10, 0),
+                interval(13, 59, 15, 0));
+
+        var free = index.filterNotOverlapping(candidates, interval -> interval[0], interval -> interval[1]);
+
+        assertEquals(2, free.size());
+        assertSame(candidates.get(0), free.get(0));
+        assertSame(candidates.get(2), free.get(1));
+    }
+
+    @Test
+    void testIndexAgreesWithLinearScan() {
+        var random = new Random(42);
+        List<LocalDateTime[]> intervals = new ArrayList<>();
+        for (var i = 0; i < 200; i++) {
+            var from = DAY.plusMinutes(random.nextInt(10000));
+            intervals.add(new LocalDateTime[]{from, from.plusMinutes(random.nextInt(300))});
+        }
+        var index = index(intervals);
+
+        for (var i = 0; i < 2000; i++) {
+            var from = DAY.plusMinutes(random.nextInt(10500) - 200);
+            var to = from.plusMinutes(random.nextInt(60));
+            assertEquals(anyOverlaps(intervals, from, to), index.overlaps(from, to), "checking " + from + " - " + to);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.mrsisa.pharmacy.util;
+
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionPharmacyTotal;
+import com.mrsisa.pharmacy.domain.aggregates.PrescriptionStockMatch;
+import com.mrsisa.pharmacy.repository.IPrescriptionSearchRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PharmacyQRSearchRankerTest {
+
+    private static final long ASPIRIN = 1L;
+    private static final long BRUFEN = 2L;
+
+    private final List<PrescriptionStockMatch> stocks = new ArrayList<>();
+
+    // rows arrive grouped by pharmacy, like from IMedicineStockRepository.getStocksForMedicinesStream
+    private void stock(long pharmacyId, String name, double grade, long medicineId, int quantity, double price) {
+        stocks.add(new PrescriptionStockMatch(pharmacyId, name, grade, "Serbia", "Novi Sad", "Bulevar", String.valueOf(pharmacyId),
+                "21000", medicineId, "Medicine " + medicineId, quantity, price));
+    }
+
+    private Page<PrescriptionPharmacyTotal> rank(PrescriptionSearchCursor after, Pageable pageable) {
+        Map<Long, Integer> required = new LinkedHashMap<>();
+        required.put(ASPIRIN, 2);
+        required.put(BRUFEN, 1);
+        var ranker = new PharmacyQRSearchRanker(required, after, pageable);
+        stocks.forEach(ranker::accept);
+        return ranker.getPage();
+    }
+
+    private static List<Long> ids(Page<PrescriptionPharmacyTotal> page) {
+        return page.getContent().stream().map(PrescriptionPharmacyTotal::getPharmacyId).collect(Collectors.toList());
+    }
+
+    private static Pageable byTotal(int page, int size, Sort.Direction direction) {
+        return PageRequest.of(page, size, Sort.by(direction, IPrescriptionSearchRepository.TOTAL_STOCK_PRICE));
+    }
+
+    private void fivePharmacies() {
+        stock(1, "Benu", 4.5, ASPIRIN, 10, 100.0);
+        stock(1, "Benu", 4.5, BRUFEN, 10, 50.0);      // 250.00
+        stock(2, "Dr Max", 3.0, ASPIRIN, 10, 80.0);
+        stock(2, "Dr Max", 3.0, BRUFEN, 10, 40.0);    // 200.00
+        stock(3, "Jankovic", 5.0, ASPIRIN, 10, 90.0);
+        stock(3, "Jankovic", 5.0, BRUFEN, 10, 70.0);  // 250.00, tied with Benu
+        stock(4, "Lilly", 2.0, ASPIRIN, 10, 10.05);
+        stock(4, "Lilly", 2.0, BRUFEN, 10, 0.1);      // 20.20
+        stock(5, "Tilia", 1.0, ASPIRIN, 10, 500.0);   // no brufen
+    }
+
+    @Test
+    void testOrdersByTotalAndBreaksTiesByPharmacyId() {
+        fivePharmacies();
+
+        var ascending = rank(null, byTotal(0, 10, Sort.Direction.ASC));
+        var descending = rank(null, byTotal(0, 10, Sort.Direction.DESC));
+
+        assertEquals(List.of(4L, 2L, 1L, 3L), ids(ascending));
+        assertEquals(List.of(2020L, 20000L, 25000L, 25000L),
+                ascending.getContent().stream().map(PrescriptionPharmacyTotal::getTotalCents).collect(Collectors.toList()));
+        assertEquals(List.of(3L, 1L, 2L, 4L), ids(descending));
+        assertEquals(4, ascending.getTotalElements());
+    }
+
+    @Test
+    void testOrdersByOtherCriteria() {
+        fivePharmacies();
+
+        var byGrade = rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, IPrescriptionSearchRepository.PHARMACY_AVERAGE_GRADE)));
+        var byName = rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_NAME)));
+
+        assertEquals(List.of(3L, 1L, 2L, 4L), ids(byGrade));
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(byName));
+        assertThrows(IllegalArgumentException.class, () -> rank(null, PageRequest.of(0, 10, Sort.by("unknown"))));
+    }
+
+    @Test
+    void testSkipsStocksWithoutEnoughQuantity() {
+        stock(1, "Benu", 4.5, ASPIRIN, 1, 100.0);     // needs 2
+        stock(1, "Benu", 4.5, BRUFEN, 10, 50.0);
+        stock(2, "Dr Max", 3.0, ASPIRIN, 1, 80.0);    // not enough, but the second stock is
+        stock(2, "Dr Max", 3.0, ASPIRIN, 5, 85.0);
+        stock(2, "Dr Max", 3.0, BRUFEN, 10, 40.0);
+
+        var page = rank(null, byTotal(0, 10, Sort.Direction.ASC));
+
+        assertEquals(List.of(2L), ids(page));
+        assertEquals(21000L, page.getContent().get(0).getTotalCents());
+        assertEquals(1, page.getTotalElements());
+    }
+
+    @Test
+    void testCountsEveryMedicineOnceLikeTheDatabaseQuery() {
+        // two active stocks of aspirin, both with enough quantity
+        stock(1, "Benu", 4.5, ASPIRIN, 10, 100.0);
+        stock(1, "Benu", 4.5, ASPIRIN, 10, 100.0);
+        stock(1, "Benu", 4.5, BRUFEN, 10, 50.0);
+        // two stocks of aspirin but no brufen
+        stock(2, "Dr Max", 3.0, ASPIRIN, 10, 80.0);
+        stock(2, "Dr Max", 3.0, ASPIRIN, 10, 80.0);
+
+        var page = rank(null, byTotal(0, 10, Sort.Direction.ASC));
+
+        assertEquals(List.of(1L), ids(page));
+        // like sum() in the database query, every matching stock adds to the total
+        assertEquals(45000L, page.getContent().get(0).getTotalCents());
+    }
+
+    @Test
+    void testOffsetPaging() {
+        fivePharmacies();
+
+        var first = rank(null, byTotal(0, 2, Sort.Direction.ASC));
+        var second = rank(null, byTotal(1, 2, Sort.Direction.ASC));
+        var third = rank(null, byTotal(2, 2, Sort.Direction.ASC));
+
+        assertEquals(List.of(4L, 2L), ids(first));
+        assertEquals(List.of(1L, 3L), ids(second));
+        assertTrue(third.getContent().isEmpty());
+        assertEquals(4, second.getTotalElements());
+    }
+
+    @Test
+    void testKeysetPagingContinuesAfterTiedPharmacy() {
+        fivePharmacies();
+
+        var afterBenu = rank(new PrescriptionSearchCursor(25000L, 1L, true), byTotal(0, 2, Sort.Direction.ASC));
+        var afterDrMax = rank(new PrescriptionSearchCursor(20000L, 2L, true), byTotal(0, 2, Sort.Direction.ASC));
+        var afterJankovicDescending = rank(new PrescriptionSearchCursor(25000L, 3L, true), byTotal(0, 2, Sort.Direction.DESC));
+
+        // the page starts right after the cursor instead of at an offset
+        assertEquals(List.of(3L), ids(afterBenu));
+        assertEquals(List.of(1L, 3L), ids(afterDrMax));
+        assertEquals(List.of(1L, 2L), ids(afterJankovicDescending));
+        // the total still counts every matching pharmacy
+        assertEquals(4, afterBenu.getTotalElements());
+    }
+
+    @Test
+    void testMissingValuesSortLastAscendingAndFirstDescending() {
+        stock(1, null, 4.5, ASPIRIN, 10, 100.0);
+        stock(1, null, 4.5, BRUFEN, 10, 50.0);
+        stock(2, "Dr Max", 3.0, ASPIRIN, 10, 80.0);
+        stock(2, "Dr Max", 3.0, BRUFEN, 10, 40.0);
+        stocks.add(new PrescriptionStockMatch(3L, "Apoteka", null, "Serbia", "Novi Sad", null, "3", "21000",
+                ASPIRIN, "Medicine 1", 10, 90.0));
+        stocks.add(new PrescriptionStockMatch(3L, "Apoteka", null, "Serbia", "Novi Sad", null, "3", "21000",
+                BRUFEN, "Medicine 2", 10, 70.0));
+
+        assertEquals(List.of(3L, 2L, 1L), ids(rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_NAME)))));
+        assertEquals(List.of(1L, 2L, 3L), ids(rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, IPrescriptionSearchRepository.PHARMACY_NAME)))));
+        assertEquals(List.of(2L, 1L, 3L), ids(rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_AVERAGE_GRADE)))));
+        assertEquals(List.of(1L, 2L, 3L), ids(rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_ADDRESS)))));
+        assertEquals(List.of(3L, 2L, 1L), ids(rank(null, PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, IPrescriptionSearchRepository.PHARMACY_ADDRESS)))));
+    }
+
+    @Test
+    void testCursorOnlyContinuesTotalOrder() {
+        fivePharmacies();
+
+        assertThrows(IllegalArgumentException.class, () -> rank(new PrescriptionSearchCursor(25000L, 1L, true),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, IPrescriptionSearchRepository.PHARMACY_NAME))));
+    }
+}
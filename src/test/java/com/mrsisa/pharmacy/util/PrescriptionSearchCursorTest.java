@@ -0,0 +1,68 @@
+package com.mrsisa.pharmacy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrescriptionSearchCursorTest {
+
+    @Test
+    void testEncodeAndDecode() {
+        var cursor = PrescriptionSearchCursor.decode(new PrescriptionSearchCursor(123456L, 42L, true).encode());
+
+        assertEquals(123456L, cursor.getTotalCents());
+        assertEquals(42L, cursor.getPharmacyId());
+        assertTrue(cursor.hasEffectivePrices());
+        assertFalse(PrescriptionSearchCursor.decode(new PrescriptionSearchCursor(123456L, 42L, false).encode()).hasEffectivePrices());
+    }
+
+    @Test
+    void testDecodeRejectsMalformedCursors() {
+        assertThrows(IllegalArgumentException.class, () -> PrescriptionSearchCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> PrescriptionSearchCursor.decode("MTIz"));          // "123"
+        assertThrows(IllegalArgumentException.class, () -> PrescriptionSearchCursor.decode("YWJjOjEy"));      // "abc:12"
+        assertThrows(IllegalArgumentException.class, () -> PrescriptionSearchCursor.decode("MTIzOjQ1"));      // "123:45"
+        assertThrows(IllegalArgumentException.class, () -> PrescriptionSearchCursor.decode("MTIzOjQ1Olg"));   // "123:45:X"
+    }
+
+    @Test
+    void testToCentsRoundsPricesWhichAreNotExactInBinary() {
+        assertEquals(1005L, PrescriptionSearchCursor.toCents(10.05));
+        assertEquals(33L, PrescriptionSearchCursor.toCents(0.33));
+        assertEquals(25000L, PrescriptionSearchCursor.toCents(250.0));
+    }
+
+    @Test
+    void testTotalsInCentsDoNotDependOnSummationOrder() {
+        var prices = List.of(0.1, 0.2, 0.3, 1234.56, 0.07);
+        long forward = 0;
+        for (var price : prices) {
+            forward += PrescriptionSearchCursor.toCents(price) * 3;
+        }
+        long backward = 0;
+        for (var i = prices.size() - 1; i >= 0; i--) {
+            backward += PrescriptionSearchCursor.toCents(prices.get(i)) * 3;
+        }
+
+        assertEquals(forward, backward);
+        assertEquals(370569L, forward);
+    }
+
+    @Test
+    void testIsBeforeBreaksTiesByPharmacyId() {
+        var cursor = new PrescriptionSearchCursor(1000L, 5L, true);
+
+        assertTrue(cursor.isBefore(1001L, 1L, true));
+        assertTrue(cursor.isBefore(1000L, 6L, true));
+        assertFalse(cursor.isBefore(1000L, 5L, true));
+        assertFalse(cursor.isBefore(1000L, 4L, true));
+        assertFalse(cursor.isBefore(999L, 9L, true));
+
+        assertTrue(cursor.isBefore(999L, 9L, false));
+        assertTrue(cursor.isBefore(1000L, 4L, false));
+        assertFalse(cursor.isBefore(1000L, 5L, false));
+        assertFalse(cursor.isBefore(1000L, 6L, false));
+    }
+}
@@ -0,0 +1,102 @@
+package com.mrsisa.pharmacy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceTimelineTest {
+
+    private static final LocalDate DAY = LocalDate.of(2021, 6, 1);
+
+    private static LocalDate day(int offset) {
+        return DAY.plusDays(offset);
+    }
+
+    // {start offset, price}
+    private static PriceTimeline versions(double[]... versions) {
+        return PriceTimeline.ofVersions(List.of(versions), version -> day((int) version[0]), version -> version[1]);
+    }
+
+    // {from offset, to offset, factor}
+    private static PriceTimeline factors(double[]... periods) {
+        return PriceTimeline.ofFactors(List.of(periods), period -> day((int) period[0]), period -> day((int) period[1]),
+                period -> period[2]);
+    }
+
+    @Test
+    void testEmptyTimelineReturnsFallback() {
+        var timeline = PriceTimeline.ofVersions(Collections.<double[]>emptyList(), version -> DAY, version -> 0);
+
+        assertEquals(7.0, timeline.valueAt(DAY, 7.0));
+        assertEquals(1.0, PriceTimeline.ofFactors(Collections.<double[]>emptyList(), period -> DAY, period -> DAY, period -> 0.5)
+                .valueAt(DAY, 1.0));
+    }
+
+    @Test
+    void testVersionAppliesFromItsFirstDay() {
+        var timeline = versions(new double[]{0, 100}, new double[]{5, 150});
+
+        assertEquals(100.0, timeline.valueAt(day(4), -1));
+        assertEquals(150.0, timeline.valueAt(day(5), -1));
+        assertEquals(150.0, timeline.valueAt(day(400), -1));
+    }
+
+    @Test
+    void testHistoryStartingAfterRequestedDayReturnsFallback() {
+        var timeline = versions(new double[]{3, 100}, new double[]{5, 150});
+
+        assertEquals(90.0, timeline.valueAt(day(2), 90.0));
+        assertEquals(100.0, timeline.valueAt(day(3), 90.0));
+    }
+
+    @Test
+    void testLastVersionOfTheSameDayWins() {
+        var timeline = versions(new double[]{0, 100}, new double[]{2, 120}, new double[]{2, 130}, new double[]{2, 110});
+
+        assertEquals(100.0, timeline.valueAt(day(1), -1));
+        assertEquals(110.0, timeline.valueAt(day(2), -1));
+        assertEquals(110.0, timeline.valueAt(day(3), -1));
+    }
+
+    @Test
+    void testFactorAppliesOnFirstAndLastDayOnly() {
+        var timeline = factors(new double[]{2, 5, 0.8});
+
+        assertEquals(1.0, timeline.valueAt(day(1), 1.0));
+        assertEquals(0.8, timeline.valueAt(day(2), 1.0));
+        assertEquals(0.8, timeline.valueAt(day(5), 1.0));
+        assertEquals(1.0, timeline.valueAt(day(6), 1.0));
+    }
+
+    @Test
+    void testOneDayPeriod() {
+        var timeline = factors(new double[]{3, 3, 0.5});
+
+        assertEquals(1.0, timeline.valueAt(day(2), 1.0));
+        assertEquals(0.5, timeline.valueAt(day(3), 1.0));
+        assertEquals(1.0, timeline.valueAt(day(4), 1.0));
+    }
+
+    @Test
+    void testOverlappingFactorsMultiply() {
+        var timeline = factors(new double[]{0, 9, 0.8}, new double[]{5, 14, 0.5});
+
+        assertEquals(0.8, timeline.valueAt(day(4), 1.0));
+        assertEquals(0.4, timeline.valueAt(day(5), 1.0), 1e-9);
+        assertEquals(0.4, timeline.valueAt(day(9), 1.0), 1e-9);
+        assertEquals(0.5, timeline.valueAt(day(10), 1.0));
+        assertEquals(1.0, timeline.valueAt(day(15), 1.0));
+    }
+
+    @Test
+    void testPeriodEndingWhenAnotherStarts() {
+        var timeline = factors(new double[]{0, 4, 0.9}, new double[]{5, 9, 0.7});
+
+        assertEquals(0.9, timeline.valueAt(day(4), 1.0));
+        assertEquals(0.7, timeline.valueAt(day(5), 1.0));
+    }
+}
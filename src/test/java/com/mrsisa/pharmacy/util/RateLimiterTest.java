@@ -0,0 +1,88 @@
+package com.mrsisa.pharmacy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    void testDisabledLimiterGrantsEverythingRightAway() throws InterruptedException {
+        var limiter = new RateLimiter(0);
+        var start = System.nanoTime();
+
+        assertEquals(50, limiter.acquireUpTo(50));
+        assertEquals(50, limiter.acquireUpTo(50));
+        assertEquals(0, limiter.acquireUpTo(0));
+        assertTrue(millisSince(start) < 100);
+    }
+
+    @Test
+    void testEmptyLimiterWaitsForOnePermit() throws InterruptedException {
+        var limiter = new RateLimiter(10);
+        var start = System.nanoTime();
+
+        assertEquals(1, limiter.acquireUpTo(50));
+        assertTrue(millisSince(start) >= 90);
+    }
+
+    @Test
+    void testIdleLimiterStoresAtMostOneSecondOfPermits() throws InterruptedException {
+        var limiter = new RateLimiter(20);
+
+        Thread.sleep(1300);
+
+        assertEquals(20, limiter.acquireUpTo(50));
+    }
+
+    @Test
+    void testGrantIsCappedByRequestedPermits() throws InterruptedException {
+        var limiter = new RateLimiter(20);
+
+        Thread.sleep(600);
+
+        assertEquals(5, limiter.acquireUpTo(5));
+        assertTrue(limiter.acquireUpTo(50) >= 5);
+    }
+
+    @Test
+    void testReleasedPermitsCanBeTakenAgain() throws InterruptedException {
+        var limiter = new RateLimiter(1);
+        assertEquals(1, limiter.acquireUpTo(10));
+
+        limiter.release(1);
+        var start = System.nanoTime();
+
+        assertEquals(1, limiter.acquireUpTo(10));
+        assertTrue(millisSince(start) < 500);
+    }
+
+    @Test
+    void testReleaseCannotExceedOneSecondOfPermits() throws InterruptedException {
+        var limiter = new RateLimiter(5);
+
+        limiter.release(100);
+
+        assertEquals(5, limiter.acquireUpTo(100));
+    }
+
+    @Test
+    void testPermitsAreHandedOutAtTheConfiguredRate() throws InterruptedException {
+        var limiter = new RateLimiter(100);
+        var start = System.nanoTime();
+
+        var acquired = 0;
+        while (acquired < 50) {
+            acquired += limiter.acquireUpTo(10);
+        }
+
+        assertEquals(50, acquired);
+        assertTrue(millisSince(start) >= 450);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mrsisa.pharmacy.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextTemplateTest {
+
+    @Test
+    void testRenderFillsPlaceholdersInParameterOrder() {
+        var template = TextTemplate.compile("Dear {{name}}, your order {{ id }} is ready.", "id", "name");
+
+        assertEquals("Dear Ana, your order 42 is ready.", template.render(42, "Ana"));
+    }
+
+    @Test
+    void testRepeatedPlaceholderUsesTheSameValue() {
+        var template = TextTemplate.compile("{{pharmacy}} - {{content}} - {{pharmacy}}", "pharmacy", "content");
+
+        assertEquals("Apoteka - Sale - Apoteka", template.render("Apoteka", "Sale"));
+    }
+
+    @Test
+    void testTemplateWithoutPlaceholdersRendersItsText() {
+        assertEquals("Admin team", TextTemplate.compile("Admin team").render());
+        assertEquals("", TextTemplate.compile("").render());
+    }
+
+    @Test
+    void testPlaceholdersAtTheEdgesAndNextToEachOther() {
+        var template = TextTemplate.compile("{{a}}{{b}}-{{a}}", "a", "b");
+
+        assertEquals("12-1", template.render(1, 2));
+    }
+
+    @Test
+    void testRenderToAppendsToTheBuilder() {
+        var template = TextTemplate.compile("\t{{medicine}}: -{{discount}}%\n", "medicine", "discount");
+        var builder = new StringBuilder("Items:\n");
+
+        template.renderTo(builder, "Brufen", 20);
+        template.renderTo(builder, "Aspirin", 15);
+
+        assertEquals("Items:\n\tBrufen: -20%\n\tAspirin: -15%\n", builder.toString());
+    }
+
+    @Test
+    void testNullValueIsRenderedAsNull() {
+        assertEquals("Reason: null.", TextTemplate.compile("Reason: {{reason}}.", "reason").render((Object) null));
+    }
+
+    @Test
+    void testUnknownPlaceholderFailsToCompile() {
+        var exception = assertThrows(IllegalArgumentException.class,
+                () -> TextTemplate.compile("Dear {{firstName}}, {{lastName}}", "firstName"));
+
+        assertTrue(exception.getMessage().contains("lastName"));
+    }
+
+    @Test
+    void testUnclosedPlaceholderFailsToCompile() {
+        var exception = assertThrows(IllegalArgumentException.class,
+                () -> TextTemplate.compile("Dear {{firstName}}, order {{id", "firstName", "id"));
+
+        assertTrue(exception.getMessage().startsWith("Unclosed placeholder at 26"));
+    }
+
+    @Test
+    void testTooFewValuesFailToRender() {
+        var template = TextTemplate.compile("{{a}} {{b}}", "a", "b");
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> template.render("only one"));
+        assertEquals("Expected 2 template values, got 1", exception.getMessage());
+    }
+
+    @Test
+    void testTooManyValuesFailToRender() {
+        var template = TextTemplate.compile("{{a}}", "a");
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> template.renderTo(new StringBuilder(), 1, 2));
+    }
+
+    @Test
+    void testUnusedParameterStillCountsAsValue() {
+        var template = TextTemplate.compile("{{a}}", "a", "unused");
+
+        assertEquals("1", template.render(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> template.render(1));
+    }
+}
@@ -0,0 +1,44 @@
+-- fixture rows of the database backed tests, loaded inside the test transaction and rolled back after each test,
+-- ids start at 9001 so they stay clear of the rows the sequences hand out
+
+insert into pharmacy (id, active, average_grade, curr_derm_app_price, curr_ph_app_price, description, city, country, street, street_number, zip_code, latitude, longitude, name, version)
+values (9001, true, 4.5, 1500, 1000, 'Fixture pharmacy', 'Novi Sad', 'Srbija', 'Bulevar oslobodjenja', '1', '21000', 45.25, 19.83, 'Benu fixture', 0),
+       (9002, true, 4.0, 1500, 1000, 'Fixture pharmacy', 'Novi Sad', 'Srbija', 'Bulevar oslobodjenja', '2', '21000', 45.25, 19.84, 'Dr Max fixture', 0);
+
+insert into medicine (id, active, additional_notes, average_grade, code, composition, issue_on_recipe, manufacturer, shape, medicine_type, name, points)
+values (9001, true, '-', 0, 'FIXTURE-9001', 'ibuprofen', false, 'Galenika', 0, 0, 'Brufen', 1),
+       (9002, true, '-', 0, 'FIXTURE-9002', 'acetylsalicylic acid', false, 'Bayer', 0, 0, 'Aspirin', 1);
+
+insert into medicine_stock (id, active, current_price, is_on_promotion, quantity, medicine_id, pharmacy_id)
+values (9001, true, 100, false, 10, 9001, 9001),
+       (9002, true, 50, false, 5, 9002, 9001),
+       (9003, true, 110, false, 7, 9001, 9002);
+
+insert into users (id, active, email, first_name, last_name, logged_in, password, token_version, username, verified, version)
+values (9001, true, 'fixture9001@example.com', 'Petar', 'Petrovic', true, 'x', 0, 'fixture9001', true, 0),
+       (9002, true, 'fixture9002@example.com', 'Jovana', 'Jovanovic', true, 'x', 0, 'fixture9002', true, 0),
+       (9003, true, 'fixture9003@example.com', 'Marko', 'Markovic', false, 'x', 0, 'fixture9003', true, 0),
+       (9004, false, 'fixture9004@example.com', 'Ana', 'Anic', false, 'x', 0, 'fixture9004', true, 0);
+
+insert into patient (id, city, country, street, street_number, zip_code, penalties, points, phone_number, category_id)
+values (9001, 'Novi Sad', 'Srbija', 'Futoska', '1', '21000', 1, 0, '0601234567', null),
+       (9002, 'Novi Sad', 'Srbija', 'Futoska', '2', '21000', 0, 0, '0607654321', null),
+       (9003, 'Novi Sad', 'Srbija', 'Futoska', '3', '21000', 2, 0, '0601112223', null),
+       (9004, 'Novi Sad', 'Srbija', 'Futoska', '4', '21000', 2, 0, '0603332221', null);
+
+-- status 0 is RESERVED and 1 is PICKED
+insert into medicine_reservation (id, active, price, reservation_deadline, status, reserved_at, version, patient_id, pharmacy_id)
+values (9001, true, 250, '2021-05-01 12:00:00', 0, '2021-04-28 12:00:00', 0, 9001, 9001),
+       (9002, true, 300, '2021-05-02 12:00:00', 0, '2021-04-29 12:00:00', 0, 9001, 9001),
+       (9003, true, 440, '2021-05-03 12:00:00', 0, '2021-04-30 12:00:00', 0, 9002, 9002),
+       (9004, true, 100, '2999-01-01 12:00:00', 0, '2021-04-30 12:00:00', 0, 9002, 9001),
+       (9005, true, 100, '2021-05-01 12:00:00', 1, '2021-04-28 12:00:00', 0, 9002, 9001);
+
+insert into medicine_reservation_item (id, active, price, quantity, medicine_id, reservation_id)
+values (9001, true, 100, 2, 9001, 9001),
+       (9002, true, 50, 1, 9002, 9001),
+       (9003, true, 100, 3, 9001, 9002),
+       (9004, true, 110, 4, 9001, 9003),
+       (9005, false, 110, 100, 9001, 9003),
+       (9006, true, 100, 1, 9001, 9004),
+       (9007, true, 100, 1, 9001, 9005);